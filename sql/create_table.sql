@@ -54,6 +54,8 @@ create table chat_history
 (
     id          bigint auto_increment comment 'id' primary key,
     message     text                               not null comment 'message',
+    messageBlob mediumblob                         null comment 'compressed message for large content',
+    messageCodec varchar(16)                       null comment 'codec of messageBlob: none/deflate',
     messageType varchar(32)                        not null comment 'user/ai',
     appId       bigint                             not null comment 'application id',
     userId      bigint                             not null comment 'creator user id',
@@ -65,3 +67,34 @@ create table chat_history
     INDEX idx_appId_createTime (appId, createTime) -- Core index for cursor queries
 ) comment 'chat history' collate = utf8mb4_unicode_ci;
 
+-- 升级脚本：已有库为聊天记录增加压缩列
+-- alter table chat_history
+--     add column messageBlob  mediumblob  null comment 'compressed message for large content' after message,
+--     add column messageCodec varchar(16) null comment 'codec of messageBlob: none/deflate' after messageBlob;
+
+-- 聊天记录归档表
+-- 软删除的记录和超过保留期的记录由归档任务从 chat_history 迁移至此，保持热表和索引精简
+create table if not exists chat_history_archive
+(
+    id          bigint                             not null comment 'id' primary key,
+    message     text                               not null comment 'message',
+    messageBlob mediumblob                         null comment 'compressed message for large content',
+    messageCodec varchar(16)                       null comment 'codec of messageBlob: none/deflate',
+    messageType varchar(32)                        not null comment 'user/ai',
+    appId       bigint                             not null comment 'application id',
+    userId      bigint                             not null comment 'creator user id',
+    createTime  datetime                           not null comment 'create time',
+    updateTime  datetime                           not null comment 'update time',
+    isDelete    tinyint  default 0                 not null comment 'is deleted',
+    archiveTime datetime default CURRENT_TIMESTAMP not null comment 'archive time',
+    INDEX idx_appId_createTime (appId, createTime) -- Cursor queries falling through from the hot table
+) comment 'chat history archive' collate = utf8mb4_unicode_ci;
+
+-- 对话记忆滚动摘要表
+-- 被淘汰轮次的摘要只存在缓存里会随过期丢失，这里保留每个应用的最新一份
+create table if not exists chat_memory_summary
+(
+    appId      bigint                             not null comment 'application id' primary key,
+    summary    text                               not null comment 'rolling summary of evicted turns',
+    updateTime datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment 'update time'
+) comment 'chat memory summary' collate = utf8mb4_unicode_ci;
@@ -5,9 +5,11 @@ import org.apache.ibatis.annotations.Mapper;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(exclude = {RedisEmbeddingStoreAutoConfiguration.class})
 @MapperScan(basePackages = "com.morfism.aiappgenerator.mapper")
+@EnableScheduling
 public class AiAppGeneratorApplication {
 
     public static void main(String[] args) {
@@ -2,13 +2,21 @@ package com.morfism.aiappgenerator.ai;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.morfism.aiappgenerator.ai.memory.ConversationSummarizer;
+import com.morfism.aiappgenerator.ai.memory.TokenBudgetChatMemory;
+import com.morfism.aiappgenerator.ai.routing.FailoverStreamingChatModel;
+import com.morfism.aiappgenerator.ai.routing.MeteredStreamingChatModel;
+import com.morfism.aiappgenerator.ai.routing.ProviderConfig;
+import com.morfism.aiappgenerator.ai.routing.ProviderLatencyTracker;
+import com.morfism.aiappgenerator.ai.routing.ProviderRateLimiterRegistry;
 import com.morfism.aiappgenerator.ai.tools.*;
+import com.morfism.aiappgenerator.core.metrics.GenerationMetrics;
+import com.morfism.aiappgenerator.core.stream.GenerationAdmission;
 import com.morfism.aiappgenerator.exception.BusinessException;
 import com.morfism.aiappgenerator.exception.ErrorCode;
 import com.morfism.aiappgenerator.model.enums.CodeGenTypeEnum;
 import com.morfism.aiappgenerator.service.ChatHistoryService;
 import dev.langchain4j.data.message.ToolExecutionResultMessage;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
@@ -17,17 +25,25 @@ import dev.langchain4j.model.anthropic.AnthropicChatModel;
 import dev.langchain4j.model.anthropic.AnthropicStreamingChatModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
-import dev.langchain4j.community.store.memory.chat.redis.RedisChatMemoryStore;
 import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.LongConsumer;
 
 /**
  * AI service generate factory - supports multiple AI providers
@@ -37,8 +53,17 @@ import java.time.Duration;
 @Component
 public class AiCodeGeneratorServiceFactory {
 
+    /**
+     * Rate limiter fairness key of app naming, naming competes with generations as one more tenant
+     */
+    private static final String APP_NAME_FAIRNESS_KEY = "app-name";
+
     @Autowired
-    private RedisChatMemoryStore redisChatMemoryStore;
+    private ChatMemoryStore chatMemoryStore;
+
+    @Autowired
+    @Lazy
+    private ChatHistoryService chatHistoryService;
 
     // Provider selection
     @Value("${ai.provider:deepseek}")
@@ -144,12 +169,84 @@ public class AiCodeGeneratorServiceFactory {
 
     @Value("${ai.deepseek-reasoning.log-responses:true}")
     private Boolean deepseekReasoningLogResponses;
-    @Autowired
-    private ChatHistoryService chatHistoryService;
+
+    // Chat memory configuration
+    @Value("${ai.memory.max-tokens:12000}")
+    private Integer memoryMaxTokens;
+
+    @Value("${ai.memory.recent-turns:2}")
+    private Integer memoryRecentTurns;
+
+    @Value("${ai.memory.summary-max-chars:2000}")
+    private Integer memorySummaryMaxChars;
+
+    /**
+     * Provider of the conversation summaries, empty to use the requested provider's non-reasoning model
+     */
+    @Value("${ai.memory.summary-provider:}")
+    private String memorySummaryProvider;
+
+    /**
+     * Rows read from chat_history when a window is restored, the token budget decides how many are kept
+     */
+    @Value("${ai.memory.load-max-count:100}")
+    private Integer memoryLoadMaxCount;
+
+
+    /**
+     * Run read-only tool calls of one model turn concurrently
+     */
+    @Value("${ai.tools.concurrent.enabled:true}")
+    private boolean concurrentToolsEnabled;
+
+    // Failover configuration
+    /**
+     * Comma-separated providers tried after the primary one, empty disables failover
+     */
+    @Value("${ai.failover.providers:}")
+    private String failoverProviders;
+
+    @Value("${ai.failover.first-token-timeout-ms:30000}")
+    private long failoverFirstTokenTimeoutMs;
+
+    /**
+     * Start the next provider in parallel once the current one is slower than its usual p95
+     */
+    @Value("${ai.failover.hedge.enabled:false}")
+    private boolean hedgingEnabled;
+
+    @Value("${ai.failover.hedge.min-delay-ms:1000}")
+    private long hedgeMinDelayMs;
+
+    @Value("${ai.failover.hedge.initial-delay-ms:5000}")
+    private long hedgeInitialDelayMs;
+
+    /**
+     * First-token latency per provider, shared by all routed models
+     */
+    private final ProviderLatencyTracker providerLatencyTracker = new ProviderLatencyTracker();
+
+    /**
+     * Runs first-token timeouts and hedge timers, the work they trigger is asynchronous
+     */
+    private final ScheduledExecutorService failoverScheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("model-failover").daemon().factory());
 
     @Autowired
     private ToolManager toolManager;
 
+    @Autowired
+    private ToolCallSequencer toolCallSequencer;
+
+    @Autowired
+    private ProviderRateLimiterRegistry providerRateLimiterRegistry;
+
+    @Autowired
+    private GenerationAdmission generationAdmission;
+
+    @Autowired
+    private GenerationMetrics generationMetrics;
+
     /**
      * Provide a default Bean
      */
@@ -158,6 +255,20 @@ public class AiCodeGeneratorServiceFactory {
         return getAiCodeGeneratorService(0L);
     }
 
+    /**
+     * App naming service of the default provider, without chat memory so concurrent calls share no state
+     * Shares the provider's rate limiter with code generation under a key of its own
+     */
+    @Bean
+    public AppNameGeneratorService appNameGeneratorService() {
+        String name = "deepseek-reasoning".equalsIgnoreCase(defaultProvider) ? "deepseek" : defaultProvider;
+        ProviderConfig providerConfig = resolveProviderConfig(name);
+        return AiServices.builder(AppNameGeneratorService.class)
+                .chatModel(providerRateLimiterRegistry.limit(providerConfig.name(),
+                        createUnifiedChatModel(providerConfig), APP_NAME_FAIRNESS_KEY))
+                .build();
+    }
+
     /**
      * Get service by appId (with cache) - this method is for backward compatibility
      */
@@ -199,117 +310,51 @@ public class AiCodeGeneratorServiceFactory {
      */
     private AiCodeGeneratorService createAiCodeGeneratorService(long appId, CodeGenTypeEnum codeGenType, String provider) {
         // Use the passed provider, if null then use default provider
-        String actualProvider = StringUtils.hasText(provider) ? provider : defaultProvider;
-        
-        // Special logic: DeepSeek + VUE_PROJECT automatically switches to DeepSeek Reasoning
-        if ("deepseek".equalsIgnoreCase(actualProvider) && codeGenType == CodeGenTypeEnum.VUE_PROJECT) {
-            actualProvider = "deepseek-reasoning";
-        }
+        String requestedProvider = StringUtils.hasText(provider) ? provider : defaultProvider;
+        String actualProvider = resolveProviderName(requestedProvider, codeGenType);
         
         log.info("Creating AI service for provider: {}, codeGenType: {}, appId: {}", actualProvider, codeGenType, appId);
         
-        // Set unified variables based on provider
-        String currentApiKey;
-        String currentBaseUrl;
-        String currentModelName;
-        Integer currentMaxTokens;
-        Double currentTemperature = null;
-        Boolean currentLogRequests;
-        Boolean currentLogResponses;
-        String providerType; // Used to determine which type of model to create
+        ProviderConfig providerConfig = resolveProviderConfig(actualProvider);
         
-        switch (actualProvider.toLowerCase()) {
-            case "openai" -> {
-                currentApiKey = openaiApiKey;
-                currentBaseUrl = openaiBaseUrl;
-                currentModelName = openaiModelName;
-                currentMaxTokens = openaiMaxCompletionTokens;
-                currentTemperature = openaiTemperature;
-                currentLogRequests = openaiLogRequests;
-                currentLogResponses = openaiLogResponses;
-                providerType = "openai";
-            }
-            case "claude" -> {
-                currentApiKey = claudeApiKey;
-                currentBaseUrl = null; // Claude doesn't need baseUrl
-                currentModelName = claudeModelName;
-                currentMaxTokens = claudeMaxTokens;
-                currentTemperature = claudeTemperature;
-                currentLogRequests = claudeLogRequests;
-                currentLogResponses = claudeLogResponses;
-                providerType = "claude";
-            }
-            case "gemini" -> {
-                currentApiKey = geminiApiKey;
-                currentBaseUrl = null; // Gemini doesn't need baseUrl
-                currentModelName = geminiModelName;
-                currentMaxTokens = geminiMaxTokens;
-                currentTemperature = geminiTemperature;
-                currentLogRequests = geminiLogRequests;
-                currentLogResponses = geminiLogResponses;
-                providerType = "gemini";
-            }
-            case "deepseek" -> {
-                currentApiKey = deepseekApiKey;
-                currentBaseUrl = deepseekBaseUrl;
-                currentModelName = deepseekModelName;
-                currentMaxTokens = deepseekMaxCompletionTokens;
-                currentTemperature = deepseekTemperature;
-                currentLogRequests = deepseekLogRequests;
-                currentLogResponses = deepseekLogResponses;
-                providerType = "openai"; // DeepSeek uses OpenAI API format
-            }
-            case "deepseek-reasoning" -> {
-                currentApiKey = deepseekReasoningApiKey;
-                currentBaseUrl = deepseekReasoningBaseUrl;
-                currentModelName = deepseekReasoningModelName;
-                currentMaxTokens = deepseekReasoningMaxCompletionTokens;
-                currentTemperature = null; // Reasoning model doesn't support temperature
-                currentLogRequests = deepseekReasoningLogRequests;
-                currentLogResponses = deepseekReasoningLogResponses;
-                providerType = "openai"; // DeepSeek Reasoning uses OpenAI API format
-            }
-            default -> {
-                log.warn("Unknown AI provider: {}, falling back to OpenAI", actualProvider);
-                currentApiKey = openaiApiKey;
-                currentBaseUrl = openaiBaseUrl;
-                currentModelName = openaiModelName;
-                currentMaxTokens = openaiMaxCompletionTokens;
-                currentTemperature = openaiTemperature;
-                currentLogRequests = openaiLogRequests;
-                currentLogResponses = openaiLogResponses;
-                providerType = "openai";
-            }
-        }
+        // Create unified ChatModel and StreamingChatModel, both behind the provider's rate limiter
+        ChatModel chatModel = providerRateLimiterRegistry.limit(providerConfig.name(),
+                createUnifiedChatModel(providerConfig), appId);
+        StreamingChatModel streamingChatModel = createRoutedStreamingChatModel(providerConfig, codeGenType, appId);
         
-        // Build independent chat memory based on appId
-        MessageWindowChatMemory chatMemory = MessageWindowChatMemory
+        // Build independent chat memory based on appId, bounded by a token budget with a rolling summary
+        // A window lost from every cache tier is restored from chat_history within the same budget
+        TokenBudgetChatMemory chatMemory = TokenBudgetChatMemory
                 .builder()
                 .id(appId)
-                .chatMemoryStore(redisChatMemoryStore)
-                .maxMessages(20)
+                .chatMemoryStore(chatMemoryStore)
+                .maxTokens(memoryMaxTokens)
+                .recentTurns(memoryRecentTurns)
+                .summarizer(new ConversationSummarizer(
+                        createSummaryChatModel(requestedProvider, providerConfig, chatModel, appId), memorySummaryMaxChars))
+                .historyLoader(memoryId -> chatHistoryService.loadRecentChatMessages(appId, memoryLoadMaxCount))
                 .build();
         
-        // Load chat history from database into memory
-        chatHistoryService.loadChatHistoryToMemory(appId, chatMemory, 20);
-        
-        // Create unified ChatModel and StreamingChatModel
-        ChatModel chatModel = createUnifiedChatModel(providerType, currentApiKey, currentBaseUrl, 
-                currentModelName, currentMaxTokens, currentTemperature, currentLogRequests, currentLogResponses);
-        StreamingChatModel streamingChatModel = createUnifiedStreamingChatModel(providerType, currentApiKey, currentBaseUrl,
-                currentModelName, currentMaxTokens, currentTemperature, currentLogRequests, currentLogResponses);
-        
         // Choose different model configurations based on code generation type
         return switch (codeGenType) {
             // Vue project generation uses reasoning model and tools
-            case VUE_PROJECT -> AiServices.builder(AiCodeGeneratorService.class)
-                    .streamingChatModel(streamingChatModel)
-                    .chatMemoryProvider(memoryId -> chatMemory)
-                    .tools((Object[]) toolManager.getAllTools())
-                    .hallucinatedToolNameStrategy(toolExecutionRequest -> ToolExecutionResultMessage.from(
-                        toolExecutionRequest, "Error: there is no tool called " + toolExecutionRequest.name()
-                    ))
-                    .build();
+            case VUE_PROJECT -> {
+                AiServices<AiCodeGeneratorService> builder = AiServices.builder(AiCodeGeneratorService.class)
+                        .chatMemoryProvider(memoryId -> chatMemory)
+                        .hallucinatedToolNameStrategy(toolExecutionRequest -> ToolExecutionResultMessage.from(
+                            toolExecutionRequest, "Error: there is no tool called " + toolExecutionRequest.name()
+                        ));
+                if (concurrentToolsEnabled) {
+                    // Several tool calls in one response run concurrently, each waits for the earlier calls it conflicts with
+                    builder.streamingChatModel(toolCallSequencer.planTurns(streamingChatModel, appId))
+                            .tools(toolCallSequencer.getToolExecutors())
+                            .executeToolsConcurrently(toolCallSequencer.getExecutor());
+                } else {
+                    builder.streamingChatModel(streamingChatModel)
+                            .tools(toolManager.getToolExecutors());
+                }
+                yield builder.build();
+            }
             // HTML and multi-file generation use default model
             case HTML, MULTI_FILE -> AiServices.builder(AiCodeGeneratorService.class)
                     .chatModel(chatModel)
@@ -322,12 +367,128 @@ public class AiCodeGeneratorServiceFactory {
     }
 
 
+    /**
+     * Special logic: DeepSeek + VUE_PROJECT automatically switches to DeepSeek Reasoning
+     */
+    private String resolveProviderName(String provider, CodeGenTypeEnum codeGenType) {
+        if ("deepseek".equalsIgnoreCase(provider) && codeGenType == CodeGenTypeEnum.VUE_PROJECT) {
+            return "deepseek-reasoning";
+        }
+        return provider;
+    }
+
+    /**
+     * Blocking model for conversation summaries, never a reasoning model, behind the provider's rate limiter
+     * Returns null when that provider has no API key, the summarizer then falls back to extractive summaries
+     */
+    private ChatModel createSummaryChatModel(String requestedProvider, ProviderConfig generationConfig,
+                                             ChatModel generationModel, long appId) {
+        String name = StringUtils.hasText(memorySummaryProvider) ? memorySummaryProvider : requestedProvider;
+        if ("deepseek-reasoning".equalsIgnoreCase(name)) {
+            name = "deepseek";
+        }
+        ProviderConfig config = resolveProviderConfig(name);
+        if (config.name().equals(generationConfig.name())) {
+            return generationModel;
+        }
+        if (!config.isConfigured()) {
+            log.warn("Summary provider {} has no API key, conversation summaries are extractive", config.name());
+            return null;
+        }
+        return providerRateLimiterRegistry.limit(config.name(), createUnifiedChatModel(config), appId);
+    }
+
+    /**
+     * Settings of a provider by name, unknown names fall back to OpenAI
+     */
+    private ProviderConfig resolveProviderConfig(String provider) {
+        return switch (provider.toLowerCase()) {
+            case "openai" -> new ProviderConfig("openai", "openai", openaiApiKey, openaiBaseUrl, openaiModelName,
+                    openaiMaxCompletionTokens, openaiTemperature, openaiLogRequests, openaiLogResponses);
+            // Claude and Gemini don't need baseUrl
+            case "claude" -> new ProviderConfig("claude", "claude", claudeApiKey, null, claudeModelName,
+                    claudeMaxTokens, claudeTemperature, claudeLogRequests, claudeLogResponses);
+            case "gemini" -> new ProviderConfig("gemini", "gemini", geminiApiKey, null, geminiModelName,
+                    geminiMaxTokens, geminiTemperature, geminiLogRequests, geminiLogResponses);
+            // DeepSeek uses OpenAI API format
+            case "deepseek" -> new ProviderConfig("deepseek", "openai", deepseekApiKey, deepseekBaseUrl, deepseekModelName,
+                    deepseekMaxCompletionTokens, deepseekTemperature, deepseekLogRequests, deepseekLogResponses);
+            // Reasoning model doesn't support temperature
+            case "deepseek-reasoning" -> new ProviderConfig("deepseek-reasoning", "openai", deepseekReasoningApiKey,
+                    deepseekReasoningBaseUrl, deepseekReasoningModelName, deepseekReasoningMaxCompletionTokens, null,
+                    deepseekReasoningLogRequests, deepseekReasoningLogResponses);
+            default -> {
+                log.warn("Unknown AI provider: {}, falling back to OpenAI", provider);
+                yield resolveProviderConfig("openai");
+            }
+        };
+    }
+
+    /**
+     * Streaming model of the primary provider, wrapped with failover when fallback providers are configured
+     * Every provider model goes through that provider's rate limiter, queued fairly per app,
+     * and reports token usage to the app's running generation for the user's daily quota even with rate limiting off
+     */
+    private StreamingChatModel createRoutedStreamingChatModel(ProviderConfig primary, CodeGenTypeEnum codeGenType, long appId) {
+        LongConsumer usageListener = tokens -> generationAdmission.recordUsage(appId, tokens);
+        StreamingChatModel primaryModel = providerRateLimiterRegistry.limit(
+                primary.name(), createMeteredStreamingChatModel(primary, codeGenType, usageListener), appId);
+        if (!StringUtils.hasText(failoverProviders)) {
+            return primaryModel;
+        }
+        FailoverStreamingChatModel.Builder builder = FailoverStreamingChatModel.builder()
+                .candidate(primary.name(), primaryModel)
+                .firstTokenTimeoutMs(failoverFirstTokenTimeoutMs)
+                .hedgingEnabled(hedgingEnabled)
+                .hedgeMinDelayMs(hedgeMinDelayMs)
+                .hedgeInitialDelayMs(hedgeInitialDelayMs)
+                .latencyTracker(providerLatencyTracker)
+                .scheduler(failoverScheduler);
+        Set<String> routed = new LinkedHashSet<>();
+        routed.add(primary.name());
+        for (String name : StringUtils.commaDelimitedListToStringArray(failoverProviders)) {
+            if (!StringUtils.hasText(name)) {
+                continue;
+            }
+            ProviderConfig fallback = resolveProviderConfig(resolveProviderName(name.trim(), codeGenType));
+            if (!fallback.isConfigured()) {
+                log.warn("Failover provider {} has no API key, skipped", fallback.name());
+                continue;
+            }
+            if (routed.add(fallback.name())) {
+                builder.candidate(fallback.name(), providerRateLimiterRegistry.limit(
+                        fallback.name(), createMeteredStreamingChatModel(fallback, codeGenType, usageListener), appId));
+            }
+        }
+        if (routed.size() == 1) {
+            return primaryModel;
+        }
+        log.info("Streaming requests routed over providers: {}", routed);
+        return builder.build();
+    }
+
+    /**
+     * Provider streaming model recording TTFT, duration and token usage per provider and code generation type
+     * It is installed whether or not rate limiting is enabled, so it is the one reporting usage to the listener
+     */
+    private StreamingChatModel createMeteredStreamingChatModel(ProviderConfig config, CodeGenTypeEnum codeGenType,
+                                                               LongConsumer usageListener) {
+        return new MeteredStreamingChatModel(createUnifiedStreamingChatModel(config), generationMetrics,
+                config.name(), codeGenType.getValue(), usageListener);
+    }
+
     /**
      * Unified ChatModel creation
      */
-    private ChatModel createUnifiedChatModel(String providerType, String apiKey, String baseUrl, 
-            String modelName, Integer maxTokens, Double temperature, Boolean logRequests, Boolean logResponses) {
-        return switch (providerType.toLowerCase()) {
+    private ChatModel createUnifiedChatModel(ProviderConfig config) {
+        String apiKey = config.apiKey();
+        String baseUrl = config.baseUrl();
+        String modelName = config.modelName();
+        Integer maxTokens = config.maxTokens();
+        Double temperature = config.temperature();
+        Boolean logRequests = config.logRequests();
+        Boolean logResponses = config.logResponses();
+        return switch (config.providerType()) {
             case "openai" -> {
                 var builder = OpenAiChatModel.builder()
                         .apiKey(apiKey)
@@ -358,16 +519,22 @@ public class AiCodeGeneratorServiceFactory {
                 yield builder.build();
             }
             default -> throw new BusinessException(ErrorCode.SYSTEM_ERROR, 
-                    "Unsupported provider type: " + providerType);
+                    "Unsupported provider type: " + config.providerType());
         };
     }
 
     /**
      * Unified StreamingChatModel creation
      */
-    private StreamingChatModel createUnifiedStreamingChatModel(String providerType, String apiKey, String baseUrl,
-            String modelName, Integer maxTokens, Double temperature, Boolean logRequests, Boolean logResponses) {
-        return switch (providerType.toLowerCase()) {
+    private StreamingChatModel createUnifiedStreamingChatModel(ProviderConfig config) {
+        String apiKey = config.apiKey();
+        String baseUrl = config.baseUrl();
+        String modelName = config.modelName();
+        Integer maxTokens = config.maxTokens();
+        Double temperature = config.temperature();
+        Boolean logRequests = config.logRequests();
+        Boolean logResponses = config.logResponses();
+        return switch (config.providerType()) {
             case "openai" -> {
                 var builder = OpenAiStreamingChatModel.builder()
                         .apiKey(apiKey)
@@ -398,10 +565,15 @@ public class AiCodeGeneratorServiceFactory {
                 yield builder.build();
             }
             default -> throw new BusinessException(ErrorCode.SYSTEM_ERROR, 
-                    "Unsupported provider type: " + providerType);
+                    "Unsupported provider type: " + config.providerType());
         };
     }
 
+    @PreDestroy
+    public void shutdown() {
+        failoverScheduler.shutdownNow();
+    }
+
     /**
      * AI service instance cache
      */
@@ -412,8 +584,14 @@ public class AiCodeGeneratorServiceFactory {
             .removalListener((key, value, cause) -> {
                 log.debug("AI service instance removed from cache, cache key: {}, reason: {}", key, cause);
             })
+            .recordStats()
             .build();
 
+    @PostConstruct
+    public void registerCacheMetrics() {
+        generationMetrics.monitorCache(serviceCache, "ai.service");
+    }
+
 
 
 
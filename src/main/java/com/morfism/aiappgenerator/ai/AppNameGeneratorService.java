@@ -0,0 +1,17 @@
+package com.morfism.aiappgenerator.ai;
+
+import dev.langchain4j.service.SystemMessage;
+
+/**
+ * 应用名生成服务，无对话记忆，可被并发调用
+ */
+public interface AppNameGeneratorService {
+
+    /**
+     * 生成应用名称
+     * @param initPrompt 初始化提示词
+     * @return 生成的应用名称
+     */
+    @SystemMessage(fromResource = "prompt/app-name-generation-system-prompt.txt")
+    String generateAppName(String initPrompt);
+}
@@ -0,0 +1,233 @@
+package com.morfism.aiappgenerator.ai.memory;
+
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 聊天消息 token 估算与压缩
+ * Token estimation and compaction of chat messages kept in memory
+ *
+ * 核心功能：
+ * 1. 按字符估算 token：拉丁字符约 4 个一个 token，中日韩文字按 1 字 1 token 计
+ * 2. 旧的 AI 回复只保留代码块的语言和行数，去掉代码正文
+ * 3. 旧的写文件/修改文件调用去掉参数中的文件内容，只保留文件路径
+ * 4. 旧的读文件结果替换为占位符，需要时由模型重新读取
+ */
+@Slf4j
+public class ChatMessageCompactor {
+
+    /**
+     * Fixed per-message overhead (role, separators) added by chat APIs
+     */
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    /**
+     * Fenced code block, group 1 is the language tag, group 2 the body
+     */
+    private static final Pattern CODE_BLOCK_PATTERN = Pattern.compile("```([\\w.+-]*)[^\\n]*\\n([\\s\\S]*?)```");
+
+    /**
+     * Tool arguments that carry file bodies
+     */
+    private static final Set<String> BULKY_ARGUMENT_KEYS = Set.of("content", "oldContent", "newContent", "oldText", "newText", "unifiedDiff");
+
+    /**
+     * Arguments holding a list of objects with bulky fields: batch write files and patch hunks
+     */
+    private static final Set<String> BULKY_LIST_KEYS = Set.of("files", "hunks");
+
+    /**
+     * Arguments shorter than this are kept as they are
+     */
+    private static final int MIN_STRIPPED_ARGUMENT_LENGTH = 200;
+
+    /**
+     * Tools whose results are file bodies the model can fetch again
+     */
+    private static final Set<String> REREADABLE_TOOL_NAMES = Set.of("readFile");
+
+    private static final String OMITTED_CODE_MARKER = "... %d lines omitted ...";
+
+    private static final String OMITTED_ARGUMENT_MARKER = "[%d chars omitted]";
+
+    private static final String OMITTED_TOOL_RESULT = "[File content omitted from history, call %s again if it is needed]";
+
+    private ChatMessageCompactor() {
+    }
+
+    /**
+     * Estimate the prompt tokens of a message
+     */
+    public static int estimateTokens(ChatMessage message) {
+        int tokens = MESSAGE_OVERHEAD_TOKENS;
+        if (message instanceof SystemMessage systemMessage) {
+            tokens += estimateTokens(systemMessage.text());
+        } else if (message instanceof UserMessage userMessage) {
+            tokens += estimateTokens(userMessage.hasSingleText() ? userMessage.singleText() : userMessage.toString());
+        } else if (message instanceof AiMessage aiMessage) {
+            tokens += estimateTokens(aiMessage.text());
+            if (aiMessage.hasToolExecutionRequests()) {
+                for (ToolExecutionRequest request : aiMessage.toolExecutionRequests()) {
+                    tokens += MESSAGE_OVERHEAD_TOKENS + estimateTokens(request.name()) + estimateTokens(request.arguments());
+                }
+            }
+        } else if (message instanceof ToolExecutionResultMessage resultMessage) {
+            tokens += estimateTokens(resultMessage.text());
+        } else {
+            tokens += estimateTokens(message.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Estimate the tokens of a piece of text
+     * CJK characters are usually a token each, other text averages about four characters per token
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int wideChars = 0;
+        int otherChars = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x2E80) {
+                wideChars++;
+            } else {
+                otherChars++;
+            }
+        }
+        return wideChars + (otherChars + 3) / 4;
+    }
+
+    /**
+     * Strip bulky bodies from a message that is no longer part of the recent turns
+     *
+     * @return the compacted message, or the same instance when there was nothing to strip
+     */
+    public static ChatMessage compact(ChatMessage message) {
+        if (message instanceof AiMessage aiMessage) {
+            return compactAiMessage(aiMessage);
+        }
+        if (message instanceof ToolExecutionResultMessage resultMessage
+                && REREADABLE_TOOL_NAMES.contains(resultMessage.toolName())) {
+            String placeholder = String.format(OMITTED_TOOL_RESULT, resultMessage.toolName());
+            if (resultMessage.text() != null && resultMessage.text().length() > placeholder.length()) {
+                return ToolExecutionResultMessage.from(resultMessage.id(), resultMessage.toolName(), placeholder);
+            }
+        }
+        return message;
+    }
+
+    private static ChatMessage compactAiMessage(AiMessage aiMessage) {
+        String text = aiMessage.text();
+        String strippedText = stripCodeBlocks(text);
+        boolean changed = strippedText != null && !strippedText.equals(text);
+        List<ToolExecutionRequest> requests = aiMessage.toolExecutionRequests();
+        List<ToolExecutionRequest> strippedRequests = requests;
+        if (aiMessage.hasToolExecutionRequests()) {
+            strippedRequests = new ArrayList<>(requests.size());
+            for (ToolExecutionRequest request : requests) {
+                String arguments = stripArguments(request.arguments());
+                if (arguments.equals(request.arguments())) {
+                    strippedRequests.add(request);
+                } else {
+                    changed = true;
+                    strippedRequests.add(ToolExecutionRequest.builder()
+                            .id(request.id())
+                            .name(request.name())
+                            .arguments(arguments)
+                            .build());
+                }
+            }
+        }
+        if (!changed) {
+            return aiMessage;
+        }
+        if (!aiMessage.hasToolExecutionRequests()) {
+            return AiMessage.from(strippedText);
+        }
+        return strippedText == null
+                ? AiMessage.from(strippedRequests)
+                : AiMessage.from(strippedText, strippedRequests);
+    }
+
+    /**
+     * Replace code block bodies with a line count, keeping the fence and language so file markers survive
+     */
+    static String stripCodeBlocks(String text) {
+        if (text == null || !text.contains("```")) {
+            return text;
+        }
+        Matcher matcher = CODE_BLOCK_PATTERN.matcher(text);
+        StringBuilder result = new StringBuilder(Math.min(text.length(), 1024));
+        while (matcher.find()) {
+            String body = matcher.group(2);
+            if (body.startsWith("...") && body.contains("omitted")) {
+                // Already compacted
+                matcher.appendReplacement(result, Matcher.quoteReplacement(matcher.group()));
+                continue;
+            }
+            int lines = body.isEmpty() ? 0 : (int) body.lines().count();
+            String replacement = "```" + matcher.group(1) + "\n" + String.format(OMITTED_CODE_MARKER, lines) + "\n```";
+            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    /**
+     * Replace file bodies in tool arguments, keeping paths and other small arguments
+     */
+    static String stripArguments(String arguments) {
+        if (arguments == null || arguments.length() < MIN_STRIPPED_ARGUMENT_LENGTH || !JSONUtil.isTypeJSONObject(arguments)) {
+            return arguments;
+        }
+        try {
+            JSONObject json = JSONUtil.parseObj(arguments);
+            boolean changed = stripBulkyFields(json);
+            // Batch writes carry one {path, content} object per file, patches one {oldText, newText} per hunk
+            for (String listKey : BULKY_LIST_KEYS) {
+                JSONArray items = json.getJSONArray(listKey);
+                if (items == null) {
+                    continue;
+                }
+                for (int i = 0; i < items.size(); i++) {
+                    JSONObject item = items.getJSONObject(i);
+                    if (item != null && stripBulkyFields(item)) {
+                        changed = true;
+                    }
+                }
+            }
+            return changed ? json.toString() : arguments;
+        } catch (Exception e) {
+            log.debug("Failed to parse tool arguments for compaction: {}", e.getMessage());
+            return arguments;
+        }
+    }
+
+    private static boolean stripBulkyFields(JSONObject json) {
+        boolean changed = false;
+        for (String key : BULKY_ARGUMENT_KEYS) {
+            String value = json.getStr(key);
+            if (value != null && value.length() >= MIN_STRIPPED_ARGUMENT_LENGTH) {
+                json.set(key, String.format(OMITTED_ARGUMENT_MARKER, value.length()));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,140 @@
+package com.morfism.aiappgenerator.ai.memory;
+
+import cn.hutool.core.io.resource.ResourceUtil;
+import cn.hutool.core.util.StrUtil;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * 对话滚动摘要生成器
+ * Folds evicted conversation turns into a rolling summary
+ *
+ * 优先调用模型生成摘要，模型不可用或调用失败时退化为抽取式摘要（保留用户诉求原文片段）
+ */
+@Slf4j
+public class ConversationSummarizer {
+
+    private static final String SYSTEM_PROMPT_RESOURCE = "prompt/conversation-summary-system-prompt.txt";
+
+    /**
+     * Max chars of one evicted message fed into the summary request
+     */
+    private static final int MAX_INPUT_CHARS_PER_MESSAGE = 1500;
+
+    /**
+     * Max chars of one user request kept by the extractive fallback
+     */
+    private static final int MAX_EXTRACT_CHARS = 160;
+
+    private static volatile String systemPrompt;
+
+    private final ChatModel chatModel;
+
+    private final int maxSummaryChars;
+
+    /**
+     * @param chatModel       model used for summaries, null to always use the extractive fallback
+     * @param maxSummaryChars upper bound of the summary length
+     */
+    public ConversationSummarizer(ChatModel chatModel, int maxSummaryChars) {
+        this.chatModel = chatModel;
+        this.maxSummaryChars = maxSummaryChars;
+    }
+
+    /**
+     * Merge evicted messages into the previous summary
+     *
+     * @param previousSummary current summary, may be empty
+     * @param evicted         messages leaving the window, oldest first
+     * @return updated summary
+     */
+    public String summarize(String previousSummary, List<ChatMessage> evicted) {
+        if (evicted.isEmpty()) {
+            return previousSummary;
+        }
+        if (chatModel != null) {
+            try {
+                String summary = chatModel.chat(
+                        SystemMessage.from(getSystemPrompt()),
+                        UserMessage.from(buildSummaryInput(previousSummary, evicted))
+                ).aiMessage().text();
+                if (StrUtil.isNotBlank(summary)) {
+                    return truncate(summary.trim());
+                }
+            } catch (Exception e) {
+                log.warn("Conversation summary request failed, falling back to extractive summary: {}", e.getMessage());
+            }
+        }
+        return extractiveSummary(previousSummary, evicted);
+    }
+
+    private String buildSummaryInput(String previousSummary, List<ChatMessage> evicted) {
+        StringBuilder input = new StringBuilder();
+        input.append("Previous summary:\n")
+                .append(StrUtil.isBlank(previousSummary) ? "(empty)" : previousSummary)
+                .append("\n\nTurns to merge:\n");
+        for (ChatMessage message : evicted) {
+            String text = textOf(message);
+            if (StrUtil.isBlank(text)) {
+                continue;
+            }
+            String role = message instanceof UserMessage ? "User" : "AI";
+            input.append(role).append(": ")
+                    .append(StrUtil.maxLength(ChatMessageCompactor.stripCodeBlocks(text), MAX_INPUT_CHARS_PER_MESSAGE))
+                    .append('\n');
+        }
+        return input.toString();
+    }
+
+    /**
+     * Keep the user's requests verbatim (shortened), AI answers are implied by them
+     */
+    String extractiveSummary(String previousSummary, List<ChatMessage> evicted) {
+        StringBuilder summary = new StringBuilder(StrUtil.nullToEmpty(previousSummary));
+        for (ChatMessage message : evicted) {
+            if (message instanceof UserMessage userMessage && userMessage.hasSingleText()) {
+                String request = StrUtil.maxLength(userMessage.singleText().strip().replaceAll("\\s+", " "), MAX_EXTRACT_CHARS);
+                if (!summary.isEmpty()) {
+                    summary.append('\n');
+                }
+                summary.append("- User asked: ").append(request);
+            }
+        }
+        return truncate(summary.toString());
+    }
+
+    /**
+     * Keep the newest part of an over-long summary
+     */
+    private String truncate(String summary) {
+        if (summary.length() <= maxSummaryChars) {
+            return summary;
+        }
+        String tail = summary.substring(summary.length() - maxSummaryChars);
+        int lineStart = tail.indexOf('\n');
+        return lineStart >= 0 && lineStart < tail.length() - 1 ? tail.substring(lineStart + 1) : tail;
+    }
+
+    private static String textOf(ChatMessage message) {
+        if (message instanceof UserMessage userMessage) {
+            return userMessage.hasSingleText() ? userMessage.singleText() : null;
+        }
+        if (message instanceof AiMessage aiMessage) {
+            return aiMessage.text();
+        }
+        return null;
+    }
+
+    private static String getSystemPrompt() {
+        if (systemPrompt == null) {
+            systemPrompt = ResourceUtil.readUtf8Str(SYSTEM_PROMPT_RESOURCE);
+        }
+        return systemPrompt;
+    }
+}
@@ -0,0 +1,339 @@
+package com.morfism.aiappgenerator.ai.memory;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.morfism.aiappgenerator.service.ChatHistoryService;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分层对话记忆存储：本地缓存 -> Redis -> MySQL
+ * Layered chat memory store, MySQL holds the only durable copy
+ *
+ * 核心功能：
+ * 1. 本地 Caffeine 缓存带 Redis 版本号，读取时只比对版本号，版本未变不传输消息列表；其他实例写过后本地副本自动失效
+ * 2. Redis 中每条消息是列表的一个元素，更新时只追加新增消息、裁掉被淘汰的头部，不再整表重写；
+ *    增量由 Lua 脚本在版本号未变时原子执行，版本已变（其他实例写过）则整表重写
+ * 3. 对话窗口两级缓存都未命中时返回空列表，由 TokenBudgetChatMemory 按 token 预算从 chat_history 恢复
+ * 4. 滚动摘要（appId:summary）同步写入 chat_memory_summary，缓存过期后从库中回源
+ * 5. Redis 不可用时退化为本地缓存 + MySQL，不影响对话
+ */
+@Slf4j
+@Component
+public class LayeredChatMemoryStore implements ChatMemoryStore {
+
+    private static final String REDIS_KEY_PREFIX = "chat_memory:";
+
+    /**
+     * Suffix of the key holding a list's version, bumped by every write
+     */
+    private static final String VERSION_KEY_SUFFIX = ":version";
+
+    /**
+     * Lock stripes serializing updates of the same memory id
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * Version of the list, followed by its elements only when the version differs from ARGV[1]
+     * A missing list has version 0
+     */
+    static final DefaultRedisScript<List> READ_SCRIPT = new DefaultRedisScript<>("""
+            local version = redis.call('GET', KEYS[2]) or '0'
+            if version == ARGV[1] then
+              return {version}
+            end
+            local messages = redis.call('LRANGE', KEYS[1], 0, -1)
+            table.insert(messages, 1, version)
+            return messages
+            """, List.class);
+
+    /**
+     * Apply a delta when the version is still ARGV[1], an empty ARGV[1] applies unconditionally
+     * ARGV[2] is the number of head elements to trim, -1 rewrites the list; ARGV[3] the TTL; the rest is appended
+     * Returns the new version, or -1 when another writer changed the list first
+     */
+    static final DefaultRedisScript<Long> WRITE_SCRIPT = new DefaultRedisScript<>("""
+            if ARGV[1] ~= '' and ARGV[1] ~= (redis.call('GET', KEYS[2]) or '0') then
+              return -1
+            end
+            local dropped = tonumber(ARGV[2])
+            if dropped < 0 then
+              redis.call('DEL', KEYS[1])
+            elseif dropped > 0 then
+              redis.call('LTRIM', KEYS[1], dropped, -1)
+            end
+            if #ARGV > 3 then
+              redis.call('RPUSH', KEYS[1], unpack(ARGV, 4))
+            end
+            local version = redis.call('INCR', KEYS[2])
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            redis.call('EXPIRE', KEYS[2], ARGV[3])
+            return version
+            """, Long.class);
+
+    /**
+     * Messages as last read from or written to Redis
+     *
+     * @param version Redis version they belong to, null when Redis was unavailable
+     */
+    private record Snapshot(List<ChatMessage> messages, String version) {
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    @Lazy
+    private ChatHistoryService chatHistoryService;
+
+    @Value("${spring.data.redis.ttl:3600}")
+    private long redisTtlSeconds;
+
+    /**
+     * In-process tier, holds what was last read from or written to Redis for each memory id
+     */
+    private final Cache<String, Snapshot> localCache = Caffeine.newBuilder()
+            .maximumSize(2000)
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .build();
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    public LayeredChatMemoryStore() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        String key = memoryId.toString();
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            Snapshot cached = localCache.getIfPresent(key);
+            if (cached != null && cached.version() == null) {
+                // Written while Redis was down, newer than anything Redis holds
+                Snapshot written = writeRedis(key, cached, cached.messages());
+                localCache.put(key, written);
+                return written.messages();
+            }
+            Snapshot current = readRedis(key, cached);
+            if (current == null) {
+                // Redis is unavailable, the local copy is the best there is
+                if (cached != null) {
+                    return cached.messages();
+                }
+                return List.copyOf(readThrough(key));
+            }
+            if (current.messages().isEmpty()) {
+                List<ChatMessage> loaded = readThrough(key);
+                if (!loaded.isEmpty()) {
+                    current = writeRedis(key, current, List.copyOf(loaded));
+                }
+            }
+            localCache.put(key, current);
+            return current.messages();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        String key = memoryId.toString();
+        List<ChatMessage> updated = List.copyOf(messages);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            Long summaryAppId = summaryAppId(key);
+            if (summaryAppId != null) {
+                // Persist first, a failed database write leaves the cached summary unchanged
+                chatHistoryService.saveMemorySummary(summaryAppId, summaryText(updated));
+            }
+            Snapshot previous = localCache.getIfPresent(key);
+            if (previous == null || previous.version() == null) {
+                Snapshot inRedis = readRedis(key, null);
+                previous = inRedis == null ? new Snapshot(List.of(), null) : inRedis;
+            }
+            localCache.put(key, writeRedis(key, previous, updated));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        String key = memoryId.toString();
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            Long summaryAppId = summaryAppId(key);
+            if (summaryAppId != null) {
+                chatHistoryService.saveMemorySummary(summaryAppId, null);
+            }
+            localCache.invalidate(key);
+            try {
+                stringRedisTemplate.delete(redisKeys(key));
+            } catch (DataAccessException e) {
+                log.warn("Failed to delete chat memory {} from Redis: {}", key, e.getMessage());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read the Redis tier, the list is only transferred when its version differs from the cached one
+     *
+     * @return the current snapshot, empty messages when the key is absent, or null when Redis is unavailable
+     */
+    private Snapshot readRedis(String key, Snapshot cached) {
+        try {
+            List<?> reply = stringRedisTemplate.execute(READ_SCRIPT, redisKeys(key),
+                    cached == null || cached.version() == null ? "" : cached.version());
+            if (CollUtil.isEmpty(reply)) {
+                return null;
+            }
+            String version = reply.getFirst().toString();
+            if (cached != null && version.equals(cached.version())) {
+                return cached;
+            }
+            List<ChatMessage> messages = new ArrayList<>(reply.size() - 1);
+            for (Object json : reply.subList(1, reply.size())) {
+                messages.add(ChatMessageDeserializer.messageFromJson(json.toString()));
+            }
+            return new Snapshot(List.copyOf(messages), version);
+        } catch (DataAccessException e) {
+            log.warn("Failed to read chat memory {} from Redis: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Load a summary from chat_memory_summary
+     * Windows are not read through here, the chat memory restores them from chat_history within its token budget
+     */
+    private List<ChatMessage> readThrough(String key) {
+        Long summaryAppId = summaryAppId(key);
+        if (summaryAppId == null) {
+            return List.of();
+        }
+        String summary = chatHistoryService.getMemorySummary(summaryAppId);
+        if (StrUtil.isBlank(summary)) {
+            return List.of();
+        }
+        log.info("Chat memory summary {} loaded from chat_memory_summary", key);
+        return List.of(AiMessage.from(summary));
+    }
+
+    /**
+     * App id of a summary key, null for any other key
+     */
+    private static Long summaryAppId(String key) {
+        if (!key.endsWith(TokenBudgetChatMemory.SUMMARY_KEY_SUFFIX)) {
+            return null;
+        }
+        String appId = key.substring(0, key.length() - TokenBudgetChatMemory.SUMMARY_KEY_SUFFIX.length());
+        return NumberUtil.isLong(appId) ? Long.parseLong(appId) : null;
+    }
+
+    private static String summaryText(List<ChatMessage> messages) {
+        return !messages.isEmpty() && messages.getFirst() instanceof AiMessage aiMessage ? aiMessage.text() : null;
+    }
+
+    /**
+     * Bring the Redis list from previous to updated with the fewest commands
+     * The common cases are pure appends and window eviction from the head, anything else rewrites the list.
+     * The delta only applies while Redis still holds the previous version; if another instance wrote the
+     * list since, it is rewritten from updated instead of patching a list the delta was not computed against
+     *
+     * @return snapshot of updated, with a null version when Redis is unavailable
+     */
+    private Snapshot writeRedis(String key, Snapshot previous, List<ChatMessage> updated) {
+        List<ChatMessage> base = previous.messages();
+        int dropped = headDropped(base, updated);
+        int kept = base.size() - dropped;
+        boolean rewrite = previous.version() == null || kept == 0 || updated.isEmpty();
+        try {
+            Long version = rewrite ? null : runWrite(key, previous.version(), dropped, updated.subList(kept, updated.size()));
+            if (version == null || version < 0) {
+                if (version != null) {
+                    log.info("Chat memory {} was changed by another instance, rewriting it", key);
+                }
+                version = runWrite(key, "", -1, updated);
+            }
+            return new Snapshot(updated, String.valueOf(version));
+        } catch (DataAccessException e) {
+            // Redis is only a cache, the local tier and chat_history still hold the conversation
+            log.warn("Failed to write chat memory {} to Redis: {}", key, e.getMessage());
+            try {
+                stringRedisTemplate.delete(redisKeys(key));
+            } catch (DataAccessException ignored) {
+                // The keys expire on their own
+            }
+            return new Snapshot(updated, null);
+        }
+    }
+
+    /**
+     * @param expectedVersion version the delta was computed against, empty to write unconditionally
+     * @param dropped         head elements to trim, -1 to rewrite the list
+     * @return the new version, or -1 when the list is no longer at expectedVersion
+     */
+    private Long runWrite(String key, String expectedVersion, int dropped, List<ChatMessage> appended) {
+        Object[] args = new Object[3 + appended.size()];
+        args[0] = expectedVersion;
+        args[1] = String.valueOf(dropped);
+        args[2] = String.valueOf(redisTtlSeconds);
+        for (int i = 0; i < appended.size(); i++) {
+            args[3 + i] = ChatMessageSerializer.messageToJson(appended.get(i));
+        }
+        return stringRedisTemplate.execute(WRITE_SCRIPT, redisKeys(key), args);
+    }
+
+    private static List<String> redisKeys(String key) {
+        return List.of(REDIS_KEY_PREFIX + key, REDIS_KEY_PREFIX + key + VERSION_KEY_SUFFIX);
+    }
+
+    /**
+     * Smallest number of head messages of previous to drop so that the rest is a prefix of updated
+     * Returns previous.size() when nothing can be reused, e.g. the system message or an old turn changed
+     */
+    private static int headDropped(List<ChatMessage> previous, List<ChatMessage> updated) {
+        for (int dropped = 0; dropped < previous.size(); dropped++) {
+            int kept = previous.size() - dropped;
+            if (kept > updated.size()) {
+                continue;
+            }
+            if (previous.subList(dropped, previous.size()).equals(updated.subList(0, kept))) {
+                return dropped;
+            }
+        }
+        return previous.size();
+    }
+
+    private ReentrantLock lockFor(String key) {
+        return locks[(key.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+}
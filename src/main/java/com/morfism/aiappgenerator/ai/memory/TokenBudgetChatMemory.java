@@ -0,0 +1,404 @@
+package com.morfism.aiappgenerator.ai.memory;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 按 token 预算裁剪的对话记忆
+ * Chat memory bounded by an estimated token budget instead of a message count
+ *
+ * 核心功能：
+ * 1. 每次写入后估算整段上下文的 token 数，超出预算时从最旧的轮次开始淘汰
+ * 2. 被淘汰的轮次在后台虚拟线程中合并进滚动摘要，不占用请求路径
+ * 3. 摘要作为系统消息的附加段落返回给模型，并单独持久化
+ * 4. 最近几轮之外的 AI 回复去掉代码正文，只保留文件名和标记
+ * 5. 按整轮淘汰（用户消息及其后直到下一条用户消息的全部消息），窗口在系统消息之后总以用户消息开头，工具请求/结果始终成对
+ * 6. 存储中的窗口全部过期后，通过 historyLoader 取回历史并按预算恢复整轮，而不是按条数截断
+ */
+@Slf4j
+public class TokenBudgetChatMemory implements ChatMemory {
+
+    /**
+     * Store key suffix under which the rolling summary is persisted
+     */
+    static final String SUMMARY_KEY_SUFFIX = ":summary";
+
+    private static final String SUMMARY_HEADER = "## Summary of the earlier conversation\n";
+
+    /**
+     * Summaries are produced off the request path, one virtual thread per drain
+     */
+    private static final ExecutorService SUMMARY_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Object id;
+
+    private final ChatMemoryStore store;
+
+    private final int maxTokens;
+
+    private final int recentTurns;
+
+    private final ConversationSummarizer summarizer;
+
+    private final Function<Object, List<ChatMessage>> historyLoader;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Evicted messages waiting to be folded into the summary, guarded by lock
+     */
+    private final List<ChatMessage> pendingEvicted = new ArrayList<>();
+
+    /**
+     * Whether a summary drain is scheduled, guarded by lock
+     */
+    private boolean summarizing;
+
+    /**
+     * Cached summary, null until loaded from the store
+     */
+    private volatile String summary;
+
+    private TokenBudgetChatMemory(Builder builder) {
+        this.id = builder.id;
+        this.store = builder.chatMemoryStore;
+        this.maxTokens = builder.maxTokens;
+        this.recentTurns = builder.recentTurns;
+        this.summarizer = builder.summarizer;
+        this.historyLoader = builder.historyLoader;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public void add(ChatMessage message) {
+        List<ChatMessage> evicted;
+        lock.lock();
+        try {
+            List<ChatMessage> messages = new ArrayList<>(window());
+            if (message instanceof SystemMessage) {
+                if (!messages.isEmpty() && messages.getFirst() instanceof SystemMessage existing) {
+                    if (existing.equals(message)) {
+                        return;
+                    }
+                    messages.removeFirst();
+                }
+                messages.addFirst(message);
+            } else {
+                messages.add(message);
+            }
+            compactOlderTurns(messages);
+            evicted = ensureBudget(messages);
+            store.updateMessages(id, messages);
+        } finally {
+            lock.unlock();
+        }
+        scheduleSummary(evicted);
+    }
+
+    /**
+     * Messages sent to the model, with the rolling summary appended to the system message
+     */
+    @Override
+    public List<ChatMessage> messages() {
+        List<ChatMessage> messages = new ArrayList<>(window());
+        String currentSummary = getSummary();
+        if (StrUtil.isBlank(currentSummary)) {
+            return messages;
+        }
+        String summarySection = SUMMARY_HEADER + currentSummary;
+        if (!messages.isEmpty() && messages.getFirst() instanceof SystemMessage systemMessage) {
+            messages.set(0, SystemMessage.from(systemMessage.text() + "\n\n" + summarySection));
+        } else {
+            messages.addFirst(SystemMessage.from(summarySection));
+        }
+        return messages;
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            pendingEvicted.clear();
+            store.deleteMessages(id);
+            store.deleteMessages(summaryKey());
+            summary = "";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replace the window with persisted history without summarizing it again
+     * Only the newest whole turns that fit the budget are kept; when no summary exists yet the dropped
+     * turns are summarized once in the background
+     *
+     * @param history persisted history, oldest first
+     * @return number of messages kept in the window
+     */
+    public int restore(List<ChatMessage> history) {
+        List<ChatMessage> dropped;
+        int kept;
+        lock.lock();
+        try {
+            List<ChatMessage> messages = new ArrayList<>();
+            List<ChatMessage> current = store.getMessages(id);
+            if (!current.isEmpty() && current.getFirst() instanceof SystemMessage systemMessage) {
+                messages.add(systemMessage);
+            }
+            List<ChatMessage> compacted = new ArrayList<>(history);
+            compactOlderTurns(compacted);
+            int budget = maxTokens - ChatMessageCompactor.estimateTokens(getSummary())
+                    - messages.stream().mapToInt(ChatMessageCompactor::estimateTokens).sum();
+            // Keep the newest whole turns that fit, the restored window starts with a user message
+            int start = compacted.size();
+            int tokens = 0;
+            for (int i = compacted.size() - 1; i >= 0; i--) {
+                tokens += ChatMessageCompactor.estimateTokens(compacted.get(i));
+                if (tokens > budget) {
+                    break;
+                }
+                if (compacted.get(i) instanceof UserMessage) {
+                    start = i;
+                }
+            }
+            dropped = new ArrayList<>(compacted.subList(0, start));
+            messages.addAll(compacted.subList(start, compacted.size()));
+            store.updateMessages(id, messages);
+            kept = compacted.size() - start;
+        } finally {
+            lock.unlock();
+        }
+        if (StrUtil.isBlank(getSummary())) {
+            scheduleSummary(dropped);
+        }
+        return kept;
+    }
+
+    /**
+     * Current window, restored from the history loader when the store no longer holds it
+     */
+    private List<ChatMessage> window() {
+        List<ChatMessage> messages = store.getMessages(id);
+        if (!messages.isEmpty() || historyLoader == null) {
+            return messages;
+        }
+        lock.lock();
+        try {
+            messages = store.getMessages(id);
+            if (messages.isEmpty()) {
+                List<ChatMessage> history = historyLoader.apply(id);
+                if (CollUtil.isNotEmpty(history)) {
+                    int kept = restore(history);
+                    log.info("Chat memory {} restored from history, kept {} of {} messages", id, kept, history.size());
+                    messages = store.getMessages(id);
+                }
+            }
+            return messages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Strip code bodies from every message older than the last recentTurns user turns
+     */
+    private void compactOlderTurns(List<ChatMessage> messages) {
+        int boundary = -1;
+        int userTurns = 0;
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof UserMessage && ++userTurns == recentTurns) {
+                boundary = i;
+                break;
+            }
+        }
+        for (int i = 0; i < boundary; i++) {
+            messages.set(i, ChatMessageCompactor.compact(messages.get(i)));
+        }
+    }
+
+    /**
+     * Evict the oldest turns until the window fits the budget
+     * A turn is a user message and everything up to the next one, so the window keeps starting with a user
+     * message after the system message and tool results never outlive their requests;
+     * the turn started by the newest user message is never evicted
+     *
+     * @return evicted messages, oldest first
+     */
+    private List<ChatMessage> ensureBudget(List<ChatMessage> messages) {
+        int total = ChatMessageCompactor.estimateTokens(getSummary());
+        int lastUserIndex = -1;
+        for (int i = 0; i < messages.size(); i++) {
+            total += ChatMessageCompactor.estimateTokens(messages.get(i));
+            if (messages.get(i) instanceof UserMessage) {
+                lastUserIndex = i;
+            }
+        }
+        List<ChatMessage> evicted = new ArrayList<>();
+        int start = !messages.isEmpty() && messages.getFirst() instanceof SystemMessage ? 1 : 0;
+        while (total > maxTokens && start < lastUserIndex) {
+            int end = start + 1;
+            while (!(messages.get(end) instanceof UserMessage)) {
+                end++;
+            }
+            List<ChatMessage> turn = messages.subList(start, end);
+            for (ChatMessage message : turn) {
+                total -= ChatMessageCompactor.estimateTokens(message);
+            }
+            evicted.addAll(turn);
+            turn.clear();
+            lastUserIndex -= end - start;
+        }
+        if (!evicted.isEmpty()) {
+            log.debug("Evicted {} messages from chat memory {}, estimated tokens now {}", evicted.size(), id, total);
+        }
+        return evicted;
+    }
+
+    private void scheduleSummary(List<ChatMessage> evicted) {
+        if (CollUtil.isEmpty(evicted) || summarizer == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            pendingEvicted.addAll(evicted);
+            if (summarizing) {
+                return;
+            }
+            summarizing = true;
+        } finally {
+            lock.unlock();
+        }
+        SUMMARY_EXECUTOR.execute(this::drainSummaries);
+    }
+
+    /**
+     * Fold pending evictions into the summary until nothing is left
+     */
+    private void drainSummaries() {
+        while (true) {
+            List<ChatMessage> batch;
+            lock.lock();
+            try {
+                if (pendingEvicted.isEmpty()) {
+                    summarizing = false;
+                    return;
+                }
+                batch = new ArrayList<>(pendingEvicted);
+                pendingEvicted.clear();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                String updated = summarizer.summarize(getSummary(), batch);
+                if (StrUtil.isNotBlank(updated)) {
+                    summary = updated;
+                    store.updateMessages(summaryKey(), List.of(AiMessage.from(updated)));
+                }
+            } catch (Exception e) {
+                log.warn("Failed to update conversation summary for chat memory {}: {}", id, e.getMessage());
+            }
+        }
+    }
+
+    private String getSummary() {
+        String current = summary;
+        if (current == null) {
+            List<ChatMessage> stored = store.getMessages(summaryKey());
+            current = !stored.isEmpty() && stored.getFirst() instanceof AiMessage aiMessage
+                    ? StrUtil.nullToEmpty(aiMessage.text())
+                    : "";
+            summary = current;
+        }
+        return current;
+    }
+
+    private String summaryKey() {
+        return id + SUMMARY_KEY_SUFFIX;
+    }
+
+    public static class Builder {
+
+        private Object id = "default";
+
+        private ChatMemoryStore chatMemoryStore;
+
+        private int maxTokens = 8000;
+
+        private int recentTurns = 2;
+
+        private ConversationSummarizer summarizer;
+
+        private Function<Object, List<ChatMessage>> historyLoader;
+
+        public Builder id(Object id) {
+            this.id = id;
+            return this;
+        }
+
+        public Builder chatMemoryStore(ChatMemoryStore chatMemoryStore) {
+            this.chatMemoryStore = chatMemoryStore;
+            return this;
+        }
+
+        /**
+         * Estimated prompt token budget of the whole window, summary included
+         */
+        public Builder maxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+            return this;
+        }
+
+        /**
+         * Number of newest user turns whose messages are kept verbatim
+         */
+        public Builder recentTurns(int recentTurns) {
+            this.recentTurns = recentTurns;
+            return this;
+        }
+
+        /**
+         * Summarizer for evicted turns, null to drop them without a summary
+         */
+        public Builder summarizer(ConversationSummarizer summarizer) {
+            this.summarizer = summarizer;
+            return this;
+        }
+
+        /**
+         * Loads persisted history, oldest first, when the store has lost the window; null to start empty
+         */
+        public Builder historyLoader(Function<Object, List<ChatMessage>> historyLoader) {
+            this.historyLoader = historyLoader;
+            return this;
+        }
+
+        public TokenBudgetChatMemory build() {
+            if (chatMemoryStore == null) {
+                throw new IllegalArgumentException("chatMemoryStore cannot be null");
+            }
+            return new TokenBudgetChatMemory(this);
+        }
+    }
+}
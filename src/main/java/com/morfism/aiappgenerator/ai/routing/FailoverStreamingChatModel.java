@@ -0,0 +1,416 @@
+package com.morfism.aiappgenerator.ai.routing;
+
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 多供应商故障转移的流式模型
+ * Streaming model that routes a request over an ordered list of providers
+ *
+ * 核心功能：
+ * 1. 按顺序尝试供应商，当前供应商报错或在首字超时内没有任何输出时切换到下一个
+ * 2. 可选对冲模式：主供应商超过其首字延迟 p95 仍无输出时并行启动下一个，先出字者胜出，其余结果丢弃
+ * 3. 一旦有内容交给调用方，后续错误直接上抛，不再切换，避免输出内容拼接错乱
+ * 4. 首字延迟按供应商记录，用于计算对冲等待时间
+ *
+ * 被放弃的请求无法取消已经开始的底层 HTTP 流，只是不再转发它的任何回调；
+ * 仍在供应商限流队列中排队的请求会被撤回，不会在之后再发出。
+ */
+@Slf4j
+public class FailoverStreamingChatModel implements StreamingChatModel {
+
+    /**
+     * One provider in the routing order
+     */
+    public record Candidate(String name, StreamingChatModel model) {
+    }
+
+    private final List<Candidate> candidates;
+
+    private final long firstTokenTimeoutMs;
+
+    private final boolean hedgingEnabled;
+
+    private final long hedgeMinDelayMs;
+
+    private final long hedgeInitialDelayMs;
+
+    private final ProviderLatencyTracker latencyTracker;
+
+    private final ScheduledExecutorService scheduler;
+
+    private FailoverStreamingChatModel(Builder builder) {
+        this.candidates = List.copyOf(builder.candidates);
+        this.firstTokenTimeoutMs = builder.firstTokenTimeoutMs;
+        this.hedgingEnabled = builder.hedgingEnabled;
+        this.hedgeMinDelayMs = builder.hedgeMinDelayMs;
+        this.hedgeInitialDelayMs = builder.hedgeInitialDelayMs;
+        this.latencyTracker = builder.latencyTracker;
+        this.scheduler = builder.scheduler;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        // Each provider applies its own default parameters, so the request is passed on unchanged
+        new RoutedCall(chatRequest, handler).startNext();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return candidates.get(0).model().supportedCapabilities();
+    }
+
+    /**
+     * How long the given provider may stay silent before a hedge request is started
+     */
+    long hedgeDelayMs(String provider) {
+        long p95 = latencyTracker.percentile(provider, 0.95);
+        long delay = p95 < 0 ? hedgeInitialDelayMs : Math.max(hedgeMinDelayMs, p95);
+        return Math.min(delay, firstTokenTimeoutMs);
+    }
+
+    /**
+     * Routing state of one chat request, all transitions happen under its monitor
+     */
+    private final class RoutedCall {
+
+        private final ChatRequest request;
+
+        private final StreamingChatResponseHandler handler;
+
+        private final List<Attempt> attempts = new ArrayList<>();
+
+        private int nextIndex;
+
+        private int running;
+
+        private Attempt winner;
+
+        private Throwable lastError;
+
+        private boolean failed;
+
+        private RoutedCall(ChatRequest request, StreamingChatResponseHandler handler) {
+            this.request = request;
+            this.handler = handler;
+        }
+
+        /**
+         * Start the next provider, or fail the call if none is left and nothing is running
+         */
+        void startNext() {
+            Attempt attempt;
+            Throwable failure = null;
+            boolean fallback = false;
+            synchronized (this) {
+                if (winner != null || failed) {
+                    return;
+                }
+                if (nextIndex >= candidates.size()) {
+                    if (running > 0) {
+                        return;
+                    }
+                    failed = true;
+                    failure = lastError;
+                    attempt = null;
+                } else {
+                    fallback = nextIndex > 0;
+                    attempt = new Attempt(candidates.get(nextIndex++));
+                    attempts.add(attempt);
+                    running++;
+                    attempt.timeout = scheduler.schedule(() -> onTimeout(attempt),
+                            firstTokenTimeoutMs, TimeUnit.MILLISECONDS);
+                    if (hedgingEnabled && nextIndex < candidates.size()) {
+                        attempt.hedge = scheduler.schedule(() -> onHedge(attempt),
+                                hedgeDelayMs(attempt.candidate.name()), TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+            if (attempt == null) {
+                log.error("All {} model providers failed", candidates.size());
+                handler.onError(failure);
+                return;
+            }
+            if (fallback) {
+                log.info("Routing request to provider {}", attempt.candidate.name());
+            }
+            try {
+                attempt.candidate.model().chat(request, attempt);
+            } catch (RuntimeException e) {
+                onAttemptError(attempt, e);
+            }
+        }
+
+        /**
+         * Make the attempt the winner on its first output
+         *
+         * @return whether the attempt's output goes to the caller
+         */
+        synchronized boolean claim(Attempt attempt) {
+            if (winner == attempt) {
+                return true;
+            }
+            if (winner != null || attempt.abandoned || failed) {
+                return false;
+            }
+            winner = attempt;
+            for (Attempt other : attempts) {
+                other.cancelTimers();
+                if (other != attempt) {
+                    other.abandoned = true;
+                    other.withdraw();
+                }
+            }
+            long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - attempt.startedAt);
+            latencyTracker.record(attempt.candidate.name(), latencyMs);
+            if (attempt != attempts.get(0)) {
+                log.info("Provider {} won the request, first output after {} ms", attempt.candidate.name(), latencyMs);
+            }
+            return true;
+        }
+
+        void onAttemptError(Attempt attempt, Throwable error) {
+            boolean streamed;
+            synchronized (this) {
+                streamed = winner == attempt;
+                if (!streamed) {
+                    if (winner != null || attempt.abandoned || failed) {
+                        return;
+                    }
+                    abandon(attempt, error);
+                    log.warn("Provider {} failed before its first output, failing over: {}",
+                            attempt.candidate.name(), error.getMessage());
+                }
+            }
+            if (streamed) {
+                // Output was already streamed, switching now would splice two answers
+                handler.onError(error);
+                return;
+            }
+            startNext();
+        }
+
+        void onTimeout(Attempt attempt) {
+            synchronized (this) {
+                if (winner != null || attempt.abandoned || failed) {
+                    return;
+                }
+                abandon(attempt, new TimeoutException("No output from provider " + attempt.candidate.name()
+                        + " within " + firstTokenTimeoutMs + " ms"));
+                // A stall counts as a slow sample, it pushes the hedge delay towards the timeout
+                latencyTracker.record(attempt.candidate.name(), firstTokenTimeoutMs);
+                log.warn("Provider {} produced no output within {} ms, failing over",
+                        attempt.candidate.name(), firstTokenTimeoutMs);
+            }
+            startNext();
+        }
+
+        void onHedge(Attempt attempt) {
+            synchronized (this) {
+                if (winner != null || attempt.abandoned || failed) {
+                    return;
+                }
+                log.info("Provider {} is slower than usual, hedging with the next provider", attempt.candidate.name());
+            }
+            startNext();
+        }
+
+        private void abandon(Attempt attempt, Throwable error) {
+            attempt.abandoned = true;
+            attempt.cancelTimers();
+            attempt.withdraw();
+            running--;
+            lastError = error;
+        }
+
+        /**
+         * Handler of one provider request, forwards to the caller only once it is the winner
+         */
+        private final class Attempt implements RateLimitedStreamingChatModel.QueueAwareHandler {
+
+            private final Candidate candidate;
+
+            private final long startedAt = System.nanoTime();
+
+            private ScheduledFuture<?> timeout;
+
+            private ScheduledFuture<?> hedge;
+
+            /**
+             * Rate limiter ticket, set when the provider queued the request
+             */
+            private ProviderRateLimiter.Ticket ticket;
+
+            private boolean abandoned;
+
+            private Attempt(Candidate candidate) {
+                this.candidate = candidate;
+            }
+
+            @Override
+            public void onQueued(ProviderRateLimiter.Ticket ticket) {
+                synchronized (RoutedCall.this) {
+                    this.ticket = ticket;
+                    if (abandoned) {
+                        withdraw();
+                    }
+                }
+            }
+
+            /**
+             * Take the request out of the rate limiter queue if it has not started yet
+             */
+            void withdraw() {
+                if (ticket != null && ticket.cancel()) {
+                    log.info("Withdrew queued request to provider {}", candidate.name());
+                }
+            }
+
+            void cancelTimers() {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                if (hedge != null) {
+                    hedge.cancel(false);
+                }
+            }
+
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                if (claim(this)) {
+                    handler.onPartialResponse(partialResponse);
+                }
+            }
+
+            @Override
+            public void onPartialThinking(PartialThinking partialThinking) {
+                if (claim(this)) {
+                    handler.onPartialThinking(partialThinking);
+                }
+            }
+
+            @Override
+            public void onPartialToolCall(PartialToolCall partialToolCall) {
+                if (claim(this)) {
+                    handler.onPartialToolCall(partialToolCall);
+                }
+            }
+
+            @Override
+            public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+                if (claim(this)) {
+                    handler.onCompleteToolCall(completeToolCall);
+                }
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                // A response without any partial output also counts as the first output
+                if (claim(this)) {
+                    handler.onCompleteResponse(completeResponse);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                onAttemptError(this, error);
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private final List<Candidate> candidates = new ArrayList<>();
+
+        private long firstTokenTimeoutMs = 30_000;
+
+        private boolean hedgingEnabled;
+
+        private long hedgeMinDelayMs = 1_000;
+
+        private long hedgeInitialDelayMs = 5_000;
+
+        private ProviderLatencyTracker latencyTracker = new ProviderLatencyTracker();
+
+        private ScheduledExecutorService scheduler;
+
+        /**
+         * Add a provider, providers are tried in the order they are added
+         */
+        public Builder candidate(String name, StreamingChatModel model) {
+            candidates.add(new Candidate(name, model));
+            return this;
+        }
+
+        /**
+         * Longest wait for any output from one provider before failing over
+         */
+        public Builder firstTokenTimeoutMs(long firstTokenTimeoutMs) {
+            this.firstTokenTimeoutMs = firstTokenTimeoutMs;
+            return this;
+        }
+
+        public Builder hedgingEnabled(boolean hedgingEnabled) {
+            this.hedgingEnabled = hedgingEnabled;
+            return this;
+        }
+
+        /**
+         * Lower bound of the hedge delay, however fast the provider usually is
+         */
+        public Builder hedgeMinDelayMs(long hedgeMinDelayMs) {
+            this.hedgeMinDelayMs = hedgeMinDelayMs;
+            return this;
+        }
+
+        /**
+         * Hedge delay used until a provider has enough latency samples
+         */
+        public Builder hedgeInitialDelayMs(long hedgeInitialDelayMs) {
+            this.hedgeInitialDelayMs = hedgeInitialDelayMs;
+            return this;
+        }
+
+        /**
+         * Shared across models so latency history survives service cache evictions
+         */
+        public Builder latencyTracker(ProviderLatencyTracker latencyTracker) {
+            this.latencyTracker = latencyTracker;
+            return this;
+        }
+
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public FailoverStreamingChatModel build() {
+            if (candidates.isEmpty()) {
+                throw new IllegalArgumentException("At least one provider is required");
+            }
+            if (scheduler == null) {
+                throw new IllegalArgumentException("scheduler cannot be null");
+            }
+            return new FailoverStreamingChatModel(this);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.morfism.aiappgenerator.ai.routing;
+
+import com.morfism.aiappgenerator.core.metrics.GenerationMetrics;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * 带指标的流式模型
+ * Records time to first token, duration and token usage of every call to one provider
+ *
+ * 套在供应商模型的最内层，限流排队时间不计入；一次生成中的每轮模型调用（含工具调用后的续写）各记一次。
+ * 它总是被安装，所以供应商返回的实际用量由它转交给用量监听器（用户配额），与是否开启限流无关
+ */
+public class MeteredStreamingChatModel implements StreamingChatModel {
+
+    private final StreamingChatModel delegate;
+
+    private final GenerationMetrics metrics;
+
+    private final String provider;
+
+    private final String codeGenType;
+
+    /**
+     * Receives the total tokens of each completed request, may be null
+     */
+    private final LongConsumer usageListener;
+
+    public MeteredStreamingChatModel(StreamingChatModel delegate, GenerationMetrics metrics, String provider, String codeGenType) {
+        this(delegate, metrics, provider, codeGenType, null);
+    }
+
+    public MeteredStreamingChatModel(StreamingChatModel delegate, GenerationMetrics metrics, String provider, String codeGenType,
+                                     LongConsumer usageListener) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.provider = provider;
+        this.codeGenType = codeGenType;
+        this.usageListener = usageListener;
+    }
+
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        MeteredHandler metered = new MeteredHandler(handler, System.nanoTime());
+        try {
+            delegate.chat(chatRequest, metered);
+        } catch (RuntimeException e) {
+            metered.finish(false, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    private final class MeteredHandler implements StreamingChatResponseHandler {
+
+        private final StreamingChatResponseHandler handler;
+
+        private final long startNanos;
+
+        private final AtomicBoolean firstToken = new AtomicBoolean();
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private MeteredHandler(StreamingChatResponseHandler handler, long startNanos) {
+            this.handler = handler;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void onPartialResponse(String partialResponse) {
+            firstToken();
+            handler.onPartialResponse(partialResponse);
+        }
+
+        @Override
+        public void onPartialThinking(PartialThinking partialThinking) {
+            firstToken();
+            handler.onPartialThinking(partialThinking);
+        }
+
+        @Override
+        public void onPartialToolCall(PartialToolCall partialToolCall) {
+            firstToken();
+            handler.onPartialToolCall(partialToolCall);
+        }
+
+        @Override
+        public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+            firstToken();
+            handler.onCompleteToolCall(completeToolCall);
+        }
+
+        @Override
+        public void onCompleteResponse(ChatResponse completeResponse) {
+            finish(true, completeResponse.tokenUsage());
+            handler.onCompleteResponse(completeResponse);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            finish(false, null);
+            handler.onError(error);
+        }
+
+        private void firstToken() {
+            if (firstToken.compareAndSet(false, true)) {
+                metrics.recordTimeToFirstToken(provider, codeGenType, System.nanoTime() - startNanos);
+            }
+        }
+
+        private void finish(boolean success, TokenUsage usage) {
+            if (finished.compareAndSet(false, true)) {
+                metrics.recordModelCall(provider, codeGenType, System.nanoTime() - startNanos, success,
+                        usage == null ? null : usage.inputTokenCount(),
+                        usage == null ? null : usage.outputTokenCount());
+                Integer total = usage == null ? null : usage.totalTokenCount();
+                if (total != null && usageListener != null) {
+                    usageListener.accept(total);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.morfism.aiappgenerator.ai.routing;
+
+import cn.hutool.core.util.StrUtil;
+
+/**
+ * 模型供应商配置
+ * Connection and sampling settings of one configured model provider
+ *
+ * @param name         provider name as configured, e.g. deepseek, deepseek-reasoning, openai, claude, gemini
+ * @param providerType client family used to build the model: openai, claude or gemini
+ * @param baseUrl      null for providers without a configurable endpoint
+ * @param temperature  null for models that do not accept one
+ */
+public record ProviderConfig(String name,
+                             String providerType,
+                             String apiKey,
+                             String baseUrl,
+                             String modelName,
+                             Integer maxTokens,
+                             Double temperature,
+                             Boolean logRequests,
+                             Boolean logResponses) {
+
+    /**
+     * Whether the provider has credentials and can be routed to
+     */
+    public boolean isConfigured() {
+        return StrUtil.isNotBlank(apiKey);
+    }
+}
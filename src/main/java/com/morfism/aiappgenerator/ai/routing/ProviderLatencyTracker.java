@@ -0,0 +1,63 @@
+package com.morfism.aiappgenerator.ai.routing;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 供应商首字延迟统计
+ * Recent time-to-first-token samples per provider
+ *
+ * 核心功能：
+ * 1. 每个供应商保留最近固定数量的样本，旧样本被覆盖，统计反映当前状况
+ * 2. 按需计算分位数，样本不足时返回 -1，由调用方使用默认值
+ */
+public class ProviderLatencyTracker {
+
+    private static final int WINDOW = 128;
+
+    /**
+     * Fewer samples than this give no percentile
+     */
+    private static final int MIN_SAMPLES = 5;
+
+    private final Map<String, Samples> samples = new ConcurrentHashMap<>();
+
+    public void record(String provider, long millis) {
+        samples.computeIfAbsent(provider, key -> new Samples()).add(millis);
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.95
+     * @return latency in milliseconds, or -1 without enough samples
+     */
+    public long percentile(String provider, double quantile) {
+        Samples providerSamples = samples.get(provider);
+        return providerSamples == null ? -1 : providerSamples.percentile(quantile);
+    }
+
+    private static final class Samples {
+
+        private final long[] values = new long[WINDOW];
+
+        private int count;
+
+        private int next;
+
+        synchronized void add(long value) {
+            values[next] = value;
+            next = (next + 1) % WINDOW;
+            count = Math.min(count + 1, WINDOW);
+        }
+
+        synchronized long percentile(double quantile) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(quantile * count) - 1;
+            return sorted[Math.max(0, Math.min(index, count - 1))];
+        }
+    }
+}
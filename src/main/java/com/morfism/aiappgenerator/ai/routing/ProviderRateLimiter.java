@@ -0,0 +1,373 @@
+package com.morfism.aiappgenerator.ai.routing;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 单个供应商的客户端限流器
+ * Client-side limits of one provider: requests per second, concurrent streams and estimated tokens per minute
+ *
+ * 核心功能：
+ * 1. 请求数和 token 数各用一个令牌桶，并发流数单独计数，三者都满足时才放行
+ * 2. 超出限制的请求按公平键（应用）分队列，队列之间轮转放行，单个应用的大量请求不会饿死其他应用
+ * 3. 排队总数有上限，队列满或等待超时时立即拒绝，不会无限积压；调用方放弃的请求可凭票据撤回，不会再占用名额
+ * 4. 上游返回 429 时进入冷却期，冷却期内只排队不放行，连续 429 时冷却时间翻倍，避免重试风暴
+ * 5. 记录排队长度、进行中数量和等待时间，作为监控指标来源
+ *
+ * 队首请求所需 token 不足时整体等待，不跳过大请求，避免大请求饿死。
+ */
+@Slf4j
+public class ProviderRateLimiter {
+
+    private static final long MAX_COOLDOWN_MS = 60_000;
+
+    /**
+     * Limits of one provider, a value of 0 or less disables that limit
+     */
+    public record Limits(double requestsPerSecond,
+                         int maxConcurrent,
+                         long tokensPerMinute,
+                         int maxQueued,
+                         long maxWaitMs,
+                         long cooldownMs) {
+    }
+
+    /**
+     * A request waiting for capacity
+     */
+    private static final class Pending {
+
+        private final Object key;
+
+        private final long tokens;
+
+        private final Runnable start;
+
+        private final Consumer<String> reject;
+
+        private final long enqueuedAt = System.nanoTime();
+
+        private ScheduledFuture<?> expiry;
+
+        private Pending(Object key, long tokens, Runnable start, Consumer<String> reject) {
+            this.key = key;
+            this.tokens = tokens;
+            this.start = start;
+            this.reject = reject;
+        }
+    }
+
+    /**
+     * Handle of a submitted request
+     */
+    public final class Ticket {
+
+        /**
+         * Null when the request was rejected at once
+         */
+        private final Pending pending;
+
+        private Ticket(Pending pending) {
+            this.pending = pending;
+        }
+
+        /**
+         * @return false if the queue was full and the request was rejected at once
+         */
+        public boolean isAccepted() {
+            return pending != null;
+        }
+
+        /**
+         * Withdraw the request while it is still queued, its start and reject callbacks are then never called
+         *
+         * @return false if the request already started, was rejected or was cancelled before
+         */
+        public boolean cancel() {
+            return pending != null && ProviderRateLimiter.this.cancel(pending);
+        }
+    }
+
+    private final String provider;
+
+    private final Limits limits;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Waiting requests per fairness key, keys are served round robin in insertion order
+     */
+    private final LinkedHashMap<Object, ArrayDeque<Pending>> queues = new LinkedHashMap<>();
+
+    private double requestTokens;
+
+    private double budgetTokens;
+
+    private long lastRefillNanos = System.nanoTime();
+
+    private int inFlight;
+
+    private int queued;
+
+    private long cooldownUntilNanos;
+
+    private int consecutiveThrottles;
+
+    private boolean drainScheduled;
+
+    private long dispatched;
+
+    private long rejected;
+
+    private long totalWaitMs;
+
+    private long maxWaitMs;
+
+    public ProviderRateLimiter(String provider, Limits limits, ScheduledExecutorService scheduler) {
+        this.provider = provider;
+        this.limits = limits;
+        this.scheduler = scheduler;
+        this.requestTokens = Math.max(1, limits.requestsPerSecond());
+        this.budgetTokens = limits.tokensPerMinute();
+    }
+
+    /**
+     * Start a request now or once capacity is free
+     *
+     * @param key    fairness key, requests of different keys are served round robin
+     * @param tokens estimated tokens of the request
+     * @param start  runs the request, must be followed by exactly one release
+     * @param reject called with a reason if the request waited too long
+     * @return ticket of the request, not accepted if the queue is full and the request was rejected at once
+     */
+    public Ticket submit(Object key, long tokens, Runnable start, Consumer<String> reject) {
+        Pending pending = new Pending(key, tokens, start, reject);
+        synchronized (this) {
+            if (limits.maxQueued() > 0 && queued >= limits.maxQueued()) {
+                rejected++;
+                log.warn("Rate limit queue of provider {} is full ({} waiting), rejecting", provider, queued);
+                return new Ticket(null);
+            }
+            queues.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(pending);
+            queued++;
+            if (limits.maxWaitMs() > 0) {
+                pending.expiry = scheduler.schedule(() -> expire(pending), limits.maxWaitMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+        drain();
+        return new Ticket(pending);
+    }
+
+    /**
+     * A started request finished
+     *
+     * @param actualTokens tokens reported by the provider, or -1 if unknown
+     * @param estimated    tokens charged when the request started
+     */
+    public void release(long actualTokens, long estimated) {
+        synchronized (this) {
+            inFlight--;
+            if (actualTokens >= 0 && limits.tokensPerMinute() > 0) {
+                // Completion tokens are only known now; the bucket may go negative and delay later requests
+                budgetTokens -= actualTokens - estimated;
+            }
+        }
+        drain();
+    }
+
+    /**
+     * The provider answered 429, pause dispatching for a while
+     */
+    public void throttled() {
+        synchronized (this) {
+            consecutiveThrottles++;
+            long cooldownMs = Math.min(MAX_COOLDOWN_MS,
+                    limits.cooldownMs() << Math.min(consecutiveThrottles - 1, 10));
+            cooldownUntilNanos = Math.max(cooldownUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(cooldownMs));
+            log.warn("Provider {} is throttling (x{}), pausing new requests for {} ms",
+                    provider, consecutiveThrottles, cooldownMs);
+        }
+    }
+
+    /**
+     * A request got through without being throttled
+     */
+    public synchronized void succeeded() {
+        consecutiveThrottles = 0;
+    }
+
+    private void expire(Pending pending) {
+        synchronized (this) {
+            if (!dequeue(pending)) {
+                return;
+            }
+            rejected++;
+        }
+        log.warn("Request to provider {} waited longer than {} ms, rejecting", provider, limits.maxWaitMs());
+        pending.reject.accept("Provider " + provider + " is busy, waited " + limits.maxWaitMs() + " ms");
+    }
+
+    private boolean cancel(Pending pending) {
+        synchronized (this) {
+            if (!dequeue(pending)) {
+                return false;
+            }
+            if (pending.expiry != null) {
+                pending.expiry.cancel(false);
+            }
+        }
+        log.debug("Queued request to provider {} was withdrawn", provider);
+        // The withdrawn request may have been the head blocking the others; callers may hold their own locks, so drain later
+        scheduler.execute(this::drain);
+        return true;
+    }
+
+    /**
+     * Remove a request that has not started yet from its queue
+     */
+    private boolean dequeue(Pending pending) {
+        ArrayDeque<Pending> queue = queues.get(pending.key);
+        if (queue == null || !queue.remove(pending)) {
+            return false;
+        }
+        if (queue.isEmpty()) {
+            queues.remove(pending.key);
+        }
+        queued--;
+        return true;
+    }
+
+    /**
+     * Start as many queued requests as the limits allow
+     */
+    private void drain() {
+        List<Pending> ready = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            long waitNanos = 0;
+            while (queued > 0) {
+                if (limits.maxConcurrent() > 0 && inFlight >= limits.maxConcurrent()) {
+                    // Resumed by release
+                    break;
+                }
+                if (now < cooldownUntilNanos) {
+                    waitNanos = cooldownUntilNanos - now;
+                    break;
+                }
+                Iterator<Map.Entry<Object, ArrayDeque<Pending>>> keys = queues.entrySet().iterator();
+                Map.Entry<Object, ArrayDeque<Pending>> next = keys.next();
+                Pending head = next.getValue().peekFirst();
+                waitNanos = waitForCapacity(head.tokens);
+                if (waitNanos > 0) {
+                    break;
+                }
+                next.getValue().pollFirst();
+                keys.remove();
+                if (!next.getValue().isEmpty()) {
+                    // Back of the line, the next key gets the next slot
+                    queues.put(next.getKey(), next.getValue());
+                }
+                queued--;
+                inFlight++;
+                if (limits.requestsPerSecond() > 0) {
+                    requestTokens -= 1;
+                }
+                if (limits.tokensPerMinute() > 0) {
+                    budgetTokens -= chargeableTokens(head.tokens);
+                }
+                long waitedMs = TimeUnit.NANOSECONDS.toMillis(now - head.enqueuedAt);
+                dispatched++;
+                totalWaitMs += waitedMs;
+                maxWaitMs = Math.max(maxWaitMs, waitedMs);
+                ready.add(head);
+            }
+            if (waitNanos > 0 && !drainScheduled) {
+                drainScheduled = true;
+                scheduler.schedule(() -> {
+                    synchronized (this) {
+                        drainScheduled = false;
+                    }
+                    drain();
+                }, waitNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        for (Pending pending : ready) {
+            pending.start.run();
+        }
+    }
+
+    /**
+     * @return nanoseconds until both buckets can pay for a request of the given size, 0 if they can now
+     */
+    private long waitForCapacity(long tokens) {
+        long wait = 0;
+        if (limits.requestsPerSecond() > 0 && requestTokens < 1) {
+            wait = (long) ((1 - requestTokens) / limits.requestsPerSecond() * 1e9);
+        }
+        if (limits.tokensPerMinute() > 0) {
+            double needed = chargeableTokens(tokens);
+            if (budgetTokens < needed) {
+                wait = Math.max(wait, (long) ((needed - budgetTokens) / limits.tokensPerMinute() * 60e9));
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * A request larger than the whole minute budget would never fit, it waits for a full bucket instead
+     */
+    private long chargeableTokens(long tokens) {
+        return Math.min(tokens, limits.tokensPerMinute());
+    }
+
+    private void refill(long now) {
+        double elapsedSeconds = (now - lastRefillNanos) / 1e9;
+        lastRefillNanos = now;
+        if (limits.requestsPerSecond() > 0) {
+            requestTokens = Math.min(Math.max(1, limits.requestsPerSecond()),
+                    requestTokens + elapsedSeconds * limits.requestsPerSecond());
+        }
+        if (limits.tokensPerMinute() > 0) {
+            budgetTokens = Math.min(limits.tokensPerMinute(),
+                    budgetTokens + elapsedSeconds / 60 * limits.tokensPerMinute());
+        }
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Average queue wait of started requests, in milliseconds
+     */
+    public synchronized double getAverageWaitMs() {
+        return dispatched == 0 ? 0 : (double) totalWaitMs / dispatched;
+    }
+
+    public synchronized long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+}
@@ -0,0 +1,131 @@
+package com.morfism.aiappgenerator.ai.routing;
+
+import com.morfism.aiappgenerator.core.metrics.GenerationMetrics;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 供应商限流器注册表
+ * One client-side rate limiter per provider, shared by every model built for that provider
+ *
+ * 核心功能：
+ * 1. 按供应商名创建并缓存限流器，同一供应商的所有应用共用一组额度
+ * 2. 限制优先读取 ai.rate-limit.{供应商}.*，未配置时使用 ai.rate-limit.default.*
+ * 3. 为流式模型和阻塞模型套上同一个供应商限流器，关闭限流时原样返回
+ * 4. 创建限流器时注册其排队、并发、拒绝和等待时间指标
+ */
+@Slf4j
+@Component
+public class ProviderRateLimiterRegistry {
+
+    private static final String PREFIX = "ai.rate-limit.";
+
+    @Resource
+    private Environment environment;
+
+    @Resource
+    private GenerationMetrics generationMetrics;
+
+    @Value("${ai.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    private final Map<String, ProviderRateLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * Runs queue timeouts and delayed drains, dispatching itself is asynchronous
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("provider-rate-limit").daemon().factory());
+
+    /**
+     * Wrap a provider's streaming model with its rate limiter
+     *
+     * @param provider    provider name, e.g. deepseek-reasoning
+     * @param fairnessKey requests with different keys are queued fairly against each other
+     */
+    public StreamingChatModel limit(String provider, StreamingChatModel model, Object fairnessKey) {
+        if (!enabled) {
+            return model;
+        }
+        return new RateLimitedStreamingChatModel(model, getLimiter(provider), fairnessKey);
+    }
+
+    /**
+     * Wrap a provider's blocking model with the same rate limiter as its streaming models
+     *
+     * @param provider    provider name, e.g. deepseek
+     * @param fairnessKey requests with different keys are queued fairly against each other
+     */
+    public ChatModel limit(String provider, ChatModel model, Object fairnessKey) {
+        if (!enabled) {
+            return model;
+        }
+        return new RateLimitedChatModel(model, getLimiter(provider), fairnessKey);
+    }
+
+    public ProviderRateLimiter getLimiter(String provider) {
+        return limiters.computeIfAbsent(provider, name -> {
+            ProviderRateLimiter.Limits limits = new ProviderRateLimiter.Limits(
+                    limit(name, "requests-per-second", Double.class, 5.0),
+                    limit(name, "max-concurrent", Integer.class, 20),
+                    limit(name, "tokens-per-minute", Long.class, 400_000L),
+                    limit(name, "max-queued", Integer.class, 100),
+                    limit(name, "max-wait-ms", Long.class, 60_000L),
+                    limit(name, "cooldown-ms", Long.class, 5_000L));
+            log.info("Rate limits of provider {}: {}", name, limits);
+            ProviderRateLimiter limiter = new ProviderRateLimiter(name, limits, scheduler);
+            registerMetrics(limiter);
+            return limiter;
+        });
+    }
+
+    /**
+     * Limiters created so far, for monitoring
+     */
+    public Collection<ProviderRateLimiter> getLimiters() {
+        return limiters.values();
+    }
+
+    private void registerMetrics(ProviderRateLimiter limiter) {
+        MeterRegistry registry = generationMetrics.getMeterRegistry();
+        String provider = limiter.getProvider();
+        Gauge.builder("ai.rate.limit.queued", limiter, ProviderRateLimiter::getQueued)
+                .tag("provider", provider)
+                .register(registry);
+        Gauge.builder("ai.rate.limit.in.flight", limiter, ProviderRateLimiter::getInFlight)
+                .tag("provider", provider)
+                .register(registry);
+        Gauge.builder("ai.rate.limit.wait.average", limiter, ProviderRateLimiter::getAverageWaitMs)
+                .tag("provider", provider)
+                .baseUnit("milliseconds")
+                .register(registry);
+        FunctionCounter.builder("ai.rate.limit.rejected", limiter, ProviderRateLimiter::getRejected)
+                .tag("provider", provider)
+                .register(registry);
+    }
+
+    private <T> T limit(String provider, String key, Class<T> type, T defaultValue) {
+        T value = environment.getProperty(PREFIX + provider + "." + key, type);
+        return value != null ? value : environment.getProperty(PREFIX + "default." + key, type, defaultValue);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
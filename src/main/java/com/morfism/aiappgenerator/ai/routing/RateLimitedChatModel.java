@@ -0,0 +1,100 @@
+package com.morfism.aiappgenerator.ai.routing;
+
+import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.exception.ErrorCode;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 受限流保护的阻塞模型
+ * Blocking model whose requests pass through the same provider rate limiter as the streaming models
+ *
+ * 核心功能：
+ * 1. 调用线程排队等待供应商的请求数、并发数和 token 额度，放行后在本线程发起请求
+ * 2. 队列满或等待超时时抛出 429 业务异常
+ * 3. 请求结束时归还并发名额，并按供应商返回的实际用量修正 token 额度
+ * 4. 上游 429 触发供应商冷却
+ * 5. 等待中被中断时撤回排队票据，不占用名额
+ */
+public class RateLimitedChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+
+    private final ProviderRateLimiter limiter;
+
+    /**
+     * Requests of the same key share one fair queue, the model is built per app so this is the app ID
+     */
+    private final Object fairnessKey;
+
+    public RateLimitedChatModel(ChatModel delegate, ProviderRateLimiter limiter, Object fairnessKey) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.fairnessKey = fairnessKey;
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest chatRequest) {
+        long estimated = RateLimitedStreamingChatModel.estimateTokens(chatRequest);
+        awaitAdmission(estimated);
+        ChatResponse response;
+        try {
+            response = delegate.chat(chatRequest);
+        } catch (RuntimeException e) {
+            if (RateLimitedStreamingChatModel.isThrottled(e)) {
+                limiter.throttled();
+            }
+            limiter.release(-1, estimated);
+            throw e;
+        }
+        TokenUsage usage = response.tokenUsage();
+        Integer total = usage == null ? null : usage.totalTokenCount();
+        limiter.release(total == null ? -1 : total, estimated);
+        limiter.succeeded();
+        return response;
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    /**
+     * Block until the limiter starts the request, which must then be released exactly once
+     */
+    private void awaitAdmission(long estimated) {
+        CompletableFuture<Void> admitted = new CompletableFuture<>();
+        ProviderRateLimiter.Ticket ticket = limiter.submit(fairnessKey, estimated,
+                () -> admitted.complete(null),
+                reason -> admitted.completeExceptionally(RateLimitedStreamingChatModel.rejection(reason)));
+        if (!ticket.isAccepted()) {
+            throw RateLimitedStreamingChatModel.rejection("Too many requests are waiting for provider " + limiter.getProvider());
+        }
+        try {
+            admitted.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Started in the meantime: the slot is ours and has to be given back
+            if (!ticket.cancel() && !admitted.isCompletedExceptionally()) {
+                limiter.release(-1, estimated);
+            }
+            throw new BusinessException(ErrorCode.OPERATION_ERROR,
+                    "Interrupted while waiting for provider " + limiter.getProvider());
+        } catch (ExecutionException e) {
+            throw (BusinessException) e.getCause();
+        }
+    }
+}
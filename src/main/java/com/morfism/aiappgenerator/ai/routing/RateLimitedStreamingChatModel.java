@@ -0,0 +1,173 @@
+package com.morfism.aiappgenerator.ai.routing;
+
+import com.morfism.aiappgenerator.ai.memory.ChatMessageCompactor;
+import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.exception.ErrorCode;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 受限流保护的流式模型
+ * Streaming model whose requests pass through the provider's client-side rate limiter
+ *
+ * 核心功能：
+ * 1. 按请求消息估算 token 数，排队等待供应商的请求数、并发数和 token 额度
+ * 2. 队列满或等待超时时以 429 业务异常结束请求，SSE 侧收到明确的拒绝事件
+ * 3. 流结束时归还并发名额，并按供应商返回的实际用量修正 token 额度
+ * 4. 上游 429 触发供应商冷却
+ * 5. 回调实现 QueueAwareHandler 时交出排队票据，调用方放弃请求时可撤回，不会再发出一次浪费的供应商调用
+ */
+public class RateLimitedStreamingChatModel implements StreamingChatModel {
+
+    /**
+     * Handler that wants the ticket of its queued request, e.g. to withdraw it once the caller gives up on it
+     */
+    public interface QueueAwareHandler extends StreamingChatResponseHandler {
+
+        /**
+         * Called right after the request was queued, it may already have started
+         */
+        void onQueued(ProviderRateLimiter.Ticket ticket);
+    }
+
+    private final StreamingChatModel delegate;
+
+    private final ProviderRateLimiter limiter;
+
+    /**
+     * Requests of the same key share one fair queue, the model is built per app so this is the app ID
+     */
+    private final Object fairnessKey;
+
+    public RateLimitedStreamingChatModel(StreamingChatModel delegate, ProviderRateLimiter limiter, Object fairnessKey) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.fairnessKey = fairnessKey;
+    }
+
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        long estimated = estimateTokens(chatRequest);
+        ProviderRateLimiter.Ticket ticket = limiter.submit(fairnessKey, estimated,
+                () -> start(chatRequest, handler, estimated),
+                reason -> handler.onError(rejection(reason)));
+        if (!ticket.isAccepted()) {
+            handler.onError(rejection("Too many requests are waiting for provider " + limiter.getProvider()));
+        } else if (handler instanceof QueueAwareHandler queueAware) {
+            queueAware.onQueued(ticket);
+        }
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    private void start(ChatRequest chatRequest, StreamingChatResponseHandler handler, long estimated) {
+        LimitedHandler limited = new LimitedHandler(handler, estimated);
+        try {
+            delegate.chat(chatRequest, limited);
+        } catch (RuntimeException e) {
+            limited.onError(e);
+        }
+    }
+
+    static long estimateTokens(ChatRequest chatRequest) {
+        long tokens = 0;
+        for (ChatMessage message : chatRequest.messages()) {
+            tokens += ChatMessageCompactor.estimateTokens(message);
+        }
+        return tokens;
+    }
+
+    static BusinessException rejection(String reason) {
+        return new BusinessException(ErrorCode.TOO_MANY_REQUEST_ERROR, reason + ", please try again later");
+    }
+
+    /**
+     * Whether the provider rejected the request with 429
+     * Provider clients wrap HTTP errors differently, so the cause chain is checked by type name and message
+     */
+    static boolean isThrottled(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            String message = String.valueOf(cause.getMessage());
+            if (cause.getClass().getSimpleName().contains("RateLimit")
+                    || message.contains("429") || message.contains("rate_limit") || message.contains("Too Many Requests")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Releases the limiter exactly once when the stream ends
+     */
+    private final class LimitedHandler implements StreamingChatResponseHandler {
+
+        private final StreamingChatResponseHandler handler;
+
+        private final long estimated;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private LimitedHandler(StreamingChatResponseHandler handler, long estimated) {
+            this.handler = handler;
+            this.estimated = estimated;
+        }
+
+        @Override
+        public void onPartialResponse(String partialResponse) {
+            handler.onPartialResponse(partialResponse);
+        }
+
+        @Override
+        public void onPartialThinking(PartialThinking partialThinking) {
+            handler.onPartialThinking(partialThinking);
+        }
+
+        @Override
+        public void onPartialToolCall(PartialToolCall partialToolCall) {
+            handler.onPartialToolCall(partialToolCall);
+        }
+
+        @Override
+        public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+            handler.onCompleteToolCall(completeToolCall);
+        }
+
+        @Override
+        public void onCompleteResponse(ChatResponse completeResponse) {
+            TokenUsage usage = completeResponse.tokenUsage();
+            Integer total = usage == null ? null : usage.totalTokenCount();
+            release(total == null ? -1 : total);
+            limiter.succeeded();
+            handler.onCompleteResponse(completeResponse);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            if (isThrottled(error)) {
+                limiter.throttled();
+            }
+            release(-1);
+            handler.onError(error);
+        }
+
+        private void release(long actualTokens) {
+            if (released.compareAndSet(false, true)) {
+                limiter.release(actualTokens, estimated);
+            }
+        }
+    }
+}
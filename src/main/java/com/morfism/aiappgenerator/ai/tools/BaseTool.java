@@ -1,6 +1,18 @@
 package com.morfism.aiappgenerator.ai.tools;
 
 import cn.hutool.json.JSONObject;
+import com.morfism.aiappgenerator.core.metrics.GenerationMetrics;
+import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.agent.tool.ToolSpecifications;
+import dev.langchain4j.service.tool.DefaultToolExecutor;
+import dev.langchain4j.service.tool.ToolExecutor;
+import jakarta.annotation.Resource;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Base Tool Class
@@ -8,6 +20,9 @@ import cn.hutool.json.JSONObject;
  */
 public abstract class BaseTool {
 
+    @Resource
+    private GenerationMetrics generationMetrics;
+
     /**
      * Get tool English name (for AI service identification)
      * @return tool name
@@ -38,6 +53,15 @@ public abstract class BaseTool {
      */
     public abstract String getOperationType();
 
+    /**
+     * Whether the tool only reads the project
+     * Read-only tool calls of one model turn may run concurrently, other tools are serialized per app
+     * @return true for read-only tools
+     */
+    public boolean isReadOnly() {
+        return false;
+    }
+
     /**
      * Generate tool request response information
      * Information displayed when AI requests to call the tool
@@ -55,6 +79,33 @@ public abstract class BaseTool {
      */
     public abstract String generateToolExecutedResult(JSONObject arguments);
 
+    /**
+     * Resolve per-file outcomes of a tool call that touches several files
+     * Single-file tools keep the default, their file is taken from the path argument
+     * @param result tool execution result
+     * @return file path -> whether that file succeeded, in call order, or null for single-file tools
+     */
+    public Map<String, Boolean> resolveFileResults(String result) {
+        return null;
+    }
+
+    /**
+     * Get executors of the tool's @Tool methods
+     * Both the sequential and the concurrent tool path run calls through these, each call is recorded in ai.tool.calls
+     * @return tool specification -> executor
+     */
+    public Map<ToolSpecification, ToolExecutor> getToolExecutors() {
+        Map<ToolSpecification, ToolExecutor> executors = new LinkedHashMap<>();
+        for (Method method : getClass().getDeclaredMethods()) {
+            if (method.isAnnotationPresent(Tool.class)) {
+                ToolExecutor delegate = new DefaultToolExecutor(this, method);
+                executors.put(ToolSpecifications.toolSpecificationFrom(method),
+                        (request, memoryId) -> executeTimed(delegate, request, memoryId));
+            }
+        }
+        return executors;
+    }
+
     /**
      * Check if tool execution was successful
      * Determine success based on execution result
@@ -71,4 +122,18 @@ public abstract class BaseTool {
             && !lowerResult.contains("failed");
     }
 
+    /**
+     * Run a tool call and record it in the tool's timer
+     */
+    private String executeTimed(ToolExecutor delegate, ToolExecutionRequest request, Object memoryId) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            String result = delegate.execute(request, memoryId);
+            success = true;
+            return result;
+        } finally {
+            generationMetrics.recordToolCall(getToolName(), System.nanoTime() - start, success);
+        }
+    }
 }
@@ -0,0 +1,138 @@
+package com.morfism.aiappgenerator.ai.tools;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspace;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspaceManager;
+import dev.langchain4j.agent.tool.P;
+import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.agent.tool.ToolMemoryId;
+import dev.langchain4j.model.output.structured.Description;
+import jakarta.annotation.Resource;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * File Batch Write Tool
+ * Supports AI writing several files in one tool call, saving one model round-trip per file
+ */
+@Slf4j
+@Component
+public class FileBatchWriteTool extends BaseTool {
+
+    private static final String SUCCESS_PREFIX = "File written successfully: ";
+
+    private static final String FAILED_PREFIX = "Error: Invalid file path, must be inside the project - ";
+
+    /**
+     * One file of a batch write
+     */
+    @Data
+    public static class FileWriteEntry {
+
+        @Description("Relative file path")
+        private String path;
+
+        @Description("Content to write to file")
+        private String content;
+    }
+
+    @Resource
+    private ProjectWorkspaceManager projectWorkspaceManager;
+
+    @Tool("Batch File Write Tool, creates or overwrites several files in one call")
+    public String writeFiles(@P("Files to write") List<FileWriteEntry> files, @ToolMemoryId Long appId) {
+        if (files == null || files.isEmpty()) {
+            return "Error: No files to write";
+        }
+        ProjectWorkspace workspace = projectWorkspaceManager.get(appId);
+        StringBuilder result = new StringBuilder();
+        int written = 0;
+        for (FileWriteEntry file : files) {
+            String relativeFilePath = file == null ? null : file.getPath();
+            String normalizedPath = workspace.normalize(relativeFilePath);
+            // Written to the workspace, the whole batch reaches disk together on the next flush
+            if (normalizedPath == null || normalizedPath.isEmpty()
+                    || !workspace.write(normalizedPath, file.getContent() == null ? "" : file.getContent())) {
+                result.append(FAILED_PREFIX).append(relativeFilePath).append('\n');
+                continue;
+            }
+            result.append(SUCCESS_PREFIX).append(relativeFilePath).append('\n');
+            written++;
+        }
+        log.info("Successfully wrote {} of {} files in batch", written, files.size());
+        // Note: return relative paths, don't let AI return absolute file paths to user
+        return String.format("Wrote %d of %d files\n%s", written, files.size(), result);
+    }
+
+    @Override
+    public Map<String, Boolean> resolveFileResults(String result) {
+        Map<String, Boolean> fileResults = new LinkedHashMap<>();
+        if (result == null) {
+            return fileResults;
+        }
+        for (String line : result.split("\n")) {
+            if (line.startsWith(SUCCESS_PREFIX)) {
+                fileResults.put(line.substring(SUCCESS_PREFIX.length()), true);
+            } else if (line.startsWith(FAILED_PREFIX)) {
+                fileResults.put(line.substring(FAILED_PREFIX.length()), false);
+            }
+        }
+        return fileResults;
+    }
+
+    @Override
+    public String getToolName() {
+        return "writeFiles";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Write Files";
+    }
+
+    @Override
+    public String getSuccessIcon() {
+        return "<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 24 24\" fill=\"currentColor\"><path d=\"M9 16.17L4.83 12l-1.42 1.41L9 19 21 7l-1.41-1.41z\"/></svg>";
+    }
+
+    @Override
+    public String getFailedIcon() {
+        return "<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 24 24\" fill=\"currentColor\"><path d=\"M19 6.41L17.59 5 12 10.59 6.41 5 5 6.41 10.59 12 5 17.59 6.41 19 12 13.41 17.59 19 19 17.59 13.41 12z\"/></svg>";
+    }
+
+    @Override
+    public String getOperationType() {
+        return "FILE_WRITE";
+    }
+
+    @Override
+    public String generateToolExecutedResult(JSONObject arguments) {
+        JSONArray files = arguments.getJSONArray("files");
+        if (files == null || files.isEmpty()) {
+            return String.format("[Tool Call] %s (no files)", getDisplayName());
+        }
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < files.size(); i++) {
+            JSONObject file = files.getJSONObject(i);
+            if (file == null) {
+                continue;
+            }
+            String relativeFilePath = file.getStr("path");
+            String suffix = FileUtil.getSuffix(relativeFilePath);
+            output.append(String.format("""
+                            [Tool Call] %s %s
+                            ```%s
+                            %s
+                            ```
+                            """, getDisplayName(), relativeFilePath, suffix, file.getStr("content")));
+        }
+        return output.toString();
+    }
+}
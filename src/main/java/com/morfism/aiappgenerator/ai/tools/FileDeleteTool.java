@@ -1,17 +1,17 @@
 package com.morfism.aiappgenerator.ai.tools;
 
 import cn.hutool.json.JSONObject;
-import com.morfism.aiappgenerator.constant.AppConstant;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspace;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspaceManager;
 import dev.langchain4j.agent.tool.P;
 import dev.langchain4j.agent.tool.Tool;
 import dev.langchain4j.agent.tool.ToolMemoryId;
+import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 
 /**
  * File Delete Tool
@@ -21,38 +21,35 @@ import java.nio.file.Paths;
 @Component
 public class FileDeleteTool extends BaseTool {
 
+    @Resource
+    private ProjectWorkspaceManager projectWorkspaceManager;
+
     @Tool("File Delete Tool")
     public String deleteFile(
             @P("Relative file path")
             String relativeFilePath,
             @ToolMemoryId Long appId
     ) {
-        try {
-            Path path = Paths.get(relativeFilePath);
-            if (!path.isAbsolute()) {
-                String projectDirName = "vue_project_" + appId;
-                Path projectRoot = Paths.get(AppConstant.CODE_OUTPUT_ROOT_DIR, projectDirName);
-                path = projectRoot.resolve(relativeFilePath);
-            }
-            if (!Files.exists(path)) {
-                return "Warning: File does not exist, no need to delete - " + relativeFilePath;
-            }
-            if (!Files.isRegularFile(path)) {
+        ProjectWorkspace workspace = projectWorkspaceManager.get(appId);
+        String normalizedPath = workspace.normalize(relativeFilePath);
+        if (normalizedPath == null) {
+            return "Error: Invalid file path, must be inside the project - " + relativeFilePath;
+        }
+        Path path = workspace.toDiskPath(normalizedPath);
+        if (!workspace.isFile(normalizedPath)) {
+            if (Files.isDirectory(path)) {
                 return "Error: Specified path is not a file, cannot delete - " + relativeFilePath;
             }
-            // Security check: Avoid deleting important files
-            String fileName = path.getFileName().toString();
-            if (isImportantFile(fileName)) {
-                return "Error: Deletion of important files not allowed - " + fileName;
-            }
-            Files.delete(path);
-            log.info("Successfully deleted file: {}", path.toAbsolutePath());
-            return "File deleted successfully: " + relativeFilePath;
-        } catch (IOException e) {
-            String errorMessage = "File deletion failed: " + relativeFilePath + ", error: " + e.getMessage();
-            log.error(errorMessage, e);
-            return errorMessage;
+            return "Warning: File does not exist, no need to delete - " + relativeFilePath;
+        }
+        // Security check: Avoid deleting important files
+        String fileName = path.getFileName().toString();
+        if (isImportantFile(fileName)) {
+            return "Error: Deletion of important files not allowed - " + fileName;
         }
+        workspace.delete(normalizedPath);
+        log.info("Successfully deleted file: {}", normalizedPath);
+        return "File deleted successfully: " + relativeFilePath;
     }
 
     /**
@@ -2,19 +2,15 @@ package com.morfism.aiappgenerator.ai.tools;
 
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
-import com.morfism.aiappgenerator.constant.AppConstant;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspace;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspaceManager;
 import dev.langchain4j.agent.tool.P;
 import dev.langchain4j.agent.tool.Tool;
 import dev.langchain4j.agent.tool.ToolMemoryId;
+import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
 import java.util.Set;
 
 /**
@@ -40,6 +36,9 @@ public class FileDirReadTool extends BaseTool {
             ".log", ".tmp", ".cache", ".lock"
     );
 
+    @Resource
+    private ProjectWorkspaceManager projectWorkspaceManager;
+
     @Tool("Directory Reading Tool: to understand the current project structure")
     public String readDir(
             @P("Relative directory path, empty to read entire project structure")
@@ -47,22 +46,17 @@ public class FileDirReadTool extends BaseTool {
             @ToolMemoryId Long appId
     ) {
         try {
-            Path path = Paths.get(relativeDirPath == null ? "" : relativeDirPath);
-            if (!path.isAbsolute()) {
-                String projectDirName = "vue_project_" + appId;
-                Path projectRoot = Paths.get(AppConstant.CODE_OUTPUT_ROOT_DIR, projectDirName);
-                path = projectRoot.resolve(relativeDirPath == null ? "" : relativeDirPath);
+            ProjectWorkspace workspace = projectWorkspaceManager.get(appId);
+            String normalizedPath = workspace.normalize(relativeDirPath);
+            if (normalizedPath == null) {
+                return "Error: Invalid directory path, must be inside the project - " + relativeDirPath;
             }
-            File targetDir = path.toFile();
-            if (!targetDir.exists() || !targetDir.isDirectory()) {
+            // 目录树从工作区的内存索引渲染，结果缓存到下一次文件变更，最大深度3层
+            String tree = workspace.renderTree(normalizedPath, 3, FileDirReadTool::shouldIgnore);
+            if (tree == null) {
                 return "Error: Directory does not exist or is not a directory - " + relativeDirPath;
             }
-            StringBuilder structure = new StringBuilder();
-            structure.append("Project directory structure:\n");
-            
-            // 递归构建目录树结构，限制深度避免性能问题
-            buildDirectoryTree(targetDir, structure, "", 0, 3); // 最大深度3层
-            return structure.toString();
+            return "Project directory structure:\n" + tree;
 
         } catch (Exception e) {
             String errorMessage = "Failed to read directory structure: " + relativeDirPath + ", error: " + e.getMessage();
@@ -71,55 +65,10 @@ public class FileDirReadTool extends BaseTool {
         }
     }
 
-    /**
-     * 递归构建目录树结构
-     * Build directory tree structure recursively with depth limit
-     */
-    private void buildDirectoryTree(File dir, StringBuilder structure, String indent, int currentDepth, int maxDepth) {
-        if (currentDepth >= maxDepth) {
-            return;
-        }
-        
-        File[] files = dir.listFiles();
-        if (files == null) {
-            return;
-        }
-        
-        // 分离目录和文件，并排序
-        List<File> directories = new ArrayList<>();
-        List<File> regularFiles = new ArrayList<>();
-        
-        for (File file : files) {
-            if (shouldIgnore(file.getName())) {
-                continue;
-            }
-            if (file.isDirectory()) {
-                directories.add(file);
-            } else {
-                regularFiles.add(file);
-            }
-        }
-        
-        // 排序
-        directories.sort(Comparator.comparing(File::getName));
-        regularFiles.sort(Comparator.comparing(File::getName));
-        
-        // 先显示目录
-        for (File directory : directories) {
-            structure.append(indent).append("📁 ").append(directory.getName()).append("/\n");
-            buildDirectoryTree(directory, structure, indent + "  ", currentDepth + 1, maxDepth);
-        }
-        
-        // 再显示文件
-        for (File file : regularFiles) {
-            structure.append(indent).append("📄 ").append(file.getName()).append("\n");
-        }
-    }
-
     /**
      * Determine if this file or directory should be ignored
      */
-    private boolean shouldIgnore(String fileName) {
+    static boolean shouldIgnore(String fileName) {
         // Check if in ignore name list
         if (IGNORED_NAMES.contains(fileName)) {
             return true;
@@ -129,6 +78,11 @@ public class FileDirReadTool extends BaseTool {
         return IGNORED_EXTENSIONS.stream().anyMatch(fileName::endsWith);
     }
 
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
     @Override
     public String getToolName() {
         return "readDir";
@@ -1,18 +1,16 @@
 package com.morfism.aiappgenerator.ai.tools;
 
 import cn.hutool.json.JSONObject;
-import com.morfism.aiappgenerator.constant.AppConstant;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspace;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspaceManager;
 import dev.langchain4j.agent.tool.P;
 import dev.langchain4j.agent.tool.Tool;
 import dev.langchain4j.agent.tool.ToolMemoryId;
+import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 
 /**
  * File Modify Tool
@@ -22,6 +20,9 @@ import java.nio.file.StandardOpenOption;
 @Component
 public class FileModifyTool extends BaseTool {
 
+    @Resource
+    private ProjectWorkspaceManager projectWorkspaceManager;
+
     @Tool("File Modification Tool: Modify partial content of existing files")
     public String modifyFile(
             @P("Relative file path")
@@ -33,16 +34,15 @@ public class FileModifyTool extends BaseTool {
             @ToolMemoryId Long appId
     ) {
         try {
-            Path path = Paths.get(relativeFilePath);
-            if (!path.isAbsolute()) {
-                String projectDirName = "vue_project_" + appId;
-                Path projectRoot = Paths.get(AppConstant.CODE_OUTPUT_ROOT_DIR, projectDirName);
-                path = projectRoot.resolve(relativeFilePath);
+            ProjectWorkspace workspace = projectWorkspaceManager.get(appId);
+            String normalizedPath = workspace.normalize(relativeFilePath);
+            if (normalizedPath == null) {
+                return "Error: Invalid file path, must be inside the project - " + relativeFilePath;
             }
-            if (!Files.exists(path) || !Files.isRegularFile(path)) {
+            String originalContent = workspace.read(normalizedPath);
+            if (originalContent == null) {
                 return "Error: File does not exist or is not a file - " + relativeFilePath;
             }
-            String originalContent = Files.readString(path);
             if (!originalContent.contains(oldContent)) {
                 return "Warning: Content to be replaced not found in file, file not modified - " + relativeFilePath;
             }
@@ -50,8 +50,8 @@ public class FileModifyTool extends BaseTool {
             if (originalContent.equals(modifiedContent)) {
                 return "Info: File content unchanged after replacement - " + relativeFilePath;
             }
-            Files.writeString(path, modifiedContent, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            log.info("Successfully modified file: {}", path.toAbsolutePath());
+            workspace.write(normalizedPath, modifiedContent);
+            log.info("Successfully modified file: {}", normalizedPath);
             return "File modified successfully: " + relativeFilePath;
         } catch (IOException e) {
             String errorMessage = "File modification failed: " + relativeFilePath + ", error: " + e.getMessage();
@@ -0,0 +1,160 @@
+package com.morfism.aiappgenerator.ai.tools;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspace;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspaceManager;
+import com.morfism.aiappgenerator.utils.TextPatchApplier;
+import com.morfism.aiappgenerator.utils.TextPatchApplier.PatchResult;
+import com.morfism.aiappgenerator.utils.TextPatchApplier.TextEdit;
+import dev.langchain4j.agent.tool.P;
+import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.agent.tool.ToolMemoryId;
+import dev.langchain4j.model.output.structured.Description;
+import jakarta.annotation.Resource;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * File Patch Tool
+ * Supports AI applying several edits to one file in a single tool call
+ * Edits are given either as exact (oldText, newText) hunks or as a unified diff,
+ * all of them are applied in one pass and the file is written once
+ */
+@Slf4j
+@Component
+public class FilePatchTool extends BaseTool {
+
+    /**
+     * One exact-text edit of a patch
+     */
+    @Data
+    public static class PatchHunk {
+
+        @Description("Exact existing text to replace, must occur exactly once in the file")
+        private String oldText;
+
+        @Description("New text that replaces oldText")
+        private String newText;
+    }
+
+    @Resource
+    private ProjectWorkspaceManager projectWorkspaceManager;
+
+    @Tool("File Patch Tool: apply several edits to one existing file in a single call, "
+            + "either as a list of exact oldText/newText hunks or as a unified diff; "
+            + "if any hunk conflicts nothing is changed and every conflict is reported")
+    public String patchFile(
+            @P("Relative file path")
+            String relativeFilePath,
+            @P(value = "Exact-text edits, each oldText must occur exactly once in the current file", required = false)
+            List<PatchHunk> hunks,
+            @P(value = "Unified diff of the file with @@ hunk headers whose line counts match the hunk bodies, used when hunks are not given", required = false)
+            String unifiedDiff,
+            @ToolMemoryId Long appId
+    ) {
+        try {
+            ProjectWorkspace workspace = projectWorkspaceManager.get(appId);
+            String normalizedPath = workspace.normalize(relativeFilePath);
+            if (normalizedPath == null) {
+                return "Error: Invalid file path, must be inside the project - " + relativeFilePath;
+            }
+            String originalContent = workspace.read(normalizedPath);
+            if (originalContent == null) {
+                return "Error: File does not exist or is not a file - " + relativeFilePath;
+            }
+            PatchResult result;
+            if (hunks != null && !hunks.isEmpty()) {
+                List<TextEdit> edits = hunks.stream()
+                        .map(hunk -> hunk == null ? null : new TextEdit(hunk.getOldText(), hunk.getNewText()))
+                        .toList();
+                result = TextPatchApplier.applyEdits(originalContent, edits);
+            } else if (StrUtil.isNotBlank(unifiedDiff)) {
+                result = TextPatchApplier.applyUnifiedDiff(originalContent, unifiedDiff);
+            } else {
+                return "Error: Either hunks or unifiedDiff must be provided - " + relativeFilePath;
+            }
+            if (!result.isSuccess()) {
+                // Conflicts are reported per hunk so the model can fix only those
+                return String.format("Error: Patch not applied, %d conflict(s) in %s, file not modified:\n- %s",
+                        result.conflicts().size(), relativeFilePath, String.join("\n- ", result.conflicts()));
+            }
+            if (originalContent.equals(result.content())) {
+                return "Info: File content unchanged after patch - " + relativeFilePath;
+            }
+            // One write of the fully patched content
+            workspace.write(normalizedPath, result.content());
+            log.info("Successfully patched file: {} ({} hunks)", normalizedPath, result.applied());
+            return String.format("File patched successfully: %s (%d hunks applied)", relativeFilePath, result.applied());
+        } catch (IOException e) {
+            String errorMessage = "File patch failed: " + relativeFilePath + ", error: " + e.getMessage();
+            log.error(errorMessage, e);
+            return errorMessage;
+        }
+    }
+
+    @Override
+    public String getToolName() {
+        return "patchFile";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Patch File";
+    }
+
+    @Override
+    public String getSuccessIcon() {
+        return "<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 24 24\" fill=\"currentColor\"><path d=\"M3 17.25V21h3.75L17.81 9.94l-3.75-3.75L3 17.25zM20.71 7.04c.39-.39.39-1.02 0-1.41l-2.34-2.34c-.39-.39-1.02-.39-1.41 0l-1.83 1.83 3.75 3.75 1.83-1.83z\"/></svg>";
+    }
+
+    @Override
+    public String getFailedIcon() {
+        return "<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 24 24\" fill=\"currentColor\"><path d=\"M3 17.25V21h3.75L17.81 9.94l-3.75-3.75L3 17.25zM20.71 7.04c.39-.39.39-1.02 0-1.41l-2.34-2.34c-.39-.39-1.02-.39-1.41 0l-1.83 1.83 3.75 3.75 1.83-1.83z\"/></svg>";
+    }
+
+    @Override
+    public String getOperationType() {
+        return "FILE_MODIFY";
+    }
+
+    @Override
+    public String generateToolExecutedResult(JSONObject arguments) {
+        String relativeFilePath = arguments.getStr("relativeFilePath");
+        JSONArray hunks = arguments.getJSONArray("hunks");
+        if (hunks == null || hunks.isEmpty()) {
+            return String.format("""
+                    [Tool Call] %s %s
+                    ```diff
+                    %s
+                    ```
+                    """, getDisplayName(), relativeFilePath, StrUtil.nullToEmpty(arguments.getStr("unifiedDiff")));
+        }
+        StringBuilder output = new StringBuilder(String.format("[Tool Call] %s %s\n", getDisplayName(), relativeFilePath));
+        for (int i = 0; i < hunks.size(); i++) {
+            JSONObject hunk = hunks.getJSONObject(i);
+            if (hunk == null) {
+                continue;
+            }
+            // Display comparison content per hunk
+            output.append(String.format("""
+
+                    Before:
+                    ```
+                    %s
+                    ```
+
+                    After:
+                    ```
+                    %s
+                    ```
+                    """, hunk.getStr("oldText"), hunk.getStr("newText")));
+        }
+        return output.toString();
+    }
+}
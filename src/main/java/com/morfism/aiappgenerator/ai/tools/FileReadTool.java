@@ -1,17 +1,18 @@
 package com.morfism.aiappgenerator.ai.tools;
 
 import cn.hutool.json.JSONObject;
-import com.morfism.aiappgenerator.constant.AppConstant;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspace;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspaceManager;
+import com.morfism.aiappgenerator.core.workspace.TextLines;
 import dev.langchain4j.agent.tool.P;
 import dev.langchain4j.agent.tool.Tool;
 import dev.langchain4j.agent.tool.ToolMemoryId;
+import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 
 /**
  * File Read Tool
@@ -21,23 +22,85 @@ import java.nio.file.Paths;
 @Component
 public class FileReadTool extends BaseTool {
 
-    @Tool("File Reading Tool")
+    @Resource
+    private ProjectWorkspaceManager projectWorkspaceManager;
+
+    /**
+     * Output limit when the caller gives no maxBytes, keeps one large file from flooding the context
+     */
+    @Value("${ai.tools.read-file.max-bytes:32768}")
+    private int defaultMaxBytes;
+
+    @Tool("File Reading Tool: reads a file, optionally only a line range; "
+            + "use the File Search Tool first to find the lines you need in large files")
     public String readFile(
             @P("Relative file path")
             String relativeFilePath,
+            @P(value = "First line to read, 1-based, defaults to 1", required = false)
+            Integer startLine,
+            @P(value = "Last line to read, inclusive, defaults to the end of the file", required = false)
+            Integer endLine,
+            @P(value = "Maximum bytes to return, output stops at the last whole line that fits", required = false)
+            Integer maxBytes,
             @ToolMemoryId Long appId
     ) {
         try {
-            Path path = Paths.get(relativeFilePath);
-            if (!path.isAbsolute()) {
-                String projectDirName = "vue_project_" + appId;
-                Path projectRoot = Paths.get(AppConstant.CODE_OUTPUT_ROOT_DIR, projectDirName);
-                path = projectRoot.resolve(relativeFilePath);
+            ProjectWorkspace workspace = projectWorkspaceManager.get(appId);
+            String normalizedPath = workspace.normalize(relativeFilePath);
+            if (normalizedPath == null) {
+                return "Error: Invalid file path, must be inside the project - " + relativeFilePath;
             }
-            if (!Files.exists(path) || !Files.isRegularFile(path)) {
+            TextLines lines = workspace.readLines(normalizedPath);
+            if (lines == null) {
                 return "Error: File does not exist or is not a file - " + relativeFilePath;
             }
-            return Files.readString(path);
+            int totalLines = lines.lineCount();
+            if (totalLines == 0) {
+                return lines.content();
+            }
+            int from = startLine == null ? 1 : startLine;
+            int to = endLine == null ? totalLines : Math.min(endLine, totalLines);
+            if (from < 1 || from > totalLines || to < from) {
+                return String.format("Error: Invalid line range %d-%s, file has %d lines - %s",
+                        from, endLine == null ? "end" : endLine, totalLines, relativeFilePath);
+            }
+            int limit = maxBytes == null || maxBytes <= 0 ? defaultMaxBytes : maxBytes;
+
+            // Take whole lines while they fit, the line index makes this a walk over the requested range only
+            int last = from - 1;
+            long bytes = 0;
+            while (last < to) {
+                int lineBytes = lines.byteLength(last + 1);
+                if (bytes + lineBytes > limit && last >= from) {
+                    break;
+                }
+                bytes += lineBytes;
+                last++;
+                if (bytes > limit) {
+                    break;
+                }
+            }
+            if (from == 1 && last == totalLines && bytes <= limit) {
+                // Unchanged full content, so it can be copied verbatim into modification tools
+                return lines.content();
+            }
+            String body = lines.slice(from, last);
+            if (bytes > limit) {
+                // A single line longer than the limit, cut it to the limit in UTF-8 bytes
+                body = body.substring(0, utf8Prefix(body, limit))
+                        + String.format("\n[Line %d truncated to %d bytes]\n", last, limit);
+            }
+            StringBuilder result = new StringBuilder()
+                    .append(String.format("[Lines %d-%d of %d]\n", from, last, totalLines))
+                    .append(body);
+            if (last < to) {
+                if (!body.endsWith("\n")) {
+                    result.append('\n');
+                }
+                result.append(String.format("[Output limited to %d bytes, call readFile with startLine=%d to continue]",
+                        limit, last + 1));
+            }
+            return result.toString();
         } catch (IOException e) {
             String errorMessage = "File read failed: " + relativeFilePath + ", error: " + e.getMessage();
             log.error(errorMessage, e);
@@ -45,6 +108,31 @@ public class FileReadTool extends BaseTool {
         }
     }
 
+    /**
+     * Length of the longest prefix of text that fits in maxBytes of UTF-8, never splitting a surrogate pair
+     */
+    private static int utf8Prefix(String text, int maxBytes) {
+        int bytes = 0;
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            boolean pair = Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1));
+            int charBytes = pair ? 4 : c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+            if (bytes + charBytes > maxBytes) {
+                break;
+            }
+            bytes += charBytes;
+            i += pair ? 2 : 1;
+        }
+        return i;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
     @Override
     public String getToolName() {
         return "readFile";
@@ -73,6 +161,12 @@ public class FileReadTool extends BaseTool {
     @Override
     public String generateToolExecutedResult(JSONObject arguments) {
         String relativeFilePath = arguments.getStr("relativeFilePath");
-        return String.format("[Tool Call] %s %s", getDisplayName(), relativeFilePath);
+        Integer startLine = arguments.getInt("startLine");
+        Integer endLine = arguments.getInt("endLine");
+        if (startLine == null && endLine == null) {
+            return String.format("[Tool Call] %s %s", getDisplayName(), relativeFilePath);
+        }
+        return String.format("[Tool Call] %s %s (lines %s-%s)", getDisplayName(), relativeFilePath,
+                startLine == null ? 1 : startLine, endLine == null ? "end" : endLine);
     }
 }
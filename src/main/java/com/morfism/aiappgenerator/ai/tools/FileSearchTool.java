@@ -0,0 +1,245 @@
+package com.morfism.aiappgenerator.ai.tools;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspace;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspaceManager;
+import com.morfism.aiappgenerator.core.workspace.TextLines;
+import dev.langchain4j.agent.tool.P;
+import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.agent.tool.ToolMemoryId;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * File Search Tool
+ * grep-style search over the project, returns matching lines with their line numbers
+ * so the model can read only the ranges it needs
+ *
+ * Regular expressions come from the model, so their length and matching time are bounded;
+ * files above a size limit (lock files, bundles) are skipped without being read into the workspace
+ */
+@Slf4j
+@Component
+public class FileSearchTool extends BaseTool {
+
+    /**
+     * Matches returned per call
+     */
+    private static final int MAX_MATCHES = 50;
+
+    /**
+     * Matched lines longer than this are cut
+     */
+    private static final int MAX_LINE_LENGTH = 200;
+
+    /**
+     * Longest regular expression accepted
+     */
+    private static final int MAX_REGEX_LENGTH = 500;
+
+    @Resource
+    private ProjectWorkspaceManager projectWorkspaceManager;
+
+    /**
+     * Files larger than this are skipped
+     */
+    @Value("${ai.tools.search-files.max-file-bytes:1048576}")
+    private long maxFileBytes;
+
+    /**
+     * Time a regular expression search may take over all files
+     */
+    @Value("${ai.tools.search-files.regex-timeout-ms:2000}")
+    private long regexTimeoutMs;
+
+    @Tool("File Search Tool: find lines containing a text or regular expression in project files, "
+            + "returns path:line: text for each match")
+    public String searchFiles(
+            @P("Text to search for, case sensitive")
+            String query,
+            @P(value = "Relative directory path to search in, empty for the entire project", required = false)
+            String relativeDirPath,
+            @P(value = "Treat the query as a Java regular expression", required = false)
+            Boolean regex,
+            @ToolMemoryId Long appId
+    ) {
+        if (StrUtil.isEmpty(query)) {
+            return "Error: Search query cannot be empty";
+        }
+        Predicate<String> matcher;
+        if (Boolean.TRUE.equals(regex)) {
+            if (query.length() > MAX_REGEX_LENGTH) {
+                return String.format("Error: Regular expression longer than %d characters", MAX_REGEX_LENGTH);
+            }
+            try {
+                Pattern pattern = Pattern.compile(query);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(regexTimeoutMs);
+                matcher = line -> pattern.matcher(new DeadlineCharSequence(line, deadline)).find();
+            } catch (PatternSyntaxException e) {
+                return "Error: Invalid regular expression - " + e.getDescription();
+            }
+        } else {
+            matcher = line -> line.contains(query);
+        }
+        try {
+            ProjectWorkspace workspace = projectWorkspaceManager.get(appId);
+            String normalizedPath = workspace.normalize(relativeDirPath);
+            if (normalizedPath == null) {
+                return "Error: Invalid directory path, must be inside the project - " + relativeDirPath;
+            }
+            List<String> files = workspace.listFiles(normalizedPath, FileDirReadTool::shouldIgnore);
+            if (files == null) {
+                return "Error: Directory does not exist or is not a directory - " + relativeDirPath;
+            }
+            StringBuilder matches = new StringBuilder();
+            int count = 0;
+            int skipped = 0;
+            boolean limited = false;
+            for (String file : files) {
+                if (workspace.fileSize(file) > maxFileBytes) {
+                    skipped++;
+                    continue;
+                }
+                TextLines lines = readQuietly(workspace, file);
+                if (lines == null) {
+                    continue;
+                }
+                for (int number = 1; number <= lines.lineCount(); number++) {
+                    String line = lines.line(number);
+                    if (!matcher.test(line)) {
+                        continue;
+                    }
+                    if (count == MAX_MATCHES) {
+                        limited = true;
+                        break;
+                    }
+                    count++;
+                    matches.append(file).append(':').append(number).append(": ")
+                            .append(StrUtil.maxLength(line.strip(), MAX_LINE_LENGTH)).append('\n');
+                }
+                if (limited) {
+                    break;
+                }
+            }
+            String skippedNote = skipped == 0 ? ""
+                    : String.format("Skipped %d files larger than %d bytes\n", skipped, maxFileBytes);
+            if (count == 0) {
+                return skippedNote + "No matches found for: " + query;
+            }
+            String header = limited
+                    ? String.format("Found more than %d matches, showing the first %d, narrow the search:\n", MAX_MATCHES, MAX_MATCHES)
+                    : String.format("Found %d matches:\n", count);
+            return skippedNote + header + matches;
+        } catch (SearchTimeoutException e) {
+            return String.format("Error: Regular expression search took longer than %d ms, simplify the pattern "
+                    + "or narrow the directory", regexTimeoutMs);
+        } catch (IOException e) {
+            String errorMessage = "File search failed: " + query + ", error: " + e.getMessage();
+            log.error(errorMessage, e);
+            return errorMessage;
+        }
+    }
+
+    /**
+     * Binary or unreadable files are skipped instead of failing the whole search
+     */
+    private TextLines readQuietly(ProjectWorkspace workspace, String file) {
+        try {
+            return workspace.readLines(file);
+        } catch (IOException e) {
+            log.debug("Skipping unreadable file in search: {}, error: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Line view for the regex matcher that fails once the search deadline passes,
+     * every step of a backtracking match reads a char so a runaway pattern cannot outlive the deadline
+     */
+    private record DeadlineCharSequence(CharSequence text, long deadline) implements CharSequence {
+
+        @Override
+        public char charAt(int index) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new SearchTimeoutException();
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new DeadlineCharSequence(text.subSequence(start, end), deadline);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+
+    private static final class SearchTimeoutException extends RuntimeException {
+
+        SearchTimeoutException() {
+            super(null, null, false, false);
+        }
+    }
+
+    @Override
+    protected boolean isToolExecutionSuccessful(String result) {
+        // Matched lines may contain words like "error", only the tool's own errors count
+        return result != null && !result.startsWith("Error:") && !result.startsWith("File search failed");
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public String getToolName() {
+        return "searchFiles";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Search Files";
+    }
+
+    @Override
+    public String getSuccessIcon() {
+        return "<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 24 24\" fill=\"currentColor\"><path d=\"M15.5 14h-.79l-.28-.27C15.41 12.59 16 11.11 16 9.5 16 5.91 13.09 3 9.5 3S3 5.91 3 9.5 5.91 16 9.5 16c1.61 0 3.09-.59 4.23-1.57l.27.28v.79l5 4.99L20.49 19l-4.99-5zm-6 0C7.01 14 5 11.99 5 9.5S7.01 5 9.5 5 14 7.01 14 9.5 11.99 14 9.5 14z\"/></svg>";
+    }
+
+    @Override
+    public String getFailedIcon() {
+        return "<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 24 24\" fill=\"currentColor\"><path d=\"M15.5 14h-.79l-.28-.27C15.41 12.59 16 11.11 16 9.5 16 5.91 13.09 3 9.5 3S3 5.91 3 9.5 5.91 16 9.5 16c1.61 0 3.09-.59 4.23-1.57l.27.28v.79l5 4.99L20.49 19l-4.99-5zm-6 0C7.01 14 5 11.99 5 9.5S7.01 5 9.5 5 14 7.01 14 9.5 11.99 14 9.5 14z\"/></svg>";
+    }
+
+    @Override
+    public String getOperationType() {
+        return "FILE_SEARCH";
+    }
+
+    @Override
+    public String generateToolExecutedResult(JSONObject arguments) {
+        String query = arguments.getStr("query");
+        String relativeDirPath = arguments.getStr("relativeDirPath");
+        return String.format("[Tool Call] %s \"%s\" in %s", getDisplayName(), query,
+                StrUtil.isBlank(relativeDirPath) ? "project root" : relativeDirPath);
+    }
+}
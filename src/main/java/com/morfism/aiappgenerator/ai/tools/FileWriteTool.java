@@ -2,19 +2,15 @@ package com.morfism.aiappgenerator.ai.tools;
 
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.json.JSONObject;
-import com.morfism.aiappgenerator.constant.AppConstant;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspace;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspaceManager;
 import dev.langchain4j.agent.tool.P;
 import dev.langchain4j.agent.tool.Tool;
 import dev.langchain4j.agent.tool.ToolMemoryId;
+import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-
 /**
  * File Write Tool
  * Supports AI writing files through tool calls
@@ -23,33 +19,23 @@ import java.nio.file.StandardOpenOption;
 @Component
 public class FileWriteTool extends BaseTool {
 
+    @Resource
+    private ProjectWorkspaceManager projectWorkspaceManager;
+
     @Tool("File Write Tool")
     public String writeFile(@P("Relative file path") String relativeFilePath, @P("Content to write to file") String content, @ToolMemoryId Long appId) {
-        try {
-            Path path = Paths.get(relativeFilePath);
-            if (!path.isAbsolute()) {
-                // Handle relative path, create project directory based on appId
-                String projectDirName = "vue_project_" + appId;
-                Path projectRoot = Paths.get(AppConstant.CODE_OUTPUT_ROOT_DIR, projectDirName);
-                path = projectRoot.resolve(relativeFilePath);
-            }
-            // Create parent directory (if it doesn't exist)
-            Path parentDir = path.getParent();
-            if (parentDir != null) {
-                Files.createDirectories(parentDir);
-            }
-            // Write file content
-            Files.write(path, content.getBytes(),
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.TRUNCATE_EXISTING);
-            log.info("Successfully wrote file: {}", path.toAbsolutePath());
-            // Note: return relative path, don't let AI return absolute file path to user
-            return "File written successfully: " + relativeFilePath;
-        } catch (IOException e) {
-            String errorMessage = "File write failed: " + relativeFilePath + ", error: " + e.getMessage();
-            log.error(errorMessage, e);
-            return errorMessage;
+        ProjectWorkspace workspace = projectWorkspaceManager.get(appId);
+        String normalizedPath = workspace.normalize(relativeFilePath);
+        if (normalizedPath == null || normalizedPath.isEmpty()) {
+            return "Error: Invalid file path, must be inside the project - " + relativeFilePath;
+        }
+        // Written to the workspace, the file reaches disk on the next checkpoint or when generation completes
+        if (!workspace.write(normalizedPath, content == null ? "" : content)) {
+            return "Error: Path is a directory - " + relativeFilePath;
         }
+        log.info("Successfully wrote file: {}", normalizedPath);
+        // Note: return relative path, don't let AI return absolute file path to user
+        return "File written successfully: " + relativeFilePath;
     }
 
     @Override
@@ -0,0 +1,455 @@
+package com.morfism.aiappgenerator.ai.tools;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.service.tool.ToolExecution;
+import dev.langchain4j.service.tool.ToolExecutor;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 工具调用并发调度
+ * Tool executors for running the tool calls of one model turn concurrently
+ *
+ * 核心功能：
+ * 1. 只读工具（读文件、读目录、搜索）之间互不等待，同一轮内的多个调用在虚拟线程上并发执行
+ * 2. 每轮的调用计划随模型流式返回的每个完整工具调用逐个登记，先于 langchain4j 派发执行；
+ *    调用要等它之前所有冲突的调用完成（写等前面的全部调用，读等前面的写），[写 A, 读 A] 中的读一定看到写入后的内容
+ * 3. 每个应用一把读写锁：修改类工具持写锁串行执行，只读工具持读锁，计划之外的调用也不会读到写了一半的文件
+ * 4. langchain4j 在各调用完成时回调执行结果，reportInOrder 按请求顺序转发，ToolExecutionHandler 的标记顺序保持确定
+ * 5. 包装的是 BaseTool 提供的计时执行器，记录的执行耗时不含等锁时间
+ */
+@Slf4j
+@Component
+public class ToolCallSequencer {
+
+    /**
+     * Read/write lock stripes, mutating tool calls of the same app are serialized, reads share the lock
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    @Resource
+    private ToolManager toolManager;
+
+    /**
+     * Longest a call waits for the earlier calls of its turn before running anyway
+     */
+    @Value("${ai.tools.concurrent.turn-wait-seconds:120}")
+    private long turnWaitSeconds;
+
+    private final ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[LOCK_STRIPES];
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * memoryId -> tool calls of the app's current model turn
+     */
+    private final Map<String, TurnPlan> turnPlans = new ConcurrentHashMap<>();
+
+    private volatile Map<ToolSpecification, ToolExecutor> toolExecutors;
+
+    /**
+     * Tool name -> whether it only reads the project
+     */
+    private volatile Map<String, Boolean> readOnlyTools;
+
+    public ToolCallSequencer() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Executor the AI service runs concurrent tool calls on
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Tool specifications of every registered tool, each paired with an executor that applies the mutation lock
+     */
+    public Map<ToolSpecification, ToolExecutor> getToolExecutors() {
+        Map<ToolSpecification, ToolExecutor> result = toolExecutors;
+        if (result == null) {
+            synchronized (this) {
+                result = toolExecutors;
+                if (result == null) {
+                    result = buildToolExecutors();
+                    toolExecutors = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Wrap the app's streaming model so each response's tool calls become the plan of the turn
+     * Needed whenever the AI service runs tools concurrently, without a plan calls are only kept apart by the lock.
+     * Calls are planned as the model completes them, before the AI service dispatches them to the executor
+     */
+    public StreamingChatModel planTurns(StreamingChatModel delegate, long appId) {
+        return new TurnPlanningStreamingChatModel(delegate, String.valueOf(appId));
+    }
+
+    private Map<ToolSpecification, ToolExecutor> buildToolExecutors() {
+        Map<ToolSpecification, ToolExecutor> executors = new LinkedHashMap<>();
+        Map<String, Boolean> readOnly = new HashMap<>();
+        for (BaseTool tool : toolManager.getAllTools()) {
+            tool.getToolExecutors().forEach((specification, delegate) -> {
+                executors.put(specification, new SequencedToolExecutor(delegate, tool.isReadOnly()));
+                readOnly.put(specification.name(), tool.isReadOnly());
+                log.info("Tool {} runs {}", specification.name(), tool.isReadOnly() ? "concurrently" : "serialized per app");
+            });
+        }
+        readOnlyTools = Collections.unmodifiableMap(readOnly);
+        return Collections.unmodifiableMap(executors);
+    }
+
+    /**
+     * Forward a tool execution result once the results of all earlier calls of its turn were forwarded
+     * langchain4j reports concurrent calls in completion order, markers built from them must follow request order.
+     * Calls outside a plan, e.g. when tools run one at a time, are forwarded at once
+     *
+     * @param memoryId  memory id the calls ran under
+     * @param execution a completed tool call
+     * @param handler   receives the results in request order, possibly on another call's thread
+     */
+    public void reportInOrder(Object memoryId, ToolExecution execution, Consumer<ToolExecution> handler) {
+        String key = String.valueOf(memoryId);
+        TurnPlan plan = turnPlans.get(key);
+        if (plan == null || !plan.report(execution, handler)) {
+            handler.accept(execution);
+            return;
+        }
+        if (plan.isComplete()) {
+            turnPlans.remove(key, plan);
+        }
+    }
+
+    /**
+     * Add a tool call the model just completed to the app's turn, starting a new turn after a complete response
+     */
+    private void planCall(String memoryId, ToolExecutionRequest request) {
+        turnPlans.compute(memoryId, (key, plan) -> {
+            TurnPlan current = plan == null || plan.isSealed() ? new TurnPlan(readOnlyTools()) : plan;
+            current.add(request);
+            return current;
+        });
+    }
+
+    /**
+     * All tool calls of the response are known, calls the model did not stream one by one are added now
+     */
+    private void sealTurn(String memoryId, List<ToolExecutionRequest> requests) {
+        TurnPlan plan = turnPlans.compute(memoryId, (key, existing) -> {
+            TurnPlan current = existing == null || existing.isSealed() ? new TurnPlan(readOnlyTools()) : existing;
+            current.seal(requests);
+            return current;
+        });
+        if (plan.isComplete()) {
+            turnPlans.remove(memoryId, plan);
+        }
+    }
+
+    private Map<String, Boolean> readOnlyTools() {
+        Map<String, Boolean> readOnly = readOnlyTools;
+        if (readOnly == null) {
+            getToolExecutors();
+            readOnly = readOnlyTools;
+        }
+        return readOnly;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private ReentrantReadWriteLock lockFor(String memoryId) {
+        return locks[(memoryId.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    /**
+     * Runs a tool once the conflicting earlier calls of its turn are done, holding its app's read or write lock
+     */
+    private class SequencedToolExecutor implements ToolExecutor {
+
+        private final ToolExecutor delegate;
+
+        private final boolean readOnly;
+
+        private SequencedToolExecutor(ToolExecutor delegate, boolean readOnly) {
+            this.delegate = delegate;
+            this.readOnly = readOnly;
+        }
+
+        @Override
+        public String execute(ToolExecutionRequest request, Object memoryId) {
+            String key = String.valueOf(memoryId);
+            TurnPlan plan = turnPlans.get(key);
+            int index = plan == null ? -1 : plan.indexOf(request, false);
+            if (index < 0) {
+                log.debug("Tool call {} of app {} is not in a turn plan, only the lock orders it", request.name(), key);
+            }
+            try {
+                if (index >= 0 && !plan.awaitTurn(index, TimeUnit.SECONDS.toNanos(turnWaitSeconds))) {
+                    log.warn("Tool call {} of app {} waited {}s for earlier calls, running anyway", request.name(), key, turnWaitSeconds);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                plan.finish(index);
+                throw new IllegalStateException("Interrupted while waiting for earlier tool calls", e);
+            }
+            ReentrantReadWriteLock rwLock = lockFor(key);
+            Lock lock = readOnly ? rwLock.readLock() : rwLock.writeLock();
+            lock.lock();
+            try {
+                return delegate.execute(request, memoryId);
+            } finally {
+                lock.unlock();
+                if (index >= 0) {
+                    plan.finish(index);
+                    if (plan.isComplete()) {
+                        turnPlans.remove(key, plan);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tool calls of one model response, in request order
+     * A call conflicts with an earlier one when either of them mutates the project.
+     * The plan is complete once the response is sealed and every call has run and been reported
+     */
+    private static final class TurnPlan {
+
+        private final Map<String, Boolean> readOnlyTools;
+
+        private final List<PlannedCall> calls = new ArrayList<>();
+
+        private boolean sealed;
+
+        /**
+         * Index of the first call whose result was not forwarded yet
+         */
+        private int nextReport;
+
+        private TurnPlan(Map<String, Boolean> readOnlyTools) {
+            this.readOnlyTools = readOnlyTools;
+        }
+
+        private synchronized void add(ToolExecutionRequest request) {
+            Boolean readOnly = readOnlyTools.get(request.name());
+            // Hallucinated tools never reach a sequenced executor, nothing waits for them to run
+            calls.add(new PlannedCall(request, readOnly != null && !readOnly, readOnly == null));
+        }
+
+        private synchronized void seal(List<ToolExecutionRequest> requests) {
+            for (ToolExecutionRequest request : requests) {
+                if (indexOf(request, true) < 0) {
+                    add(request);
+                }
+            }
+            sealed = true;
+        }
+
+        private synchronized boolean isSealed() {
+            return sealed;
+        }
+
+        private synchronized boolean isComplete() {
+            if (!sealed || nextReport < calls.size()) {
+                return false;
+            }
+            for (PlannedCall call : calls) {
+                if (!call.done) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Position of the request, langchain4j hands the executor the same request objects the model completed
+         *
+         * @param reported whether to match calls whose result was already forwarded
+         */
+        private synchronized int indexOf(ToolExecutionRequest request, boolean reported) {
+            for (int i = 0; i < calls.size(); i++) {
+                if (calls.get(i).request == request) {
+                    return i;
+                }
+            }
+            for (int i = 0; i < calls.size(); i++) {
+                PlannedCall call = calls.get(i);
+                boolean open = reported ? call.result == null : !call.done;
+                if (open && call.request.equals(request)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return false when the wait timed out
+         */
+        private synchronized boolean awaitTurn(int index, long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (blocked(index)) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            return true;
+        }
+
+        private synchronized void finish(int index) {
+            PlannedCall call = calls.get(index);
+            if (!call.done) {
+                call.done = true;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Hold the result until every earlier call was reported, then forward all results that are next in line
+         *
+         * @return false when the call is not part of this plan
+         */
+        private synchronized boolean report(ToolExecution execution, Consumer<ToolExecution> handler) {
+            int index = indexOf(execution.request(), true);
+            if (index < 0 || index < nextReport) {
+                return false;
+            }
+            calls.get(index).result = execution;
+            while (nextReport < calls.size() && calls.get(nextReport).result != null) {
+                handler.accept(calls.get(nextReport).result);
+                nextReport++;
+            }
+            return true;
+        }
+
+        private boolean blocked(int index) {
+            for (int i = 0; i < index; i++) {
+                PlannedCall earlier = calls.get(i);
+                if (!earlier.done && (earlier.mutating || calls.get(index).mutating)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * One call of a turn plan, guarded by the plan's monitor
+     */
+    private static final class PlannedCall {
+
+        private final ToolExecutionRequest request;
+
+        private final boolean mutating;
+
+        private boolean done;
+
+        private ToolExecution result;
+
+        private PlannedCall(ToolExecutionRequest request, boolean mutating, boolean done) {
+            this.request = request;
+            this.mutating = mutating;
+            this.done = done;
+        }
+    }
+
+    /**
+     * Streaming model recording the tool calls of each complete response as the app's turn plan
+     */
+    private class TurnPlanningStreamingChatModel implements StreamingChatModel {
+
+        private final StreamingChatModel delegate;
+
+        private final String memoryId;
+
+        private TurnPlanningStreamingChatModel(StreamingChatModel delegate, String memoryId) {
+            this.delegate = delegate;
+            this.memoryId = memoryId;
+        }
+
+        @Override
+        public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+            delegate.chat(chatRequest, new StreamingChatResponseHandler() {
+                @Override
+                public void onPartialResponse(String partialResponse) {
+                    handler.onPartialResponse(partialResponse);
+                }
+
+                @Override
+                public void onPartialThinking(PartialThinking partialThinking) {
+                    handler.onPartialThinking(partialThinking);
+                }
+
+                @Override
+                public void onPartialToolCall(PartialToolCall partialToolCall) {
+                    handler.onPartialToolCall(partialToolCall);
+                }
+
+                @Override
+                public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+                    // The AI service starts running the call as soon as it gets it, plan it first
+                    planCall(memoryId, completeToolCall.toolExecutionRequest());
+                    handler.onCompleteToolCall(completeToolCall);
+                }
+
+                @Override
+                public void onCompleteResponse(ChatResponse completeResponse) {
+                    if (completeResponse.aiMessage() != null && completeResponse.aiMessage().hasToolExecutionRequests()) {
+                        sealTurn(memoryId, completeResponse.aiMessage().toolExecutionRequests());
+                    }
+                    handler.onCompleteResponse(completeResponse);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    // The turn will not be completed, later calls must not wait for it
+                    turnPlans.remove(memoryId);
+                    handler.onError(error);
+                }
+            });
+        }
+
+        @Override
+        public Set<Capability> supportedCapabilities() {
+            return delegate.supportedCapabilities();
+        }
+    }
+}
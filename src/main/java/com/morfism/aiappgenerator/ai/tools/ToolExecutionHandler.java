@@ -1,11 +1,15 @@
 package com.morfism.aiappgenerator.ai.tools;
 
+import com.morfism.aiappgenerator.core.stream.SegmentedCharBuffer;
+import com.morfism.aiappgenerator.utils.JsonFieldExtractor;
 import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.service.tool.ToolExecution;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.FluxSink;
 
 import jakarta.annotation.Resource;
+import java.util.Map;
 
 /**
  * Tool Execution Handler
@@ -15,6 +19,11 @@ import jakarta.annotation.Resource;
 @Component
 public class ToolExecutionHandler {
 
+    /**
+     * Argument fields that may carry the target path of a tool call
+     */
+    private static final String[] PATH_FIELDS = {"relativeFilePath", "fileName", "path", "relativeDirPath"};
+
     @Resource
     private ToolManager toolManager;
 
@@ -23,15 +32,14 @@ public class ToolExecutionHandler {
      * Generate corresponding status markers and response information based on tool type
      *
      * @param toolExecution tool execution object
-     * @param responseBuilder response builder
+     * @param responseBuilder buffer collecting the full response for chat history
      * @param sink Flux emitter
      * @param appId application ID
      */
-    public void handleToolExecution(Object toolExecution, StringBuilder responseBuilder, FluxSink<String> sink, Long appId) {
+    public void handleToolExecution(ToolExecution toolExecution, SegmentedCharBuffer responseBuilder, FluxSink<String> sink, Long appId) {
         try {
-            // Use reflection to get tool execution information
-            ToolExecutionRequest request = getToolExecutionRequest(toolExecution);
-            String result = getToolExecutionResult(toolExecution);
+            ToolExecutionRequest request = toolExecution.request();
+            String result = toolExecution.result();
             
             if (request == null) {
                 log.warn("❌ Failed to extract tool execution request for appId: {}", appId);
@@ -39,7 +47,6 @@ public class ToolExecutionHandler {
             }
 
             String toolName = request.name();
-            String fileName = extractFileNameFromArguments(request.arguments());
             
             log.info("🛠️ Tool executed: {} (id: {}) for appId: {}", toolName, request.id(), appId);
             
@@ -50,7 +57,20 @@ public class ToolExecutionHandler {
                 return;
             }
 
+            // Multi-file tools report one marker per file
+            Map<String, Boolean> fileResults = tool.resolveFileResults(result);
+            if (fileResults != null) {
+                StringBuilder markers = new StringBuilder();
+                fileResults.forEach((path, isSuccessful) ->
+                        markers.append(generateToolMarker(tool.getOperationType(), toFileName(path), isSuccessful)));
+                responseBuilder.append(markers);
+                log.info("📝 Added {} file markers to responseBuilder for tool: {}", fileResults.size(), toolName);
+                sink.next(markers.toString());
+                return;
+            }
+
             // Check if execution was successful
+            String fileName = extractFileNameFromArguments(request.arguments());
             boolean isSuccessful = tool.isToolExecutionSuccessful(result);
             String marker = generateToolMarker(tool.getOperationType(), fileName, isSuccessful);
             
@@ -88,65 +108,26 @@ public class ToolExecutionHandler {
 
     /**
      * Extract file name from tool arguments
+     * Only the top level of the arguments is scanned and scanning stops at the first path field,
+     * so file bodies of large writes are skipped without being copied
      */
     private String extractFileNameFromArguments(String arguments) {
-        try {
-            if (arguments != null) {
-                // Find various possible file path fields
-                String[] pathFields = {"relativeFilePath", "fileName", "path", "relativeDirPath"};
-                
-                for (String field : pathFields) {
-                    String fieldPattern = "\"" + field + "\"";
-                    if (arguments.contains(fieldPattern)) {
-                        int start = arguments.indexOf(fieldPattern) + fieldPattern.length();
-                        int valueStart = arguments.indexOf("\"", start) + 1;
-                        int valueEnd = arguments.indexOf("\"", valueStart);
-                        if (valueStart > 0 && valueEnd > valueStart) {
-                            String fullPath = arguments.substring(valueStart, valueEnd);
-                            
-                            // Handle special cases
-                            if ("relativeDirPath".equals(field) && fullPath.isEmpty()) {
-                                return "project root";
-                            }
-                            
-                            // Return only the filename part
-                            int lastSlash = fullPath.lastIndexOf('/');
-                            return lastSlash != -1 ? fullPath.substring(lastSlash + 1) : fullPath;
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.debug("Failed to extract file name from arguments: {}", e.getMessage());
+        String fullPath = JsonFieldExtractor.extractTopLevelString(arguments, PATH_FIELDS);
+        if (fullPath == null) {
+            return "unknown file";
         }
-        return "unknown file";
-    }
-
-    /**
-     * Get tool execution request through reflection
-     */
-    private ToolExecutionRequest getToolExecutionRequest(Object toolExecution) {
-        try {
-            return (ToolExecutionRequest) toolExecution.getClass()
-                .getMethod("request")
-                .invoke(toolExecution);
-        } catch (Exception e) {
-            log.debug("Failed to get tool execution request: {}", e.getMessage());
-            return null;
+        // Handle special cases, an empty directory path means the project root
+        if (fullPath.isEmpty()) {
+            return "project root";
         }
+        return toFileName(fullPath);
     }
 
     /**
-     * Get tool execution result through reflection
+     * Return only the filename part of a path
      */
-    private String getToolExecutionResult(Object toolExecution) {
-        try {
-            return (String) toolExecution.getClass()
-                .getMethod("result")
-                .invoke(toolExecution);
-        } catch (Exception e) {
-            log.debug("Failed to get tool execution result: {}", e.getMessage());
-            return null;
-        }
+    private String toFileName(String fullPath) {
+        int lastSlash = fullPath.lastIndexOf('/');
+        return lastSlash != -1 ? fullPath.substring(lastSlash + 1) : fullPath;
     }
 }
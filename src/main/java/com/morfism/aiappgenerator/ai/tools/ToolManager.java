@@ -1,11 +1,15 @@
 package com.morfism.aiappgenerator.ai.tools;
 
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.service.tool.ToolExecutor;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -58,6 +62,19 @@ public class ToolManager {
         return tools;
     }
 
+    /**
+     * Get executors of every registered tool, for AI services that run tool calls one at a time
+     *
+     * @return tool specification -> timed executor
+     */
+    public Map<ToolSpecification, ToolExecutor> getToolExecutors() {
+        Map<ToolSpecification, ToolExecutor> executors = new LinkedHashMap<>();
+        for (BaseTool tool : tools) {
+            executors.putAll(tool.getToolExecutors());
+        }
+        return Collections.unmodifiableMap(executors);
+    }
+
     /**
      * Check if tool exists
      *
@@ -1,14 +1,18 @@
 package com.morfism.aiappgenerator.controller;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.exceptions.ExceptionUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
-import com.morfism.aiappgenerator.ai.AiCodeGeneratorService;
 import com.morfism.aiappgenerator.annotation.AuthCheck;
 import com.morfism.aiappgenerator.common.BaseResponse;
 import com.morfism.aiappgenerator.common.DeleteRequest;
 import com.morfism.aiappgenerator.common.ResultUtils;
 import com.morfism.aiappgenerator.constant.AppConstant;
+import com.morfism.aiappgenerator.core.metrics.GenerationMetrics;
+import com.morfism.aiappgenerator.core.naming.AppNameGenerator;
+import com.morfism.aiappgenerator.core.stream.ChunkCoalescer;
+import com.morfism.aiappgenerator.core.stream.GenerationChunk;
 import com.morfism.aiappgenerator.exception.BusinessException;
 import com.morfism.aiappgenerator.model.dto.app.*;
 import com.morfism.aiappgenerator.model.enums.CodeGenTypeEnum;
@@ -21,13 +25,14 @@ import com.morfism.aiappgenerator.model.vo.AppVO;
 import com.morfism.aiappgenerator.service.AppService;
 import com.morfism.aiappgenerator.service.ProjectDownloadService;
 import com.morfism.aiappgenerator.service.UserService;
+import com.morfism.aiappgenerator.utils.JsonStringEncoder;
 import com.mybatisflex.core.paginate.Page;
-import com.mybatisflex.core.query.QueryWrapper;
 
 import jakarta.annotation.Resource;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
@@ -35,8 +40,8 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.File;
+import java.time.Duration;
 import java.util.List;
-import java.util.Map;
 
 
 /**
@@ -53,11 +58,32 @@ public class AppController {
     private UserService userService;
 
     @Autowired
-    private AiCodeGeneratorService aiCodeGeneratorService;
+    private AppNameGenerator appNameGenerator;
+
+    @Autowired
+    private GenerationMetrics generationMetrics;
 
     @Autowired
     private ProjectDownloadService projectDownloadService;
 
+    /**
+     * 流式输出合并窗口，0 表示每个分片单独发送
+     */
+    @Value("${sse.coalesce.window-ms:20}")
+    private long coalesceWindowMs;
+
+    /**
+     * 合并内容达到该字符数时立即发送
+     */
+    @Value("${sse.coalesce.max-chars:2048}")
+    private int coalesceMaxChars;
+
+    /**
+     * 单个连接最多积压的事件数，客户端读得太慢时断开，由其带 Last-Event-ID 重连补发
+     */
+    @Value("${sse.max-pending-events:1024}")
+    private int maxPendingEvents;
+
     /**
      * 用户创建应用（需填写 initPrompt）
      * 
@@ -93,15 +119,20 @@ public class AppController {
             }
         }
 
-        // 如果未提供 appName，使用 AI 自动生成
+        // 如果未提供 appName，先用缓存名称或占位名创建，AI 生成的名称在后台写回
+        boolean namePending = false;
         if (StrUtil.isBlank(addRequest.getAppName())) {
-            String generatedAppName = aiCodeGeneratorService.generateAppName(addRequest.getInitPrompt());
-            app.setAppName(generatedAppName);
+            String initialName = appNameGenerator.initialName(addRequest.getInitPrompt());
+            app.setAppName(initialName);
+            namePending = appNameGenerator.isPlaceholder(initialName, addRequest.getInitPrompt());
         }
 
         app.setUserId(loginUser.getId());
         boolean result = appService.save(app);
         ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR);
+        if (namePending) {
+            appNameGenerator.generateAsync(app.getId(), addRequest.getInitPrompt());
+        }
         return ResultUtils.success(app.getId());
     }
 
@@ -160,8 +191,7 @@ public class AppController {
         long pageNum = appQueryRequest.getPageNum();
         // 只查询当前用户的应用
         appQueryRequest.setUserId(loginUser.getId());
-        QueryWrapper queryWrapper = appService.getQueryWrapper(appQueryRequest);
-        Page<App> appPage = appService.page(Page.of(pageNum, pageSize), queryWrapper);
+        Page<App> appPage = appService.searchAppPage(appQueryRequest);
         // 数据封装
         Page<AppVO> appVOPage = new Page<>(pageNum, pageSize, appPage.getTotalRow());
         List<AppVO> appVOList = appService.getAppVOList(appPage.getRecords());
@@ -207,9 +237,8 @@ public class AppController {
         long pageNum = appQueryRequest.getPageNum();
         // 只查询精选的应用
         appQueryRequest.setPriority(AppConstant.SELECTED_APP_PRIORITY);
-        QueryWrapper queryWrapper = appService.getQueryWrapper(appQueryRequest);
         // 分页查询
-        Page<App> appPage = appService.page(Page.of(pageNum, pageSize), queryWrapper);
+        Page<App> appPage = appService.searchAppPage(appQueryRequest);
         // 数据封装
         Page<AppVO> appVOPage = new Page<>(pageNum, pageSize, appPage.getTotalRow());
         List<AppVO> appVOList = appService.getAppVOList(appPage.getRecords());
@@ -229,8 +258,7 @@ public class AppController {
         ThrowUtils.throwIf(appQueryRequest == null, ErrorCode.PARAMS_ERROR);
         long pageNum = appQueryRequest.getPageNum();
         long pageSize = appQueryRequest.getPageSize();
-        QueryWrapper queryWrapper = appService.getQueryWrapper(appQueryRequest);
-        Page<App> appPage = appService.page(Page.of(pageNum, pageSize), queryWrapper);
+        Page<App> appPage = appService.searchAppPage(appQueryRequest);
         // 数据封装
         Page<AppVO> appVOPage = new Page<>(pageNum, pageSize, appPage.getTotalRow());
         List<AppVO> appVOList = appService.getAppVOList(appPage.getRecords());
@@ -239,6 +267,18 @@ public class AppController {
     }
 
 
+    /**
+     * 管理员重建应用全文索引
+     *
+     * @return 索引的应用数量
+     */
+    @PostMapping("/admin/search/rebuild")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Integer> rebuildSearchIndex() {
+        return ResultUtils.success(appService.rebuildSearchIndex());
+    }
+
+
     /**
      * 应用聊天生成代码（流式 SSE）
      * 
@@ -249,16 +289,19 @@ public class AppController {
      *
      * @param appId   应用 ID
      * @param message 用户消息
+     * @param lastEventId 续传位置（非 EventSource 客户端使用），格式 streamId:seq
+     * @param lastEventIdHeader 浏览器 EventSource 重连时自动携带的 Last-Event-ID
      * @param request 请求对象
      * @return 生成结果流
      * 
-     * SSE数据格式:
+     * SSE数据格式（每个事件带 id: streamId:seq）:
      * - 普通响应: {"q": "AI生成的内容"}
      * - 工具执行: {"q": "\n[TOOL_EXECUTED:writeFile:tool-id]"}
      * - 文件写入成功: {"q": "\n[FILE_WRITE_SUCCESS:filename.vue]"}
      * - 文件写入失败: {"q": "\n[FILE_WRITE_FAILED:filename.vue]"}
      * - 生成完成: {"q": "\n[GENERATION_COMPLETE]"}
      * - 流结束事件: event="done", data=""
+     * - 业务错误事件（限流拒绝、生成冲突等）: event="business-error", data={"code": 42900, "data": null, "message": "..."}，随后仍发送 done
      * 
      * 前端处理示例:
      * ```javascript
@@ -294,29 +337,60 @@ public class AppController {
      * - Vue项目生成会通过工具调用实时写入文件
      * - 聊天历史会在生成完成后自动保存
      * - 支持多个前端同时订阅同一个流
+     * - 断线重连时带上 Last-Event-ID 只补发缺失的内容，不会重新生成
+     * - 缺失的内容已超出回放缓冲区，或流已过期、不在本实例时发送 business-error，不补发残缺的流
      */
     @GetMapping(value = "/chat/gen/code", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<ServerSentEvent<String>> chatToGenCode(@RequestParam Long appId,
                                                        @RequestParam String message,
                                                        @RequestParam(required = false) String adapt,
+                                                       @RequestParam(required = false) String lastEventId,
+                                                       @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
                                                        HttpServletRequest request) {
         // 参数校验
         ThrowUtils.throwIf(appId == null || appId <= 0, ErrorCode.PARAMS_ERROR, "应用ID无效");
         ThrowUtils.throwIf(StrUtil.isBlank(message), ErrorCode.PARAMS_ERROR, "用户消息不能为空");
         // 获取当前登录用户
         User loginUser = userService.getLoginUser(request);
-        // 调用服务生成代码（流式），传递adapt参数
-        Flux<String> contentFlux = appService.chatToGenCode(appId, message, adapt, loginUser);
-        return contentFlux
+        Flux<GenerationChunk> chunkFlux;
+        String resumeFrom = StrUtil.isNotBlank(lastEventIdHeader) ? lastEventIdHeader : lastEventId;
+        if (StrUtil.isNotBlank(resumeFrom)) {
+            // 断线重连：只补发缺失的分片，不重新调用模型；流已无法续传时同样以 business-error 告知前端重新加载历史
+            chunkFlux = Flux.defer(() -> appService.resumeGenCode(appId, resumeFrom, loginUser));
+        } else {
+            // 调用服务生成代码（流式），传递adapt参数；同步抛出的业务异常也走下面的错误事件
+            chunkFlux = Flux.defer(() -> appService.chatToGenCode(appId, message, adapt, loginUser));
+        }
+        // 连续到达的小分片合并后再编码发送，减少 SSE 事件数；工具标记仍单独成事件
+        Flux<ServerSentEvent<String>> events = ChunkCoalescer.coalesce(chunkFlux, Duration.ofMillis(coalesceWindowMs), coalesceMaxChars)
+                // 积压有上限：生成内容已保存在回放缓冲区中，慢连接断开后可以续传，不必在内存里无限排队
+                .onBackpressureBuffer(maxPendingEvents)
                 .map(chunk -> {
-                    Map<String, String> wrapper = Map.of("q", chunk);
-                    String jsonData = JSONUtil.toJsonStr(wrapper);
-                    return ServerSentEvent.<String>builder().data(jsonData).build();
-
-                }).concatWith(Mono.just(
+                    String jsonData = JsonStringEncoder.singleField("q", chunk.data());
+                    // id 为 streamId:seq，浏览器重连时通过 Last-Event-ID 带回
+                    return ServerSentEvent.<String>builder().id(chunk.eventId()).data(jsonData).build();
+
+                })
+                // 限流拒绝、生成冲突等业务异常以 business-error 事件明确告知前端，而不是直接断开连接
+                .onErrorResume(e -> {
+                    Throwable businessException = ExceptionUtil.getCausedBy(e, BusinessException.class);
+                    return businessException != null
+                            ? Flux.just(businessErrorEvent((BusinessException) businessException))
+                            : Flux.error(e);
+                })
+                .concatWith(Mono.just(
                         ServerSentEvent.<String>builder().event("done").data("").build()
                 ));
+        // 连接期间计入活跃 SSE 流
+        return generationMetrics.trackSseStream(events);
+    }
 
+    /**
+     * SSE 业务错误事件，数据格式与普通接口的错误响应一致
+     */
+    private ServerSentEvent<String> businessErrorEvent(BusinessException e) {
+        String jsonData = JSONUtil.toJsonStr(ResultUtils.error(e.getCode(), e.getMessage()));
+        return ServerSentEvent.<String>builder().event("business-error").data(jsonData).build();
     }
 
     /**
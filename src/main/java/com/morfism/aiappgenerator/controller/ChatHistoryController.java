@@ -9,6 +9,7 @@ import com.morfism.aiappgenerator.common.ResultUtils;
 import com.morfism.aiappgenerator.constant.UserConstant;
 import com.morfism.aiappgenerator.exception.ErrorCode;
 import com.morfism.aiappgenerator.exception.ThrowUtils;
+import com.morfism.aiappgenerator.manager.ChatHistoryArchiver;
 import com.morfism.aiappgenerator.model.dto.chathistory.ChatHistoryAddRequest;
 import com.morfism.aiappgenerator.model.entity.User;
 import com.morfism.aiappgenerator.service.AppService;
@@ -16,6 +17,7 @@ import com.morfism.aiappgenerator.service.ChatHistoryService;
 import com.morfism.aiappgenerator.service.UserService;
 import com.mybatisflex.core.query.QueryWrapper;
 import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -26,6 +28,7 @@ import java.time.LocalDateTime;
  *
  * @author Morfism
  */
+@Slf4j
 @RestController
 @RequestMapping("/chat-history")
 public class ChatHistoryController {
@@ -36,6 +39,9 @@ public class ChatHistoryController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private ChatHistoryArchiver chatHistoryArchiver;
+
     @Autowired
     private AppService appService;
 
@@ -122,4 +128,48 @@ public class ChatHistoryController {
         return ResultUtils.success(deletedCount);
     }
 
+
+    /**
+     * 管理员触发历史消息压缩迁移（后台执行）
+     * Compress existing large messages in the background, admin only
+     *
+     * @return whether the migration was started
+     */
+    @PostMapping("/admin/compress")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> compressHistoricalMessages() {
+        Thread.ofVirtual().name("chat-history-compression").start(() -> {
+            try {
+                int compressed = chatHistoryService.compressHistoricalMessages();
+                if (compressed < 0) {
+                    log.info("Chat history compression migration already running");
+                }
+            } catch (Exception e) {
+                log.error("Chat history compression migration failed: {}", e.getMessage(), e);
+            }
+        });
+        return ResultUtils.success(true);
+    }
+
+    /**
+     * 管理员立即触发一次聊天记录归档（后台执行）
+     * Run the archival job now in the background, admin only
+     *
+     * @return whether the job was started
+     */
+    @PostMapping("/admin/archive")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> archiveChatHistory() {
+        Thread.ofVirtual().name("chat-history-archival").start(() -> {
+            try {
+                if (chatHistoryArchiver.archive() < 0) {
+                    log.info("Chat history archival already running");
+                }
+            } catch (Exception e) {
+                log.error("Chat history archival failed: {}", e.getMessage(), e);
+            }
+        });
+        return ResultUtils.success(true);
+    }
+
 }
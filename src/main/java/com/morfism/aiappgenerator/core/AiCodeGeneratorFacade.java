@@ -1,27 +1,22 @@
 package com.morfism.aiappgenerator.core;
 
 import cn.hutool.core.util.StrUtil;
-import com.morfism.aiappgenerator.ai.AiCodeGeneratorService;
 //import com.morfism.aiappgenerator.ai.model.HtmlCodeResult;
 //import com.morfism.aiappgenerator.ai.model.MultiFileCodeResult;
 
-import com.morfism.aiappgenerator.ai.AiCodeGeneratorServiceFactory;
-import com.morfism.aiappgenerator.ai.tools.ToolExecutionHandler;
-import com.morfism.aiappgenerator.constant.AppConstant;
-import com.morfism.aiappgenerator.core.builder.VueProjectBuilder;
-import com.morfism.aiappgenerator.core.parser.CodeParserExecutor;
-import com.morfism.aiappgenerator.core.saver.CodeFileSaverExecutor;
+import com.morfism.aiappgenerator.core.pipeline.GenerationPipeline;
 import com.morfism.aiappgenerator.exception.BusinessException;
 import com.morfism.aiappgenerator.exception.ErrorCode;
 import com.morfism.aiappgenerator.model.enums.CodeGenTypeEnum;
-import com.morfism.aiappgenerator.service.ChatHistoryService;
-import dev.langchain4j.service.TokenStream;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 
-import java.io.File;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * AI代码生成门面类，整合代码生成和文件保存功能
@@ -29,25 +24,32 @@ import java.io.File;
  * 
  * 核心功能：
  * 1. 统一代码生成入口，支持同步和异步模式
- * 2. 根据生成类型自动选择合适的AI服务
- * 3. 集成代码解析和文件保存流程
- * 4. 提供响应式流式代码生成能力
+ * 2. 根据生成类型分发到对应的生成流水线（core.pipeline），由流水线创建 AI 流并完成解析和保存
+ * 3. 提供响应式流式代码生成能力
  */
 @Slf4j
 @Service
 public class AiCodeGeneratorFacade {
 
     @Resource
-    private AiCodeGeneratorServiceFactory aiCodeGeneratorServiceFactory;
-    
-    @Resource
-    private ChatHistoryService chatHistoryService;
-
-    @Resource
-    private VueProjectBuilder vueProjectBuilder;
+    private List<GenerationPipeline> generationPipelines;
 
-    @Resource
-    private ToolExecutionHandler toolExecutionHandler;
+    /**
+     * Pipeline of each code generation type
+     */
+    private final Map<CodeGenTypeEnum, GenerationPipeline> pipelines = new EnumMap<>(CodeGenTypeEnum.class);
+
+    @PostConstruct
+    public void init() {
+        for (GenerationPipeline pipeline : generationPipelines) {
+            GenerationPipeline previous = pipelines.put(pipeline.getCodeGenType(), pipeline);
+            if (previous != null) {
+                throw new IllegalStateException("Two generation pipelines for " + pipeline.getCodeGenType()
+                        + ": " + previous.getClass().getSimpleName() + ", " + pipeline.getClass().getSimpleName());
+            }
+        }
+        log.info("Generation pipelines: {}", pipelines.keySet());
+    }
 
 //    /**
 //     * 统一代码生成入口：根据类型生成并保存代码（同步模式）
@@ -138,169 +140,13 @@ public class AiCodeGeneratorFacade {
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "User ID cannot be null or invalid");
         }
 
-        AiCodeGeneratorService aiCodeGeneratorService = aiCodeGeneratorServiceFactory.getAiCodeGeneratorService(appId, codeGenTypeEnum);
-        
-        // 获取原始AI流
-        Flux<String> originalStream = switch (codeGenTypeEnum) {
-            case HTML -> aiCodeGeneratorService.generateHtmlCodeStream(userMessage);
-            case MULTI_FILE -> aiCodeGeneratorService.generateMultiFileCodeStream(userMessage);
-            case VUE_PROJECT -> aiCodeGeneratorService.generateVueProjectCodeStream(appId, userMessage);
-            default -> {
-                String errorMessage = "Unsupported code generation type: " + codeGenTypeEnum.getValue();
-                throw new BusinessException(ErrorCode.SYSTEM_ERROR, errorMessage);
-            }
-        };
+        GenerationPipeline pipeline = pipelines.get(codeGenTypeEnum);
+        if (pipeline == null) {
+            String errorMessage = "Unsupported code generation type: " + codeGenTypeEnum.getValue();
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, errorMessage);
+        }
 
-        // 根据代码生成类型选择不同的流处理逻辑
-        Flux<String> processedStream = switch (codeGenTypeEnum) {
-            case HTML, MULTI_FILE -> processTraditionalStream(originalStream, codeGenTypeEnum, appId, userId);
-            case VUE_PROJECT -> processVueProjectStreamWithToolCallbacks(userMessage, appId, userId);
-            default -> originalStream; // fallback
-        };
-        
         // 转换为热流，支持多个订阅者
-        return processedStream.share();
+        return pipeline.generate(userMessage, appId, userId).share();
     }
-
-    /**
-     * 处理传统格式(HTML/MULTI_FILE)的流式传输
-     * Process traditional format (HTML/MULTI_FILE) streaming
-     */
-    private Flux<String> processTraditionalStream(Flux<String> originalStream, CodeGenTypeEnum codeGenTypeEnum, Long appId, Long userId) {
-        Flux<String> sharedStream = originalStream.share();
-        
-        // 后台独立订阅：确保完整处理和存储
-        StringBuilder codeBuilder = new StringBuilder();
-        sharedStream
-                .doOnNext(codeBuilder::append)
-                .doOnComplete(() -> {
-                    // 后台保存逻辑，不依赖前端连接
-                    String completeCode = codeBuilder.toString();
-                    
-                    // 1. 保存代码文件
-                    try {
-                        Object parsedResult = CodeParserExecutor.executeParser(completeCode, codeGenTypeEnum);
-                        File savedDir = CodeFileSaverExecutor.executeSaver(parsedResult, codeGenTypeEnum, appId);
-                        log.info("Background code saved successfully to: " + savedDir.getAbsolutePath());
-                    } catch (Exception e) {
-                        log.error("Failed to save code in background: {}", e.getMessage());
-                    }
-                    
-                    // 2. 保存聊天历史
-                    try {
-                        if (StrUtil.isNotBlank(completeCode)) {
-                            chatHistoryService.saveAiMessage(appId, completeCode, userId);
-                            log.info("Background chat history saved successfully for appId: {}", appId);
-                        }
-                    } catch (Exception e) {
-                        log.warn("Failed to save AI response to chat history in background: {}", e.getMessage());
-                    }
-                })
-                .doOnError(throwable -> {
-                    log.error("Background code processing failed: {}", throwable.getMessage());
-                    // 保存错误消息到聊天历史
-                    try {
-                        chatHistoryService.saveErrorMessage(appId, 
-                                "Code generation failed: " + throwable.getMessage(), 
-                                userId);
-                    } catch (Exception e) {
-                        log.warn("Failed to save error message to chat history: {}", e.getMessage());
-                    }
-                })
-                .subscribe(); // 后台独立订阅，不依赖前端连接
-        
-        return sharedStream;
-    }
-
-
-
-    /**
-     * 为Vue项目实现带有工具回调的流式传输（使用TokenStream）
-     * Vue project streaming with tool callbacks using TokenStream API
-     * 
-     * 特点：
-     * 1. 前端断开后后台继续执行
-     * 2. 内存（聊天历史）持久化保存
-     * 3. 支持前端重连恢复
-     */
-    private Flux<String> processVueProjectStreamWithToolCallbacks(String userMessage, Long appId, Long userId) {
-        log.info("🎯 Using TokenStream with onToolExecuted callback for appId: {}", appId);
-        
-        AiCodeGeneratorService aiCodeGeneratorService = aiCodeGeneratorServiceFactory.getAiCodeGeneratorService(appId, CodeGenTypeEnum.VUE_PROJECT);
-        TokenStream tokenStream = aiCodeGeneratorService.generateVueProjectTokenStream(appId, userMessage);
-        
-        // 使用多播热流，支持多个订阅者共享同一个流
-        return Flux.<String>create(sink -> {
-            StringBuilder responseBuilder = new StringBuilder();
-            
-            tokenStream
-                    .onPartialResponse(partialResponse -> {
-                        if (partialResponse != null) {
-                            responseBuilder.append(partialResponse);
-                            // 使用tryEmitNext非阻塞发送，前端断开不影响后端执行
-                            sink.next(partialResponse);
-                        }
-                    })
-                    .onToolExecuted(toolExecution -> {
-                        // 使用工具执行处理器统一处理所有工具
-                        toolExecutionHandler.handleToolExecution(toolExecution, responseBuilder, sink, appId);
-                    })
-                    .onCompleteResponse(completeResponse -> {
-                        log.info("🎉 Vue project generation completed for appId: {}", appId);
-                        
-                        // 先添加完成标记到responseBuilder
-                        String completeMarker = "\n[GENERATION_COMPLETE]";
-                        responseBuilder.append(completeMarker);
-                        
-                        // 后台保存聊天历史 - 不依赖前端连接
-                        try {
-                            String fullResponse = responseBuilder.toString();
-                            if (StrUtil.isNotBlank(fullResponse)) {
-                                log.info("💾 Saving chat history for appId: {}, content length: {}, contains FILE_WRITE_SUCCESS: {}", 
-                                    appId, fullResponse.length(), fullResponse.contains("[FILE_WRITE_SUCCESS"));
-                                chatHistoryService.saveAiMessage(appId, fullResponse, userId);
-                                log.info("💾 Memory saved: Vue project response for appId: {}", appId);
-                            } else {
-                                log.warn("⚠️ Empty response content, not saving to chat history for appId: {}", appId);
-                            }
-                        } catch (Exception e) {
-                            log.warn("Failed to save Vue project response to chat history: {}", e.getMessage());
-                        }
-                        
-                        // 异步构建Vue项目
-                        try {
-                            String projectPath = AppConstant.CODE_OUTPUT_ROOT_DIR + File.separator + "vue_project_" + appId;
-                            vueProjectBuilder.buildProjectAsync(projectPath);
-                            log.info("🔨 Started async build for Vue project at: {}", projectPath);
-                        } catch (Exception e) {
-                            log.warn("Failed to start async build for Vue project: {}", e.getMessage());
-                        }
-                        
-                        // 发送完成标记给前端
-                        sink.next(completeMarker);
-                        sink.complete();
-                    })
-                    .onError(throwable -> {
-                        log.error("Vue project generation failed: {}", throwable.getMessage());
-                        
-                        // 错误也要保存到内存中
-                        try {
-                            chatHistoryService.saveErrorMessage(appId, 
-                                    "Vue project generation failed: " + throwable.getMessage(), 
-                                    userId);
-                        } catch (Exception e) {
-                            log.warn("Failed to save error message to chat history: {}", e.getMessage());
-                        }
-                        
-                        sink.error(throwable);
-                    })
-                    .start(); // TokenStream独立运行，不受前端连接影响
-        }).share(); // 转换为热流，支持多个订阅者
-    }
-
-
-
-
-
-
 }
@@ -1,6 +1,8 @@
 package com.morfism.aiappgenerator.core.builder;
 
 import cn.hutool.core.util.RuntimeUtil;
+import com.morfism.aiappgenerator.core.metrics.GenerationMetrics;
+import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
@@ -11,6 +13,9 @@ import java.util.concurrent.TimeUnit;
 @Component
 public class VueProjectBuilder {
 
+    @Resource
+    private GenerationMetrics generationMetrics;
+
 
 
 
@@ -132,12 +137,12 @@ public class VueProjectBuilder {
         }
         log.info("开始构建 Vue 项目: {}", projectPath);
         // 执行 npm install
-        if (!executeNpmInstall(projectDir)) {
+        if (!generationMetrics.time("vue.build.duration", () -> executeNpmInstall(projectDir), "stage", "install")) {
             log.error("npm install 执行失败");
             return false;
         }
         // 执行 npm run build
-        if (!executeNpmBuild(projectDir)) {
+        if (!generationMetrics.time("vue.build.duration", () -> executeNpmBuild(projectDir), "stage", "build")) {
             log.error("npm run build 执行失败");
             return false;
         }
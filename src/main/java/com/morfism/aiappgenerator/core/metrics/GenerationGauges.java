@@ -0,0 +1,83 @@
+package com.morfism.aiappgenerator.core.metrics;
+
+import com.morfism.aiappgenerator.core.naming.AppNameGenerator;
+import com.morfism.aiappgenerator.core.naming.PromptNameCache;
+import com.morfism.aiappgenerator.core.stream.GenerationAdmission;
+import com.morfism.aiappgenerator.core.stream.GenerationMemoryTracker;
+import com.morfism.aiappgenerator.manager.ChatHistoryWriteBuffer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.springframework.stereotype.Component;
+
+/**
+ * 生成链路状态指标
+ * Gauges reading the live state of generation components
+ *
+ * 核心功能：
+ * 1. 生成缓冲区占用与池化内存
+ * 2. 准入控制中运行和排队的生成数
+ * 3. 应用名提示词缓存的大小和命中情况
+ * 4. 聊天记录写缓冲重试耗尽后丢弃的记录数
+ *
+ * 供应商限流器按需创建，其指标由 ProviderRateLimiterRegistry 在创建时注册
+ */
+@Component
+public class GenerationGauges {
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private GenerationMemoryTracker generationMemoryTracker;
+
+    @Resource
+    private GenerationAdmission generationAdmission;
+
+    @Resource
+    private AppNameGenerator appNameGenerator;
+
+    @Resource
+    private ChatHistoryWriteBuffer chatHistoryWriteBuffer;
+
+    @PostConstruct
+    public void register() {
+        Gauge.builder("generation.buffer.retained.bytes", generationMemoryTracker, GenerationMemoryTracker::getRetainedBytes)
+                .description("Bytes held by in-flight generation buffers")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("generation.buffer.pooled.bytes", generationMemoryTracker, GenerationMemoryTracker::getPooledBytes)
+                .description("Bytes of idle pooled buffer blocks")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("generation.buffer.active", generationMemoryTracker, GenerationMemoryTracker::getActiveBuffers)
+                .description("In-flight generation buffers")
+                .register(meterRegistry);
+
+        Gauge.builder("generation.admission.running", generationAdmission, GenerationAdmission::getRunning)
+                .description("Admitted generations")
+                .register(meterRegistry);
+        Gauge.builder("generation.admission.queued", generationAdmission, GenerationAdmission::getQueued)
+                .description("Generations waiting for admission")
+                .register(meterRegistry);
+
+        PromptNameCache nameCache = appNameGenerator.getCache();
+        Gauge.builder("app.name.cache.size", nameCache, PromptNameCache::size)
+                .register(meterRegistry);
+        FunctionCounter.builder("app.name.cache.lookups", nameCache, PromptNameCache::getExactHits)
+                .tag("result", "exact")
+                .register(meterRegistry);
+        FunctionCounter.builder("app.name.cache.lookups", nameCache, PromptNameCache::getNearHits)
+                .tag("result", "near")
+                .register(meterRegistry);
+        FunctionCounter.builder("app.name.cache.lookups", nameCache, PromptNameCache::getMisses)
+                .tag("result", "miss")
+                .register(meterRegistry);
+
+        FunctionCounter.builder("chat.history.write.failed", chatHistoryWriteBuffer, ChatHistoryWriteBuffer::getFailedRows)
+                .description("Chat history rows dropped after every retry failed")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,144 @@
+package com.morfism.aiappgenerator.core.metrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 生成链路指标
+ * Micrometer meters of the generation hot path, exported at /actuator/prometheus
+ *
+ * 核心功能：
+ * 1. 模型调用：首 token 时间（TTFT）、总耗时、输入/输出 token 数，按供应商和生成类型打标签
+ * 2. 工具调用次数与耗时，按工具打标签
+ * 3. 代码解析、保存、npm install/build、网页截图耗时
+ * 4. 活跃 SSE 流数量，Caffeine 缓存命中率
+ *
+ * 只依赖 MeterRegistry，任何组件都可以注入而不产生循环依赖；
+ * 其他组件的状态类指标（队列长度、缓冲区内存等）由 GenerationGauges 注册
+ */
+@Component
+public class GenerationMetrics {
+
+    private static final String OUTCOME_SUCCESS = "success";
+    private static final String OUTCOME_ERROR = "error";
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final AtomicInteger activeSseStreams = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("sse.streams.active", activeSseStreams, AtomicInteger::get)
+                .description("Open generation SSE streams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Time from sending a model request to its first streamed token, thinking or tool call
+     */
+    public void recordTimeToFirstToken(String provider, String codeGenType, long nanos) {
+        Timer.builder("ai.model.ttft")
+                .description("Time to first token of a streaming model call")
+                .tags("provider", provider, "codeGenType", codeGenType)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(Duration.ofNanos(nanos));
+    }
+
+    /**
+     * Whole streaming model call, with the token usage the provider reported
+     *
+     * @param inputTokens  reported input tokens, null when unknown
+     * @param outputTokens reported output tokens, null when unknown
+     */
+    public void recordModelCall(String provider, String codeGenType, long nanos, boolean success,
+                                Integer inputTokens, Integer outputTokens) {
+        Timer.builder("ai.model.duration")
+                .description("Duration of a streaming model call")
+                .tags("provider", provider, "codeGenType", codeGenType, "outcome", outcome(success))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(Duration.ofNanos(nanos));
+        countTokens(provider, codeGenType, "input", inputTokens);
+        countTokens(provider, codeGenType, "output", outputTokens);
+    }
+
+    public void recordToolCall(String tool, long nanos, boolean success) {
+        Timer.builder("ai.tool.calls")
+                .description("Tool calls made by the model")
+                .tags("tool", tool, "outcome", outcome(success))
+                .register(meterRegistry)
+                .record(Duration.ofNanos(nanos));
+    }
+
+    /**
+     * Time a stage of the generation pipeline, e.g. parse, save, npm install, screenshot
+     * The stage failed when it throws or returns null or false
+     *
+     * @param name meter name
+     * @param tags extra tag key/value pairs
+     */
+    public <T> T time(String name, Supplier<T> stage, String... tags) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = stage.get();
+            success = result != null && !Boolean.FALSE.equals(result);
+            return result;
+        } finally {
+            Timer.builder(name)
+                    .tags(tags)
+                    .tag("outcome", outcome(success))
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Count the stream as an active SSE stream while it is subscribed
+     */
+    public <T> Flux<T> trackSseStream(Flux<T> stream) {
+        return stream
+                .doOnSubscribe(subscription -> activeSseStreams.incrementAndGet())
+                .doFinally(signal -> activeSseStreams.decrementAndGet());
+    }
+
+    /**
+     * Hit rate, size and evictions of a Caffeine cache, the cache must record stats
+     */
+    public void monitorCache(Cache<?, ?> cache, String name) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    private void countTokens(String provider, String codeGenType, String direction, Integer tokens) {
+        if (tokens == null || tokens <= 0) {
+            return;
+        }
+        Counter.builder("ai.model.tokens")
+                .description("Tokens reported by the provider")
+                .tags("provider", provider, "codeGenType", codeGenType, "direction", direction)
+                .register(meterRegistry)
+                .increment(tokens);
+    }
+
+    private static String outcome(boolean success) {
+        return success ? OUTCOME_SUCCESS : OUTCOME_ERROR;
+    }
+}
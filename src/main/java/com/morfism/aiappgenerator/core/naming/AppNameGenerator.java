@@ -0,0 +1,155 @@
+package com.morfism.aiappgenerator.core.naming;
+
+import cn.hutool.core.util.StrUtil;
+import com.morfism.aiappgenerator.ai.AppNameGeneratorService;
+import com.morfism.aiappgenerator.model.entity.App;
+import com.morfism.aiappgenerator.service.AppService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 应用名生成
+ * Names new apps without making app creation wait for the model
+ *
+ * 核心功能：
+ * 1. 创建应用时立即给出名称：提示词缓存命中时直接使用缓存的名称，否则用提示词摘要作为占位名
+ * 2. 未命中时在后台调用模型生成名称，完成后写回应用；用户期间已改名则不覆盖
+ * 3. 相同（归一化后）提示词的并发请求共用一次模型调用
+ * 4. 生成结果写入提示词缓存，精确或近似重复的提示词不再调用模型
+ */
+@Slf4j
+@Component
+public class AppNameGenerator {
+
+    /**
+     * Placeholder names are cut to this many characters of the prompt
+     */
+    private static final int PLACEHOLDER_LENGTH = 20;
+
+    /**
+     * Memoryless, names are generated concurrently on virtual threads
+     */
+    @Autowired
+    private AppNameGeneratorService appNameGeneratorService;
+
+    /**
+     * Lazy, the app service is only needed once a name is ready
+     */
+    @Lazy
+    @Autowired
+    private AppService appService;
+
+    @Value("${app.name.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    @Value("${app.name.cache.near-duplicate.enabled:true}")
+    private boolean nearDuplicateEnabled;
+
+    /**
+     * Estimated Jaccard similarity of prompt shingles a near-duplicate needs
+     */
+    @Value("${app.name.cache.near-duplicate.min-similarity:0.8}")
+    private double nearDuplicateMinSimilarity;
+
+    private PromptNameCache cache;
+
+    /**
+     * Name generations in flight by normalized prompt
+     */
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @PostConstruct
+    public void init() {
+        cache = new PromptNameCache(cacheMaxEntries, nearDuplicateEnabled, nearDuplicateMinSimilarity);
+    }
+
+    /**
+     * Name to save a new app with, either a cached name or a placeholder
+     *
+     * @return the name, generation is needed when it is a placeholder (see {@link #isPlaceholder})
+     */
+    public String initialName(String initPrompt) {
+        String cached = cache.get(initPrompt);
+        return cached != null ? cached : placeholder(initPrompt);
+    }
+
+    /**
+     * Whether the name is the placeholder {@link #initialName} gives for the prompt
+     */
+    public boolean isPlaceholder(String name, String initPrompt) {
+        return placeholder(initPrompt).equals(name);
+    }
+
+    /**
+     * Generate the name in the background and save it to the app if it still has the placeholder
+     */
+    public void generateAsync(Long appId, String initPrompt) {
+        String placeholder = placeholder(initPrompt);
+        generate(initPrompt).thenAccept(name -> {
+            App app = appService.getById(appId);
+            if (app == null || !placeholder.equals(app.getAppName())) {
+                // Deleted or renamed meanwhile
+                return;
+            }
+            App update = new App();
+            update.setId(appId);
+            update.setAppName(name);
+            appService.updateById(update);
+            log.info("Generated name '{}' saved for appId: {}", name, appId);
+        }).exceptionally(e -> {
+            log.warn("Failed to generate name for appId: {}, keeping the placeholder: {}", appId, e.getMessage());
+            return null;
+        });
+    }
+
+    public PromptNameCache getCache() {
+        return cache;
+    }
+
+    private CompletableFuture<String> generate(String initPrompt) {
+        String key = PromptNameCache.normalize(initPrompt);
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            return running;
+        }
+        executor.execute(() -> {
+            try {
+                String name = StrUtil.trim(appNameGeneratorService.generateAppName(initPrompt));
+                if (StrUtil.isBlank(name)) {
+                    throw new IllegalStateException("Model returned a blank app name");
+                }
+                cache.put(initPrompt, name);
+                future.complete(name);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, future);
+            }
+        });
+        return future;
+    }
+
+    private static String placeholder(String initPrompt) {
+        String flat = StrUtil.trim(initPrompt).replaceAll("\\s+", " ");
+        return flat.length() > PLACEHOLDER_LENGTH ? flat.substring(0, PLACEHOLDER_LENGTH) + "..." : flat;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
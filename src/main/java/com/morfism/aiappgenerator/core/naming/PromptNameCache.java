@@ -0,0 +1,264 @@
+package com.morfism.aiappgenerator.core.naming;
+
+import cn.hutool.crypto.digest.DigestUtil;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 提示词 → 应用名缓存
+ * Reuses app names generated for equal or nearly equal initial prompts
+ *
+ * 核心功能：
+ * 1. 提示词归一化（NFKC、小写、去标点、合并空白）后按 SHA-256 精确命中
+ * 2. 可选的近似命中：字符三元组的 MinHash 签名，LSH 分段找候选，再按签名估算的 Jaccard 相似度过滤
+ * 3. 按最近使用淘汰，条目数有上限，淘汰时同步移出 LSH 桶
+ *
+ * 线程安全：所有方法都在对象锁内执行，单次操作只涉及一个签名的计算
+ */
+public class PromptNameCache {
+
+    private static final int SHINGLE_SIZE = 3;
+
+    /**
+     * Signature length = BANDS * ROWS, 16 bands of 4 rows find pairs above ~0.6 Jaccard with high probability
+     */
+    private static final int BANDS = 16;
+    private static final int ROWS = 4;
+    private static final int SIGNATURE_SIZE = BANDS * ROWS;
+
+    /**
+     * Seeds of the MinHash functions, fixed so signatures are stable across restarts
+     */
+    private static final long[] SEEDS = new long[SIGNATURE_SIZE];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            SEEDS[i] = seed;
+        }
+    }
+
+    private record Entry(String hash, String name, long[] signature) {
+    }
+
+    private final int maxEntries;
+
+    private final boolean nearDuplicates;
+
+    private final double minSimilarity;
+
+    /**
+     * Normalized prompt hash -> entry, in access order for LRU eviction
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Band bucket -> hashes of the entries in it
+     */
+    private final Map<Long, Set<String>> buckets = new HashMap<>();
+
+    private long exactHits;
+
+    private long nearHits;
+
+    private long misses;
+
+    /**
+     * @param maxEntries     max cached prompts
+     * @param nearDuplicates also match prompts that are only similar
+     * @param minSimilarity  estimated Jaccard similarity a near match needs, e.g. 0.8
+     */
+    public PromptNameCache(int maxEntries, boolean nearDuplicates, double minSimilarity) {
+        this.maxEntries = maxEntries;
+        this.nearDuplicates = nearDuplicates;
+        this.minSimilarity = minSimilarity;
+    }
+
+    /**
+     * Cached name of an equal or similar prompt
+     *
+     * @return the name, or null on a miss
+     */
+    public synchronized String get(String prompt) {
+        String normalized = normalize(prompt);
+        Entry exact = entries.get(hash(normalized));
+        if (exact != null) {
+            exactHits++;
+            return exact.name();
+        }
+        if (nearDuplicates) {
+            long[] signature = signature(normalized);
+            if (signature != null) {
+                Entry best = null;
+                double bestSimilarity = minSimilarity;
+                for (String candidate : candidates(signature)) {
+                    Entry entry = entries.get(candidate);
+                    double similarity = entry == null || entry.signature() == null ? 0 : similarity(signature, entry.signature());
+                    if (similarity >= bestSimilarity) {
+                        best = entry;
+                        bestSimilarity = similarity;
+                    }
+                }
+                if (best != null) {
+                    nearHits++;
+                    return best.name();
+                }
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(String prompt, String name) {
+        String normalized = normalize(prompt);
+        String hash = hash(normalized);
+        Entry previous = entries.remove(hash);
+        if (previous != null) {
+            unbucket(previous);
+        }
+        Entry entry = new Entry(hash, name, nearDuplicates ? signature(normalized) : null);
+        entries.put(hash, entry);
+        if (entry.signature() != null) {
+            for (int band = 0; band < BANDS; band++) {
+                buckets.computeIfAbsent(bandKey(entry.signature(), band), key -> new HashSet<>()).add(hash);
+            }
+        }
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            unbucket(evicted);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getExactHits() {
+        return exactHits;
+    }
+
+    public synchronized long getNearHits() {
+        return nearHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Compatibility form of a prompt, lower case without punctuation, single spaces between words
+     */
+    public static String normalize(String prompt) {
+        String text = Normalizer.normalize(prompt == null ? "" : prompt, Normalizer.Form.NFKC).toLowerCase();
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && !normalized.isEmpty()) {
+                    normalized.append(' ');
+                }
+                normalized.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static String hash(String normalized) {
+        return DigestUtil.sha256Hex(normalized);
+    }
+
+    /**
+     * MinHash signature over character shingles, null when the prompt is too short to compare
+     */
+    static long[] signature(String normalized) {
+        if (normalized.length() < SHINGLE_SIZE * 2) {
+            return null;
+        }
+        long[] signature = new long[SIGNATURE_SIZE];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (int i = 0; i + SHINGLE_SIZE <= normalized.length(); i++) {
+            long shingle = 0;
+            for (int j = i; j < i + SHINGLE_SIZE; j++) {
+                shingle = shingle * 31 + normalized.charAt(j);
+            }
+            for (int k = 0; k < SIGNATURE_SIZE; k++) {
+                long value = mix(shingle ^ SEEDS[k]);
+                if (value < signature[k]) {
+                    signature[k] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Fraction of equal signature slots, estimates the Jaccard similarity of the shingle sets
+     */
+    static double similarity(long[] a, long[] b) {
+        int equal = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / SIGNATURE_SIZE;
+    }
+
+    private Set<String> candidates(long[] signature) {
+        Set<String> candidates = new HashSet<>();
+        for (int band = 0; band < BANDS; band++) {
+            Set<String> bucket = buckets.get(bandKey(signature, band));
+            if (bucket != null) {
+                candidates.addAll(bucket);
+            }
+        }
+        return candidates;
+    }
+
+    private void unbucket(Entry entry) {
+        if (entry.signature() == null) {
+            return;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            long key = bandKey(entry.signature(), band);
+            Set<String> bucket = buckets.get(key);
+            if (bucket != null && bucket.remove(entry.hash()) && bucket.isEmpty()) {
+                buckets.remove(key);
+            }
+        }
+    }
+
+    private static long bandKey(long[] signature, int band) {
+        long key = band;
+        for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+            key = mix(key * 31 + signature[row]);
+        }
+        return key;
+    }
+
+    /**
+     * 64-bit finalizer of MurmurHash3
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB93FE53C3B0DL;
+        value ^= value >>> 33;
+        return value;
+    }
+}
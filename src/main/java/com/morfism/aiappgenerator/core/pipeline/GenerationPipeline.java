@@ -0,0 +1,29 @@
+package com.morfism.aiappgenerator.core.pipeline;
+
+import com.morfism.aiappgenerator.model.enums.CodeGenTypeEnum;
+import reactor.core.publisher.Flux;
+
+/**
+ * 代码生成流水线
+ * One code generation type's whole pipeline: opening the AI stream, post-processing and saving
+ *
+ * 每种 CodeGenTypeEnum 对应一个实现，由 AiCodeGeneratorFacade 按类型分发；
+ * 实现只创建自己用到的 AI 服务和流，保存和聊天历史在后台完成，不依赖前端连接
+ */
+public interface GenerationPipeline {
+
+    /**
+     * Code generation type this pipeline handles
+     */
+    CodeGenTypeEnum getCodeGenType();
+
+    /**
+     * Start a generation
+     *
+     * @param userMessage 用户提示词/user prompt
+     * @param appId       应用ID/application ID
+     * @param userId      用户ID/user ID for chat history saving
+     * @return 生成的代码块流/stream of generated chunks
+     */
+    Flux<String> generate(String userMessage, Long appId, Long userId);
+}
@@ -0,0 +1,23 @@
+package com.morfism.aiappgenerator.core.pipeline;
+
+import com.morfism.aiappgenerator.ai.AiCodeGeneratorService;
+import com.morfism.aiappgenerator.model.enums.CodeGenTypeEnum;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+/**
+ * 单页面 HTML 生成流水线
+ */
+@Component
+public class HtmlGenerationPipeline extends TraditionalGenerationPipeline {
+
+    @Override
+    public CodeGenTypeEnum getCodeGenType() {
+        return CodeGenTypeEnum.HTML;
+    }
+
+    @Override
+    protected Flux<String> openStream(AiCodeGeneratorService aiCodeGeneratorService, String userMessage) {
+        return aiCodeGeneratorService.generateHtmlCodeStream(userMessage);
+    }
+}
@@ -0,0 +1,23 @@
+package com.morfism.aiappgenerator.core.pipeline;
+
+import com.morfism.aiappgenerator.ai.AiCodeGeneratorService;
+import com.morfism.aiappgenerator.model.enums.CodeGenTypeEnum;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+/**
+ * 多文件项目生成流水线
+ */
+@Component
+public class MultiFileGenerationPipeline extends TraditionalGenerationPipeline {
+
+    @Override
+    public CodeGenTypeEnum getCodeGenType() {
+        return CodeGenTypeEnum.MULTI_FILE;
+    }
+
+    @Override
+    protected Flux<String> openStream(AiCodeGeneratorService aiCodeGeneratorService, String userMessage) {
+        return aiCodeGeneratorService.generateMultiFileCodeStream(userMessage);
+    }
+}
@@ -0,0 +1,135 @@
+package com.morfism.aiappgenerator.core.pipeline;
+
+import cn.hutool.core.util.StrUtil;
+import com.morfism.aiappgenerator.ai.AiCodeGeneratorService;
+import com.morfism.aiappgenerator.ai.AiCodeGeneratorServiceFactory;
+import com.morfism.aiappgenerator.core.metrics.GenerationMetrics;
+import com.morfism.aiappgenerator.core.parser.CodeParserExecutor;
+import com.morfism.aiappgenerator.core.saver.CodeFileSaverExecutor;
+import com.morfism.aiappgenerator.core.stream.GenerationMemoryTracker;
+import com.morfism.aiappgenerator.core.stream.SegmentedCharBuffer;
+import com.morfism.aiappgenerator.core.template.GenerationTemplateCache;
+import com.morfism.aiappgenerator.model.enums.CodeGenTypeEnum;
+import com.morfism.aiappgenerator.service.ChatHistoryService;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+import java.io.File;
+
+/**
+ * 传统格式(HTML/MULTI_FILE)生成流水线
+ * Pipelines whose output is parsed and saved once the whole response has streamed
+ *
+ * 核心功能：
+ * 1. 首轮生成先查模板缓存，命中时回放缓存结果，不创建 AI 流
+ * 2. 后台独立订阅收集完整输出，完成后解析、保存代码文件并写入聊天历史
+ * 3. 保存成功的首轮输出写入模板缓存
+ * 4. 输出超过缓冲区上限被截断时不解析、不保存、不缓存，记录一条错误消息
+ */
+@Slf4j
+public abstract class TraditionalGenerationPipeline implements GenerationPipeline {
+
+    @Resource
+    private AiCodeGeneratorServiceFactory aiCodeGeneratorServiceFactory;
+
+    @Resource
+    private ChatHistoryService chatHistoryService;
+
+    @Resource
+    private GenerationMemoryTracker generationMemoryTracker;
+
+    @Resource
+    private GenerationTemplateCache generationTemplateCache;
+
+    @Resource
+    private GenerationMetrics generationMetrics;
+
+    /**
+     * Open this type's AI stream
+     */
+    protected abstract Flux<String> openStream(AiCodeGeneratorService aiCodeGeneratorService, String userMessage);
+
+    @Override
+    public Flux<String> generate(String userMessage, Long appId, Long userId) {
+        CodeGenTypeEnum codeGenTypeEnum = getCodeGenType();
+        // 首轮生成命中模板缓存时回放缓存结果，不调用模型
+        String templateKey = generationTemplateCache.keyFor(codeGenTypeEnum, userMessage, appId);
+        String template = templateKey == null ? null : generationTemplateCache.get(templateKey);
+        if (template != null) {
+            log.info("Template cache hit for appId: {}, replaying {} chars", appId, template.length());
+            generationTemplateCache.rememberTurn(appId, userMessage, template);
+            return saveInBackground(generationTemplateCache.replay(template), appId, userId, null);
+        }
+        AiCodeGeneratorService aiCodeGeneratorService = aiCodeGeneratorServiceFactory.getAiCodeGeneratorService(appId, codeGenTypeEnum);
+        return saveInBackground(openStream(aiCodeGeneratorService, userMessage), appId, userId, templateKey);
+    }
+
+    /**
+     * 后台独立订阅：确保完整处理和存储，不依赖前端连接
+     *
+     * @param templateKey 模板缓存键，非空时保存成功的完整代码写入模板缓存/template cache key, saved output is cached when present
+     */
+    private Flux<String> saveInBackground(Flux<String> originalStream, Long appId, Long userId, String templateKey) {
+        CodeGenTypeEnum codeGenTypeEnum = getCodeGenType();
+        Flux<String> sharedStream = originalStream.share();
+
+        // 完整内容收集在池化的分段缓冲区中
+        SegmentedCharBuffer codeBuilder = generationMemoryTracker.newBuffer(appId);
+        sharedStream
+                .doOnNext(codeBuilder::append)
+                .doOnComplete(() -> {
+                    if (codeBuilder.isTruncated()) {
+                        // 残缺的代码解析后会覆盖上一版可用的结果，也不能进入模板缓存
+                        log.error("Generation output for appId: {} exceeded {} chars and was truncated, not saving it",
+                                appId, codeBuilder.length());
+                        saveErrorMessage(appId, userId,
+                                "Code generation failed: the output exceeded the size limit and was not saved");
+                        return;
+                    }
+                    String completeCode = codeBuilder.toString();
+
+                    // 1. 保存代码文件
+                    try {
+                        String codeGenType = codeGenTypeEnum.getValue();
+                        Object parsedResult = generationMetrics.time("generation.parse",
+                                () -> CodeParserExecutor.executeParser(completeCode, codeGenTypeEnum), "codeGenType", codeGenType);
+                        File savedDir = generationMetrics.time("generation.save",
+                                () -> CodeFileSaverExecutor.executeSaver(parsedResult, codeGenTypeEnum, appId), "codeGenType", codeGenType);
+                        log.info("Background code saved successfully to: " + savedDir.getAbsolutePath());
+                        if (templateKey != null) {
+                            generationTemplateCache.put(templateKey, completeCode);
+                        }
+                    } catch (Exception e) {
+                        log.error("Failed to save code in background: {}", e.getMessage());
+                    }
+
+                    // 2. 保存聊天历史
+                    try {
+                        if (StrUtil.isNotBlank(completeCode)) {
+                            chatHistoryService.saveAiMessage(appId, completeCode, userId);
+                            log.info("Background chat history saved successfully for appId: {}", appId);
+                        }
+                    } catch (Exception e) {
+                        log.warn("Failed to save AI response to chat history in background: {}", e.getMessage());
+                    }
+                })
+                .doOnError(throwable -> {
+                    log.error("Background code processing failed: {}", throwable.getMessage());
+                    // 保存错误消息到聊天历史
+                    saveErrorMessage(appId, userId, "Code generation failed: " + throwable.getMessage());
+                })
+                .doFinally(signal -> codeBuilder.release())
+                .subscribe(); // 后台独立订阅，不依赖前端连接
+
+        return sharedStream;
+    }
+
+    private void saveErrorMessage(Long appId, Long userId, String errorMessage) {
+        try {
+            chatHistoryService.saveErrorMessage(appId, errorMessage, userId);
+        } catch (Exception e) {
+            log.warn("Failed to save error message to chat history: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.morfism.aiappgenerator.core.pipeline;
+
+import cn.hutool.core.util.StrUtil;
+import com.morfism.aiappgenerator.ai.AiCodeGeneratorService;
+import com.morfism.aiappgenerator.ai.AiCodeGeneratorServiceFactory;
+import com.morfism.aiappgenerator.ai.tools.ToolCallSequencer;
+import com.morfism.aiappgenerator.ai.tools.ToolExecutionHandler;
+import com.morfism.aiappgenerator.constant.AppConstant;
+import com.morfism.aiappgenerator.core.builder.VueProjectBuilder;
+import com.morfism.aiappgenerator.core.stream.GenerationMemoryTracker;
+import com.morfism.aiappgenerator.core.stream.SegmentedCharBuffer;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspaceManager;
+import com.morfism.aiappgenerator.model.enums.CodeGenTypeEnum;
+import com.morfism.aiappgenerator.service.ChatHistoryService;
+import dev.langchain4j.service.TokenStream;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.io.File;
+
+/**
+ * Vue 项目生成流水线
+ * Vue project streaming with tool callbacks using TokenStream API
+ *
+ * 特点：
+ * 1. 只打开一个 TokenStream，工具执行结果作为标记块插入流中
+ * 2. 前端断开后后台继续执行
+ * 3. 内存（聊天历史）持久化保存
+ * 4. 文件先写入内存工作区，完成时刷盘并异步构建
+ */
+@Slf4j
+@Component
+public class VueProjectGenerationPipeline implements GenerationPipeline {
+
+    @Resource
+    private AiCodeGeneratorServiceFactory aiCodeGeneratorServiceFactory;
+
+    @Resource
+    private ChatHistoryService chatHistoryService;
+
+    @Resource
+    private VueProjectBuilder vueProjectBuilder;
+
+    @Resource
+    private ToolExecutionHandler toolExecutionHandler;
+
+    @Resource
+    private ToolCallSequencer toolCallSequencer;
+
+    @Resource
+    private ProjectWorkspaceManager projectWorkspaceManager;
+
+    @Resource
+    private GenerationMemoryTracker generationMemoryTracker;
+
+    @Override
+    public CodeGenTypeEnum getCodeGenType() {
+        return CodeGenTypeEnum.VUE_PROJECT;
+    }
+
+    @Override
+    public Flux<String> generate(String userMessage, Long appId, Long userId) {
+        log.info("🎯 Using TokenStream with onToolExecuted callback for appId: {}", appId);
+        
+        AiCodeGeneratorService aiCodeGeneratorService = aiCodeGeneratorServiceFactory.getAiCodeGeneratorService(appId, CodeGenTypeEnum.VUE_PROJECT);
+        // 文件工具的读写先落在内存工作区，生成结束时一次性刷盘
+        projectWorkspaceManager.begin(appId);
+        TokenStream tokenStream = aiCodeGeneratorService.generateVueProjectTokenStream(appId, userMessage);
+        
+        // 使用多播热流，支持多个订阅者共享同一个流
+        return Flux.<String>create(sink -> {
+            SegmentedCharBuffer responseBuilder = generationMemoryTracker.newBuffer(appId);
+            // 完成、出错或取消时把缓冲块还给池
+            sink.onDispose(responseBuilder::release);
+            
+            tokenStream
+                    .onPartialResponse(partialResponse -> {
+                        if (partialResponse != null) {
+                            responseBuilder.append(partialResponse);
+                            // 使用tryEmitNext非阻塞发送，前端断开不影响后端执行
+                            sink.next(partialResponse);
+                        }
+                    })
+                    .onToolExecuted(toolExecution -> {
+                        // 并发执行的工具按完成顺序回调，按请求顺序交给工具执行处理器统一处理
+                        toolCallSequencer.reportInOrder(appId, toolExecution, execution ->
+                                toolExecutionHandler.handleToolExecution(execution, responseBuilder, sink, appId));
+                    })
+                    .onCompleteResponse(completeResponse -> {
+                        log.info("🎉 Vue project generation completed for appId: {}", appId);
+                        
+                        // 先添加完成标记到responseBuilder
+                        String completeMarker = "\n[GENERATION_COMPLETE]";
+                        responseBuilder.append(completeMarker);
+                        
+                        // 后台保存聊天历史 - 不依赖前端连接
+                        try {
+                            String fullResponse = responseBuilder.isTruncated() ? null : responseBuilder.toString();
+                            if (fullResponse == null) {
+                                // 残缺的回复写入历史后会作为对话记忆被重新加载，只记录错误
+                                log.error("Vue project response for appId: {} exceeded {} chars and was truncated, not saving it",
+                                        appId, responseBuilder.length());
+                                chatHistoryService.saveErrorMessage(appId,
+                                        "Code generation failed: the output exceeded the size limit and was not saved", userId);
+                            } else if (StrUtil.isNotBlank(fullResponse)) {
+                                log.info("💾 Saving chat history for appId: {}, content length: {}, contains FILE_WRITE_SUCCESS: {}", 
+                                    appId, fullResponse.length(), fullResponse.contains("[FILE_WRITE_SUCCESS"));
+                                chatHistoryService.saveAiMessage(appId, fullResponse, userId);
+                                log.info("💾 Memory saved: Vue project response for appId: {}", appId);
+                            } else {
+                                log.warn("⚠️ Empty response content, not saving to chat history for appId: {}", appId);
+                            }
+                        } catch (Exception e) {
+                            log.warn("Failed to save Vue project response to chat history: {}", e.getMessage());
+                        }
+                        
+                        // 工作区刷盘后再构建，构建看到的是完整一致的目录
+                        int flushedCount = projectWorkspaceManager.complete(appId);
+                        log.info("💾 Flushed {} workspace files for appId: {}", flushedCount, appId);
+                        
+                        // 异步构建Vue项目
+                        try {
+                            String projectPath = AppConstant.CODE_OUTPUT_ROOT_DIR + File.separator + "vue_project_" + appId;
+                            vueProjectBuilder.buildProjectAsync(projectPath);
+                            log.info("🔨 Started async build for Vue project at: {}", projectPath);
+                        } catch (Exception e) {
+                            log.warn("Failed to start async build for Vue project: {}", e.getMessage());
+                        }
+                        
+                        // 发送完成标记给前端
+                        sink.next(completeMarker);
+                        sink.complete();
+                    })
+                    .onError(throwable -> {
+                        log.error("Vue project generation failed: {}", throwable.getMessage());
+                        
+                        // 已经写入工作区的文件仍然刷盘，与直接写盘时的行为保持一致
+                        projectWorkspaceManager.complete(appId);
+                        
+                        // 错误也要保存到内存中
+                        try {
+                            chatHistoryService.saveErrorMessage(appId, 
+                                    "Vue project generation failed: " + throwable.getMessage(), 
+                                    userId);
+                        } catch (Exception e) {
+                            log.warn("Failed to save error message to chat history: {}", e.getMessage());
+                        }
+                        
+                        sink.error(throwable);
+                    })
+                    .start(); // TokenStream独立运行，不受前端连接影响
+            // 唯一的下游是生成流的后台订阅，需求无上限；出现积压说明用法有误，直接报错而不是无界缓冲
+        }, FluxSink.OverflowStrategy.ERROR).share(); // 转换为热流，支持多个订阅者
+    }
+}
@@ -0,0 +1,484 @@
+package com.morfism.aiappgenerator.core.search;
+
+import cn.hutool.core.util.StrUtil;
+import com.morfism.aiappgenerator.model.entity.App;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * App full-text search index
+ * In-process inverted index over appName and initPrompt, ranked with BM25
+ *
+ * 核心功能：
+ * 1. 英文/数字按单词切分，中日韩文字按单字和二元组(bigram)切分，单字查询也能命中
+ * 2. appName 权重高于 initPrompt
+ * 3. 查询末尾的英文词支持前缀匹配，弥补 like '%x%' 的部分语义
+ * 4. 按字段查询时与数据库条件语义一致：每个字段的所有词都要出现在该字段中，字段之间为 AND
+ * 5. 默认按相关度排序，也可以按索引中保存的列排序
+ * 6. 支持增量更新和整体重建，重建期间旧索引继续服务，重建期间的增量更新在切换后重放，不会丢失
+ * 7. 查询中的英文词不是完整索引词时（可能是其他词的一部分），由调用方回退到数据库 like 查询
+ */
+@Slf4j
+@Component
+public class AppSearchIndex {
+
+    /**
+     * Field weights, a hit in the app name counts more than a hit in the prompt
+     */
+    private static final float APP_NAME_WEIGHT = 3.0f;
+    private static final float INIT_PROMPT_WEIGHT = 1.0f;
+
+    /**
+     * BM25 parameters
+     */
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /**
+     * Score multiplier for terms matched only through prefix expansion
+     */
+    private static final double PREFIX_MATCH_FACTOR = 0.5;
+
+    /**
+     * Max number of indexed terms a single prefix may expand to
+     */
+    private static final int MAX_PREFIX_EXPANSION = 50;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * term -> (appId -> weighted term frequency)
+     */
+    private NavigableMap<String, Map<Long, Float>> postings = new TreeMap<>();
+
+    /**
+     * appId -> indexed document
+     */
+    private Map<Long, IndexedApp> documents = new HashMap<>();
+
+    private double totalLength;
+
+    private volatile boolean ready;
+
+    /**
+     * Serializes rebuilds, a second rebuild waits for the running one
+     */
+    private final Object rebuildMonitor = new Object();
+
+    /**
+     * appId -> latest document, or null for a removal, of updates made while a rebuild loads; null when no rebuild runs
+     * Guarded by the write lock
+     */
+    private Map<Long, IndexedApp> rebuildJournal;
+
+    /**
+     * Indexed document, keeps the filterable and sortable columns so that searching never touches the database
+     *
+     * @param appNameTerms    terms of appName, for field-restricted queries
+     * @param initPromptTerms terms of initPrompt, for field-restricted queries
+     */
+    public record IndexedApp(Long id, Long userId, Integer priority, String codeGenType, LocalDateTime createTime,
+                             Map<String, Float> termFrequencies, Set<String> appNameTerms, Set<String> initPromptTerms,
+                             float length) {
+    }
+
+    /**
+     * One page of ranked app ids
+     */
+    public record SearchPage(List<Long> appIds, long totalRow) {
+    }
+
+    /**
+     * Whether the initial build has finished, callers should fall back to the database before that
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add or replace a single app in the index
+     */
+    public void index(App app) {
+        if (app == null || app.getId() == null) {
+            return;
+        }
+        IndexedApp document = buildDocument(app);
+        lock.writeLock().lock();
+        try {
+            removeInternal(postings, documents, app.getId());
+            addInternal(postings, documents, document);
+            if (rebuildJournal != null) {
+                rebuildJournal.put(document.id(), document);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a single app from the index
+     */
+    public void remove(Long appId) {
+        if (appId == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeInternal(postings, documents, appId);
+            if (rebuildJournal != null) {
+                rebuildJournal.put(appId, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the whole index from the apps the loader returns
+     * The new index is built off to the side and swapped in, searches keep hitting the old one meanwhile.
+     * Updates made while the loader runs may be missing from what it read, they are replayed after the swap
+     *
+     * @param loader loads all live apps, called once
+     * @return number of indexed apps
+     */
+    public int rebuild(Supplier<? extends Iterable<App>> loader) {
+        synchronized (rebuildMonitor) {
+            lock.writeLock().lock();
+            try {
+                rebuildJournal = new HashMap<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            NavigableMap<String, Map<Long, Float>> newPostings = new TreeMap<>();
+            Map<Long, IndexedApp> newDocuments = new HashMap<>();
+            double newTotalLength = 0;
+            try {
+                for (App app : loader.get()) {
+                    if (app == null || app.getId() == null) {
+                        continue;
+                    }
+                    IndexedApp document = buildDocument(app);
+                    newDocuments.put(document.id(), document);
+                    newTotalLength += document.length();
+                    document.termFrequencies().forEach((term, tf) ->
+                            newPostings.computeIfAbsent(term, k -> new HashMap<>()).put(document.id(), tf));
+                }
+            } catch (RuntimeException e) {
+                // The old index stays in service, updates made meanwhile were applied to it directly
+                lock.writeLock().lock();
+                try {
+                    rebuildJournal = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+            int replayed;
+            int indexed;
+            lock.writeLock().lock();
+            try {
+                postings = newPostings;
+                documents = newDocuments;
+                totalLength = newTotalLength;
+                replayed = rebuildJournal.size();
+                for (Map.Entry<Long, IndexedApp> update : rebuildJournal.entrySet()) {
+                    removeInternal(postings, documents, update.getKey());
+                    if (update.getValue() != null) {
+                        addInternal(postings, documents, update.getValue());
+                    }
+                }
+                rebuildJournal = null;
+                indexed = documents.size();
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("App search index rebuilt, {} apps, {} terms, {} concurrent updates replayed",
+                    indexed, newPostings.size(), replayed);
+            return indexed;
+        }
+    }
+
+    /**
+     * Whether the index can answer a query in place of the database like conditions
+     * CJK text is indexed as unigrams and bigrams, so CJK terms never need the database; a latin word that is not
+     * an indexed word of its own may be part of a longer one, which only like '%x%' finds
+     */
+    public boolean covers(String appName, String initPrompt) {
+        lock.readLock().lock();
+        try {
+            return coversTerms(tokenize(appName)) && coversTerms(tokenize(initPrompt));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean coversTerms(List<String> queryTerms) {
+        for (String term : queryTerms) {
+            if (!isCjk(term.codePointAt(0)) && !postings.containsKey(term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ranked, paginated search restricted by field, like the database conditions
+     * Every term of a field query must appear in that field, the last ascii term as a prefix; fields are joined by AND
+     *
+     * @param appName    text to find in appName, may be blank
+     * @param initPrompt text to find in initPrompt, may be blank
+     * @param filter     extra filter on indexed columns, may be null
+     * @param order      order of the hits, null ranks them by relevance
+     * @param pageNum    page number, starting from 1
+     * @param pageSize   page size
+     * @return app ids of the requested page and the total hit count
+     */
+    public SearchPage search(String appName, String initPrompt, Predicate<IndexedApp> filter,
+                             Comparator<IndexedApp> order, long pageNum, long pageSize) {
+        List<String> appNameTerms = tokenize(appName);
+        List<String> initPromptTerms = tokenize(initPrompt);
+        if ((appNameTerms.isEmpty() && initPromptTerms.isEmpty()) || pageNum < 1 || pageSize < 1) {
+            return new SearchPage(List.of(), 0);
+        }
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = new HashMap<>();
+            int docCount = documents.size();
+            double avgLength = docCount == 0 ? 1 : Math.max(1, totalLength / docCount);
+            score(appNameTerms, scores, docCount, avgLength);
+            score(initPromptTerms, scores, docCount, avgLength);
+            List<Map.Entry<Long, Double>> hits = new ArrayList<>(scores.size());
+            for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                IndexedApp document = documents.get(entry.getKey());
+                if (document != null
+                        && containsAll(document.appNameTerms(), appNameTerms)
+                        && containsAll(document.initPromptTerms(), initPromptTerms)
+                        && (filter == null || filter.test(document))) {
+                    hits.add(entry);
+                }
+            }
+            Comparator<Map.Entry<Long, Double>> ranking = order == null
+                    ? (x, y) -> Double.compare(y.getValue(), x.getValue())
+                    : (x, y) -> order.compare(documents.get(x.getKey()), documents.get(y.getKey()));
+            hits.sort(ranking.thenComparing((x, y) -> Long.compare(y.getKey(), x.getKey())));
+            long from = (pageNum - 1) * pageSize;
+            if (from >= hits.size()) {
+                return new SearchPage(List.of(), hits.size());
+            }
+            int to = (int) Math.min(hits.size(), from + pageSize);
+            List<Long> pageIds = new ArrayList<>(to - (int) from);
+            for (int i = (int) from; i < to; i++) {
+                pageIds.add(hits.get(i).getKey());
+            }
+            return new SearchPage(pageIds, hits.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add BM25 scores of the query terms, the last ascii term also scores the indexed terms it is a prefix of
+     */
+    private void score(List<String> queryTerms, Map<Long, Double> scores, int docCount, double avgLength) {
+        for (int i = 0; i < queryTerms.size(); i++) {
+            String term = queryTerms.get(i);
+            Map<Long, Float> exact = postings.get(term);
+            if (exact != null) {
+                accumulate(scores, exact, docCount, avgLength, 1.0);
+            }
+            // Prefix expansion only for the last ascii term, which is usually still being typed
+            if (i == queryTerms.size() - 1 && isAsciiTerm(term)) {
+                int expanded = 0;
+                for (Map.Entry<String, Map<Long, Float>> entry
+                        : postings.subMap(term, false, term + Character.MAX_VALUE, false).entrySet()) {
+                    if (++expanded > MAX_PREFIX_EXPANSION) {
+                        break;
+                    }
+                    accumulate(scores, entry.getValue(), docCount, avgLength, PREFIX_MATCH_FACTOR);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether a field holds every query term, the last ascii term may match as a prefix
+     */
+    private static boolean containsAll(Set<String> fieldTerms, List<String> queryTerms) {
+        for (int i = 0; i < queryTerms.size(); i++) {
+            String term = queryTerms.get(i);
+            if (fieldTerms.contains(term)) {
+                continue;
+            }
+            if (i != queryTerms.size() - 1 || !isAsciiTerm(term)) {
+                return false;
+            }
+            boolean prefixed = false;
+            for (String fieldTerm : fieldTerms) {
+                if (fieldTerm.startsWith(term)) {
+                    prefixed = true;
+                    break;
+                }
+            }
+            if (!prefixed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add BM25 contribution of one posting list to the score table
+     */
+    private void accumulate(Map<Long, Double> scores, Map<Long, Float> postingList,
+                            int docCount, double avgLength, double factor) {
+        int df = postingList.size();
+        double idf = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+        for (Map.Entry<Long, Float> posting : postingList.entrySet()) {
+            IndexedApp document = documents.get(posting.getKey());
+            if (document == null) {
+                continue;
+            }
+            double tf = posting.getValue();
+            double norm = tf + K1 * (1 - B + B * document.length() / avgLength);
+            double score = factor * idf * (tf * (K1 + 1)) / norm;
+            scores.merge(posting.getKey(), score, Double::sum);
+        }
+    }
+
+    private void addInternal(NavigableMap<String, Map<Long, Float>> postings,
+                             Map<Long, IndexedApp> documents, IndexedApp document) {
+        documents.put(document.id(), document);
+        totalLength += document.length();
+        document.termFrequencies().forEach((term, tf) ->
+                postings.computeIfAbsent(term, k -> new HashMap<>()).put(document.id(), tf));
+    }
+
+    private void removeInternal(NavigableMap<String, Map<Long, Float>> postings,
+                                Map<Long, IndexedApp> documents, Long appId) {
+        IndexedApp old = documents.remove(appId);
+        if (old == null) {
+            return;
+        }
+        totalLength -= old.length();
+        for (String term : old.termFrequencies().keySet()) {
+            Map<Long, Float> postingList = postings.get(term);
+            if (postingList != null) {
+                postingList.remove(appId);
+                if (postingList.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private IndexedApp buildDocument(App app) {
+        Map<String, Float> termFrequencies = new LinkedHashMap<>();
+        float length = 0;
+        List<String> appNameTerms = tokenize(app.getAppName());
+        for (String term : appNameTerms) {
+            termFrequencies.merge(term, APP_NAME_WEIGHT, Float::sum);
+            length += APP_NAME_WEIGHT;
+        }
+        List<String> initPromptTerms = tokenize(app.getInitPrompt());
+        for (String term : initPromptTerms) {
+            termFrequencies.merge(term, INIT_PROMPT_WEIGHT, Float::sum);
+            length += INIT_PROMPT_WEIGHT;
+        }
+        return new IndexedApp(app.getId(), app.getUserId(), app.getPriority(), app.getCodeGenType(), app.getCreateTime(),
+                termFrequencies, new LinkedHashSet<>(appNameTerms), new LinkedHashSet<>(initPromptTerms), length);
+    }
+
+    /**
+     * Split text into index terms
+     * Latin letters and digits form lowercase words, CJK runs are split into single characters and overlapping bigrams
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (StrUtil.isBlank(text)) {
+            return terms;
+        }
+        StringBuilder word = new StringBuilder();
+        StringBuilder cjkRun = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                flushWord(word, terms);
+                cjkRun.appendCodePoint(codePoint);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                flushCjkRun(cjkRun, terms);
+                word.appendCodePoint(Character.toLowerCase(codePoint));
+            } else {
+                flushWord(word, terms);
+                flushCjkRun(cjkRun, terms);
+            }
+        }
+        flushWord(word, terms);
+        flushCjkRun(cjkRun, terms);
+        return terms;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> terms) {
+        if (!word.isEmpty()) {
+            terms.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static void flushCjkRun(StringBuilder run, List<String> terms) {
+        if (run.isEmpty()) {
+            return;
+        }
+        int[] codePoints = run.codePoints().toArray();
+        for (int i = 0; i < codePoints.length; i++) {
+            terms.add(new String(codePoints, i, 1));
+            if (i + 1 < codePoints.length) {
+                terms.add(new String(codePoints, i, 2));
+            }
+        }
+        run.setLength(0);
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static boolean isAsciiTerm(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            if (term.charAt(i) > 0x7f) {
+                return false;
+            }
+        }
+        return term.length() >= 2;
+    }
+}
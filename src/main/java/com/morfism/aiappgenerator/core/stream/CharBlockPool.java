@@ -0,0 +1,57 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 定长字符块池
+ * Pool of fixed-size char blocks shared by the response buffers of all generations
+ *
+ * 核心功能：
+ * 1. 借出定长 char[]，用完归还复用，避免 StringBuilder 扩容时反复复制和分配大数组
+ * 2. 池中最多保留固定数量的空闲块，超出部分直接丢弃交给 GC，空闲内存有上限
+ */
+class CharBlockPool {
+
+    private final int blockSize;
+
+    private final int maxIdleBlocks;
+
+    private final ConcurrentLinkedDeque<char[]> idle = new ConcurrentLinkedDeque<>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    CharBlockPool(int blockSize, int maxIdleBlocks) {
+        this.blockSize = blockSize;
+        this.maxIdleBlocks = maxIdleBlocks;
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    int getIdleCount() {
+        return idleCount.get();
+    }
+
+    char[] acquire() {
+        char[] block = idle.pollFirst();
+        if (block == null) {
+            return new char[blockSize];
+        }
+        idleCount.decrementAndGet();
+        return block;
+    }
+
+    void release(char[] block) {
+        if (block.length != blockSize) {
+            return;
+        }
+        if (idleCount.incrementAndGet() > maxIdleBlocks) {
+            idleCount.decrementAndGet();
+            return;
+        }
+        // Most recently used first, it is the most likely to still be in cache
+        idle.offerFirst(block);
+    }
+}
@@ -0,0 +1,365 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import com.morfism.aiappgenerator.ai.memory.ChatMessageCompactor;
+import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.exception.ErrorCode;
+import com.morfism.aiappgenerator.model.entity.User;
+import com.morfism.aiappgenerator.model.enums.UserRoleEnum;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 生成请求准入控制
+ * Admits code generations per user: concurrency caps, daily token quotas and weighted fair queuing
+ *
+ * 核心功能：
+ * 1. 全局并发生成数有上限，每个用户同时进行的生成数也有上限
+ * 2. 超出上限的请求按加权公平排队（WFQ）：每个用户的请求依次获得递增的虚拟完成时间，
+ *    同时提交大量请求的用户排在其他用户之后，不会拖慢所有人
+ * 3. 每个用户每日 token 配额，用量记在 Redis（按日期分键），Redis 不可用时退化为本机计数
+ * 4. 管理员（UserRoleEnum.ADMIN）可配置为不受配额和单用户并发限制，并按更高权重排队
+ * 5. 队列满、用户排队过多、配额用尽或等待超时时立即以 429 拒绝
+ *
+ * 用量优先使用模型返回的实际 token 数（包括每轮重新发送的历史和工具结果），
+ * 没有上报时按用户消息和输出文本估算。
+ */
+@Slf4j
+@Component
+public class GenerationAdmission {
+
+    private static final String QUOTA_KEY_PREFIX = "generation:quota:";
+
+    private static final DateTimeFormatter QUOTA_DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${generation.admission.max-concurrent:50}")
+    private int maxConcurrent;
+
+    @Value("${generation.admission.max-per-user:2}")
+    private int maxPerUser;
+
+    @Value("${generation.admission.max-queued:200}")
+    private int maxQueued;
+
+    @Value("${generation.admission.max-queued-per-user:3}")
+    private int maxQueuedPerUser;
+
+    @Value("${generation.admission.max-wait-seconds:120}")
+    private long maxWaitSeconds;
+
+    /**
+     * Tokens a user may consume per day, 0 disables the quota
+     */
+    @Value("${generation.admission.daily-token-quota:2000000}")
+    private long dailyTokenQuota;
+
+    /**
+     * Admins skip the quota and the per-user cap
+     */
+    @Value("${generation.admission.admin-exempt:true}")
+    private boolean adminExempt;
+
+    /**
+     * Queue share of an admin relative to a normal user
+     */
+    @Value("${generation.admission.admin-weight:4}")
+    private double adminWeight;
+
+    /**
+     * A request waiting for a slot
+     */
+    private static final class Waiter {
+
+        private final long seq;
+
+        private final long userId;
+
+        private final boolean privileged;
+
+        private final double finishTag;
+
+        private final Ticket ticket;
+
+        private MonoSink<Ticket> sink;
+
+        private Waiter(long seq, long userId, boolean privileged, double finishTag, Ticket ticket) {
+            this.seq = seq;
+            this.userId = userId;
+            this.privileged = privileged;
+            this.finishTag = finishTag;
+            this.ticket = ticket;
+        }
+    }
+
+    /**
+     * An admitted generation, holds its slot until released
+     */
+    private static final class Ticket {
+
+        private final long userId;
+
+        private final Long appId;
+
+        private final boolean privileged;
+
+        private final long inputTokens;
+
+        private final AtomicLong reportedTokens = new AtomicLong();
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Ticket(long userId, Long appId, boolean privileged, long inputTokens) {
+            this.userId = userId;
+            this.appId = appId;
+            this.privileged = privileged;
+            this.inputTokens = inputTokens;
+        }
+    }
+
+    /**
+     * Waiting requests ordered by virtual finish time, guarded by this
+     */
+    private final TreeSet<Waiter> queue = new TreeSet<>(
+            Comparator.comparingDouble((Waiter waiter) -> waiter.finishTag).thenComparingLong(waiter -> waiter.seq));
+
+    /**
+     * Virtual finish time of each user's last queued request, guarded by this
+     */
+    private final Map<Long, Double> lastFinishTags = new HashMap<>();
+
+    private final Map<Long, Integer> runningByUser = new HashMap<>();
+
+    private final Map<Long, Integer> queuedByUser = new HashMap<>();
+
+    private double virtualTime;
+
+    private long nextSeq;
+
+    private int running;
+
+    /**
+     * Running generations by app, for attributing reported token usage
+     */
+    private final Map<Long, Ticket> ticketsByApp = new ConcurrentHashMap<>();
+
+    /**
+     * Daily usage used while Redis is unavailable
+     */
+    private final Map<String, AtomicLong> localUsage = new ConcurrentHashMap<>();
+
+    /**
+     * Wait for an admission slot, then run the generation while holding it
+     *
+     * @param user       user the generation is charged to
+     * @param appId      application being generated
+     * @param message    user message, counted towards the quota
+     * @param generation starts the generation once admitted
+     * @return the generation, or an error with TOO_MANY_REQUEST_ERROR if it is not admitted
+     */
+    public Flux<String> admit(User user, Long appId, String message, Supplier<Flux<String>> generation) {
+        return Flux.defer(() -> {
+            boolean privileged = adminExempt && UserRoleEnum.getEnumByValue(user.getUserRole()) == UserRoleEnum.ADMIN;
+            if (!privileged) {
+                checkQuota(user.getId());
+            }
+            Ticket ticket = new Ticket(user.getId(), appId, privileged, ChatMessageCompactor.estimateTokens(message));
+            return Mono.<Ticket>create(sink -> enqueue(ticket, user, sink))
+                    .timeout(Duration.ofSeconds(maxWaitSeconds))
+                    .onErrorMap(TimeoutException.class, e -> rejected(
+                            "Too many generations are running, waited " + maxWaitSeconds + " seconds"))
+                    .flatMapMany(admitted -> run(admitted, generation));
+        });
+    }
+
+    /**
+     * Add tokens reported by the model to the generation running for the app
+     */
+    public void recordUsage(long appId, long tokens) {
+        Ticket ticket = ticketsByApp.get(appId);
+        if (ticket != null) {
+            ticket.reportedTokens.addAndGet(tokens);
+        }
+    }
+
+    /**
+     * Tokens the user consumed today
+     */
+    public long getUsedTokensToday(long userId) {
+        String key = quotaKey(userId);
+        try {
+            String used = stringRedisTemplate.opsForValue().get(key);
+            return used == null ? 0 : Long.parseLong(used);
+        } catch (DataAccessException e) {
+            AtomicLong used = localUsage.get(key);
+            return used == null ? 0 : used.get();
+        }
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    private Flux<String> run(Ticket ticket, Supplier<Flux<String>> generation) {
+        Flux<String> source;
+        try {
+            ticketsByApp.put(ticket.appId, ticket);
+            source = generation.get();
+        } catch (RuntimeException e) {
+            release(ticket, 0);
+            return Flux.error(e);
+        }
+        AtomicLong outputTokens = new AtomicLong();
+        return source
+                .doOnNext(chunk -> outputTokens.addAndGet(ChatMessageCompactor.estimateTokens(chunk)))
+                .doFinally(signal -> release(ticket, ticket.inputTokens + outputTokens.get()));
+    }
+
+    private void enqueue(Ticket ticket, User user, MonoSink<Ticket> sink) {
+        Waiter waiter;
+        synchronized (this) {
+            int userQueued = queuedByUser.getOrDefault(ticket.userId, 0);
+            if (queue.size() >= maxQueued || (!ticket.privileged && userQueued >= maxQueuedPerUser)) {
+                log.warn("Generation queue full for userId: {} ({} waiting, {} of theirs)", ticket.userId, queue.size(), userQueued);
+                sink.error(rejected("Too many generations are waiting"));
+                return;
+            }
+            boolean admin = UserRoleEnum.getEnumByValue(user.getUserRole()) == UserRoleEnum.ADMIN;
+            double weight = admin ? adminWeight : 1;
+            // Each generation costs one unit of the user's share; a user's requests queue behind each other
+            double startTag = Math.max(virtualTime, lastFinishTags.getOrDefault(ticket.userId, 0.0));
+            waiter = new Waiter(nextSeq++, ticket.userId, ticket.privileged, startTag + 1 / weight, ticket);
+            waiter.sink = sink;
+            lastFinishTags.put(ticket.userId, waiter.finishTag);
+            queue.add(waiter);
+            queuedByUser.merge(ticket.userId, 1, Integer::sum);
+        }
+        sink.onCancel(() -> cancel(waiter));
+        dispatch();
+    }
+
+    private void cancel(Waiter waiter) {
+        synchronized (this) {
+            if (queue.remove(waiter)) {
+                decrement(queuedByUser, waiter.userId);
+                return;
+            }
+        }
+        // Admitted at the moment the caller gave up, the ticket never reached a generation
+        release(waiter.ticket, 0);
+    }
+
+    /**
+     * Admit waiters in virtual finish order while slots are free
+     */
+    private void dispatch() {
+        List<Waiter> admitted = new ArrayList<>();
+        synchronized (this) {
+            while (running < maxConcurrent && !queue.isEmpty()) {
+                Waiter next = null;
+                for (Waiter waiter : queue) {
+                    if (waiter.privileged || runningByUser.getOrDefault(waiter.userId, 0) < maxPerUser) {
+                        next = waiter;
+                        break;
+                    }
+                }
+                if (next == null) {
+                    // Everyone waiting is at their own cap
+                    break;
+                }
+                queue.remove(next);
+                decrement(queuedByUser, next.userId);
+                virtualTime = Math.max(virtualTime, next.finishTag - 1);
+                running++;
+                runningByUser.merge(next.userId, 1, Integer::sum);
+                admitted.add(next);
+            }
+            // Forget finish tags that no longer hold anyone back
+            lastFinishTags.values().removeIf(tag -> tag <= virtualTime);
+        }
+        for (Waiter waiter : admitted) {
+            waiter.sink.success(waiter.ticket);
+        }
+    }
+
+    private void release(Ticket ticket, long estimatedTokens) {
+        if (!ticket.released.compareAndSet(false, true)) {
+            return;
+        }
+        ticketsByApp.remove(ticket.appId, ticket);
+        synchronized (this) {
+            running--;
+            decrement(runningByUser, ticket.userId);
+        }
+        long reported = ticket.reportedTokens.get();
+        long used = reported > 0 ? reported : estimatedTokens;
+        if (used > 0 && !ticket.privileged) {
+            charge(ticket.userId, used);
+        }
+        dispatch();
+    }
+
+    private void checkQuota(long userId) {
+        if (dailyTokenQuota <= 0) {
+            return;
+        }
+        long used = getUsedTokensToday(userId);
+        if (used >= dailyTokenQuota) {
+            log.warn("Daily token quota used up for userId: {} ({} of {})", userId, used, dailyTokenQuota);
+            throw rejected("Daily token quota of " + dailyTokenQuota + " tokens is used up");
+        }
+    }
+
+    private void charge(long userId, long tokens) {
+        if (dailyTokenQuota <= 0) {
+            return;
+        }
+        String key = quotaKey(userId);
+        try {
+            stringRedisTemplate.opsForValue().increment(key, tokens);
+            stringRedisTemplate.expire(key, Duration.ofDays(2));
+        } catch (DataAccessException e) {
+            log.warn("Redis unavailable for token quota of userId: {}, counting locally: {}", userId, e.getMessage());
+            localUsage.computeIfAbsent(key, k -> new AtomicLong()).addAndGet(tokens);
+        }
+    }
+
+    private static String quotaKey(long userId) {
+        return QUOTA_KEY_PREFIX + userId + ":" + LocalDate.now().format(QUOTA_DAY);
+    }
+
+    private static void decrement(Map<Long, Integer> counts, long userId) {
+        counts.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private static BusinessException rejected(String reason) {
+        return new BusinessException(ErrorCode.TOO_MANY_REQUEST_ERROR, reason + ", please try again later");
+    }
+}
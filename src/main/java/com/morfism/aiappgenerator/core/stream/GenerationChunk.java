@@ -0,0 +1,18 @@
+package com.morfism.aiappgenerator.core.stream;
+
+/**
+ * One chunk of a generation stream
+ *
+ * @param streamId id of the generation stream
+ * @param seq      sequence number within the stream, starting at 1
+ * @param data     chunk content
+ */
+public record GenerationChunk(String streamId, long seq, String data) {
+
+    /**
+     * SSE event id, sent back by the client as Last-Event-ID to resume after this chunk
+     */
+    public String eventId() {
+        return streamId + ":" + seq;
+    }
+}
@@ -0,0 +1,229 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import cn.hutool.core.util.IdUtil;
+import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.exception.ErrorCode;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 单应用生成并发守卫
+ * Allows at most one code generation per app at a time, across instances
+ *
+ * 核心功能：
+ * 1. Redis 分布式锁（SET NX + 过期时间，按令牌比对释放），Redis 不可用时退化为本机内存锁
+ * 2. 本机记录进行中的生成流，生成立即在后台运行到结束，不受前端断开影响，客户端可从任意序号续传
+ * 3. 冲突策略可配置：REJECT 直接拒绝；QUEUE 排队等待上一次生成结束；ATTACH 接入进行中的生成流（默认）
+ * 4. ATTACH 只接入消息相同的生成（重复提交、刷新页面），消息不同的请求按 attach-mismatch-policy 排队或拒绝，不会被静默丢弃
+ * 5. 生成在其他实例上进行时无法接入，ATTACH 退化为拒绝
+ */
+@Slf4j
+@Component
+public class GenerationGuard {
+
+    /**
+     * What a request does when its app is already generating
+     */
+    public enum ConflictPolicy {
+        REJECT,
+        QUEUE,
+        ATTACH
+    }
+
+    private static final String LOCK_KEY_PREFIX = "generation:lock:";
+
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * Delete the lock only if it still holds our token
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    /**
+     * Generation running on this instance
+     *
+     * @param token       unique per generation, also the Redis lock value
+     * @param distributed whether the Redis lock is held, false when Redis was unavailable
+     * @param message     user message the generation answers, only requests with the same message attach
+     * @param stream      resumable stream of the generation
+     */
+    private record InFlightGeneration(String token, boolean distributed, String message, GenerationStream stream) {
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private GenerationStreamRegistry generationStreamRegistry;
+
+    @Value("${generation.guard.policy:ATTACH}")
+    private ConflictPolicy policy;
+
+    /**
+     * Policy for a request whose message differs from the generation it would attach to, QUEUE or REJECT
+     */
+    @Value("${generation.guard.attach-mismatch-policy:QUEUE}")
+    private ConflictPolicy attachMismatchPolicy;
+
+    /**
+     * Must exceed the longest generation, an expired lock lets a second generation start
+     */
+    @Value("${generation.guard.lock-ttl-seconds:900}")
+    private long lockTtlSeconds;
+
+    @Value("${generation.guard.queue-timeout-seconds:300}")
+    private long queueTimeoutSeconds;
+
+    @Value("${generation.guard.queue-poll-ms:500}")
+    private long queuePollMs;
+
+    private final Map<Long, InFlightGeneration> inFlight = new ConcurrentHashMap<>();
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    private final String instanceId = IdUtil.fastSimpleUUID();
+
+    public GenerationGuard() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Run a generation for the app, or resolve the conflict with the configured policy
+     *
+     * @param appId      application ID
+     * @param message    user message of the request, decides whether ATTACH may join the running generation
+     * @param generation starts the generation, only called when this request owns the app
+     * @return chunks of the new generation, or of the generation already running for ATTACH from its start
+     * @throws BusinessException if the app is busy and the policy rejects the request
+     */
+    public Flux<GenerationChunk> run(Long appId, String message, Supplier<Flux<String>> generation) {
+        GenerationStream started = tryStart(appId, message, generation);
+        if (started != null) {
+            return started.subscribe(0);
+        }
+        ConflictPolicy effectivePolicy = policy;
+        if (policy == ConflictPolicy.ATTACH) {
+            InFlightGeneration running = inFlight.get(appId);
+            if (running == null) {
+                // Running on another instance, its stream is not reachable from here
+                throw busy(appId);
+            }
+            if (sameMessage(running.message(), message)) {
+                log.info("Attaching to the running generation for appId: {}", appId);
+                return running.stream().subscribe(0);
+            }
+            effectivePolicy = attachMismatchPolicy;
+            log.info("Request for appId: {} differs from the running generation, applying {}", appId, effectivePolicy);
+        }
+        if (effectivePolicy == ConflictPolicy.QUEUE) {
+            log.info("Queueing generation for appId: {}", appId);
+            return Mono.fromCallable(() -> tryStart(appId, message, generation))
+                    .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofMillis(queuePollMs)))
+                    .timeout(Duration.ofSeconds(queueTimeoutSeconds))
+                    .onErrorMap(TimeoutException.class, e -> busy(appId))
+                    .flatMapMany(stream -> stream.subscribe(0));
+        }
+        throw busy(appId);
+    }
+
+    /**
+     * Start the generation if nobody else holds the app
+     *
+     * @return started generation stream, or null if the app is busy
+     */
+    private GenerationStream tryStart(Long appId, String message, Supplier<Flux<String>> generation) {
+        ReentrantLock lock = lockFor(appId);
+        lock.lock();
+        try {
+            if (inFlight.containsKey(appId)) {
+                return null;
+            }
+            String token = IdUtil.fastSimpleUUID();
+            Boolean acquired = acquireDistributed(appId, token);
+            if (Boolean.FALSE.equals(acquired)) {
+                return null;
+            }
+            boolean distributed = acquired != null;
+            Flux<String> source;
+            try {
+                source = generation.get();
+            } catch (RuntimeException e) {
+                releaseDistributed(appId, token, distributed);
+                throw e;
+            }
+            // Registered before the generation starts, so a generation ending at once still cleans up
+            GenerationStream stream = generationStreamRegistry.create(appId);
+            inFlight.put(appId, new InFlightGeneration(token, distributed, message, stream));
+            // The generation runs to its end regardless of clients, the lock is released when it ends
+            stream.connect(source.doFinally(signal -> finish(appId, token, distributed)));
+            log.info("Generation started for appId: {} (distributed lock: {})", appId, distributed);
+            return stream;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finish(Long appId, String token, boolean distributed) {
+        inFlight.computeIfPresent(appId, (id, running) -> running.token().equals(token) ? null : running);
+        releaseDistributed(appId, token, distributed);
+        log.info("Generation finished for appId: {}", appId);
+    }
+
+    /**
+     * @return true if acquired, false if held by someone else, null if Redis is unavailable
+     */
+    private Boolean acquireDistributed(Long appId, String token) {
+        try {
+            Boolean acquired = stringRedisTemplate.opsForValue().setIfAbsent(
+                    LOCK_KEY_PREFIX + appId, instanceId + ":" + token, Duration.ofSeconds(lockTtlSeconds));
+            return Boolean.TRUE.equals(acquired);
+        } catch (DataAccessException e) {
+            log.warn("Redis unavailable for generation lock of appId: {}, using local lock only: {}", appId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void releaseDistributed(Long appId, String token, boolean distributed) {
+        if (!distributed) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(LOCK_KEY_PREFIX + appId), instanceId + ":" + token);
+        } catch (DataAccessException e) {
+            log.warn("Failed to release generation lock of appId: {}, it expires in {}s: {}",
+                    appId, lockTtlSeconds, e.getMessage());
+        }
+    }
+
+    private static boolean sameMessage(String running, String requested) {
+        return running != null && requested != null && running.strip().equals(requested.strip());
+    }
+
+    private BusinessException busy(Long appId) {
+        return new BusinessException(ErrorCode.CONFLICT_ERROR,
+                "A generation is already running for this app, please wait for it to finish (appId: " + appId + ")");
+    }
+
+    private ReentrantLock lockFor(Long appId) {
+        return locks[(appId.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+}
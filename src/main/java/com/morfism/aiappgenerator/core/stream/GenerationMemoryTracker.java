@@ -0,0 +1,93 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 生成响应内存统计
+ * Hands out pooled response buffers and accounts for the memory each running generation holds
+ *
+ * 核心功能：
+ * 1. 为每次生成创建分段缓冲区，所有缓冲区共用一个定长字符块池
+ * 2. 记录进行中的缓冲区，可按应用查询占用，也可查询总占用、进行中数量和池中空闲块数，作为监控指标来源
+ * 3. 缓冲区释放时自动移出统计
+ */
+@Component
+public class GenerationMemoryTracker {
+
+    @Value("${generation.buffer.block-chars:4096}")
+    private int blockChars;
+
+    /**
+     * Idle blocks kept for reuse, memory above this goes back to the GC
+     */
+    @Value("${generation.buffer.pool-max-blocks:1024}")
+    private int poolMaxBlocks;
+
+    /**
+     * Longest response kept for one generation
+     */
+    @Value("${generation.buffer.max-chars:4194304}")
+    private int maxChars;
+
+    private CharBlockPool pool;
+
+    /**
+     * Live buffers and the app each belongs to
+     */
+    private final Map<SegmentedCharBuffer, Long> buffers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        pool = new CharBlockPool(blockChars, poolMaxBlocks);
+    }
+
+    /**
+     * Buffer for one generation response, must be released when the generation ends
+     */
+    public SegmentedCharBuffer newBuffer(Long appId) {
+        SegmentedCharBuffer buffer = new SegmentedCharBuffer(pool, maxChars, buffers::remove);
+        buffers.put(buffer, appId);
+        return buffer;
+    }
+
+    /**
+     * Generations currently holding a response buffer
+     */
+    public int getActiveBuffers() {
+        return buffers.size();
+    }
+
+    /**
+     * Bytes held by all live response buffers
+     */
+    public long getRetainedBytes() {
+        long chars = 0;
+        for (SegmentedCharBuffer buffer : buffers.keySet()) {
+            chars += buffer.getRetainedChars();
+        }
+        return chars * Character.BYTES;
+    }
+
+    /**
+     * Bytes held by idle pooled blocks
+     */
+    public long getPooledBytes() {
+        return (long) pool.getIdleCount() * blockChars * Character.BYTES;
+    }
+
+    /**
+     * Bytes held per app, for finding the generation that uses the most memory
+     */
+    public Map<Long, Long> getRetainedBytesByApp() {
+        Map<Long, Long> usage = new HashMap<>();
+        buffers.forEach((buffer, appId) ->
+                usage.merge(appId, buffer.getRetainedChars() * Character.BYTES, Long::sum));
+        return usage;
+    }
+}
@@ -0,0 +1,178 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.exception.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 可续传的生成流
+ * A running or recently finished generation, with a bounded replay buffer of sequenced chunks
+ *
+ * 核心功能：
+ * 1. 每个分片分配递增序号，最近的分片保存在有界环形缓冲区中
+ * 2. 订阅时指定已收到的最后序号，先补发缓冲区中之后的分片，再无缝接上实时分片
+ * 3. 生成结束后仍保留一段时间，断线的客户端可以补齐结尾，不会触发新的模型调用
+ * 4. 请求的位置已被环形缓冲区覆盖时直接返回错误，不补发残缺的内容
+ */
+@Slf4j
+public class GenerationStream {
+
+    private final String id;
+
+    private final Long appId;
+
+    private final int capacity;
+
+    private final ArrayDeque<GenerationChunk> buffer;
+
+    /**
+     * Live subscribers, each fed through its own buffer so replay and live chunks stay in order
+     */
+    private final List<Sinks.Many<GenerationChunk>> subscribers = new ArrayList<>();
+
+    /**
+     * Guards buffer, subscribers and the terminal state; chunks are appended and fanned out under it
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long nextSeq = 1;
+
+    private boolean completed;
+
+    private Throwable error;
+
+    private volatile long completedAt;
+
+    GenerationStream(String id, Long appId, int capacity) {
+        this.id = id;
+        this.appId = appId;
+        this.capacity = capacity;
+        this.buffer = new ArrayDeque<>(Math.min(capacity, 1024));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getAppId() {
+        return appId;
+    }
+
+    /**
+     * Time the generation ended, 0 while it is running
+     */
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    /**
+     * Subscribe to the generation in the background, it runs to its end whether or not clients are connected
+     */
+    public void connect(Flux<String> generation) {
+        generation.subscribe(this::append, this::fail, this::complete);
+    }
+
+    void append(String data) {
+        lock.lock();
+        try {
+            if (completed) {
+                return;
+            }
+            GenerationChunk chunk = new GenerationChunk(id, nextSeq++, data);
+            if (buffer.size() == capacity) {
+                buffer.pollFirst();
+            }
+            buffer.addLast(chunk);
+            for (Sinks.Many<GenerationChunk> subscriber : subscribers) {
+                subscriber.tryEmitNext(chunk);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void complete() {
+        terminate(null);
+    }
+
+    void fail(Throwable throwable) {
+        terminate(throwable);
+    }
+
+    private void terminate(Throwable throwable) {
+        lock.lock();
+        try {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            error = throwable;
+            completedAt = System.currentTimeMillis();
+            for (Sinks.Many<GenerationChunk> subscriber : subscribers) {
+                emitTerminal(subscriber);
+            }
+            subscribers.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Chunks after the given sequence number: buffered ones first, then live ones until the generation ends
+     * Fails with a BusinessException when chunks right after afterSeq already left the replay buffer
+     *
+     * @param afterSeq last sequence number the client received, 0 for the whole stream
+     */
+    public Flux<GenerationChunk> subscribe(long afterSeq) {
+        return Flux.defer(() -> {
+            Sinks.Many<GenerationChunk> sink = Sinks.many().unicast().onBackpressureBuffer();
+            lock.lock();
+            try {
+                GenerationChunk oldest = buffer.peekFirst();
+                if (oldest != null && afterSeq + 1 < oldest.seq()) {
+                    log.warn("Replay buffer of stream {} starts at {}, client asked after {}, refusing a replay with a gap",
+                            id, oldest.seq(), afterSeq);
+                    return Flux.error(new BusinessException(ErrorCode.OPERATION_ERROR,
+                            "Part of this generation is no longer available, reload the conversation to see the result"));
+                }
+                for (GenerationChunk chunk : buffer) {
+                    if (chunk.seq() > afterSeq) {
+                        sink.tryEmitNext(chunk);
+                    }
+                }
+                if (completed) {
+                    emitTerminal(sink);
+                } else {
+                    subscribers.add(sink);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return sink.asFlux().doFinally(signal -> unsubscribe(sink));
+        });
+    }
+
+    private void unsubscribe(Sinks.Many<GenerationChunk> sink) {
+        lock.lock();
+        try {
+            subscribers.remove(sink);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void emitTerminal(Sinks.Many<GenerationChunk> sink) {
+        if (error != null) {
+            sink.tryEmitError(error);
+        } else {
+            sink.tryEmitComplete();
+        }
+    }
+}
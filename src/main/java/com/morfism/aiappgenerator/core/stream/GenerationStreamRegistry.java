@@ -0,0 +1,85 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import cn.hutool.core.util.IdUtil;
+import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.exception.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 生成流注册表
+ * Keeps generation streams resumable by id while they run and for a while after they end
+ *
+ * 核心功能：
+ * 1. 生成开始时创建带回放缓冲区的流，生成结果由流在后台订阅，与客户端连接无关
+ * 2. 按 SSE 的 Last-Event-ID（streamId:seq）续传，只回放客户端缺失的分片；流未知、已过期或不在本实例时抛出业务异常
+ * 3. 结束超过保留时间的流定时清理
+ */
+@Slf4j
+@Component
+public class GenerationStreamRegistry {
+
+    /**
+     * Chunks kept per stream for replay
+     */
+    @Value("${generation.stream.replay-capacity:8192}")
+    private int replayCapacity;
+
+    /**
+     * How long a finished stream can still be resumed
+     */
+    @Value("${generation.stream.retention-seconds:300}")
+    private long retentionSeconds;
+
+    private final Map<String, GenerationStream> streams = new ConcurrentHashMap<>();
+
+    /**
+     * Create and register an empty stream, the generation is attached with GenerationStream.connect
+     */
+    public GenerationStream create(Long appId) {
+        GenerationStream stream = new GenerationStream(IdUtil.fastSimpleUUID(), appId, replayCapacity);
+        streams.put(stream.getId(), stream);
+        log.info("Generation stream {} created for appId: {}", stream.getId(), appId);
+        return stream;
+    }
+
+    /**
+     * Resume a stream from an SSE Last-Event-ID
+     *
+     * @param appId       application the stream must belong to
+     * @param lastEventId "streamId:seq" of the last chunk the client received
+     * @return missing and live chunks
+     * @throws BusinessException if the id is malformed, or the stream is unknown, expired or held by another instance
+     */
+    public Flux<GenerationChunk> resume(Long appId, String lastEventId) {
+        int separator = lastEventId == null ? -1 : lastEventId.lastIndexOf(':');
+        GenerationStream stream = separator <= 0 ? null : streams.get(lastEventId.substring(0, separator));
+        long afterSeq = -1;
+        if (stream != null && stream.getAppId().equals(appId)) {
+            try {
+                afterSeq = Long.parseLong(lastEventId.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                afterSeq = -1;
+            }
+        }
+        if (afterSeq < 0) {
+            log.warn("Generation stream of Last-Event-ID {} for appId: {} is not resumable here", lastEventId, appId);
+            throw new BusinessException(ErrorCode.OPERATION_ERROR,
+                    "This generation can no longer be resumed, reload the conversation history to see the result");
+        }
+        log.info("Resuming generation stream {} for appId: {} after chunk {}", stream.getId(), appId, afterSeq);
+        return stream.subscribe(afterSeq);
+    }
+
+    @Scheduled(fixedDelayString = "${generation.stream.cleanup-interval-ms:60000}")
+    public void evictExpired() {
+        long cutoff = System.currentTimeMillis() - retentionSeconds * 1000;
+        streams.values().removeIf(stream -> stream.getCompletedAt() != 0 && stream.getCompletedAt() < cutoff);
+    }
+}
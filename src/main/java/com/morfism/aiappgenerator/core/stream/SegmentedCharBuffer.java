@@ -0,0 +1,123 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 分段响应缓冲区
+ * Append-only text buffer made of pooled fixed-size blocks, used to collect a whole generation response
+ *
+ * 核心功能：
+ * 1. 追加时按需从池中借块，已写满的块不再复制，内存随内容线性增长
+ * 2. 单次生成有字符上限，超出部分丢弃并记录告警，异常的超长输出不会撑爆堆
+ * 3. 生成结束后 release 把块还给池，并从内存统计中移除
+ * 4. 模型回调和工具回调可能来自不同线程，所有方法同步
+ */
+@Slf4j
+public class SegmentedCharBuffer {
+
+    private final CharBlockPool pool;
+
+    private final int maxChars;
+
+    private final Consumer<SegmentedCharBuffer> onRelease;
+
+    private final List<char[]> blocks = new ArrayList<>();
+
+    private int length;
+
+    private boolean truncated;
+
+    private boolean released;
+
+    SegmentedCharBuffer(CharBlockPool pool, int maxChars, Consumer<SegmentedCharBuffer> onRelease) {
+        this.pool = pool;
+        this.maxChars = maxChars;
+        this.onRelease = onRelease;
+    }
+
+    public synchronized SegmentedCharBuffer append(CharSequence text) {
+        if (released || text == null) {
+            return this;
+        }
+        int blockSize = pool.getBlockSize();
+        int end = text.length();
+        if (length + end > maxChars) {
+            end = maxChars - length;
+            if (!truncated) {
+                truncated = true;
+                log.warn("Generation response exceeded {} chars, the rest is not kept", maxChars);
+            }
+        }
+        int offset = 0;
+        while (offset < end) {
+            int inBlock = length % blockSize;
+            if (inBlock == 0 && length / blockSize == blocks.size()) {
+                blocks.add(pool.acquire());
+            }
+            char[] block = blocks.get(length / blockSize);
+            int count = Math.min(end - offset, blockSize - inBlock);
+            if (text instanceof String string) {
+                string.getChars(offset, offset + count, block, inBlock);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    block[inBlock + i] = text.charAt(offset + i);
+                }
+            }
+            offset += count;
+            length += count;
+        }
+        return this;
+    }
+
+    public synchronized int length() {
+        return length;
+    }
+
+    /**
+     * Whether text was dropped because the buffer reached its limit
+     */
+    public synchronized boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Chars held by borrowed blocks, including the unused tail of the last one
+     */
+    public synchronized long getRetainedChars() {
+        return (long) blocks.size() * pool.getBlockSize();
+    }
+
+    @Override
+    public synchronized String toString() {
+        char[] chars = new char[length];
+        int blockSize = pool.getBlockSize();
+        for (int copied = 0, i = 0; copied < length; i++) {
+            int count = Math.min(blockSize, length - copied);
+            System.arraycopy(blocks.get(i), 0, chars, copied, count);
+            copied += count;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Return all blocks to the pool, the buffer is empty and ignores appends afterwards
+     */
+    public void release() {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+            for (char[] block : blocks) {
+                pool.release(block);
+            }
+            blocks.clear();
+            length = 0;
+        }
+        onRelease.accept(this);
+    }
+}
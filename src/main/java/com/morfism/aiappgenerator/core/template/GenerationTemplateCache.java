@@ -0,0 +1,226 @@
+package com.morfism.aiappgenerator.core.template;
+
+import cn.hutool.core.io.resource.ResourceUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.morfism.aiappgenerator.ai.AiCodeGeneratorService;
+import com.morfism.aiappgenerator.core.metrics.GenerationMetrics;
+import com.morfism.aiappgenerator.core.naming.PromptNameCache;
+import com.morfism.aiappgenerator.model.enums.CodeGenTypeEnum;
+import com.morfism.aiappgenerator.service.ChatHistoryService;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.service.SystemMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 首轮生成模板缓存（默认关闭）
+ * Reuses the output of identical first-turn HTML/MULTI_FILE generations
+ *
+ * 核心功能：
+ * 1. 键为 (生成类型, 归一化提示词, 系统提示词版本)，系统提示词改动后旧条目自然失效
+ * 2. 只覆盖对话记忆中还没有 AI 回复的首轮生成，后续轮次依赖上下文，不缓存
+ * 3. 命中时把缓存的代码拆成长短不一的片段按间隔回放，前端看到与真实生成一致的流
+ * 4. 回放的这一轮写入对话记忆，下一轮模型能看到这次生成的代码
+ * 5. 条目数上限 + 写入后过期淘汰，记录命中率
+ */
+@Slf4j
+@Component
+public class GenerationTemplateCache {
+
+    /**
+     * History rows checked for an earlier AI reply when the memory window is gone
+     */
+    private static final int FIRST_TURN_PROBE_COUNT = 10;
+
+    @Autowired
+    private ChatMemoryStore chatMemoryStore;
+
+    @Autowired
+    private GenerationMetrics generationMetrics;
+
+    @Autowired
+    @Lazy
+    private ChatHistoryService chatHistoryService;
+
+    @Value("${generation.template-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${generation.template-cache.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${generation.template-cache.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    /**
+     * Replayed chunks are between half and this many characters long
+     */
+    @Value("${generation.template-cache.replay.chunk-chars:24}")
+    private int replayChunkChars;
+
+    @Value("${generation.template-cache.replay.interval-ms:15}")
+    private long replayIntervalMs;
+
+    private Cache<String, String> cache;
+
+    /**
+     * Short hash of each type's system prompt
+     */
+    private final Map<CodeGenTypeEnum, String> promptVersions = new EnumMap<>(CodeGenTypeEnum.class);
+
+    /**
+     * Generations that were not eligible, i.e. not a first turn
+     */
+    private final AtomicLong skipped = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        generationMetrics.monitorCache(cache, "generation.template");
+        FunctionCounter.builder("generation.template.skipped", skipped, AtomicLong::get)
+                .description("Generations not eligible for the template cache")
+                .register(generationMetrics.getMeterRegistry());
+        promptVersions.put(CodeGenTypeEnum.HTML, promptVersion("generateHtmlCodeStream"));
+        promptVersions.put(CodeGenTypeEnum.MULTI_FILE, promptVersion("generateMultiFileCodeStream"));
+        if (enabled) {
+            log.info("Generation template cache enabled, prompt versions: {}", promptVersions);
+        }
+    }
+
+    /**
+     * Cache key of a generation, null when it may not use the cache
+     * Must be called before the generation touches the chat memory
+     */
+    public String keyFor(CodeGenTypeEnum codeGenType, String userMessage, Long appId) {
+        if (!enabled || !promptVersions.containsKey(codeGenType)) {
+            return null;
+        }
+        if (!isFirstTurn(appId)) {
+            skipped.incrementAndGet();
+            return null;
+        }
+        String prompt = DigestUtil.sha256Hex(PromptNameCache.normalize(userMessage));
+        return codeGenType.getValue() + ":" + promptVersions.get(codeGenType) + ":" + prompt;
+    }
+
+    /**
+     * Cached output for the key, counted as a hit or miss
+     */
+    public String get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Cache a complete output, only outputs that parsed and saved should be cached
+     */
+    public void put(String key, String code) {
+        if (StrUtil.isNotBlank(code)) {
+            cache.put(key, code);
+        }
+    }
+
+    /**
+     * Stream cached output in irregular chunks, paced like a model
+     */
+    public Flux<String> replay(String code) {
+        List<String> chunks = new ArrayList<>();
+        int max = Math.max(2, replayChunkChars);
+        for (int start = 0; start < code.length(); ) {
+            int end = Math.min(code.length(), start + ThreadLocalRandom.current().nextInt(max / 2, max + 1));
+            if (end < code.length() && Character.isHighSurrogate(code.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(code.substring(start, end));
+            start = end;
+        }
+        Flux<String> stream = Flux.fromIterable(chunks);
+        return replayIntervalMs > 0 ? stream.delayElements(Duration.ofMillis(replayIntervalMs)) : stream;
+    }
+
+    /**
+     * Add a replayed turn to the app's chat memory, as the model would have after generating it
+     */
+    public void rememberTurn(Long appId, String userMessage, String code) {
+        List<ChatMessage> messages = new ArrayList<>(chatMemoryStore.getMessages(appId));
+        // The memory may have been loaded from chat_history after the user message was saved
+        boolean userMessageLoaded = !messages.isEmpty()
+                && messages.getLast() instanceof UserMessage last
+                && last.hasSingleText() && userMessage.equals(last.singleText());
+        if (!userMessageLoaded) {
+            messages.add(UserMessage.from(userMessage));
+        }
+        messages.add(AiMessage.from(code));
+        chatMemoryStore.updateMessages(appId, messages);
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private boolean isFirstTurn(Long appId) {
+        List<ChatMessage> messages = chatMemoryStore.getMessages(appId);
+        if (messages.isEmpty()) {
+            // The window may have expired from every cache tier, earlier turns are still in chat_history
+            messages = chatHistoryService.loadRecentChatMessages(appId, FIRST_TURN_PROBE_COUNT);
+        }
+        for (ChatMessage message : messages) {
+            if (message instanceof AiMessage) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Short hash of the system prompt an AI service method uses
+     */
+    private static String promptVersion(String methodName) {
+        try {
+            SystemMessage systemMessage = AiCodeGeneratorService.class
+                    .getMethod(methodName, String.class)
+                    .getAnnotation(SystemMessage.class);
+            String prompt = StrUtil.isNotEmpty(systemMessage.fromResource())
+                    ? ResourceUtil.readUtf8Str(systemMessage.fromResource())
+                    : String.join("\n", systemMessage.value());
+            return DigestUtil.sha256Hex(prompt).substring(0, 12);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("AI service has no method " + methodName, e);
+        }
+    }
+}
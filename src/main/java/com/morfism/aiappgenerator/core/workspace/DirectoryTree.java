@@ -0,0 +1,147 @@
+package com.morfism.aiappgenerator.core.workspace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * 项目目录树索引
+ * In-memory directory tree of a project, kept sorted so rendering never sorts
+ *
+ * Not thread safe, ProjectWorkspace guards it with its tree lock
+ */
+class DirectoryTree {
+
+    private static class DirNode {
+
+        private final TreeMap<String, DirNode> directories = new TreeMap<>();
+
+        private final TreeSet<String> files = new TreeSet<>();
+    }
+
+    private final DirNode root = new DirNode();
+
+    /**
+     * Add a directory and its missing ancestors
+     *
+     * @param normalizedPath path relative to the project root using '/'
+     */
+    void addDirectory(String normalizedPath) {
+        DirNode node = root;
+        if (normalizedPath.isEmpty()) {
+            return;
+        }
+        for (String name : normalizedPath.split("/")) {
+            node = node.directories.computeIfAbsent(name, k -> new DirNode());
+        }
+    }
+
+    /**
+     * Add a file and its missing parent directories
+     */
+    void addFile(String normalizedPath) {
+        int slash = normalizedPath.lastIndexOf('/');
+        DirNode parent = root;
+        if (slash > 0) {
+            String parentPath = normalizedPath.substring(0, slash);
+            addDirectory(parentPath);
+            parent = find(parentPath);
+        }
+        parent.files.add(normalizedPath.substring(slash + 1));
+    }
+
+    /**
+     * Remove a file, its directory is kept like on disk
+     */
+    void removeFile(String normalizedPath) {
+        int slash = normalizedPath.lastIndexOf('/');
+        DirNode parent = slash > 0 ? find(normalizedPath.substring(0, slash)) : root;
+        if (parent != null) {
+            parent.files.remove(normalizedPath.substring(slash + 1));
+        }
+    }
+
+    boolean isDirectory(String normalizedPath) {
+        return find(normalizedPath) != null;
+    }
+
+    /**
+     * Render a directory: sub directories first, then files, both by name, down to maxDepth levels
+     *
+     * @param normalizedPath directory to render
+     * @param maxDepth       number of levels to render
+     * @param ignored        names that are skipped together with their subtree
+     * @return rendered tree, or null if the directory does not exist
+     */
+    String render(String normalizedPath, int maxDepth, Predicate<String> ignored) {
+        DirNode node = find(normalizedPath);
+        if (node == null) {
+            return null;
+        }
+        StringBuilder structure = new StringBuilder();
+        render(node, structure, "", 0, maxDepth, ignored);
+        return structure.toString();
+    }
+
+    private void render(DirNode node, StringBuilder structure, String indent, int currentDepth, int maxDepth,
+                        Predicate<String> ignored) {
+        if (currentDepth >= maxDepth) {
+            return;
+        }
+        node.directories.forEach((name, child) -> {
+            if (!ignored.test(name)) {
+                structure.append(indent).append("📁 ").append(name).append("/\n");
+                render(child, structure, indent + "  ", currentDepth + 1, maxDepth, ignored);
+            }
+        });
+        for (String name : node.files) {
+            if (!ignored.test(name)) {
+                structure.append(indent).append("📄 ").append(name).append("\n");
+            }
+        }
+    }
+
+    /**
+     * Every file under a directory, sub directories first like render
+     *
+     * @return relative file paths, or null if the directory does not exist
+     */
+    List<String> listFiles(String normalizedPath, Predicate<String> ignored) {
+        DirNode node = find(normalizedPath);
+        if (node == null) {
+            return null;
+        }
+        List<String> files = new ArrayList<>();
+        collectFiles(node, normalizedPath.isEmpty() ? "" : normalizedPath + "/", files, ignored);
+        return files;
+    }
+
+    private void collectFiles(DirNode node, String prefix, List<String> files, Predicate<String> ignored) {
+        node.directories.forEach((name, child) -> {
+            if (!ignored.test(name)) {
+                collectFiles(child, prefix + name + "/", files, ignored);
+            }
+        });
+        for (String name : node.files) {
+            if (!ignored.test(name)) {
+                files.add(prefix + name);
+            }
+        }
+    }
+
+    private DirNode find(String normalizedPath) {
+        DirNode node = root;
+        if (normalizedPath.isEmpty()) {
+            return node;
+        }
+        for (String name : normalizedPath.split("/")) {
+            node = node.directories.get(name);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,462 @@
+package com.morfism.aiappgenerator.core.workspace;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 单个应用项目的内存覆盖文件系统
+ * In-memory overlay over one generated project directory
+ *
+ * 核心功能：
+ * 1. 读取优先命中内存中的条目，未命中时读磁盘并缓存
+ * 2. 写入和删除只修改内存条目并标记为脏，多次写同一文件只在刷盘时落一次
+ * 3. 刷盘时按条目写入或删除磁盘文件（文件较多时并发写入，每个文件先写临时文件再原子替换），刷盘期间的并发修改不会被误标记为已落盘
+ * 4. 所有路径都规范化到项目根目录下，拒绝越出项目目录的路径
+ * 5. 目录树索引首次列目录时从磁盘构建，之后随写入/删除增量维护，渲染结果缓存到下一次变更
+ * 6. 文件的行索引按内容版本缓存，支持按行区间读取和逐行搜索
+ */
+@Slf4j
+public class ProjectWorkspace {
+
+    /**
+     * One file in the overlay, immutable; flush replaces or removes an entry only while it still equals
+     * the one flushed, a newer write of identical content is already what reached disk
+     *
+     * @param content file content, null for a tombstone
+     * @param dirty   whether the entry differs from disk
+     */
+    private record FileEntry(String content, boolean dirty) {
+
+        boolean isDeleted() {
+            return content == null;
+        }
+    }
+
+    /**
+     * Flushes with at least this many dirty files write them concurrently
+     */
+    private static final int PARALLEL_FLUSH_THRESHOLD = 4;
+
+    private final Path root;
+
+    /**
+     * Normalized relative path ("src/App.vue") -> entry
+     */
+    private final Map<String, FileEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Serializes flushes so two checkpoints never write the same file concurrently
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /**
+     * Guards tree and renderCache
+     */
+    private final ReentrantLock treeLock = new ReentrantLock();
+
+    /**
+     * Directory tree index, null until the first listing
+     */
+    private DirectoryTree tree;
+
+    /**
+     * "depth:path" -> rendered listing, cleared on every structural change
+     */
+    private final Map<String, String> renderCache = new HashMap<>();
+
+    /**
+     * Normalized path -> line index of its current content, valid while the content instance is unchanged
+     */
+    private final Map<String, TextLines> lineIndexes = new ConcurrentHashMap<>();
+
+    public ProjectWorkspace(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Normalize a tool supplied path to a key relative to the project root
+     *
+     * @param relativePath relative path, or an absolute path inside the project
+     * @return normalized relative path using '/', "" for the root itself, or null if the path escapes the project
+     */
+    public String normalize(String relativePath) {
+        String raw = relativePath == null ? "" : relativePath.trim().replace('\\', '/');
+        try {
+            Path resolved = root.resolve(raw).normalize();
+            if (!resolved.startsWith(root)) {
+                return null;
+            }
+            return root.relativize(resolved).toString().replace('\\', '/');
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Absolute disk location of a normalized path
+     */
+    public Path toDiskPath(String normalizedPath) {
+        return normalizedPath.isEmpty() ? root : root.resolve(normalizedPath);
+    }
+
+    /**
+     * Read a file through the overlay
+     *
+     * @param normalizedPath path returned by normalize
+     * @return file content, or null if the file does not exist or is not a regular file
+     */
+    public String read(String normalizedPath) throws IOException {
+        FileEntry entry = entries.get(normalizedPath);
+        if (entry != null) {
+            return entry.content();
+        }
+        Path path = toDiskPath(normalizedPath);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        String content = Files.readString(path);
+        // Cache the clean copy unless a write raced in meanwhile
+        entries.putIfAbsent(normalizedPath, new FileEntry(content, false));
+        FileEntry current = entries.get(normalizedPath);
+        return current == null ? content : current.content();
+    }
+
+    /**
+     * Read a file through the overlay together with its line index
+     * The index is built once per content version and reused by later ranged reads and searches
+     *
+     * @return indexed content, or null if the file does not exist or is not a regular file
+     */
+    public TextLines readLines(String normalizedPath) throws IOException {
+        String content = read(normalizedPath);
+        if (content == null) {
+            lineIndexes.remove(normalizedPath);
+            return null;
+        }
+        TextLines cached = lineIndexes.get(normalizedPath);
+        if (cached != null && cached.content() == content) {
+            return cached;
+        }
+        TextLines lines = TextLines.of(content);
+        lineIndexes.put(normalizedPath, lines);
+        return lines;
+    }
+
+    /**
+     * Whether a regular file exists at the path, as seen through the overlay
+     */
+    public boolean isFile(String normalizedPath) {
+        FileEntry entry = entries.get(normalizedPath);
+        if (entry != null) {
+            return !entry.isDeleted();
+        }
+        return Files.isRegularFile(toDiskPath(normalizedPath));
+    }
+
+    /**
+     * Size of a file as seen through the overlay, in chars for overlay content and bytes on disk
+     *
+     * @return the size, or -1 if no regular file exists at the path
+     */
+    public long fileSize(String normalizedPath) throws IOException {
+        FileEntry entry = entries.get(normalizedPath);
+        if (entry != null) {
+            return entry.isDeleted() ? -1 : entry.content().length();
+        }
+        Path path = toDiskPath(normalizedPath);
+        return Files.isRegularFile(path) ? Files.size(path) : -1;
+    }
+
+    /**
+     * Create or replace a file in the overlay
+     *
+     * @return false, writing nothing, when the path is a directory
+     */
+    public boolean write(String normalizedPath, String content) {
+        if (isDirectory(normalizedPath)) {
+            return false;
+        }
+        FileEntry previous = entries.put(normalizedPath, new FileEntry(content, true));
+        lineIndexes.remove(normalizedPath);
+        // Rewriting a known file leaves the tree unchanged
+        if (previous == null || previous.isDeleted()) {
+            updateTree(normalizedPath, true);
+        }
+        return true;
+    }
+
+    /**
+     * Whether the path is a directory on disk or holds files only written to the overlay so far
+     */
+    private boolean isDirectory(String normalizedPath) {
+        if (normalizedPath.isEmpty()) {
+            return true;
+        }
+        FileEntry entry = entries.get(normalizedPath);
+        if (entry != null && !entry.isDeleted()) {
+            return false;
+        }
+        if (Files.isDirectory(toDiskPath(normalizedPath))) {
+            return true;
+        }
+        String prefix = normalizedPath + "/";
+        for (Map.Entry<String, FileEntry> child : entries.entrySet()) {
+            if (child.getKey().startsWith(prefix) && !child.getValue().isDeleted()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Delete a file in the overlay
+     *
+     * @return whether a file existed
+     */
+    public boolean delete(String normalizedPath) {
+        boolean existed = isFile(normalizedPath);
+        if (existed) {
+            entries.put(normalizedPath, new FileEntry(null, true));
+            lineIndexes.remove(normalizedPath);
+            updateTree(normalizedPath, false);
+        }
+        return existed;
+    }
+
+    /**
+     * Render a directory listing from the tree index
+     * The index is built from disk on the first call and then only maintained in memory
+     *
+     * @param normalizedPath directory to render
+     * @param maxDepth       number of levels to render
+     * @param ignored        names skipped together with their subtree, must be the same on every call
+     * @return rendered tree, or null if the directory does not exist
+     */
+    public String renderTree(String normalizedPath, int maxDepth, Predicate<String> ignored) throws IOException {
+        treeLock.lock();
+        try {
+            if (tree == null) {
+                tree = buildTree(ignored);
+            }
+            String cacheKey = maxDepth + ":" + normalizedPath;
+            String rendered = renderCache.get(cacheKey);
+            if (rendered == null) {
+                rendered = tree.render(normalizedPath, maxDepth, ignored);
+                if (rendered != null) {
+                    renderCache.put(cacheKey, rendered);
+                }
+            }
+            return rendered;
+        } finally {
+            treeLock.unlock();
+        }
+    }
+
+    /**
+     * Every file under a directory from the tree index, in rendering order
+     *
+     * @param normalizedPath directory to list
+     * @param ignored        names skipped together with their subtree, must match the one used for renderTree
+     * @return relative file paths, or null if the directory does not exist
+     */
+    public List<String> listFiles(String normalizedPath, Predicate<String> ignored) throws IOException {
+        treeLock.lock();
+        try {
+            if (tree == null) {
+                tree = buildTree(ignored);
+            }
+            return tree.listFiles(normalizedPath, ignored);
+        } finally {
+            treeLock.unlock();
+        }
+    }
+
+    /**
+     * Walk the project once, then apply pending overlay changes on top
+     */
+    private DirectoryTree buildTree(Predicate<String> ignored) throws IOException {
+        DirectoryTree newTree = new DirectoryTree();
+        if (Files.isDirectory(root)) {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (!dir.equals(root) && ignored.test(dir.getFileName().toString())) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    newTree.addDirectory(relativeKey(dir));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    newTree.addFile(relativeKey(file));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } else {
+            // Nothing on disk yet, only files written during this generation exist
+            newTree.addDirectory("");
+        }
+        entries.forEach((normalizedPath, entry) -> {
+            if (entry.isDeleted()) {
+                newTree.removeFile(normalizedPath);
+            } else {
+                newTree.addFile(normalizedPath);
+            }
+        });
+        return newTree;
+    }
+
+    private void updateTree(String normalizedPath, boolean added) {
+        treeLock.lock();
+        try {
+            if (tree == null) {
+                return;
+            }
+            if (added) {
+                tree.addFile(normalizedPath);
+            } else {
+                tree.removeFile(normalizedPath);
+            }
+            renderCache.clear();
+        } finally {
+            treeLock.unlock();
+        }
+    }
+
+    private String relativeKey(Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * Number of entries not yet written to disk
+     */
+    public int dirtyCount() {
+        int count = 0;
+        for (FileEntry entry : entries.values()) {
+            if (entry.dirty()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write every dirty entry to disk, several files are written concurrently
+     *
+     * @return number of files written or deleted
+     */
+    public int flush() throws IOException {
+        flushLock.lock();
+        try {
+            List<Map.Entry<String, FileEntry>> dirty = new ArrayList<>();
+            for (Map.Entry<String, FileEntry> entry : entries.entrySet()) {
+                if (entry.getValue().dirty()) {
+                    dirty.add(Map.entry(entry.getKey(), entry.getValue()));
+                }
+            }
+            if (dirty.size() < PARALLEL_FLUSH_THRESHOLD) {
+                for (Map.Entry<String, FileEntry> entry : dirty) {
+                    flushEntry(entry.getKey(), entry.getValue());
+                }
+            } else {
+                flushConcurrently(dirty);
+            }
+            if (!dirty.isEmpty()) {
+                log.debug("Flushed {} workspace entries to {}", dirty.size(), root);
+            }
+            return dirty.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushConcurrently(List<Map.Entry<String, FileEntry>> dirty) throws IOException {
+        List<Future<?>> futures = new ArrayList<>(dirty.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Map.Entry<String, FileEntry> entry : dirty) {
+                futures.add(executor.submit(() -> {
+                    flushEntry(entry.getKey(), entry.getValue());
+                    return null;
+                }));
+            }
+        }
+        // Every write has finished here, report the first failure
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while flushing workspace", e);
+            }
+        }
+    }
+
+    private void flushEntry(String normalizedPath, FileEntry fileEntry) throws IOException {
+        Path path = toDiskPath(normalizedPath);
+        if (fileEntry.isDeleted()) {
+            Files.deleteIfExists(path);
+            entries.remove(normalizedPath, fileEntry);
+        } else {
+            Path parent = path.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            writeAtomically(path, fileEntry.content());
+            // Only mark clean if no newer write replaced the entry while flushing
+            entries.replace(normalizedPath, fileEntry, new FileEntry(fileEntry.content(), false));
+        }
+    }
+
+    /**
+     * Write to a temporary sibling and move it over the target, readers never see a half-written file
+     */
+    private void writeAtomically(Path path, String content) throws IOException {
+        Path temp = path.resolveSibling("." + path.getFileName() + ".tmp");
+        try {
+            Files.writeString(temp, content, StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
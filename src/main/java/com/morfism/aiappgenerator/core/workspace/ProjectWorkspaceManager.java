@@ -0,0 +1,150 @@
+package com.morfism.aiappgenerator.core.workspace;
+
+import com.morfism.aiappgenerator.constant.AppConstant;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 项目工作区管理器
+ * Owns the in-memory workspaces of projects that are being generated
+ *
+ * 核心功能：
+ * 1. 生成开始时为应用创建工作区，AI 文件工具的读写都经过工作区
+ * 2. 生成结束（成功或失败）时一次性刷盘并释放工作区，构建看到的是完整一致的目录
+ * 3. 可选的定时检查点，避免长时间生成时进程异常导致文件全部丢失
+ * 4. 生成之外的工具调用使用临时工作区，空闲超时后刷盘并释放，不会常驻内存
+ */
+@Slf4j
+@Component
+public class ProjectWorkspaceManager {
+
+    @Value("${workspace.checkpoint.enabled:true}")
+    private boolean checkpointEnabled;
+
+    /**
+     * Idle time after which a workspace created outside a generation is flushed and released
+     */
+    @Value("${workspace.untracked-idle-ms:60000}")
+    private long untrackedIdleMs;
+
+    private final Map<Long, ProjectWorkspace> workspaces = new ConcurrentHashMap<>();
+
+    /**
+     * Workspaces created by get() without a generation, removed by begin, complete or idle eviction
+     */
+    private final Map<Long, UntrackedWorkspace> untracked = new ConcurrentHashMap<>();
+
+    private static final class UntrackedWorkspace {
+
+        private final ProjectWorkspace workspace;
+
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private UntrackedWorkspace(ProjectWorkspace workspace) {
+            this.workspace = workspace;
+        }
+    }
+
+    /**
+     * Start a generation with a fresh workspace, a leftover one is flushed first
+     */
+    public ProjectWorkspace begin(Long appId) {
+        untracked.remove(appId);
+        ProjectWorkspace previous = workspaces.remove(appId);
+        if (previous != null) {
+            flushQuietly(appId, previous);
+        }
+        return workspaces.computeIfAbsent(appId, id -> new ProjectWorkspace(getProjectRoot(id)));
+    }
+
+    /**
+     * Workspace used by the file tools
+     * Tool calls outside a tracked generation get a workspace that is released once idle for untrackedIdleMs
+     */
+    public ProjectWorkspace get(Long appId) {
+        ProjectWorkspace workspace = workspaces.computeIfAbsent(appId, id -> {
+            ProjectWorkspace created = new ProjectWorkspace(getProjectRoot(id));
+            untracked.put(id, new UntrackedWorkspace(created));
+            log.debug("Created untracked workspace for appId: {}", id);
+            return created;
+        });
+        UntrackedWorkspace use = untracked.get(appId);
+        if (use != null) {
+            use.lastUsed = System.currentTimeMillis();
+        }
+        return workspace;
+    }
+
+    /**
+     * Flush the workspace to disk and release it
+     *
+     * @return number of files written or deleted
+     */
+    public int complete(Long appId) {
+        untracked.remove(appId);
+        ProjectWorkspace workspace = workspaces.remove(appId);
+        if (workspace == null) {
+            return 0;
+        }
+        return flushQuietly(appId, workspace);
+    }
+
+    /**
+     * Periodic checkpoint of every active workspace
+     */
+    @Scheduled(fixedDelayString = "${workspace.checkpoint.interval-ms:5000}")
+    public void checkpoint() {
+        if (!checkpointEnabled || workspaces.isEmpty()) {
+            return;
+        }
+        workspaces.forEach((appId, workspace) -> {
+            if (workspace.dirtyCount() > 0) {
+                flushQuietly(appId, workspace);
+            }
+        });
+    }
+
+    /**
+     * Flush and release workspaces created outside a generation that have been idle long enough
+     * Runs even with checkpoints disabled, these workspaces have no complete() to flush them
+     */
+    @Scheduled(fixedDelayString = "${workspace.checkpoint.interval-ms:5000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - untrackedIdleMs;
+        untracked.forEach((appId, use) -> {
+            if (use.lastUsed <= cutoff && untracked.remove(appId, use)) {
+                // A generation that began meanwhile owns a different workspace and keeps it
+                workspaces.remove(appId, use.workspace);
+                flushQuietly(appId, use.workspace);
+                log.debug("Released idle untracked workspace for appId: {}", appId);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        workspaces.forEach(this::flushQuietly);
+    }
+
+    public static Path getProjectRoot(Long appId) {
+        return Paths.get(AppConstant.CODE_OUTPUT_ROOT_DIR, "vue_project_" + appId);
+    }
+
+    private int flushQuietly(Long appId, ProjectWorkspace workspace) {
+        try {
+            return workspace.flush();
+        } catch (IOException e) {
+            log.error("Failed to flush workspace for appId: {}, error: {}", appId, e.getMessage(), e);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.morfism.aiappgenerator.core.workspace;
+
+/**
+ * 带行索引的文本
+ * File content with a line start index, so line ranges are sliced without rescanning the text
+ *
+ * Lines are 1-based, a final newline does not start another line
+ */
+public final class TextLines {
+
+    private final String content;
+
+    /**
+     * Offset of every line start, plus content length as a sentinel
+     */
+    private final int[] starts;
+
+    private TextLines(String content, int[] starts) {
+        this.content = content;
+        this.starts = starts;
+    }
+
+    public static TextLines of(String content) {
+        int count = 0;
+        for (int i = 0; i < content.length(); i++) {
+            if (content.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        if (!content.isEmpty() && content.charAt(content.length() - 1) != '\n') {
+            count++;
+        }
+        int[] starts = new int[count + 1];
+        int line = 1;
+        for (int i = 0; i < content.length() - 1 && line < count; i++) {
+            if (content.charAt(i) == '\n') {
+                starts[line++] = i + 1;
+            }
+        }
+        starts[count] = content.length();
+        return new TextLines(content, starts);
+    }
+
+    public String content() {
+        return content;
+    }
+
+    public int lineCount() {
+        return starts.length - 1;
+    }
+
+    /**
+     * Lines from..to inclusive, with their newlines
+     */
+    public String slice(int from, int to) {
+        return content.substring(starts[from - 1], starts[to]);
+    }
+
+    /**
+     * A single line without its newline
+     */
+    public String line(int number) {
+        int end = starts[number];
+        if (end > starts[number - 1] && content.charAt(end - 1) == '\n') {
+            end--;
+        }
+        return content.substring(starts[number - 1], end);
+    }
+
+    /**
+     * UTF-8 size of a line including its newline, computed without encoding
+     */
+    public int byteLength(int number) {
+        int bytes = 0;
+        for (int i = starts[number - 1]; i < starts[number]; i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                // A surrogate pair is 4 bytes, 2 per char
+                bytes += 2;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -11,6 +11,8 @@ public enum ErrorCode {
     NO_AUTH_ERROR(40101, "无权限 (No permission)"),
     NOT_FOUND_ERROR(40400, "请求数据不存在 (Requested data not found)"),
     FORBIDDEN_ERROR(40300, "禁止访问 (Access forbidden)"),
+    CONFLICT_ERROR(40900, "资源冲突 (Resource conflict)"),
+    TOO_MANY_REQUEST_ERROR(42900, "请求过于频繁 (Too many requests)"),
     SYSTEM_ERROR(50000, "系统内部异常 (Internal system error)"),
     OPERATION_ERROR(50001, "操作失败 (Operation failed)");
 
@@ -0,0 +1,104 @@
+package com.morfism.aiappgenerator.manager;
+
+import cn.hutool.core.collection.CollUtil;
+import com.morfism.aiappgenerator.mapper.ChatHistoryMapper;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 聊天记录归档任务
+ * Moves cold chat_history rows into chat_history_archive
+ *
+ * 核心功能：
+ * 1. 软删除的记录和超过保留期的记录按 id 游标分批迁移到归档表
+ * 2. 每批 INSERT ... SELECT 与 DELETE 在同一事务中完成，中途失败可安全重跑
+ * 3. 热表只保留近期有效记录，游标查询不再为死数据付出索引代价
+ */
+@Slf4j
+@Component
+public class ChatHistoryArchiver {
+
+    @Resource
+    private ChatHistoryMapper chatHistoryMapper;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${chat-history.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat-history.archive.retention-days:90}")
+    private int retentionDays;
+
+    @Value("${chat-history.archive.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Guards against overlapping runs, e.g. the schedule firing while an admin run is in progress
+     */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Rows created before this time belong to the archive
+     */
+    public LocalDateTime getRetentionCutoff() {
+        return LocalDateTime.now().minusDays(retentionDays);
+    }
+
+    @Scheduled(cron = "${chat-history.archive.cron:0 30 3 * * ?}")
+    public void scheduledArchive() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            archive();
+        } catch (Exception e) {
+            log.error("Scheduled chat history archival failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Run one archival pass
+     *
+     * @return number of archived rows, or -1 if a pass is already running
+     */
+    public int archive() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        long start = System.currentTimeMillis();
+        int archivedCount = 0;
+        try {
+            LocalDateTime cutoff = getRetentionCutoff();
+            long lastId = 0;
+            while (true) {
+                List<Long> ids = chatHistoryMapper.selectArchivableIds(lastId, cutoff, batchSize);
+                if (CollUtil.isEmpty(ids)) {
+                    break;
+                }
+                Integer moved = transactionTemplate.execute(status -> {
+                    chatHistoryMapper.copyToArchive(ids);
+                    return chatHistoryMapper.purgeByIds(ids);
+                });
+                archivedCount += moved == null ? 0 : moved;
+                lastId = ids.get(ids.size() - 1);
+                if (ids.size() < batchSize) {
+                    break;
+                }
+            }
+            log.info("Chat history archival finished, {} rows archived before {}, took {}ms",
+                    archivedCount, cutoff, System.currentTimeMillis() - start);
+            return archivedCount;
+        } finally {
+            running.set(false);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.morfism.aiappgenerator.manager;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.exception.ErrorCode;
+import com.morfism.aiappgenerator.mapper.ChatHistoryMapper;
+import com.morfism.aiappgenerator.model.entity.ChatHistory;
+import com.morfism.aiappgenerator.utils.ChatMessageCodec;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 聊天记录异步写缓冲（write-behind）
+ * Write-behind buffer for chat_history inserts
+ *
+ * 核心功能：
+ * 1. 调用方只负责入队，由后台线程按条数或时间批量 INSERT
+ * 2. 单一 FIFO 队列，每批出队时领取序号，按序号依次落库，保证同一应用内消息顺序；落库时不持有队列锁
+ * 3. 缓冲区满时阻塞调用方（背压），超时后由调用方自己把积压写掉
+ * 4. 读路径通过 pendingRows() 读到尚未落库的记录，不必等待落库（落库可能正卡在重试退避中）；删除等写路径用 flush() 先落库
+ * 5. 超过阈值的大消息在后台线程压缩后写入 messageBlob
+ * 6. 写入失败的记录逐条重试，重试耗尽后同步调用方收到异常，后台线程计入失败计数
+ */
+@Slf4j
+@Component
+public class ChatHistoryWriteBuffer {
+
+    @Resource
+    private ChatHistoryMapper chatHistoryMapper;
+
+    @Value("${chat-history.write-behind.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat-history.write-behind.batch-size:100}")
+    private int batchSize;
+
+    @Value("${chat-history.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${chat-history.write-behind.capacity:10000}")
+    private int capacity;
+
+    @Value("${chat-history.write-behind.offer-timeout-ms:500}")
+    private long offerTimeoutMs;
+
+    @Value("${chat-history.write-behind.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${chat-history.write-behind.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    @Value("${chat-history.compression.threshold-chars:4096}")
+    private int compressionThresholdChars;
+
+    /**
+     * Pending rows, guarded by bufferLock
+     */
+    private final ArrayDeque<ChatHistory> buffer = new ArrayDeque<>();
+
+    private final ReentrantLock bufferLock = new ReentrantLock();
+
+    private final Condition notEmpty = bufferLock.newCondition();
+
+    private final Condition notFull = bufferLock.newCondition();
+
+    /**
+     * Batches drained so far, the next drained batch gets this number as its write ticket, guarded by bufferLock
+     */
+    private long drainedBatches;
+
+    /**
+     * Drained batches not written yet by ticket, still served to readers by pendingRows, guarded by bufferLock
+     */
+    private final TreeMap<Long, List<ChatHistory>> unwrittenBatches = new TreeMap<>();
+
+    /**
+     * Serializes database writes, never acquired while bufferLock is held
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final Condition writeTurn = writeLock.newCondition();
+
+    /**
+     * Batches written so far, a batch is written once this reaches its ticket, guarded by writeLock
+     */
+    private long writtenBatches;
+
+    /**
+     * Rows dropped by the background flusher after every retry failed
+     */
+    private final AtomicLong failedRows = new AtomicLong();
+
+    private volatile boolean running;
+
+    private Thread flusher;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("Chat history write-behind disabled, rows are inserted synchronously");
+            return;
+        }
+        running = true;
+        flusher = Thread.ofPlatform()
+                .name("chat-history-flusher")
+                .daemon(true)
+                .start(this::flushLoop);
+        log.info("Chat history write-behind started, batchSize: {}, flushIntervalMs: {}, capacity: {}",
+                batchSize, flushIntervalMs, capacity);
+    }
+
+    /**
+     * Queue a row for insertion
+     * Blocks while the buffer is full; once offerTimeoutMs elapses the caller drains the backlog itself
+     *
+     * @param chatHistory row with id already assigned
+     * @throws BusinessException when the row is written on the caller thread and cannot be saved
+     */
+    public void enqueue(ChatHistory chatHistory) {
+        if (!running) {
+            flush(chatHistory);
+            return;
+        }
+        bufferLock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs);
+            while (buffer.size() >= capacity && remaining > 0) {
+                remaining = notFull.awaitNanos(remaining);
+            }
+            if (buffer.size() < capacity) {
+                buffer.addLast(chatHistory);
+                notEmpty.signal();
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            bufferLock.unlock();
+        }
+        // 背压超时：调用方线程自己写掉积压和当前记录，保持顺序
+        log.warn("Chat history buffer full for {}ms, writing backlog on caller thread", offerTimeoutMs);
+        flush(chatHistory);
+    }
+
+    /**
+     * Write every pending row now, used by read paths that must see their own writes
+     * Returns only after batches drained earlier by the flusher are written as well
+     *
+     * @throws BusinessException when some rows could not be saved after retrying
+     */
+    public void flush() {
+        flush(null);
+    }
+
+    /**
+     * Rows of an app that are queued or being written but may not be in the database yet, oldest first
+     * Never waits for a write; a row written meanwhile may also be returned by a database query
+     */
+    public List<ChatHistory> pendingRows(Long appId) {
+        List<ChatHistory> pending = new ArrayList<>();
+        bufferLock.lock();
+        try {
+            for (List<ChatHistory> batch : unwrittenBatches.values()) {
+                for (ChatHistory chatHistory : batch) {
+                    if (appId.equals(chatHistory.getAppId())) {
+                        pending.add(chatHistory);
+                    }
+                }
+            }
+            for (ChatHistory chatHistory : buffer) {
+                if (appId.equals(chatHistory.getAppId())) {
+                    pending.add(chatHistory);
+                }
+            }
+        } finally {
+            bufferLock.unlock();
+        }
+        return pending;
+    }
+
+    private void flush(ChatHistory tail) {
+        List<ChatHistory> batch;
+        long ticket;
+        bufferLock.lock();
+        try {
+            batch = new ArrayList<>(buffer.size() + 1);
+            batch.addAll(buffer);
+            buffer.clear();
+            if (tail != null) {
+                batch.add(tail);
+            }
+            ticket = drainedBatches++;
+            unwrittenBatches.put(ticket, batch);
+            notFull.signalAll();
+        } finally {
+            bufferLock.unlock();
+        }
+        List<ChatHistory> failed = writeInOrder(ticket, batch);
+        if (!failed.isEmpty()) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR,
+                    "Failed to save " + failed.size() + " chat history rows");
+        }
+    }
+
+    /**
+     * Background loop: wait for the first row, then collect until batchSize rows or flushIntervalMs elapsed
+     */
+    private void flushLoop() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (true) {
+            List<ChatHistory> batch = null;
+            long ticket = 0;
+            bufferLock.lock();
+            try {
+                while (running && buffer.isEmpty()) {
+                    notEmpty.await(flushIntervalMs, TimeUnit.MILLISECONDS);
+                }
+                // Checked under the lock, a row queued right before stop() is still drained
+                if (!running && buffer.isEmpty()) {
+                    return;
+                }
+                long remaining = intervalNanos;
+                while (running && buffer.size() < batchSize && remaining > 0) {
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+                if (!buffer.isEmpty()) {
+                    int size = Math.min(batchSize, buffer.size());
+                    batch = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        batch.add(buffer.pollFirst());
+                    }
+                    ticket = drainedBatches++;
+                    unwrittenBatches.put(ticket, batch);
+                    notFull.signalAll();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } finally {
+                bufferLock.unlock();
+            }
+            if (batch != null) {
+                List<ChatHistory> failed = writeInOrder(ticket, batch);
+                if (!failed.isEmpty()) {
+                    failedRows.addAndGet(failed.size());
+                    log.error("Dropped {} chat history rows after {} retries, ids: {}", failed.size(), maxRetries,
+                            failed.stream().map(ChatHistory::getId).toList());
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait until every batch drained before this one is written, then write it
+     *
+     * @param ticket drain order of the batch
+     * @return rows that could not be saved
+     */
+    private List<ChatHistory> writeInOrder(long ticket, List<ChatHistory> batch) {
+        try {
+            writeLock.lock();
+            try {
+                while (writtenBatches != ticket) {
+                    writeTurn.awaitUninterruptibly();
+                }
+                try {
+                    return writeWithRetry(batch);
+                } finally {
+                    writtenBatches++;
+                    writeTurn.signalAll();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            // Taken after writeLock is released, bufferLock is never held while waiting for writeLock
+            bufferLock.lock();
+            try {
+                unwrittenBatches.remove(ticket);
+            } finally {
+                bufferLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Write a batch, retrying the rows that failed with a growing backoff
+     * Later batches wait meanwhile, so a retried row still lands before them
+     *
+     * @return rows still failing after maxRetries retries
+     */
+    private List<ChatHistory> writeWithRetry(List<ChatHistory> batch) {
+        List<ChatHistory> pending = writeBatch(batch.stream().map(this::toStoredRow).toList());
+        for (int attempt = 1; attempt <= maxRetries && !pending.isEmpty(); attempt++) {
+            log.warn("Retrying {} chat history rows, attempt {}/{}", pending.size(), attempt, maxRetries);
+            try {
+                Thread.sleep(retryBackoffMs * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            pending = writeBatch(pending);
+        }
+        return pending;
+    }
+
+    /**
+     * Multi-row INSERT, falling back to row-by-row so one bad row does not fail the whole batch
+     *
+     * @return rows whose insert failed
+     */
+    private List<ChatHistory> writeBatch(List<ChatHistory> batch) {
+        if (batch.isEmpty()) {
+            return List.of();
+        }
+        try {
+            chatHistoryMapper.insertBatch(batch);
+            log.debug("Flushed {} chat history rows", batch.size());
+            return List.of();
+        } catch (Exception e) {
+            log.warn("Batch insert of {} chat history rows failed, retrying row by row: {}", batch.size(), e.getMessage());
+        }
+        List<ChatHistory> failed = new ArrayList<>();
+        for (ChatHistory chatHistory : batch) {
+            try {
+                chatHistoryMapper.insert(chatHistory);
+            } catch (DuplicateKeyException duplicate) {
+                // Ids are assigned before queuing, the row was saved by an earlier attempt
+                log.debug("Chat history row {} already saved", chatHistory.getId());
+            } catch (Exception rowError) {
+                log.error("Failed to insert chat history row, appId: {}, messageType: {}, error: {}",
+                        chatHistory.getAppId(), chatHistory.getMessageType(), rowError.getMessage());
+                failed.add(chatHistory);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Build the row actually persisted, large messages are moved into the compressed blob column
+     * A copy is used so the entity already returned to the caller keeps its plain message
+     */
+    private ChatHistory toStoredRow(ChatHistory chatHistory) {
+        String message = chatHistory.getMessage();
+        if (!ChatMessageCodec.shouldCompress(message, compressionThresholdChars)) {
+            return chatHistory;
+        }
+        ChatHistory stored = BeanUtil.copyProperties(chatHistory, ChatHistory.class);
+        stored.setMessage("");
+        stored.setMessageBlob(ChatMessageCodec.compress(message));
+        stored.setMessageCodec(ChatMessageCodec.CODEC_DEFLATE);
+        return stored;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        bufferLock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            bufferLock.unlock();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 兜底：把关闭过程中残留的记录写掉
+        try {
+            flush();
+        } catch (BusinessException e) {
+            log.error("Chat history write-behind stopped with unsaved rows: {}", e.getMessage());
+            return;
+        }
+        log.info("Chat history write-behind stopped");
+    }
+
+    public long getFailedRows() {
+        return failedRows.get();
+    }
+}
@@ -4,6 +4,7 @@ import com.mybatisflex.core.BaseMapper;
 import com.morfism.aiappgenerator.model.entity.ChatHistory;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -41,4 +42,101 @@ public interface ChatHistoryMapper extends BaseMapper<ChatHistory> {
      */
     int deleteByAppId(@Param("appId") Long appId);
 
+    /**
+     * Get uncompressed rows whose message is longer than the given length, ordered by id
+     *
+     * @param lastId    id cursor, only rows with a greater id are returned
+     * @param minLength minimal message length in chars
+     * @param limit     batch size
+     * @return chat history rows
+     */
+    List<ChatHistory> selectUncompressedAfterId(@Param("lastId") Long lastId,
+                                                @Param("minLength") Integer minLength,
+                                                @Param("limit") Integer limit);
+
+    /**
+     * Replace the plain message of a row with its compressed form
+     *
+     * @param id           chat history id
+     * @param messageBlob  compressed message
+     * @param messageCodec codec flag
+     * @return number of updated rows
+     */
+    int updateCompressedMessage(@Param("id") Long id,
+                                @Param("messageBlob") byte[] messageBlob,
+                                @Param("messageCodec") String messageCodec);
+
+    /**
+     * Get ids of rows that should move to the archive: soft-deleted rows and rows older than the cutoff
+     *
+     * @param lastId id cursor, only rows with a greater id are returned
+     * @param cutoff retention cutoff time
+     * @param limit  batch size
+     * @return ids ordered ascending
+     */
+    List<Long> selectArchivableIds(@Param("lastId") Long lastId,
+                                   @Param("cutoff") LocalDateTime cutoff,
+                                   @Param("limit") Integer limit);
+
+    /**
+     * Copy rows into chat_history_archive, rows already archived are skipped
+     *
+     * @param ids chat history ids
+     * @return number of copied rows
+     */
+    int copyToArchive(@Param("ids") List<Long> ids);
+
+    /**
+     * Physically delete rows from the hot table, only called after they were copied to the archive
+     *
+     * @param ids chat history ids
+     * @return number of deleted rows
+     */
+    int purgeByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * Get archived chat history of an application, newest first
+     *
+     * @param appId  application ID
+     * @param before only rows created before this time, null for no bound
+     * @param limit  number of records to fetch
+     * @return archived chat history records
+     */
+    List<ChatHistory> selectArchivedByAppId(@Param("appId") Long appId,
+                                            @Param("before") LocalDateTime before,
+                                            @Param("limit") Integer limit);
+
+    /**
+     * Soft delete archived chat history by application ID
+     *
+     * @param appId application ID
+     * @return number of deleted records
+     */
+    int deleteArchivedByAppId(@Param("appId") Long appId);
+
+    /**
+     * Get the rolling chat memory summary of an application
+     *
+     * @param appId application ID
+     * @return summary, null when none was saved
+     */
+    String selectMemorySummary(@Param("appId") Long appId);
+
+    /**
+     * Insert or replace the rolling chat memory summary of an application
+     *
+     * @param appId   application ID
+     * @param summary summary text
+     * @return number of affected rows
+     */
+    int upsertMemorySummary(@Param("appId") Long appId, @Param("summary") String summary);
+
+    /**
+     * Delete the rolling chat memory summary of an application
+     *
+     * @param appId application ID
+     * @return number of deleted rows
+     */
+    int deleteMemorySummary(@Param("appId") Long appId);
+
 }
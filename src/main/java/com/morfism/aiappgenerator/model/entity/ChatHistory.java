@@ -1,5 +1,7 @@
 package com.morfism.aiappgenerator.model.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.morfism.aiappgenerator.utils.ChatMessageCodec;
 import com.mybatisflex.annotation.Column;
 import com.mybatisflex.annotation.Id;
 import com.mybatisflex.annotation.KeyType;
@@ -14,6 +16,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 /**
  * Chat history entity class
@@ -41,6 +44,21 @@ public class ChatHistory implements Serializable {
      */
     private String message;
 
+    /**
+     * compressed message content, used instead of message for large messages
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    @Column("messageBlob")
+    private byte[] messageBlob;
+
+    /**
+     * codec of messageBlob: none/deflate, null means plain text in message
+     */
+    @JsonIgnore
+    @Column("messageCodec")
+    private String messageCodec;
+
     /**
      * message type: user/ai/error
      */
@@ -77,4 +95,14 @@ public class ChatHistory implements Serializable {
     @Column(value = "isDelete", isLogicDelete = true)
     private Integer isDelete;
 
+    /**
+     * Message content, compressed rows are decoded on first access
+     */
+    public String getMessage() {
+        if ((message == null || message.isEmpty()) && messageBlob != null) {
+            message = ChatMessageCodec.decompress(messageBlob, messageCodec);
+        }
+        return message;
+    }
+
 }
@@ -1,10 +1,12 @@
 package com.morfism.aiappgenerator.service;
 
+import com.morfism.aiappgenerator.core.stream.GenerationChunk;
 import com.morfism.aiappgenerator.exception.BusinessException;
 import com.morfism.aiappgenerator.model.dto.app.AppQueryRequest;
 import com.morfism.aiappgenerator.model.entity.App;
 import com.morfism.aiappgenerator.model.entity.User;
 import com.morfism.aiappgenerator.model.vo.AppVO;
+import com.mybatisflex.core.paginate.Page;
 import com.mybatisflex.core.query.QueryWrapper;
 import com.mybatisflex.core.service.IService;
 import reactor.core.publisher.Flux;
@@ -53,6 +55,24 @@ public interface AppService extends IService<App> {
      */
     QueryWrapper getQueryWrapper(AppQueryRequest request);
 
+    /**
+     * 分页查询应用，appName/initPrompt 关键词走全文索引并按相关度排序
+     * Page apps by query request, keyword queries on appName/initPrompt are served by the full-text index
+     * and ranked by relevance, other queries (or an index that is still building) fall back to the database
+     *
+     * @param request 应用查询请求/App query request
+     * @return 应用分页结果/App page
+     */
+    Page<App> searchAppPage(AppQueryRequest request);
+
+    /**
+     * 重建应用全文索引
+     * Rebuild the app full-text search index from the database
+     *
+     * @return 索引的应用数量/number of indexed apps
+     */
+    int rebuildSearchIndex();
+
     /**
      * 聊天生成代码服务（流式响应）
      * Chat-to-code generation service with streaming response
@@ -74,11 +94,23 @@ public interface AppService extends IService<App> {
      * @param message   用户消息/User message for code generation
      * @param adapt     代码生成类型覆盖参数/Code generation type override parameter
      * @param loginUser 登录用户/Current login user
-     * @return 代码生成的响应式流/Reactive stream of generated code
+     * @return 带序号的代码生成分片流/Reactive stream of sequenced generation chunks
      * @throws BusinessException 当应用不存在、用户无权限或代码生成类型不支持时抛出异常
      *                          /when app not found, user has no permission, or unsupported code generation type
      */
-    Flux<String> chatToGenCode(Long appId, String message, String adapt, User loginUser);
+    Flux<GenerationChunk> chatToGenCode(Long appId, String message, String adapt, User loginUser);
+
+    /**
+     * 续传进行中或刚结束的代码生成流
+     * Resume a running or recently finished generation stream without a new model call
+     *
+     * @param appId       应用ID/Application ID
+     * @param lastEventId 客户端收到的最后一个SSE事件ID/Last SSE event id received by the client
+     * @param loginUser   登录用户/Current login user
+     * @return 客户端缺失的分片及后续实时分片/missing and live chunks
+     * @throws BusinessException 流不存在、已过期或不在本实例时/if the stream can no longer be resumed
+     */
+    Flux<GenerationChunk> resumeGenCode(Long appId, String lastEventId, User loginUser);
 
 
     /**
@@ -7,9 +7,10 @@ import com.mybatisflex.core.service.IService;
 import com.morfism.aiappgenerator.model.dto.chathistory.ChatHistoryQueryRequest;
 import com.morfism.aiappgenerator.model.entity.ChatHistory;
 import com.morfism.aiappgenerator.model.entity.User;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.data.message.ChatMessage;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Chat History service layer interface
@@ -86,5 +87,38 @@ public interface ChatHistoryService extends IService<ChatHistory> {
                                                User loginUser);
 
 
-    int loadChatHistoryToMemory(Long appId, MessageWindowChatMemory chatMemory, int maxCount);
+    /**
+     * Load the newest messages of an application as chat messages, oldest first
+     * The newest user message is skipped when it is the latest row, the AI service adds it to memory itself
+     *
+     * @param appId    application ID
+     * @param maxCount max number of messages
+     * @return user and AI messages in chronological order
+     */
+    List<ChatMessage> loadRecentChatMessages(Long appId, int maxCount);
+
+    /**
+     * Get the rolling chat memory summary of an application
+     *
+     * @param appId application ID
+     * @return summary, empty when none was saved
+     */
+    String getMemorySummary(Long appId);
+
+    /**
+     * Save the rolling chat memory summary of an application, replacing the previous one
+     * A blank summary deletes it
+     *
+     * @param appId   application ID
+     * @param summary summary text
+     */
+    void saveMemorySummary(Long appId, String summary);
+
+    /**
+     * Compress existing large messages in place, walking the table by id in batches
+     * Only one migration runs at a time, a concurrent call returns -1 immediately
+     *
+     * @return number of compressed rows, or -1 if a migration is already running
+     */
+    int compressHistoricalMessages();
 }
@@ -8,6 +8,11 @@ import cn.hutool.core.util.StrUtil;
 import com.morfism.aiappgenerator.constant.AppConstant;
 import com.morfism.aiappgenerator.core.AiCodeGeneratorFacade;
 import com.morfism.aiappgenerator.core.builder.VueProjectBuilder;
+import com.morfism.aiappgenerator.core.search.AppSearchIndex;
+import com.morfism.aiappgenerator.core.stream.GenerationAdmission;
+import com.morfism.aiappgenerator.core.stream.GenerationChunk;
+import com.morfism.aiappgenerator.core.stream.GenerationGuard;
+import com.morfism.aiappgenerator.core.stream.GenerationStreamRegistry;
 import com.morfism.aiappgenerator.exception.BusinessException;
 import com.morfism.aiappgenerator.exception.ErrorCode;
 import com.morfism.aiappgenerator.exception.ThrowUtils;
@@ -22,10 +27,13 @@ import com.morfism.aiappgenerator.service.AppService;
 import com.morfism.aiappgenerator.service.ChatHistoryService;
 import com.morfism.aiappgenerator.service.ScreenshotService;
 import com.morfism.aiappgenerator.service.UserService;
+import com.mybatisflex.core.paginate.Page;
 import com.mybatisflex.core.query.QueryWrapper;
 import com.mybatisflex.spring.service.impl.ServiceImpl;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
@@ -34,9 +42,11 @@ import java.io.File;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -63,6 +73,31 @@ public class AppServiceImpl extends ServiceImpl<AppMapper, App>  implements AppS
     @Autowired
     private ScreenshotService screenshotService;
 
+    @Autowired
+    private AppSearchIndex appSearchIndex;
+
+    @Autowired
+    private GenerationGuard generationGuard;
+
+    @Autowired
+    private GenerationStreamRegistry generationStreamRegistry;
+
+    @Autowired
+    private GenerationAdmission generationAdmission;
+
+    /**
+     * Batch size used when loading apps for a search index rebuild
+     */
+    private static final int SEARCH_INDEX_BATCH_SIZE = 1000;
+
+    /**
+     * Sort fields the search index can order by, ascending, nulls first like the database
+     */
+    private static final Map<String, Comparator<AppSearchIndex.IndexedApp>> SEARCH_INDEX_SORTS = Map.of(
+            "id", Comparator.comparing(AppSearchIndex.IndexedApp::id),
+            "priority", Comparator.comparing(AppSearchIndex.IndexedApp::priority, Comparator.nullsFirst(Comparator.naturalOrder())),
+            "createTime", Comparator.comparing(AppSearchIndex.IndexedApp::createTime, Comparator.nullsFirst(Comparator.naturalOrder())));
+
     @Override
     public AppVO getAppVO(App app) {
         if (app == null) {
@@ -112,6 +147,151 @@ public class AppServiceImpl extends ServiceImpl<AppMapper, App>  implements AppS
                 .orderBy(sortField, "ascend".equals(sortOrder));
     }
 
+    @Override
+    public Page<App> searchAppPage(AppQueryRequest appQueryRequest) {
+        if (appQueryRequest == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "请求参数为空");
+        }
+        long pageNum = appQueryRequest.getPageNum();
+        long pageSize = appQueryRequest.getPageSize();
+        String appName = appQueryRequest.getAppName();
+        String initPrompt = appQueryRequest.getInitPrompt();
+        String sortField = appQueryRequest.getSortField();
+        // 只有关键词查询且条件和排序都能在索引中完成时才走全文索引，否则回退到数据库查询
+        // 英文词不是完整索引词时（如前缀、词中片段）只有 like 能找全
+        boolean useIndex = !StrUtil.isAllBlank(appName, initPrompt)
+                && appSearchIndex.isReady()
+                && appSearchIndex.covers(appName, initPrompt)
+                && appQueryRequest.getId() == null
+                && StrUtil.isAllBlank(appQueryRequest.getCover(), appQueryRequest.getDeployKey())
+                && (StrUtil.isBlank(sortField) || SEARCH_INDEX_SORTS.containsKey(sortField));
+        if (!useIndex) {
+            return this.page(Page.of(pageNum, pageSize), getQueryWrapper(appQueryRequest));
+        }
+        Long userId = appQueryRequest.getUserId();
+        Integer priority = appQueryRequest.getPriority();
+        String codeGenType = appQueryRequest.getCodeGenType();
+        // 没有排序字段时按相关度排序
+        Comparator<AppSearchIndex.IndexedApp> order = null;
+        if (StrUtil.isNotBlank(sortField)) {
+            order = SEARCH_INDEX_SORTS.get(sortField);
+            if (!"ascend".equals(appQueryRequest.getSortOrder())) {
+                order = order.reversed();
+            }
+        }
+        AppSearchIndex.SearchPage searchPage = appSearchIndex.search(appName, initPrompt, document ->
+                        (userId == null || userId.equals(document.userId()))
+                                && (priority == null || priority.equals(document.priority()))
+                                && (StrUtil.isBlank(codeGenType) || codeGenType.equals(document.codeGenType())),
+                order, pageNum, pageSize);
+        // 按索引给出的相关度顺序回表
+        List<App> records = new ArrayList<>();
+        if (CollUtil.isNotEmpty(searchPage.appIds())) {
+            Map<Long, App> appMap = this.listByIds(searchPage.appIds()).stream()
+                    .collect(Collectors.toMap(App::getId, Function.identity()));
+            for (Long appId : searchPage.appIds()) {
+                App app = appMap.get(appId);
+                if (app != null) {
+                    records.add(app);
+                }
+            }
+        }
+        Page<App> appPage = new Page<>(pageNum, pageSize, searchPage.totalRow());
+        appPage.setRecords(records);
+        return appPage;
+    }
+
+    @Override
+    public int rebuildSearchIndex() {
+        return appSearchIndex.rebuild(this::loadSearchIndexApps);
+    }
+
+    /**
+     * Load every app with the columns the search index keeps
+     */
+    private List<App> loadSearchIndexApps() {
+        List<App> apps = new ArrayList<>();
+        long lastId = 0;
+        while (true) {
+            // 按主键游标分批加载，只取索引需要的列
+            QueryWrapper queryWrapper = QueryWrapper.create()
+                    .select("id", "appName", "initPrompt", "codeGenType", "priority", "userId", "createTime")
+                    .gt("id", lastId)
+                    .orderBy("id", true)
+                    .limit(SEARCH_INDEX_BATCH_SIZE);
+            List<App> batch = this.list(queryWrapper);
+            if (CollUtil.isEmpty(batch)) {
+                break;
+            }
+            apps.addAll(batch);
+            lastId = batch.get(batch.size() - 1).getId();
+            if (batch.size() < SEARCH_INDEX_BATCH_SIZE) {
+                break;
+            }
+        }
+        return apps;
+    }
+
+    /**
+     * 应用启动后在后台构建全文索引，构建完成前查询回退到数据库
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initSearchIndex() {
+        Thread.ofVirtual().name("app-search-index-init").start(() -> {
+            try {
+                rebuildSearchIndex();
+            } catch (Exception e) {
+                log.error("Failed to build app search index: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public boolean save(App entity) {
+        boolean result = super.save(entity);
+        if (result) {
+            appSearchIndex.index(entity);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean updateById(App entity) {
+        boolean result = super.updateById(entity);
+        // 部分更新只带了变更的字段，需要回表拿到完整记录再写入索引
+        if (result && isSearchIndexAffected(entity)) {
+            refreshSearchIndex(entity.getId());
+        }
+        return result;
+    }
+
+    /**
+     * Whether a partial update touches any column kept in the search index
+     */
+    private boolean isSearchIndexAffected(App update) {
+        return update.getAppName() != null
+                || update.getInitPrompt() != null
+                || update.getCodeGenType() != null
+                || update.getPriority() != null
+                || update.getUserId() != null;
+    }
+
+    /**
+     * Re-read an app and sync it into the search index
+     */
+    private void refreshSearchIndex(Long appId) {
+        try {
+            App app = this.getById(appId);
+            if (app == null) {
+                appSearchIndex.remove(appId);
+            } else {
+                appSearchIndex.index(app);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to refresh search index for appId: {}, error: {}", appId, e.getMessage());
+        }
+    }
+
     @Override
     public List<AppVO> getAppVOList(List<App> appList) {
         if (CollUtil.isEmpty(appList)) {
@@ -150,20 +330,13 @@ public class AppServiceImpl extends ServiceImpl<AppMapper, App>  implements AppS
             throw new BusinessException(ErrorCode.SYSTEM_ERROR, "Unsupported code generation type");
         }
 
-        // 5. Save user message to chat history
-        try {
-            chatHistoryService.saveUserMessage(appId, message, loginUser);
-        } catch (Exception e) {
-            log.warn("Failed to save user message to chat history: {}", e.getMessage());
-            // Continue with code generation even if chat history saving fails
-        }
-
-        // 6. Get shared stream from facade (all backend processing including code saving and chat history is handled independently)
-        return aiCodeGeneratorFacade.generateAndSaveCodeStream(message, codeGenTypeEnum, appId, loginUser.getId());
+        // 5. At most one generation per app, a concurrent request is rejected, queued or attached by policy
+        return generationGuard.run(appId, message, () -> startGeneration(appId, message, codeGenTypeEnum, loginUser))
+                .map(GenerationChunk::data);
     }
 
     @Override
-    public Flux<String> chatToGenCode(Long appId, String message, String adapt, User loginUser) {
+    public Flux<GenerationChunk> chatToGenCode(Long appId, String message, String adapt, User loginUser) {
         // 1. Parameter validation
         ThrowUtils.throwIf(appId == null || appId <= 0, ErrorCode.PARAMS_ERROR, "Application ID cannot be null or empty");
         ThrowUtils.throwIf(StrUtil.isBlank(message), ErrorCode.PARAMS_ERROR, "User message cannot be blank");
@@ -207,16 +380,39 @@ public class AppServiceImpl extends ServiceImpl<AppMapper, App>  implements AppS
             log.info("📊 Using database codeGenType for code generation: {} (appId: {})", codeGenTypeStr, appId);
         }
 
-        // 5. Save user message to chat history
-        try {
-            chatHistoryService.saveUserMessage(appId, message, loginUser);
-        } catch (Exception e) {
-            log.warn("Failed to save user message to chat history: {}", e.getMessage());
-            // Continue with code generation even if chat history saving fails
+        // 5. At most one generation per app, a concurrent request is rejected, queued or attached by policy
+        return generationGuard.run(appId, message, () -> startGeneration(appId, message, codeGenTypeEnum, loginUser));
+    }
+
+    @Override
+    public Flux<GenerationChunk> resumeGenCode(Long appId, String lastEventId, User loginUser) {
+        ThrowUtils.throwIf(appId == null || appId <= 0, ErrorCode.PARAMS_ERROR, "Application ID cannot be null or empty");
+        App app = this.getById(appId);
+        ThrowUtils.throwIf(app == null, ErrorCode.NOT_FOUND_ERROR, "Application not found");
+        if (!app.getUserId().equals(loginUser.getId())) {
+            throw new BusinessException(ErrorCode.NO_AUTH_ERROR, "No permission to access this application");
         }
+        // Replays only what the client missed, no new model call is made
+        return generationStreamRegistry.resume(appId, lastEventId);
+    }
 
-        // 6. Get shared stream from facade
-        return aiCodeGeneratorFacade.generateAndSaveCodeStream(message, codeGenTypeEnum, appId, loginUser.getId());
+    /**
+     * Save the user message and start generation, called only by the request that owns the app
+     * The generation waits for the user's admission slot and daily quota before anything is saved
+     */
+    private Flux<String> startGeneration(Long appId, String message, CodeGenTypeEnum codeGenTypeEnum, User loginUser) {
+        return generationAdmission.admit(loginUser, appId, message, () -> {
+            // Save user message to chat history
+            try {
+                chatHistoryService.saveUserMessage(appId, message, loginUser);
+            } catch (Exception e) {
+                log.warn("Failed to save user message to chat history: {}", e.getMessage());
+                // Continue with code generation even if chat history saving fails
+            }
+
+            // Get shared stream from facade (all backend processing including code saving and chat history is handled independently)
+            return aiCodeGeneratorFacade.generateAndSaveCodeStream(message, codeGenTypeEnum, appId, loginUser.getId());
+        });
     }
 
     @Override
@@ -331,6 +527,7 @@ public class AppServiceImpl extends ServiceImpl<AppMapper, App>  implements AppS
             // Then delete the application
             boolean result = super.removeById(appId);
             if (result) {
+                appSearchIndex.remove(appId);
                 log.info("Successfully deleted application with id: {}", appId);
             } else {
                 log.error("Failed to delete application with id: {}", appId);
@@ -360,6 +557,7 @@ public class AppServiceImpl extends ServiceImpl<AppMapper, App>  implements AppS
             // Then delete the application using parent's removeById
             boolean result = super.removeById(appId);
             if (result) {
+                appSearchIndex.remove(appId);
                 log.info("Successfully deleted application with id: {}", appId);
             } else {
                 log.error("Failed to delete application with id: {}", appId);
@@ -4,7 +4,11 @@ import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
 import com.morfism.aiappgenerator.constant.UserConstant;
 import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.manager.ChatHistoryArchiver;
+import com.morfism.aiappgenerator.manager.ChatHistoryWriteBuffer;
 import com.morfism.aiappgenerator.service.AppService;
+import com.mybatisflex.core.keygen.KeyGeneratorFactory;
+import com.mybatisflex.core.keygen.KeyGenerators;
 import com.mybatisflex.core.paginate.Page;
 import com.mybatisflex.core.query.QueryWrapper;
 import com.mybatisflex.spring.service.impl.ServiceImpl;
@@ -17,16 +21,23 @@ import com.morfism.aiappgenerator.mapper.ChatHistoryMapper;
 import com.morfism.aiappgenerator.model.entity.User;
 import com.morfism.aiappgenerator.model.enums.MessageTypeEnum;
 import com.morfism.aiappgenerator.service.ChatHistoryService;
+import com.morfism.aiappgenerator.utils.ChatMessageCodec;
 import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.UserMessage;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Chat History service layer implementation
@@ -42,6 +53,22 @@ public class ChatHistoryServiceImpl extends ServiceImpl<ChatHistoryMapper, ChatH
     @Lazy
     private AppService appService;
 
+    @Autowired
+    private ChatHistoryWriteBuffer chatHistoryWriteBuffer;
+
+    @Autowired
+    private ChatHistoryArchiver chatHistoryArchiver;
+
+    @Value("${chat-history.compression.threshold-chars:4096}")
+    private int compressionThresholdChars;
+
+    @Value("${chat-history.compression.migration-batch-size:200}")
+    private int compressionBatchSize;
+
+    /**
+     * Guards against concurrent compression migrations
+     */
+    private final AtomicBoolean compressionRunning = new AtomicBoolean(false);
 
 
 
@@ -117,20 +144,22 @@ public class ChatHistoryServiceImpl extends ServiceImpl<ChatHistoryMapper, ChatH
         MessageTypeEnum messageTypeEnum = MessageTypeEnum.getEnumByValue(messageType);
         ThrowUtils.throwIf(messageTypeEnum == null, ErrorCode.PARAMS_ERROR, "Invalid message type: " + messageType);
 
+        // 预先分配主键，入库交给写缓冲异步批量完成，调用方立即拿到完整记录
+        LocalDateTime now = LocalDateTime.now();
         ChatHistory chatHistory = ChatHistory.builder()
+                .id((Long) KeyGeneratorFactory.getKeyGenerator(KeyGenerators.snowFlakeId).generate(null, "id"))
                 .message(message)
                 .messageType(messageType)
                 .appId(appId)
                 .userId(userId)
-                .createTime(LocalDateTime.now())
-                .updateTime(LocalDateTime.now())
+                .createTime(now)
+                .updateTime(now)
                 .isDelete(0)
                 .build();
 
-        boolean result = this.save(chatHistory);
-        ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "Failed to save chat history");
-        
-        log.info("Chat history saved successfully - appId: {}, messageType: {}, userId: {}", 
+        chatHistoryWriteBuffer.enqueue(chatHistory);
+
+        log.debug("Chat history queued - appId: {}, messageType: {}, userId: {}",
                 appId, messageType, userId);
         return chatHistory;
     }
@@ -139,7 +168,11 @@ public class ChatHistoryServiceImpl extends ServiceImpl<ChatHistoryMapper, ChatH
     public int deleteChatHistoryByAppId(Long appId) {
         ThrowUtils.throwIf(appId == null || appId <= 0, ErrorCode.PARAMS_ERROR, "Application ID cannot be null or empty");
         
+        // 先落库缓冲中的记录，避免删除后又被写入
+        chatHistoryWriteBuffer.flush();
         int deletedCount = this.getMapper().deleteByAppId(appId);
+        deletedCount += this.getMapper().deleteArchivedByAppId(appId);
+        this.getMapper().deleteMemorySummary(appId);
         log.info("Deleted {} chat history records for appId: {}", deletedCount, appId);
         return deletedCount;
     }
@@ -168,51 +201,146 @@ public class ChatHistoryServiceImpl extends ServiceImpl<ChatHistoryMapper, ChatH
         boolean isAdmin = UserConstant.ADMIN_ROLE.equals(loginUser.getUserRole());
         boolean isCreator = app.getUserId().equals(loginUser.getId());
         ThrowUtils.throwIf(!isAdmin && !isCreator, ErrorCode.NO_AUTH_ERROR, "无权查看该应用的对话历史");
+        // 缓冲中尚未落库的消息直接从缓冲读，先于查询取快照，期间落库的记录会在两边各出现一次
+        List<ChatHistory> pending = chatHistoryWriteBuffer.pendingRows(appId);
         // 构建查询条件
         ChatHistoryQueryRequest queryRequest = new ChatHistoryQueryRequest();
         queryRequest.setAppId(appId);
         queryRequest.setLastCreateTime(lastCreateTime);
         QueryWrapper queryWrapper = this.getQueryWrapper(queryRequest);
         // 查询数据
-        return this.page(Page.of(1, pageSize), queryWrapper);
+        Page<ChatHistory> page = appendArchivedRecords(this.page(Page.of(1, pageSize), queryWrapper),
+                appId, pageSize, lastCreateTime);
+        page.setRecords(mergePendingRows(page.getRecords(), pending, lastCreateTime, pageSize));
+        return page;
     }
 
-    @Override
-    public int loadChatHistoryToMemory(Long appId, MessageWindowChatMemory chatMemory, int maxCount) {
-        try {
-            // 直接构造查询条件，起始点为 1 而不是 0，用于排除最新的用户消息
-            QueryWrapper queryWrapper = QueryWrapper.create()
-                    .eq(ChatHistory::getAppId, appId)
-                    .orderBy(ChatHistory::getCreateTime, false)
-                    .limit(1, maxCount);
-            List<ChatHistory> historyList = this.list(queryWrapper);
-            if (CollUtil.isEmpty(historyList)) {
-                return 0;
+    /**
+     * 合并写缓冲中尚未落库的记录
+     * Pending rows before the cursor are merged newest first, a row present on both sides is kept once
+     */
+    private static List<ChatHistory> mergePendingRows(List<ChatHistory> records, List<ChatHistory> pending,
+                                                      LocalDateTime lastCreateTime, int limit) {
+        if (CollUtil.isEmpty(pending)) {
+            return records;
+        }
+        Map<Long, ChatHistory> merged = new LinkedHashMap<>();
+        for (ChatHistory chatHistory : records) {
+            merged.put(chatHistory.getId(), chatHistory);
+        }
+        for (ChatHistory chatHistory : pending) {
+            if (lastCreateTime == null || chatHistory.getCreateTime().isBefore(lastCreateTime)) {
+                merged.putIfAbsent(chatHistory.getId(), chatHistory);
             }
-            // 反转列表，确保按时间正序（老的在前，新的在后）
-            historyList = historyList.reversed();
-            // 按时间顺序添加到记忆中
-            int loadedCount = 0;
-            // 先清理历史缓存，防止重复加载
-            chatMemory.clear();
-            for (ChatHistory history : historyList) {
-                if (MessageTypeEnum.USER.getValue().equals(history.getMessageType())) {
-                    chatMemory.add(UserMessage.from(history.getMessage()));
-                    loadedCount++;
-                } else if (MessageTypeEnum.AI.getValue().equals(history.getMessageType())) {
-                    chatMemory.add(AiMessage.from(history.getMessage()));
-                    loadedCount++;
-                }
+        }
+        List<ChatHistory> sorted = new ArrayList<>(merged.values());
+        sorted.sort(Comparator.comparing(ChatHistory::getCreateTime).thenComparing(ChatHistory::getId).reversed());
+        return new ArrayList<>(sorted.subList(0, Math.min(limit, sorted.size())));
+    }
+
+    /**
+     * 游标查询透明地跨越热表和归档表
+     * Only touches the archive when the hot page is short or already reaches past the retention cutoff,
+     * the two sources are merged by createTime so rows not yet archived still come out in order
+     */
+    private Page<ChatHistory> appendArchivedRecords(Page<ChatHistory> page, Long appId, int pageSize,
+                                                    LocalDateTime lastCreateTime) {
+        List<ChatHistory> hotRecords = page.getRecords();
+        boolean shortPage = hotRecords.size() < pageSize;
+        boolean reachesArchive = !hotRecords.isEmpty()
+                && hotRecords.getLast().getCreateTime().isBefore(chatHistoryArchiver.getRetentionCutoff());
+        if (!shortPage && !reachesArchive) {
+            return page;
+        }
+        List<ChatHistory> archived = this.getMapper().selectArchivedByAppId(appId, lastCreateTime, pageSize);
+        if (CollUtil.isEmpty(archived)) {
+            return page;
+        }
+        List<ChatHistory> merged = new ArrayList<>(hotRecords.size() + archived.size());
+        merged.addAll(hotRecords);
+        merged.addAll(archived);
+        merged.sort(Comparator.comparing(ChatHistory::getCreateTime).reversed());
+        page.setRecords(new ArrayList<>(merged.subList(0, Math.min(pageSize, merged.size()))));
+        return page;
+    }
+
+    @Override
+    public List<ChatMessage> loadRecentChatMessages(Long appId, int maxCount) {
+        // 最新的用户消息可能还在写缓冲中，直接从缓冲读，不等待落库
+        List<ChatHistory> pending = chatHistoryWriteBuffer.pendingRows(appId);
+        QueryWrapper queryWrapper = QueryWrapper.create()
+                .eq(ChatHistory::getAppId, appId)
+                .orderBy(ChatHistory::getCreateTime, false)
+                .limit(maxCount + 1);
+        List<ChatHistory> historyList = mergePendingRows(this.list(queryWrapper), pending, null, maxCount + 1);
+        if (CollUtil.isEmpty(historyList)) {
+            return new ArrayList<>();
+        }
+        // 最新一条是本轮的用户消息时跳过，它会由 AI 服务自己写入记忆
+        if (MessageTypeEnum.USER.getValue().equals(historyList.getFirst().getMessageType())) {
+            historyList = historyList.subList(1, historyList.size());
+        } else if (historyList.size() > maxCount) {
+            historyList = historyList.subList(0, maxCount);
+        }
+        // 反转列表，确保按时间正序（老的在前，新的在后）
+        List<ChatMessage> messages = new ArrayList<>(historyList.size());
+        for (ChatHistory history : historyList.reversed()) {
+            if (MessageTypeEnum.USER.getValue().equals(history.getMessageType())) {
+                messages.add(UserMessage.from(history.getMessage()));
+            } else if (MessageTypeEnum.AI.getValue().equals(history.getMessageType())) {
+                messages.add(AiMessage.from(history.getMessage()));
             }
-            log.info("Successfully loaded {} chat history records for appId: {}", loadedCount, appId);
-            return loadedCount;
-        } catch (Exception e) {
-            log.error("Failed to load chat history for appId: {}, error: {}", appId, e.getMessage(), e);
-            // Loading failure doesn't affect system operation, just no historical context
-            return 0;
         }
+        return messages;
     }
 
+    @Override
+    public String getMemorySummary(Long appId) {
+        return StrUtil.nullToEmpty(this.getMapper().selectMemorySummary(appId));
+    }
+
+    @Override
+    public void saveMemorySummary(Long appId, String summary) {
+        if (StrUtil.isBlank(summary)) {
+            this.getMapper().deleteMemorySummary(appId);
+        } else {
+            this.getMapper().upsertMemorySummary(appId, summary);
+        }
+    }
 
+    @Override
+    public int compressHistoricalMessages() {
+        if (compressionThresholdChars <= 0) {
+            log.info("Chat history compression disabled, skip migration");
+            return 0;
+        }
+        if (!compressionRunning.compareAndSet(false, true)) {
+            return -1;
+        }
+        int compressedCount = 0;
+        try {
+            long lastId = 0;
+            while (true) {
+                List<ChatHistory> batch = this.getMapper().selectUncompressedAfterId(lastId,
+                        compressionThresholdChars, compressionBatchSize);
+                if (CollUtil.isEmpty(batch)) {
+                    break;
+                }
+                for (ChatHistory history : batch) {
+                    byte[] blob = ChatMessageCodec.compress(history.getMessage());
+                    compressedCount += this.getMapper().updateCompressedMessage(history.getId(), blob,
+                            ChatMessageCodec.CODEC_DEFLATE);
+                }
+                lastId = batch.get(batch.size() - 1).getId();
+                if (batch.size() < compressionBatchSize) {
+                    break;
+                }
+            }
+            log.info("Chat history compression migration finished, {} rows compressed", compressedCount);
+            return compressedCount;
+        } finally {
+            compressionRunning.set(false);
+        }
+    }
 
 }
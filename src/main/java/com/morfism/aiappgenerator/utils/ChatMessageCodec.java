@@ -0,0 +1,105 @@
+package com.morfism.aiappgenerator.utils;
+
+import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.exception.ErrorCode;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 聊天消息压缩编解码
+ * Codec for compressed chat_history messages
+ *
+ * 大消息以 deflate 压缩后存入 messageBlob，messageCodec 记录编码方式，
+ * 为空或 none 表示明文存放在 message 列
+ */
+public class ChatMessageCodec {
+
+    /**
+     * Plain text stored in the message column
+     */
+    public static final String CODEC_NONE = "none";
+
+    /**
+     * Deflate (zlib framed) stream stored in the messageBlob column
+     */
+    public static final String CODEC_DEFLATE = "deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ChatMessageCodec() {
+    }
+
+    /**
+     * Whether a message is large enough to be worth compressing
+     *
+     * @param message        message content
+     * @param thresholdChars minimal length in chars, non-positive disables compression
+     */
+    public static boolean shouldCompress(String message, int thresholdChars) {
+        return thresholdChars > 0 && message != null && message.length() > thresholdChars;
+    }
+
+    /**
+     * Compress a message with deflate
+     */
+    public static byte[] compress(String message) {
+        byte[] input = message.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decode a stored message
+     *
+     * @param blob  compressed bytes
+     * @param codec codec flag of the row
+     * @return decoded message text
+     * @throws BusinessException if the codec is unknown or the blob is corrupted or truncated
+     */
+    public static String decompress(byte[] blob, String codec) {
+        if (blob == null) {
+            return null;
+        }
+        if (!CODEC_DEFLATE.equals(codec)) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "Unsupported chat message codec: " + codec);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(blob.length * 4);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, count);
+            }
+            if (!inflater.finished()) {
+                // The stream ended before its end marker, the row was cut off somewhere on the way
+                throw new BusinessException(ErrorCode.SYSTEM_ERROR, "Truncated compressed chat message");
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "Corrupted compressed chat message: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.morfism.aiappgenerator.utils;
+
+/**
+ * 流式 JSON 顶层字段提取
+ * Streaming extractor for top-level string fields of a JSON object
+ *
+ * 核心功能：
+ * 1. 单次顺序扫描，不构建 JSON 树，扫描过程中不分配对象
+ * 2. 命中第一个候选顶层字段后立即返回，不再扫描后续内容
+ * 3. 正确处理字符串中的转义字符，嵌套对象/数组中的同名字段不会误命中
+ * 4. 只为命中的值分配一次字符串；输入不合法时返回 null
+ */
+public class JsonFieldExtractor {
+
+    private JsonFieldExtractor() {
+    }
+
+    /**
+     * Find the first top-level field, in document order, whose name is one of keys and whose value is a string
+     *
+     * @param json JSON object text
+     * @param keys candidate field names
+     * @return unescaped value of the first matching field, or null if none is found or the input is malformed
+     */
+    public static String extractTopLevelString(String json, String[] keys) {
+        if (json == null || keys == null || keys.length == 0) {
+            return null;
+        }
+        int length = json.length();
+        int i = skipWhitespace(json, 0);
+        if (i >= length || json.charAt(i) != '{') {
+            return null;
+        }
+        i++;
+        while (true) {
+            i = skipWhitespace(json, i);
+            if (i >= length) {
+                return null;
+            }
+            char c = json.charAt(i);
+            if (c == '}') {
+                return null;
+            }
+            if (c == ',') {
+                i++;
+                continue;
+            }
+            if (c != '"') {
+                return null;
+            }
+            int keyStart = i + 1;
+            int keyEnd = skipString(json, i);
+            if (keyEnd < 0) {
+                return null;
+            }
+            boolean matched = matchesAny(json, keyStart, keyEnd - 1, keys);
+            i = skipWhitespace(json, keyEnd);
+            if (i >= length || json.charAt(i) != ':') {
+                return null;
+            }
+            i = skipWhitespace(json, i + 1);
+            if (i >= length) {
+                return null;
+            }
+            if (matched && json.charAt(i) == '"') {
+                int valueEnd = skipString(json, i);
+                return valueEnd < 0 ? null : unescape(json, i + 1, valueEnd - 1);
+            }
+            i = skipValue(json, i);
+            if (i < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Whether json[start, end) equals one of keys, escaped names never match
+     */
+    private static boolean matchesAny(String json, int start, int end, String[] keys) {
+        int length = end - start;
+        for (String key : keys) {
+            if (key.length() == length && json.regionMatches(start, key, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skip a string starting at the opening quote
+     *
+     * @return index just after the closing quote, or -1 if the string is not terminated
+     */
+    private static int skipString(String json, int quote) {
+        int length = json.length();
+        int i = quote + 1;
+        while (i < length) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skip any JSON value starting at i
+     *
+     * @return index just after the value, or -1 if the value is not terminated
+     */
+    private static int skipValue(String json, int i) {
+        int length = json.length();
+        char first = json.charAt(i);
+        if (first == '"') {
+            return skipString(json, i);
+        }
+        if (first != '{' && first != '[') {
+            // number, true, false or null
+            while (i < length) {
+                char c = json.charAt(i);
+                if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                    return i;
+                }
+                i++;
+            }
+            return -1;
+        }
+        int depth = 0;
+        while (i < length) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                i = skipString(json, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (--depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        int length = json.length();
+        while (i < length && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Decode the string content json[start, end), a plain substring when there is nothing to unescape
+     */
+    private static String unescape(String json, int start, int end) {
+        int backslash = json.indexOf('\\', start);
+        if (backslash < 0 || backslash >= end) {
+            return json.substring(start, end);
+        }
+        StringBuilder result = new StringBuilder(end - start);
+        result.append(json, start, backslash);
+        int i = backslash;
+        while (i < end) {
+            char c = json.charAt(i);
+            if (c != '\\' || i + 1 >= end) {
+                result.append(c);
+                i++;
+                continue;
+            }
+            char escaped = json.charAt(i + 1);
+            switch (escaped) {
+                case 'n' -> result.append('\n');
+                case 't' -> result.append('\t');
+                case 'r' -> result.append('\r');
+                case 'b' -> result.append('\b');
+                case 'f' -> result.append('\f');
+                case 'u' -> {
+                    if (i + 6 > end) {
+                        return null;
+                    }
+                    try {
+                        result.append((char) Integer.parseInt(json, i + 2, i + 6, 16));
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    i += 4;
+                }
+                default -> result.append(escaped);
+            }
+            i += 2;
+        }
+        return result.toString();
+    }
+}
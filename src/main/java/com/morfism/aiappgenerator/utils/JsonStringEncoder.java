@@ -0,0 +1,68 @@
+package com.morfism.aiappgenerator.utils;
+
+/**
+ * 轻量 JSON 字符串编码
+ * Allocation-light encoder for small single-field JSON objects on the SSE hot path
+ *
+ * 核心功能：
+ * 1. 直接写入预估容量的 StringBuilder，不经过 Map 和通用序列化器
+ * 2. 无需转义的连续片段整段追加，只对引号、反斜杠和控制字符逐个转义
+ * 3. 额外转义 U+2028/U+2029，输出可以安全地嵌入 JavaScript
+ */
+public class JsonStringEncoder {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Valid in JSON but line terminators in JavaScript, escaped like control characters
+     */
+    private static final char LINE_SEPARATOR = 0x2028;
+
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+    private JsonStringEncoder() {
+    }
+
+    /**
+     * Encode {"key":"value"}, key must not need escaping
+     */
+    public static String singleField(String key, String value) {
+        String safeValue = value == null ? "" : value;
+        StringBuilder json = new StringBuilder(safeValue.length() + key.length() + 16);
+        json.append("{\"").append(key).append("\":");
+        appendQuoted(json, safeValue);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Append value as a quoted JSON string
+     */
+    public static void appendQuoted(StringBuilder json, String value) {
+        json.append('"');
+        int length = value.length();
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != LINE_SEPARATOR && c != PARAGRAPH_SEPARATOR) {
+                continue;
+            }
+            json.append(value, runStart, i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                case '\b' -> json.append("\\b");
+                case '\f' -> json.append("\\f");
+                default -> json.append("\\u")
+                        .append(HEX[(c >> 12) & 0xF])
+                        .append(HEX[(c >> 8) & 0xF])
+                        .append(HEX[(c >> 4) & 0xF])
+                        .append(HEX[c & 0xF]);
+            }
+            runStart = i + 1;
+        }
+        json.append(value, runStart, length).append('"');
+    }
+}
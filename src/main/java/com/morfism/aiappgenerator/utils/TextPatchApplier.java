@@ -0,0 +1,283 @@
+package com.morfism.aiappgenerator.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 文本补丁应用
+ * Applies several edits to one text in a single pass
+ *
+ * 核心功能：
+ * 1. 支持两种补丁：(旧文本, 新文本) 编辑列表，或统一 diff 格式
+ * 2. 所有编辑都定位在原文上，互不影响，最后一次性拼出新文本
+ * 3. 任一编辑无法定位、定位不唯一或相互重叠时整体不应用，并逐条报告冲突原因
+ * 4. 统一 diff 优先在头部标注的行号处匹配，行号偏移时取离标注位置最近的匹配
+ * 5. 统一 diff 的 hunk 正文按头部的行数读取，正文与行数不符时报告冲突
+ */
+public class TextPatchApplier {
+
+    private static final Pattern HUNK_HEADER = Pattern.compile("^@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@.*");
+
+    /**
+     * One exact-text edit
+     *
+     * @param oldText text that must occur exactly once in the original
+     * @param newText replacement
+     */
+    public record TextEdit(String oldText, String newText) {
+    }
+
+    /**
+     * Outcome of a patch
+     *
+     * @param content   patched text, null when any hunk conflicts
+     * @param applied   number of hunks applied
+     * @param conflicts one message per conflicting hunk, empty on success
+     */
+    public record PatchResult(String content, int applied, List<String> conflicts) {
+
+        public boolean isSuccess() {
+            return conflicts.isEmpty();
+        }
+    }
+
+    /**
+     * Located hunk, [start, end) of the original is replaced by replacement
+     */
+    private record Replacement(int hunk, int start, int end, String replacement) {
+    }
+
+    private TextPatchApplier() {
+    }
+
+    /**
+     * Apply exact-text edits, each located independently in the original
+     */
+    public static PatchResult applyEdits(String original, List<TextEdit> edits) {
+        List<Replacement> replacements = new ArrayList<>();
+        List<String> conflicts = new ArrayList<>();
+        for (int i = 0; i < edits.size(); i++) {
+            TextEdit edit = edits.get(i);
+            int hunk = i + 1;
+            String oldText = edit == null ? null : edit.oldText();
+            if (oldText == null || oldText.isEmpty()) {
+                conflicts.add(String.format("Hunk %d: old text is empty", hunk));
+                continue;
+            }
+            int start = original.indexOf(oldText);
+            if (start < 0) {
+                conflicts.add(String.format("Hunk %d: old text not found", hunk));
+                continue;
+            }
+            if (original.indexOf(oldText, start + 1) >= 0) {
+                conflicts.add(String.format("Hunk %d: old text matches %d places, include more surrounding lines",
+                        hunk, countOccurrences(original, oldText)));
+                continue;
+            }
+            String newText = edit.newText() == null ? "" : edit.newText();
+            replacements.add(new Replacement(hunk, start, start + oldText.length(), newText));
+        }
+        return apply(original, replacements, conflicts);
+    }
+
+    /**
+     * Apply a unified diff for a single file, "---"/"+++" headers are optional
+     */
+    public static PatchResult applyUnifiedDiff(String original, String diff) {
+        List<Replacement> replacements = new ArrayList<>();
+        List<String> conflicts = new ArrayList<>();
+        List<String> lines = splitLines(original);
+        int[] lineStarts = lineStarts(original, lines);
+
+        String[] diffLines = diff.split("\n", -1);
+        int hunk = 0;
+        int i = 0;
+        while (i < diffLines.length) {
+            Matcher header = HUNK_HEADER.matcher(stripCr(diffLines[i]));
+            if (!header.matches()) {
+                i++;
+                continue;
+            }
+            hunk++;
+            int oldStart = Integer.parseInt(header.group(1));
+            int oldCount = header.group(2) == null ? 1 : Integer.parseInt(header.group(2));
+            int newCount = header.group(4) == null ? 1 : Integer.parseInt(header.group(4));
+            List<String> oldLines = new ArrayList<>();
+            StringBuilder newText = new StringBuilder();
+            int newLines = 0;
+            boolean complete = true;
+            i++;
+            // The header's counts delimit the body, so "-- x" or "++ y" lines are content, never file headers
+            while (oldLines.size() < oldCount || newLines < newCount) {
+                if (i >= diffLines.length) {
+                    complete = false;
+                    break;
+                }
+                String line = stripCr(diffLines[i]);
+                if (line.startsWith("\\")) {
+                    // "\ No newline at end of file"
+                    i++;
+                    continue;
+                }
+                // Some generators drop the leading space of empty context lines
+                char kind = line.isEmpty() ? ' ' : line.charAt(0);
+                String text = line.isEmpty() ? "" : line.substring(1);
+                boolean oldFull = oldLines.size() == oldCount;
+                boolean newFull = newLines == newCount;
+                if (kind == '-' && !oldFull) {
+                    oldLines.add(text);
+                } else if (kind == '+' && !newFull) {
+                    newText.append(text).append('\n');
+                    newLines++;
+                } else if (kind == ' ' && !oldFull && !newFull) {
+                    oldLines.add(text);
+                    newText.append(text).append('\n');
+                    newLines++;
+                } else {
+                    complete = false;
+                    break;
+                }
+                i++;
+            }
+            if (!complete) {
+                conflicts.add(String.format("Hunk %d (@@ -%d,%d +%d,%d): body does not match the line counts in the header",
+                        hunk, oldStart, oldCount, Integer.parseInt(header.group(3)), newCount));
+                continue;
+            }
+
+            // Pure insertions ("-n,0") go after line n, everything else starts at line n
+            int expected = oldLines.isEmpty() ? oldStart : Math.max(oldStart - 1, 0);
+            int at = oldLines.isEmpty() ? Math.min(expected, lines.size()) : locate(lines, oldLines, expected);
+            if (at < 0) {
+                conflicts.add(String.format("Hunk %d (@@ -%d,%d): context lines not found", hunk, oldStart, oldCount));
+                continue;
+            }
+            int start = lineStarts[at];
+            int end = lineStarts[at + oldLines.size()];
+            String replacement = newText.toString();
+            if (end == original.length() && !original.endsWith("\n") && replacement.endsWith("\n")) {
+                // Keep a missing final newline missing
+                replacement = replacement.substring(0, replacement.length() - 1);
+                if (start == end && start > 0) {
+                    // Appending after an unterminated last line
+                    replacement = "\n" + replacement;
+                }
+            }
+            replacements.add(new Replacement(hunk, start, end, replacement));
+        }
+        if (hunk == 0) {
+            conflicts.add("No @@ hunk header found in the diff");
+        }
+        return apply(original, replacements, conflicts);
+    }
+
+    /**
+     * Build the patched text in one pass, reporting overlapping hunks as conflicts
+     */
+    private static PatchResult apply(String original, List<Replacement> replacements, List<String> conflicts) {
+        replacements.sort(Comparator.comparingInt(Replacement::start).thenComparingInt(Replacement::end));
+        for (int i = 1; i < replacements.size(); i++) {
+            Replacement previous = replacements.get(i - 1);
+            Replacement current = replacements.get(i);
+            if (current.start() < previous.end()) {
+                conflicts.add(String.format("Hunk %d overlaps hunk %d", current.hunk(), previous.hunk()));
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            return new PatchResult(null, 0, conflicts);
+        }
+        StringBuilder result = new StringBuilder(original.length());
+        int position = 0;
+        for (Replacement replacement : replacements) {
+            result.append(original, position, replacement.start()).append(replacement.replacement());
+            position = replacement.end();
+        }
+        result.append(original, position, original.length());
+        return new PatchResult(result.toString(), replacements.size(), conflicts);
+    }
+
+    /**
+     * Find the match of oldLines closest to the expected line
+     *
+     * @return first line index of the match, or -1
+     */
+    private static int locate(List<String> lines, List<String> oldLines, int expected) {
+        int lastStart = lines.size() - oldLines.size();
+        if (lastStart < 0) {
+            return -1;
+        }
+        expected = Math.min(expected, lastStart);
+        for (int offset = 0; offset <= lastStart; offset++) {
+            int below = expected + offset;
+            if (below <= lastStart && matchesAt(lines, oldLines, below)) {
+                return below;
+            }
+            int above = expected - offset;
+            if (offset > 0 && above >= 0 && matchesAt(lines, oldLines, above)) {
+                return above;
+            }
+            if (below > lastStart && above < 0) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matchesAt(List<String> lines, List<String> oldLines, int at) {
+        for (int i = 0; i < oldLines.size(); i++) {
+            if (!stripCr(lines.get(at + i)).equals(oldLines.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lines without their '\n', a final newline does not start another line
+     */
+    private static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int newline = text.indexOf('\n', start);
+            if (newline < 0) {
+                lines.add(text.substring(start));
+                break;
+            }
+            lines.add(text.substring(start, newline));
+            start = newline + 1;
+        }
+        return lines;
+    }
+
+    /**
+     * Offset of every line start plus the text length as a sentinel
+     */
+    private static int[] lineStarts(String text, List<String> lines) {
+        int[] starts = new int[lines.size() + 1];
+        int offset = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            starts[i] = offset;
+            offset = Math.min(offset + lines.get(i).length() + 1, text.length());
+        }
+        starts[lines.size()] = text.length();
+        return starts;
+    }
+
+    private static String stripCr(String line) {
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    private static int countOccurrences(String text, String part) {
+        int count = 0;
+        int index = text.indexOf(part);
+        while (index >= 0) {
+            count++;
+            index = text.indexOf(part, index + 1);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,226 @@
+package com.morfism.aiappgenerator.ai.memory;
+
+import com.morfism.aiappgenerator.service.ChatHistoryService;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 分层对话记忆存储测试，Redis 以内存实现模拟，两个存储实例可共享同一个 Redis
+ */
+class LayeredChatMemoryStoreTest {
+
+    private static final ChatMessage U1 = UserMessage.from("make a page");
+
+    private static final ChatMessage A1 = AiMessage.from("<html/>");
+
+    private static final ChatMessage U2 = UserMessage.from("make it blue");
+
+    private static final ChatMessage A2 = AiMessage.from("<html class=\"blue\"/>");
+
+    private final FakeRedis redis = new FakeRedis();
+
+    private final ChatHistoryService chatHistoryService = mock(ChatHistoryService.class);
+
+    @Test
+    void localTierAnswersWithoutReadingTheList() {
+        LayeredChatMemoryStore store = newStore();
+        store.updateMessages(7L, List.of(U1));
+        redis.listReads = 0;
+
+        assertEquals(List.of(U1), store.getMessages(7L));
+        assertEquals(List.of(U1), store.getMessages(7L));
+        assertEquals(0, redis.listReads);
+    }
+
+    @Test
+    void redisTierAnswersAfterLocalLoss() {
+        newStore().updateMessages(7L, List.of(U1));
+
+        assertEquals(List.of(U1), newStore().getMessages(7L));
+        verifyNoInteractions(chatHistoryService);
+    }
+
+    @Test
+    void windowsAreNotReadThroughFromChatHistory() {
+        assertTrue(newStore().getMessages(7L).isEmpty());
+        verify(chatHistoryService, never()).loadRecentChatMessages(anyLong(), anyInt());
+    }
+
+    @Test
+    void instancesSeeEachOthersWrites() {
+        LayeredChatMemoryStore first = newStore();
+        LayeredChatMemoryStore second = newStore();
+        first.updateMessages(7L, List.of(U1));
+        assertEquals(List.of(U1), second.getMessages(7L));
+
+        // The next turn of the app runs on the other instance
+        second.updateMessages(7L, List.of(U1, A1, U2));
+        assertEquals(List.of(U1, A1, U2), first.getMessages(7L));
+
+        first.updateMessages(7L, List.of(U1, A1, U2, A2));
+        assertEquals(List.of(U1, A1, U2, A2), redis.messages("chat_memory:7"));
+        assertEquals(List.of(U1, A1, U2, A2), second.getMessages(7L));
+    }
+
+    @Test
+    void deltaFromAStaleCopyIsNotApplied() {
+        LayeredChatMemoryStore first = newStore();
+        LayeredChatMemoryStore second = newStore();
+        first.updateMessages(7L, List.of(U1, A1));
+        second.getMessages(7L);
+        first.updateMessages(7L, List.of(A1, U2));
+
+        // Against its stale copy [U1, A1] this is "trim nothing, append A2", against Redis it is not
+        second.updateMessages(7L, List.of(U1, A1, A2));
+
+        assertEquals(List.of(U1, A1, A2), redis.messages("chat_memory:7"));
+        assertEquals(List.of(U1, A1, A2), first.getMessages(7L));
+    }
+
+    @Test
+    void summarySurvivesTheLossOfBothCaches() {
+        newStore().updateMessages("7:summary", List.of(AiMessage.from("a todo list with dark mode")));
+        verify(chatHistoryService).saveMemorySummary(7L, "a todo list with dark mode");
+
+        redis.clear();
+        when(chatHistoryService.getMemorySummary(7L)).thenReturn("a todo list with dark mode");
+        List<ChatMessage> loaded = newStore().getMessages("7:summary");
+
+        assertEquals(List.of(AiMessage.from("a todo list with dark mode")), loaded);
+    }
+
+    @Test
+    void deletingASummaryDeletesTheDurableCopy() {
+        LayeredChatMemoryStore store = newStore();
+        store.updateMessages("7:summary", List.of(AiMessage.from("summary")));
+
+        store.deleteMessages("7:summary");
+
+        verify(chatHistoryService).saveMemorySummary(7L, null);
+        assertTrue(redis.messages("chat_memory:7:summary").isEmpty());
+    }
+
+    @Test
+    void summaryIsPersistedWhileRedisIsDown() {
+        redis.down = true;
+        LayeredChatMemoryStore store = newStore();
+
+        store.updateMessages("7:summary", List.of(AiMessage.from("summary")));
+
+        verify(chatHistoryService).saveMemorySummary(7L, "summary");
+        when(chatHistoryService.getMemorySummary(7L)).thenReturn("summary");
+        assertEquals(List.of(AiMessage.from("summary")), store.getMessages("7:summary"));
+    }
+
+    @Test
+    void writesMadeWhileRedisWasDownReachItWhenItIsBack() {
+        LayeredChatMemoryStore store = newStore();
+        store.updateMessages(7L, List.of(U1));
+        redis.down = true;
+        store.updateMessages(7L, List.of(U1, A1));
+
+        redis.down = false;
+        assertEquals(List.of(U1, A1), store.getMessages(7L));
+        assertEquals(List.of(U1, A1), redis.messages("chat_memory:7"));
+    }
+
+    private LayeredChatMemoryStore newStore() {
+        LayeredChatMemoryStore store = new LayeredChatMemoryStore();
+        ReflectionTestUtils.setField(store, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(store, "chatHistoryService", chatHistoryService);
+        ReflectionTestUtils.setField(store, "redisTtlSeconds", 3600L);
+        return store;
+    }
+
+    /**
+     * Runs the store's two scripts against in-memory lists
+     */
+    static class FakeRedis extends StringRedisTemplate {
+
+        private final Map<String, List<String>> lists = new HashMap<>();
+
+        private final Map<String, Long> versions = new HashMap<>();
+
+        /**
+         * Reads that transferred the list
+         */
+        int listReads;
+
+        volatile boolean down;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            checkUp();
+            String listKey = keys.get(0);
+            String version = String.valueOf(versions.getOrDefault(keys.get(1), 0L));
+            if (script == LayeredChatMemoryStore.READ_SCRIPT) {
+                List<String> reply = new ArrayList<>();
+                reply.add(version);
+                if (!version.equals(args[0])) {
+                    listReads++;
+                    reply.addAll(lists.getOrDefault(listKey, List.of()));
+                }
+                return (T) reply;
+            }
+            assertSame(LayeredChatMemoryStore.WRITE_SCRIPT, script);
+            if (!"".equals(args[0]) && !version.equals(args[0])) {
+                return (T) Long.valueOf(-1);
+            }
+            int dropped = Integer.parseInt((String) args[1]);
+            List<String> list = new ArrayList<>(dropped < 0 ? List.of() : lists.getOrDefault(listKey, List.of()));
+            list = new ArrayList<>(list.subList(Math.min(Math.max(dropped, 0), list.size()), list.size()));
+            for (int i = 3; i < args.length; i++) {
+                list.add((String) args[i]);
+            }
+            if (list.isEmpty()) {
+                lists.remove(listKey);
+            } else {
+                lists.put(listKey, list);
+            }
+            return (T) versions.merge(keys.get(1), 1L, Long::sum);
+        }
+
+        @Override
+        public synchronized Long delete(Collection<String> keys) {
+            checkUp();
+            long deleted = 0;
+            for (String key : keys) {
+                deleted += (lists.remove(key) != null ? 1 : 0) + (versions.remove(key) != null ? 1 : 0);
+            }
+            return deleted;
+        }
+
+        synchronized List<ChatMessage> messages(String key) {
+            return lists.getOrDefault(key, List.of()).stream().map(ChatMessageDeserializer::messageFromJson).toList();
+        }
+
+        synchronized void clear() {
+            lists.clear();
+            versions.clear();
+        }
+
+        private void checkUp() {
+            if (down) {
+                throw new RedisConnectionFailureException("down");
+            }
+        }
+    }
+}
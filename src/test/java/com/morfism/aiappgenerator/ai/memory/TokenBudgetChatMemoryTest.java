@@ -0,0 +1,172 @@
+package com.morfism.aiappgenerator.ai.memory;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按 token 预算裁剪的对话记忆测试
+ */
+class TokenBudgetChatMemoryTest {
+
+    private static final String CODE = "```html\n" + "<div>hello world</div>\n".repeat(200) + "```";
+
+    @Test
+    void olderAiTurnsKeepOnlyCodeMarkers() {
+        TokenBudgetChatMemory memory = TokenBudgetChatMemory.builder()
+                .id(1L)
+                .chatMemoryStore(new InMemoryChatMemoryStore())
+                .maxTokens(100_000)
+                .recentTurns(1)
+                .build();
+        memory.add(UserMessage.from("make a page"));
+        memory.add(AiMessage.from("Here it is\n" + CODE));
+        memory.add(UserMessage.from("make it blue"));
+
+        String oldAnswer = ((AiMessage) memory.messages().get(1)).text();
+        assertTrue(oldAnswer.startsWith("Here it is\n```html\n"));
+        assertTrue(oldAnswer.contains("200 lines omitted"));
+        assertFalse(oldAnswer.contains("hello world"));
+    }
+
+    @Test
+    void evictionKeepsToolPairsAndCurrentTurn() {
+        TokenBudgetChatMemory memory = TokenBudgetChatMemory.builder()
+                .id(2L)
+                .chatMemoryStore(new InMemoryChatMemoryStore())
+                .maxTokens(30)
+                .recentTurns(1)
+                .build();
+        memory.add(SystemMessage.from("system"));
+        memory.add(UserMessage.from("first request with a fairly long description of the page"));
+        ToolExecutionRequest request = ToolExecutionRequest.builder()
+                .id("call-1").name("readFile").arguments("{\"relativeFilePath\":\"src/App.vue\"}").build();
+        memory.add(AiMessage.from(request));
+        memory.add(ToolExecutionResultMessage.from(request, "file body"));
+        memory.add(UserMessage.from("second request"));
+
+        List<ChatMessage> messages = memory.messages();
+        assertInstanceOf(SystemMessage.class, messages.getFirst());
+        assertEquals("second request", ((UserMessage) messages.getLast()).singleText());
+        for (ChatMessage message : messages) {
+            assertFalse(message instanceof ToolExecutionResultMessage, "orphan tool result left in memory");
+        }
+    }
+
+    @Test
+    void evictionRemovesWholeTurns() {
+        TokenBudgetChatMemory memory = TokenBudgetChatMemory.builder()
+                .id(6L)
+                .chatMemoryStore(new InMemoryChatMemoryStore())
+                .maxTokens(35)
+                .recentTurns(1)
+                .build();
+        memory.add(SystemMessage.from("system"));
+        memory.add(UserMessage.from("a fairly long first request describing the page that should be generated"));
+        memory.add(AiMessage.from("ok"));
+        memory.add(UserMessage.from("second"));
+        memory.add(AiMessage.from("second answer"));
+        memory.add(UserMessage.from("third"));
+
+        // Evicting only the first request would already fit, but leave the window starting with an AI message
+        assertEquals(List.of(SystemMessage.from("system"), UserMessage.from("second"), AiMessage.from("second answer"),
+                UserMessage.from("third")), memory.messages());
+    }
+
+    @Test
+    void restoredWindowStartsWithAUserMessage() {
+        // Loaded by row count, the history starts in the middle of a turn
+        List<ChatMessage> history = List.of(
+                AiMessage.from("answer"),
+                UserMessage.from("second request"),
+                AiMessage.from("a fairly long second answer describing the generated page in detail"));
+        TokenBudgetChatMemory memory = TokenBudgetChatMemory.builder()
+                .id(7L)
+                .chatMemoryStore(new InMemoryChatMemoryStore())
+                .maxTokens(1000)
+                .build();
+
+        assertEquals(2, memory.restore(history));
+        assertEquals(history.subList(1, 3), memory.messages());
+    }
+
+    @Test
+    void evictedTurnsFoldIntoSummary() throws InterruptedException {
+        TokenBudgetChatMemory memory = TokenBudgetChatMemory.builder()
+                .id(3L)
+                .chatMemoryStore(new InMemoryChatMemoryStore())
+                .maxTokens(30)
+                .recentTurns(1)
+                .summarizer(new ConversationSummarizer(null, 500))
+                .build();
+        memory.add(SystemMessage.from("system"));
+        memory.add(UserMessage.from("build a todo list"));
+        memory.add(AiMessage.from("done, the todo list has add and remove buttons"));
+        memory.add(UserMessage.from("add dark mode"));
+
+        String systemText = null;
+        for (int i = 0; i < 50 && (systemText == null || !systemText.contains("todo list")); i++) {
+            Thread.sleep(20);
+            systemText = ((SystemMessage) memory.messages().getFirst()).text();
+        }
+        assertNotNull(systemText);
+        assertTrue(systemText.startsWith("system"));
+        assertTrue(systemText.contains("- User asked: build a todo list"));
+    }
+
+    @Test
+    void coldWindowIsRestoredWithinTheBudget() {
+        List<ChatMessage> history = List.of(
+                UserMessage.from("first request with a fairly long description of the page"),
+                AiMessage.from("first answer with a fairly long description of the page"),
+                UserMessage.from("second request"),
+                AiMessage.from("second answer"));
+        AtomicInteger loads = new AtomicInteger();
+        TokenBudgetChatMemory memory = TokenBudgetChatMemory.builder()
+                .id(4L)
+                .chatMemoryStore(new InMemoryChatMemoryStore())
+                .maxTokens(30)
+                .recentTurns(1)
+                .historyLoader(id -> {
+                    loads.incrementAndGet();
+                    return history;
+                })
+                .build();
+
+        memory.add(SystemMessage.from("system"));
+        memory.add(UserMessage.from("third request"));
+
+        List<ChatMessage> messages = memory.messages();
+        assertInstanceOf(SystemMessage.class, messages.getFirst());
+        assertEquals(List.of(UserMessage.from("second request"), AiMessage.from("second answer"),
+                UserMessage.from("third request")), messages.subList(1, messages.size()));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void storedSummaryIsUsedByANewMemory() {
+        InMemoryChatMemoryStore store = new InMemoryChatMemoryStore();
+        store.updateMessages("5:summary", List.of(AiMessage.from("a todo list with dark mode")));
+        TokenBudgetChatMemory memory = TokenBudgetChatMemory.builder()
+                .id(5L)
+                .chatMemoryStore(store)
+                .historyLoader(id -> List.of())
+                .build();
+
+        memory.add(SystemMessage.from("system"));
+
+        String systemText = ((SystemMessage) memory.messages().getFirst()).text();
+        assertTrue(systemText.startsWith("system"));
+        assertTrue(systemText.endsWith("a todo list with dark mode"));
+    }
+}
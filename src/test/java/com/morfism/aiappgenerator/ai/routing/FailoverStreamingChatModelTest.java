@@ -0,0 +1,219 @@
+package com.morfism.aiappgenerator.ai.routing;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 多供应商故障转移流式模型测试，使用本地桩模型
+ */
+class FailoverStreamingChatModelTest {
+
+    private static final ChatRequest REQUEST = ChatRequest.builder()
+            .messages(UserMessage.from("make a page"))
+            .build();
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void failsOverWhenThePrimaryErrors() throws Exception {
+        FailoverStreamingChatModel model = builder()
+                .candidate("primary", failing(new RuntimeException("503 from upstream")))
+                .candidate("secondary", streaming(0, "hello", " world"))
+                .build();
+
+        assertEquals("hello world", run(model));
+    }
+
+    @Test
+    void failsOverWhenThePrimaryStaysSilent() throws Exception {
+        FailoverStreamingChatModel model = builder()
+                .firstTokenTimeoutMs(100)
+                .candidate("primary", silent())
+                .candidate("secondary", streaming(0, "fallback"))
+                .build();
+
+        assertEquals("fallback", run(model));
+    }
+
+    @Test
+    void keepsErrorsAfterTheFirstOutput() {
+        AtomicInteger secondaryCalls = new AtomicInteger();
+        FailoverStreamingChatModel model = builder()
+                .candidate("primary", new StubModel() {
+                    @Override
+                    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                        handler.onPartialResponse("partial");
+                        handler.onError(new RuntimeException("connection reset"));
+                    }
+                })
+                .candidate("secondary", counting(secondaryCalls))
+                .build();
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> run(model));
+        assertEquals("connection reset", error.getCause().getMessage());
+        assertEquals(0, secondaryCalls.get());
+    }
+
+    @Test
+    void hedgeKeepsTheProviderThatStreamsFirst() throws Exception {
+        FailoverStreamingChatModel model = builder()
+                .hedgingEnabled(true)
+                .hedgeInitialDelayMs(50)
+                .candidate("primary", streaming(500, "slow"))
+                .candidate("secondary", streaming(0, "fast"))
+                .build();
+
+        assertEquals("fast", run(model));
+    }
+
+    @Test
+    void hedgeDelayFollowsTheProviderP95() {
+        ProviderLatencyTracker tracker = new ProviderLatencyTracker();
+        for (int i = 1; i <= 20; i++) {
+            tracker.record("primary", i * 100L);
+        }
+        FailoverStreamingChatModel model = builder()
+                .latencyTracker(tracker)
+                .firstTokenTimeoutMs(30_000)
+                .hedgeMinDelayMs(200)
+                .candidate("primary", silent())
+                .build();
+
+        assertEquals(1900, model.hedgeDelayMs("primary"));
+        assertEquals(5_000, model.hedgeDelayMs("unknown"));
+    }
+
+    @Test
+    void reportsTheLastErrorWhenAllProvidersFail() {
+        FailoverStreamingChatModel model = builder()
+                .candidate("primary", failing(new RuntimeException("first")))
+                .candidate("secondary", failing(new RuntimeException("second")))
+                .build();
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> run(model));
+        assertEquals("second", error.getCause().getMessage());
+    }
+
+    @Test
+    void withdrawsAQueuedAttemptItFailedOverFrom() throws Exception {
+        // The primary's only slot is taken, so its attempt waits in the rate limiter queue
+        ProviderRateLimiter limiter = new ProviderRateLimiter("primary",
+                new ProviderRateLimiter.Limits(0, 1, 0, 10, 60_000, 1_000), scheduler);
+        limiter.submit("other-app", 10, () -> {
+        }, reason -> {
+        });
+        AtomicInteger primaryCalls = new AtomicInteger();
+        FailoverStreamingChatModel model = builder()
+                .firstTokenTimeoutMs(100)
+                .candidate("primary", new RateLimitedStreamingChatModel(counting(primaryCalls), limiter, 1L))
+                .candidate("secondary", streaming(0, "fallback"))
+                .build();
+
+        assertEquals("fallback", run(model));
+        assertEquals(0, limiter.getQueued());
+
+        // Once the slot frees up, the abandoned attempt must not reach the provider
+        limiter.release(-1, 10);
+        Thread.sleep(100);
+        assertEquals(0, primaryCalls.get());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    private FailoverStreamingChatModel.Builder builder() {
+        return FailoverStreamingChatModel.builder()
+                .firstTokenTimeoutMs(2_000)
+                .scheduler(scheduler);
+    }
+
+    private static String run(StreamingChatModel model) throws ExecutionException, InterruptedException, TimeoutException {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        StringBuilder streamed = new StringBuilder();
+        model.chat(REQUEST, new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                streamed.append(partialResponse);
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                assertEquals(streamed.toString(), completeResponse.aiMessage().text());
+                result.complete(streamed.toString());
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                result.completeExceptionally(error);
+            }
+        });
+        return result.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stub provider, only chat is implemented
+     */
+    private abstract static class StubModel implements StreamingChatModel {
+    }
+
+    private StreamingChatModel streaming(long delayMs, String... tokens) {
+        return new StubModel() {
+            @Override
+            public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                scheduler.schedule(() -> {
+                    for (String token : tokens) {
+                        handler.onPartialResponse(token);
+                    }
+                    handler.onCompleteResponse(ChatResponse.builder()
+                            .aiMessage(AiMessage.from(String.join("", tokens)))
+                            .build());
+                }, delayMs, TimeUnit.MILLISECONDS);
+            }
+        };
+    }
+
+    private static StreamingChatModel failing(RuntimeException error) {
+        return new StubModel() {
+            @Override
+            public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                handler.onError(error);
+            }
+        };
+    }
+
+    private static StreamingChatModel silent() {
+        return new StubModel() {
+            @Override
+            public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+            }
+        };
+    }
+
+    private static StreamingChatModel counting(AtomicInteger calls) {
+        return new StubModel() {
+            @Override
+            public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                calls.incrementAndGet();
+            }
+        };
+    }
+}
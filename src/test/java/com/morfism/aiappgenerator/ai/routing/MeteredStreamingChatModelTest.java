@@ -0,0 +1,84 @@
+package com.morfism.aiappgenerator.ai.routing;
+
+import com.morfism.aiappgenerator.core.metrics.GenerationMetrics;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 带指标的流式模型测试
+ */
+class MeteredStreamingChatModelTest {
+
+    private final GenerationMetrics metrics = new GenerationMetrics();
+
+    private final List<Long> reported = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+        metrics.init();
+    }
+
+    @Test
+    void reportsProviderUsageWithoutTheRateLimiter() {
+        StreamingChatModel provider = new StreamingChatModel() {
+            @Override
+            public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                handler.onCompleteResponse(ChatResponse.builder()
+                        .aiMessage(AiMessage.from("<html/>"))
+                        .tokenUsage(new TokenUsage(120, 30))
+                        .build());
+            }
+        };
+        new MeteredStreamingChatModel(provider, metrics, "deepseek", "html", reported::add).chat(request(), handler());
+
+        assertEquals(List.of(150L), reported);
+    }
+
+    @Test
+    void failedRequestsReportNothing() {
+        StreamingChatModel provider = new StreamingChatModel() {
+            @Override
+            public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                handler.onError(new RuntimeException("connection reset"));
+            }
+        };
+        new MeteredStreamingChatModel(provider, metrics, "deepseek", "html", reported::add).chat(request(), handler());
+
+        assertTrue(reported.isEmpty());
+    }
+
+    private static ChatRequest request() {
+        return ChatRequest.builder().messages(UserMessage.from("make a page")).build();
+    }
+
+    private static StreamingChatResponseHandler handler() {
+        return new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partialResponse) {
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+            }
+
+            @Override
+            public void onError(Throwable error) {
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package com.morfism.aiappgenerator.ai.routing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 供应商限流器测试
+ */
+class ProviderRateLimiterTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final List<String> started = new CopyOnWriteArrayList<>();
+
+    private final List<String> rejected = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void capsConcurrentStreams() {
+        ProviderRateLimiter limiter = limiter(new ProviderRateLimiter.Limits(0, 1, 0, 10, 0, 1_000));
+        submit(limiter, "app-1", "first", 10);
+        submit(limiter, "app-1", "second", 10);
+
+        assertEquals(List.of("first"), started);
+        assertEquals(1, limiter.getQueued());
+
+        limiter.release(-1, 10);
+        assertEquals(List.of("first", "second"), started);
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    void servesWaitingAppsRoundRobin() {
+        ProviderRateLimiter limiter = limiter(new ProviderRateLimiter.Limits(0, 1, 0, 10, 0, 1_000));
+        submit(limiter, "app-1", "a1", 10);
+        submit(limiter, "app-1", "a2", 10);
+        submit(limiter, "app-1", "a3", 10);
+        submit(limiter, "app-2", "b1", 10);
+
+        for (int i = 0; i < 3; i++) {
+            limiter.release(-1, 10);
+        }
+        assertEquals(List.of("a1", "a2", "b1", "a3"), started);
+    }
+
+    @Test
+    void rejectsAtOnceWhenTheQueueIsFull() {
+        ProviderRateLimiter limiter = limiter(new ProviderRateLimiter.Limits(0, 1, 0, 1, 0, 1_000));
+        assertTrue(submit(limiter, "app-1", "running", 10));
+        assertTrue(submit(limiter, "app-2", "queued", 10));
+
+        assertFalse(submit(limiter, "app-3", "rejected", 10));
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test
+    void rejectsRequestsThatWaitTooLong() throws InterruptedException {
+        ProviderRateLimiter limiter = limiter(new ProviderRateLimiter.Limits(0, 1, 0, 10, 50, 1_000));
+        submit(limiter, "app-1", "running", 10);
+        submit(limiter, "app-2", "waiting", 10);
+
+        Thread.sleep(200);
+        assertEquals(List.of("waiting"), rejected);
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    void waitsForTheTokenBudget() throws InterruptedException {
+        // 6000 tokens per minute refill 100 per second
+        ProviderRateLimiter limiter = limiter(new ProviderRateLimiter.Limits(0, 10, 6_000, 10, 0, 1_000));
+        submit(limiter, "app-1", "first", 5_990);
+        submit(limiter, "app-1", "second", 50);
+        assertEquals(List.of("first"), started);
+
+        Thread.sleep(800);
+        assertEquals(List.of("first", "second"), started);
+    }
+
+    @Test
+    void pausesAfterUpstreamThrottling() throws InterruptedException {
+        ProviderRateLimiter limiter = limiter(new ProviderRateLimiter.Limits(0, 10, 0, 10, 0, 200));
+        limiter.throttled();
+        submit(limiter, "app-1", "after-429", 10);
+        assertTrue(started.isEmpty());
+
+        Thread.sleep(500);
+        assertEquals(List.of("after-429"), started);
+    }
+
+    @Test
+    void cancelledRequestsNeverStart() throws InterruptedException {
+        ProviderRateLimiter limiter = limiter(new ProviderRateLimiter.Limits(0, 1, 0, 10, 0, 1_000));
+        submit(limiter, "app-1", "running", 10);
+        ProviderRateLimiter.Ticket ticket = limiter.submit("app-2", 10, () -> started.add("withdrawn"), reason -> rejected.add("withdrawn"));
+        submit(limiter, "app-3", "next", 10);
+
+        assertTrue(ticket.cancel());
+        assertFalse(ticket.cancel());
+        assertEquals(1, limiter.getQueued());
+
+        limiter.release(-1, 10);
+        Thread.sleep(50);
+        assertEquals(List.of("running", "next"), started);
+        assertTrue(rejected.isEmpty());
+    }
+
+    private ProviderRateLimiter limiter(ProviderRateLimiter.Limits limits) {
+        return new ProviderRateLimiter("stub", limits, scheduler);
+    }
+
+    private boolean submit(ProviderRateLimiter limiter, String app, String name, long tokens) {
+        return limiter.submit(app, tokens, () -> started.add(name), reason -> rejected.add(name)).isAccepted();
+    }
+}
@@ -0,0 +1,89 @@
+package com.morfism.aiappgenerator.ai.routing;
+
+import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.exception.ErrorCode;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 受限流保护的阻塞模型测试
+ */
+class RateLimitedChatModelTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void sharesConcurrencyWithOtherRequestsOfTheProvider() throws Exception {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", new ProviderRateLimiter.Limits(0, 1, 0, 10, 0, 1_000), scheduler);
+        // A streaming request of the same provider holds the only slot
+        limiter.submit(1L, 10, () -> {
+        }, reason -> fail(reason));
+        ChatModel model = new RateLimitedChatModel(model(request -> answer("name")), limiter, 2L);
+
+        CompletableFuture<String> blocked = CompletableFuture.supplyAsync(() -> model.chat("name this app"));
+        Thread.sleep(100);
+        assertFalse(blocked.isDone());
+
+        limiter.release(-1, 10);
+        assertEquals("name", blocked.get(5, TimeUnit.SECONDS));
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void upstreamThrottlingStartsTheCooldown() throws Exception {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", new ProviderRateLimiter.Limits(0, 0, 0, 10, 0, 60_000), scheduler);
+        ChatModel throttled = new RateLimitedChatModel(model(request -> {
+            throw new RuntimeException("HTTP 429 Too Many Requests");
+        }), limiter, 1L);
+        assertThrows(RuntimeException.class, () -> throttled.chat("name this app"));
+        assertEquals(0, limiter.getInFlight());
+
+        CountDownLatch started = new CountDownLatch(1);
+        limiter.submit(1L, 10, started::countDown, reason -> fail(reason));
+        assertFalse(started.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void rejectsWhenTheQueueIsFull() {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", new ProviderRateLimiter.Limits(0, 1, 0, 1, 0, 1_000), scheduler);
+        limiter.submit(1L, 10, () -> {
+        }, reason -> fail(reason));
+        limiter.submit(1L, 10, () -> {
+        }, reason -> fail(reason));
+        ChatModel model = new RateLimitedChatModel(model(request -> answer("name")), limiter, 2L);
+
+        BusinessException e = assertThrows(BusinessException.class, () -> model.chat("name this app"));
+        assertEquals(ErrorCode.TOO_MANY_REQUEST_ERROR.getCode(), e.getCode());
+    }
+
+    private static ChatModel model(Function<ChatRequest, ChatResponse> answer) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest chatRequest) {
+                return answer.apply(chatRequest);
+            }
+        };
+    }
+
+    private static ChatResponse answer(String text) {
+        return ChatResponse.builder().aiMessage(AiMessage.from(text)).build();
+    }
+}
@@ -0,0 +1,62 @@
+package com.morfism.aiappgenerator.ai.tools;
+
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspace;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspaceManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 文件读取工具按行区间读取测试
+ */
+class FileReadToolTest {
+
+    private static final String CONTENT = "l1\nl2\nl3\nl4\nl5\n";
+
+    private final FileReadTool tool = new FileReadTool();
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.writeString(root.resolve("notes.txt"), CONTENT);
+        ProjectWorkspaceManager manager = mock(ProjectWorkspaceManager.class);
+        when(manager.get(1L)).thenReturn(new ProjectWorkspace(root));
+        ReflectionTestUtils.setField(tool, "projectWorkspaceManager", manager);
+        ReflectionTestUtils.setField(tool, "defaultMaxBytes", 1024);
+    }
+
+    @Test
+    void wholeFileIsReturnedVerbatim() {
+        assertEquals(CONTENT, tool.readFile("notes.txt", null, null, null, 1L));
+    }
+
+    @Test
+    void readsTheRequestedLines() {
+        assertEquals("[Lines 2-3 of 5]\nl2\nl3\n", tool.readFile("notes.txt", 2, 3, null, 1L));
+        // An end past the last line is clamped
+        assertEquals("[Lines 4-5 of 5]\nl4\nl5\n", tool.readFile("notes.txt", 4, 99, null, 1L));
+    }
+
+    @Test
+    void stopsAtTheLastWholeLineThatFits() {
+        assertEquals("[Lines 1-2 of 5]\nl1\nl2\n[Output limited to 6 bytes, call readFile with startLine=3 to continue]",
+                tool.readFile("notes.txt", 1, null, 6, 1L));
+    }
+
+    @Test
+    void reportsInvalidRanges() {
+        assertEquals("Error: Invalid line range 6-end, file has 5 lines - notes.txt",
+                tool.readFile("notes.txt", 6, null, null, 1L));
+        assertEquals("Error: Invalid line range 3-2, file has 5 lines - notes.txt",
+                tool.readFile("notes.txt", 3, 2, null, 1L));
+    }
+}
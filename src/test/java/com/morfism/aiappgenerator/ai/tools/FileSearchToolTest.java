@@ -0,0 +1,65 @@
+package com.morfism.aiappgenerator.ai.tools;
+
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspace;
+import com.morfism.aiappgenerator.core.workspace.ProjectWorkspaceManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 文件搜索工具测试
+ */
+class FileSearchToolTest {
+
+    private final FileSearchTool tool = new FileSearchTool();
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.createDirectories(root.resolve("src"));
+        Files.writeString(root.resolve("src/App.vue"), "<template>\n  <h1>{{ title }}</h1>\n</template>\n");
+        ProjectWorkspaceManager manager = mock(ProjectWorkspaceManager.class);
+        when(manager.get(1L)).thenReturn(new ProjectWorkspace(root));
+        ReflectionTestUtils.setField(tool, "projectWorkspaceManager", manager);
+        ReflectionTestUtils.setField(tool, "maxFileBytes", 1024L);
+        ReflectionTestUtils.setField(tool, "regexTimeoutMs", 200L);
+    }
+
+    @Test
+    void returnsMatchingLinesWithTheirNumbers() {
+        assertEquals("Found 1 matches:\nsrc/App.vue:2: <h1>{{ title }}</h1>\n",
+                tool.searchFiles("title", "", false, 1L));
+        assertEquals("Found 1 matches:\nsrc/App.vue:2: <h1>{{ title }}</h1>\n",
+                tool.searchFiles("<h\\d>", "src", true, 1L));
+        assertEquals("No matches found for: missing", tool.searchFiles("missing", null, false, 1L));
+    }
+
+    @Test
+    void skipsFilesAboveTheSizeLimit() throws Exception {
+        Files.writeString(root.resolve("package-lock.json"), "\"title\": \"lock\"\n".repeat(200));
+
+        assertEquals("Skipped 1 files larger than 1024 bytes\nFound 1 matches:\nsrc/App.vue:2: <h1>{{ title }}</h1>\n",
+                tool.searchFiles("title", "", false, 1L));
+    }
+
+    @Test
+    void runawayRegexIsStoppedAtTheDeadline() throws Exception {
+        Files.writeString(root.resolve("src/long.txt"), "a".repeat(40) + "c\n");
+
+        long start = System.nanoTime();
+        String result = tool.searchFiles("(.*a){12}b", "", true, 1L);
+        assertTrue(result.startsWith("Error: Regular expression search took longer than 200 ms"), result);
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+
+        assertTrue(tool.searchFiles("a".repeat(501), "", true, 1L).startsWith("Error: Regular expression longer"));
+    }
+}
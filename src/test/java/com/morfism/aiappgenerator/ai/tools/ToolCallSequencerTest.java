@@ -0,0 +1,349 @@
+package com.morfism.aiappgenerator.ai.tools;
+
+import cn.hutool.json.JSONObject;
+import com.morfism.aiappgenerator.core.metrics.GenerationMetrics;
+import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolMemoryId;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.tool.ToolExecution;
+import dev.langchain4j.service.tool.ToolExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 工具调用并发调度测试
+ */
+class ToolCallSequencerTest {
+
+    private final ToolCallSequencer sequencer = new ToolCallSequencer();
+
+    private final Values values = new Values();
+
+    private final ToolManager toolManager = new ToolManager();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        GenerationMetrics metrics = new GenerationMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", meterRegistry);
+        metrics.init();
+        BaseTool[] tools = {new PutTool(values), new GetTool(values), new PingTool()};
+        for (BaseTool tool : tools) {
+            ReflectionTestUtils.setField(tool, "generationMetrics", metrics);
+        }
+        ReflectionTestUtils.setField(toolManager, "tools", tools);
+        ReflectionTestUtils.setField(sequencer, "toolManager", toolManager);
+        ReflectionTestUtils.setField(sequencer, "turnWaitSeconds", 5L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sequencer.shutdown();
+    }
+
+    @Test
+    void readAfterWriteInOneTurnSeesTheWrite() throws Exception {
+        ToolExecutionRequest write = request("1", "put", "{\"value\":\"v2\"}");
+        ToolExecutionRequest read = request("2", "get", "{}");
+        values.byApp.put(7L, "v1");
+        planTurn(7L, write, read);
+
+        // Start the read first, it must still wait for the write requested before it
+        CompletableFuture<String> readResult = execute(read, 7L);
+        Thread.sleep(50);
+        assertFalse(readResult.isDone());
+        CompletableFuture<String> writeResult = execute(write, 7L);
+
+        assertEquals("ok", writeResult.get(5, TimeUnit.SECONDS));
+        assertEquals("v2", readResult.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void readsOfOneTurnRunConcurrently() throws Exception {
+        ToolExecutionRequest first = request("1", "get", "{}");
+        ToolExecutionRequest second = request("2", "get", "{}");
+        values.byApp.put(7L, "v1");
+        values.readDelayMs = 300;
+        planTurn(7L, first, second);
+
+        long start = System.nanoTime();
+        CompletableFuture<String> a = execute(first, 7L);
+        CompletableFuture<String> b = execute(second, 7L);
+        assertEquals("v1", a.get(5, TimeUnit.SECONDS));
+        assertEquals("v1", b.get(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 550);
+    }
+
+    @Test
+    void callsOutsideAPlanStillRun() throws Exception {
+        assertEquals("ok", execute(request("1", "put", "{\"value\":\"v3\"}"), 8L).get(5, TimeUnit.SECONDS));
+        assertEquals("v3", execute(request("2", "get", "{}"), 8L).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void streamedCallsArePlannedBeforeTheyRun() throws Exception {
+        values.byApp.put(7L, "v1");
+
+        // The AI service starts each call as soon as the model completes it, before the response is complete
+        List<ToolExecution> reported = runTurn(7L,
+                request("1", "put", "{\"value\":\"v2\"}"), request("2", "get", "{}"));
+
+        assertEquals(List.of("ok", "v2"), reported.stream().map(ToolExecution::result).toList());
+        assertTrue(turnPlans().isEmpty());
+    }
+
+    @Test
+    void resultsAreReportedInRequestOrder() throws Exception {
+        values.byApp.put(7L, "v1");
+        values.readDelayMs = 300;
+
+        // ping completes long before the slow read requested ahead of it
+        List<ToolExecution> reported = runTurn(7L, request("1", "get", "{}"), request("2", "ping", "{}"));
+
+        assertEquals(List.of("get", "ping"), reported.stream().map(execution -> execution.request().name()).toList());
+        assertEquals(List.of("v1", "pong"), reported.stream().map(ToolExecution::result).toList());
+        assertTrue(turnPlans().isEmpty());
+    }
+
+    @Test
+    void toolCallsAreTimedWithOrWithoutTheSequencer() throws Exception {
+        execute(request("1", "put", "{\"value\":\"v4\"}"), 9L).get(5, TimeUnit.SECONDS);
+        // The executors an AI service uses when it runs tool calls one at a time
+        toolManager.getToolExecutors().forEach((specification, executor) -> {
+            if (specification.name().equals("get")) {
+                executor.execute(request("2", "get", "{}"), 9L);
+            }
+        });
+
+        assertEquals(1, meterRegistry.get("ai.tool.calls").tag("tool", "PutTool").timer().count());
+        assertEquals(1, meterRegistry.get("ai.tool.calls").tag("tool", "GetTool").timer().count());
+    }
+
+    /**
+     * Run one tool-calling turn through a real AI service, collecting the results as the markers would see them
+     */
+    private List<ToolExecution> runTurn(long appId, ToolExecutionRequest... calls) throws Exception {
+        Assistant assistant = AiServices.builder(Assistant.class)
+                .streamingChatModel(sequencer.planTurns(new ScriptedModel(calls), appId))
+                .chatMemoryProvider(memoryId -> MessageWindowChatMemory.withMaxMessages(20))
+                .tools(sequencer.getToolExecutors())
+                .executeToolsConcurrently(sequencer.getExecutor())
+                .build();
+        List<ToolExecution> reported = new CopyOnWriteArrayList<>();
+        CompletableFuture<ChatResponse> done = new CompletableFuture<>();
+        assistant.chat(appId, "go")
+                .onPartialResponse(text -> {
+                })
+                .onToolExecuted(execution -> sequencer.reportInOrder(appId, execution, reported::add))
+                .onCompleteResponse(done::complete)
+                .onError(done::completeExceptionally)
+                .start();
+        done.get(5, TimeUnit.SECONDS);
+        return reported;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ?> turnPlans() {
+        return (Map<String, ?>) ReflectionTestUtils.getField(sequencer, "turnPlans");
+    }
+
+    public interface Assistant {
+
+        TokenStream chat(@MemoryId long appId, @dev.langchain4j.service.UserMessage String message);
+    }
+
+    /**
+     * Streams the given tool calls one by one, then answers the tool results with plain text
+     */
+    private static class ScriptedModel implements StreamingChatModel {
+
+        private final ToolExecutionRequest[] calls;
+
+        private final AtomicInteger rounds = new AtomicInteger();
+
+        private ScriptedModel(ToolExecutionRequest[] calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+            if (rounds.getAndIncrement() > 0) {
+                handler.onPartialResponse("done");
+                handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from("done")).build());
+                return;
+            }
+            for (int i = 0; i < calls.length; i++) {
+                handler.onCompleteToolCall(new CompleteToolCall(i, calls[i]));
+            }
+            handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from(List.of(calls))).build());
+        }
+    }
+
+    /**
+     * Feed a model response carrying the tool calls through the planning wrapper
+     */
+    private void planTurn(long appId, ToolExecutionRequest... requests) {
+        StreamingChatModel model = new StreamingChatModel() {
+            @Override
+            public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                handler.onCompleteResponse(ChatResponse.builder()
+                        .aiMessage(AiMessage.from(List.of(requests)))
+                        .build());
+            }
+        };
+        sequencer.planTurns(model, appId).chat(ChatRequest.builder().messages(UserMessage.from("go")).build(),
+                new StreamingChatResponseHandler() {
+                    @Override
+                    public void onPartialResponse(String partialResponse) {
+                    }
+
+                    @Override
+                    public void onCompleteResponse(ChatResponse completeResponse) {
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        fail(error);
+                    }
+                });
+    }
+
+    private CompletableFuture<String> execute(ToolExecutionRequest request, long appId) {
+        ToolExecutor executor = null;
+        for (Map.Entry<ToolSpecification, ToolExecutor> entry : sequencer.getToolExecutors().entrySet()) {
+            if (entry.getKey().name().equals(request.name())) {
+                executor = entry.getValue();
+            }
+        }
+        ToolExecutor found = executor;
+        return CompletableFuture.supplyAsync(() -> found.execute(request, appId), sequencer.getExecutor());
+    }
+
+    private static ToolExecutionRequest request(String id, String name, String arguments) {
+        return ToolExecutionRequest.builder().id(id).name(name).arguments(arguments).build();
+    }
+
+    /**
+     * One value per app, shared by the tools below
+     */
+    static class Values {
+
+        final Map<Long, String> byApp = new ConcurrentHashMap<>();
+
+        volatile long readDelayMs;
+    }
+
+    /**
+     * Mutating tool, writes slowly
+     */
+    static class PutTool extends TestTool {
+
+        private final Values values;
+
+        PutTool(Values values) {
+            this.values = values;
+        }
+
+        @Tool("put")
+        public String put(String value, @ToolMemoryId Long appId) throws InterruptedException {
+            Thread.sleep(100);
+            values.byApp.put(appId, value);
+            return "ok";
+        }
+    }
+
+    static class GetTool extends TestTool {
+
+        private final Values values;
+
+        GetTool(Values values) {
+            this.values = values;
+        }
+
+        @Tool("get")
+        public String get(@ToolMemoryId Long appId) throws InterruptedException {
+            Thread.sleep(values.readDelayMs);
+            return values.byApp.get(appId);
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return true;
+        }
+    }
+
+    /**
+     * Read-only tool that answers at once
+     */
+    static class PingTool extends TestTool {
+
+        @Tool("ping")
+        public String ping() {
+            return "pong";
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return true;
+        }
+    }
+
+    abstract static class TestTool extends BaseTool {
+
+        @Override
+        public String getToolName() {
+            return getClass().getSimpleName();
+        }
+
+        @Override
+        public String getDisplayName() {
+            return getToolName();
+        }
+
+        @Override
+        public String getSuccessIcon() {
+            return "";
+        }
+
+        @Override
+        public String getFailedIcon() {
+            return "";
+        }
+
+        @Override
+        public String getOperationType() {
+            return "test";
+        }
+
+        @Override
+        public String generateToolExecutedResult(JSONObject arguments) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.morfism.aiappgenerator.ai.tools;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.service.tool.ToolExecution;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工具回调取值开销基准测试
+ * Per-callback cost of reading request/result from a ToolExecution
+ *
+ * 对比 ToolExecutionHandler 旧实现（每次 getMethod + invoke）、缓存 MethodHandle 与类型化访问三种方式
+ * 运行：mvn test-compile 后执行本类 main 方法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ToolExecutionAccessBenchmark {
+
+    private Object untyped;
+
+    private ToolExecution typed;
+
+    private MethodHandle requestHandle;
+
+    private MethodHandle resultHandle;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        typed = ToolExecution.builder()
+                .request(ToolExecutionRequest.builder()
+                        .id("call-1")
+                        .name("writeFile")
+                        .arguments("{\"relativeFilePath\":\"src/App.vue\",\"content\":\"<template></template>\"}")
+                        .build())
+                .result("File written successfully: src/App.vue")
+                .build();
+        untyped = typed;
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        requestHandle = lookup.findVirtual(ToolExecution.class, "request", MethodType.methodType(ToolExecutionRequest.class));
+        resultHandle = lookup.findVirtual(ToolExecution.class, "result", MethodType.methodType(String.class));
+    }
+
+    /**
+     * Previous ToolExecutionHandler path: method lookup and reflective call on every callback
+     */
+    @Benchmark
+    public void reflectionLookupPerCall(Blackhole blackhole) throws ReflectiveOperationException {
+        blackhole.consume(untyped.getClass().getMethod("request").invoke(untyped));
+        blackhole.consume(untyped.getClass().getMethod("result").invoke(untyped));
+    }
+
+    @Benchmark
+    public void cachedMethodHandle(Blackhole blackhole) throws Throwable {
+        blackhole.consume((ToolExecutionRequest) requestHandle.invokeExact(typed));
+        blackhole.consume((String) resultHandle.invokeExact(typed));
+    }
+
+    /**
+     * Current ToolExecutionHandler path
+     */
+    @Benchmark
+    public void typedAccess(Blackhole blackhole) {
+        blackhole.consume(typed.request());
+        blackhole.consume(typed.result());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ToolExecutionAccessBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
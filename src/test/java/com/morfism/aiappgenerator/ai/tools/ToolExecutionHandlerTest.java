@@ -0,0 +1,69 @@
+package com.morfism.aiappgenerator.ai.tools;
+
+import com.morfism.aiappgenerator.core.stream.SegmentedCharBuffer;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.service.tool.ToolExecution;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.FluxSink;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 工具执行结果标记测试
+ */
+class ToolExecutionHandlerTest {
+
+    private static final String MIXED_RESULT = """
+            Wrote 2 of 3 files
+            File written successfully: src/App.vue
+            Error: Invalid file path, must be inside the project - ../secret.txt
+            File written successfully: index.html
+            """;
+
+    private final ToolExecutionHandler handler = new ToolExecutionHandler();
+
+    private final ToolManager toolManager = mock(ToolManager.class);
+
+    private final SegmentedCharBuffer responseBuilder = mock(SegmentedCharBuffer.class);
+
+    @SuppressWarnings("unchecked")
+    private final FluxSink<String> sink = mock(FluxSink.class);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(handler, "toolManager", toolManager);
+        when(toolManager.getTool("writeFiles")).thenReturn(new FileBatchWriteTool());
+    }
+
+    @Test
+    void batchResultsAreResolvedPerFile() {
+        Map<String, Boolean> fileResults = new FileBatchWriteTool().resolveFileResults(MIXED_RESULT);
+
+        assertEquals(Map.of("src/App.vue", true, "../secret.txt", false, "index.html", true), fileResults);
+        assertEquals(List.of("src/App.vue", "../secret.txt", "index.html"), List.copyOf(fileResults.keySet()));
+    }
+
+    @Test
+    void mixedBatchSendsOneMarkerPerFile() {
+        handler.handleToolExecution(execution(MIXED_RESULT), responseBuilder, sink, 1L);
+
+        String markers = "\n[FILE_WRITE_SUCCESS:App.vue]\n[FILE_WRITE_FAILED:secret.txt]\n[FILE_WRITE_SUCCESS:index.html]";
+        verify(sink).next(markers);
+        verify(responseBuilder).append(argThat(text -> markers.contentEquals(text)));
+    }
+
+    private static ToolExecution execution(String result) {
+        ToolExecutionRequest request = ToolExecutionRequest.builder()
+                .id("call-1")
+                .name("writeFiles")
+                .arguments("{\"files\":[]}")
+                .build();
+        return ToolExecution.builder().request(request).result(result).build();
+    }
+}
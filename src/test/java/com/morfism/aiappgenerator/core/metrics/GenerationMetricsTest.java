@@ -0,0 +1,58 @@
+package com.morfism.aiappgenerator.core.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Sinks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 生成链路指标测试
+ */
+class GenerationMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final GenerationMetrics metrics = new GenerationMetrics();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(metrics, "meterRegistry", registry);
+        metrics.init();
+    }
+
+    @Test
+    void tagsStagesByOutcome() {
+        metrics.time("generation.save", () -> "saved", "codeGenType", "html");
+        metrics.time("vue.build.duration", () -> false, "stage", "install");
+        assertThrows(IllegalStateException.class, () -> metrics.time("generation.parse", () -> {
+            throw new IllegalStateException("bad code");
+        }, "codeGenType", "html"));
+
+        assertEquals(1, registry.get("generation.save").tag("outcome", "success").timer().count());
+        assertEquals(1, registry.get("vue.build.duration").tag("outcome", "error").timer().count());
+        assertEquals(1, registry.get("generation.parse").tag("outcome", "error").timer().count());
+    }
+
+    @Test
+    void countsTokensByDirection() {
+        metrics.recordModelCall("openai", "html", 1_000_000, true, 120, 800);
+        metrics.recordModelCall("openai", "html", 1_000_000, false, null, null);
+
+        assertEquals(120, registry.get("ai.model.tokens").tag("direction", "input").counter().count());
+        assertEquals(800, registry.get("ai.model.tokens").tag("direction", "output").counter().count());
+        assertEquals(1, registry.get("ai.model.duration").tag("outcome", "error").timer().count());
+    }
+
+    @Test
+    void tracksActiveSseStreams() {
+        Sinks.Many<String> events = Sinks.many().unicast().onBackpressureBuffer();
+        metrics.trackSseStream(events.asFlux()).subscribe();
+        assertEquals(1, registry.get("sse.streams.active").gauge().value());
+
+        events.tryEmitComplete();
+        assertEquals(0, registry.get("sse.streams.active").gauge().value());
+    }
+}
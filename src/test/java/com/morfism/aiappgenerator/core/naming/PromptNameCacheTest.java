@@ -0,0 +1,51 @@
+package com.morfism.aiappgenerator.core.naming;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 提示词应用名缓存测试
+ */
+class PromptNameCacheTest {
+
+    @Test
+    void matchesPromptsThatDifferOnlyInFormatting() {
+        PromptNameCache cache = new PromptNameCache(10, false, 0.8);
+        cache.put("Build a todo list app", "Todo List");
+
+        assertEquals("Todo List", cache.get("  build a TODO list app!  "));
+        assertEquals(1, cache.getExactHits());
+    }
+
+    @Test
+    void matchesNearDuplicatePrompts() {
+        PromptNameCache cache = new PromptNameCache(10, true, 0.6);
+        cache.put("Create a personal blog website with a dark theme and an about page", "Dark Blog");
+
+        assertEquals("Dark Blog", cache.get("Create a personal blog website with a dark theme and an about me page"));
+        assertEquals(1, cache.getNearHits());
+    }
+
+    @Test
+    void missesUnrelatedPrompts() {
+        PromptNameCache cache = new PromptNameCache(10, true, 0.6);
+        cache.put("Create a personal blog website with a dark theme", "Dark Blog");
+
+        assertNull(cache.get("An online calculator that converts currencies"));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedPrompt() {
+        PromptNameCache cache = new PromptNameCache(2, true, 0.8);
+        cache.put("weather dashboard", "Weather");
+        cache.put("recipe finder", "Recipes");
+        cache.get("weather dashboard");
+        cache.put("expense tracker", "Expenses");
+
+        assertEquals(2, cache.size());
+        assertEquals("Weather", cache.get("weather dashboard"));
+        assertNull(cache.get("recipe finder"));
+    }
+}
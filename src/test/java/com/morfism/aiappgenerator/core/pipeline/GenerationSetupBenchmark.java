@@ -0,0 +1,76 @@
+package com.morfism.aiappgenerator.core.pipeline;
+
+import com.morfism.aiappgenerator.ai.AiCodeGeneratorService;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.service.AiServices;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vue 项目生成的单次请求准备开销基准测试
+ * Per-request setup cost of a VUE_PROJECT generation, before any token is streamed
+ *
+ * 对比门面旧实现（先创建一个不会被订阅的 Flux，再打开 TokenStream）与 VueProjectGenerationPipeline（只打开 TokenStream）
+ * 模型是不发起请求的桩，测得的只是 AI 服务代理调用本身
+ * 运行：mvn test-compile 后执行本类 main 方法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GenerationSetupBenchmark {
+
+    private static final String USER_MESSAGE = "Build a todo list app with categories and a dark mode toggle";
+
+    private AiCodeGeneratorService aiCodeGeneratorService;
+
+    @Setup
+    public void setup() {
+        StreamingChatModel model = new StreamingChatModel() {
+            @Override
+            public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                // Never called, streams are not started
+            }
+        };
+        MessageWindowChatMemory chatMemory = MessageWindowChatMemory.withMaxMessages(20);
+        aiCodeGeneratorService = AiServices.builder(AiCodeGeneratorService.class)
+                .streamingChatModel(model)
+                .chatMemoryProvider(memoryId -> chatMemory)
+                .build();
+    }
+
+    /**
+     * Previous facade path: an unused Flux proxy call, then the TokenStream
+     */
+    @Benchmark
+    public void unusedFluxThenTokenStream(Blackhole blackhole) {
+        blackhole.consume(aiCodeGeneratorService.generateVueProjectCodeStream(1L, USER_MESSAGE));
+        blackhole.consume(aiCodeGeneratorService.generateVueProjectTokenStream(1L, USER_MESSAGE));
+    }
+
+    /**
+     * Current VueProjectGenerationPipeline path
+     */
+    @Benchmark
+    public void tokenStreamOnly(Blackhole blackhole) {
+        blackhole.consume(aiCodeGeneratorService.generateVueProjectTokenStream(1L, USER_MESSAGE));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(GenerationSetupBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,122 @@
+package com.morfism.aiappgenerator.core.search;
+
+import com.morfism.aiappgenerator.model.entity.App;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 应用全文索引测试
+ */
+class AppSearchIndexTest {
+
+    private final AppSearchIndex index = new AppSearchIndex();
+
+    @Test
+    void fieldQueriesAreJoinedByAnd() {
+        index.rebuild(() -> List.of(
+                app(1L, "Todo list", "a react app", 1),
+                app(2L, "Weather", "todo widget in react", 2),
+                app(3L, "Todo board", "plain html", 3)));
+
+        assertEquals(List.of(1L), search("todo", "react", null));
+        assertEquals(List.of(3L, 1L), search("todo", null, null));
+        // Every term of a field must be in that field
+        assertEquals(List.of(2L), search(null, "todo react", null));
+        assertTrue(search("todo weather", null, null).isEmpty());
+    }
+
+    @Test
+    void lastAsciiTermMatchesAsPrefix() {
+        index.rebuild(() -> List.of(app(1L, "Calculator", "", 1), app(2L, "Calendar", "", 2)));
+
+        assertEquals(List.of(2L, 1L), search("cal", null, null));
+        assertEquals(List.of(1L), search("calc", null, null));
+    }
+
+    @Test
+    void singleCjkCharactersMatch() {
+        index.rebuild(() -> List.of(app(1L, "个人博客", "", 1), app(2L, "天气预报", "", 2)));
+
+        assertEquals(List.of(1L), search("博", null, null));
+        assertEquals(List.of(1L), search("博客", null, null));
+        assertTrue(index.covers("博", null));
+    }
+
+    @Test
+    void partialLatinWordsAreLeftToTheDatabase() {
+        index.rebuild(() -> List.of(app(1L, "Todo list", "", 1), app(2L, "My todos", "", 2)));
+
+        assertTrue(index.covers("todo", "list"));
+        // Only like '%tod%' and like '%odo%' find every app containing them
+        assertFalse(index.covers("tod", null));
+        assertFalse(index.covers(null, "odo"));
+        assertTrue(index.covers("待办", null));
+    }
+
+    @Test
+    void ordersBySortFieldInsteadOfRelevance() {
+        index.rebuild(() -> List.of(
+                app(1L, "Shop shop shop", "", 3),
+                app(2L, "Shop", "", 1),
+                app(3L, "Shop front", "", 2)));
+
+        Comparator<AppSearchIndex.IndexedApp> byCreateTime = Comparator.comparing(AppSearchIndex.IndexedApp::createTime);
+        assertEquals(List.of(2L, 3L, 1L), search("shop", null, byCreateTime));
+        assertEquals(List.of(1L, 3L, 2L), search("shop", null, byCreateTime.reversed()));
+    }
+
+    @Test
+    void updatesMadeDuringARebuildAreReplayed() {
+        index.rebuild(() -> List.of(app(1L, "Old blog", "", 1), app(2L, "Doomed blog", "", 2)));
+
+        index.rebuild(() -> {
+            // The loader read the table before these updates landed
+            List<App> loaded = List.of(app(1L, "Old blog", "", 1), app(2L, "Doomed blog", "", 2));
+            index.index(app(1L, "Renamed blog", "", 1));
+            index.index(app(3L, "New blog", "", 3));
+            index.remove(2L);
+            return loaded;
+        });
+
+        assertEquals(List.of(3L, 1L), search("blog", null, null));
+        assertEquals(List.of(1L), search("renamed", null, null));
+        assertTrue(search("old", null, null).isEmpty());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void failedRebuildKeepsTheOldIndex() {
+        index.rebuild(() -> List.of(app(1L, "Portfolio", "", 1)));
+
+        assertThrows(IllegalStateException.class, () -> index.rebuild(() -> {
+            index.index(app(2L, "Portfolio two", "", 2));
+            throw new IllegalStateException("database down");
+        }));
+
+        assertEquals(List.of(1L, 2L), search("portfolio", null, null));
+        index.index(app(3L, "Portfolio three", "", 3));
+        assertEquals(3, index.size());
+    }
+
+    private List<Long> search(String appName, String initPrompt, Comparator<AppSearchIndex.IndexedApp> order) {
+        return new ArrayList<>(index.search(appName, initPrompt, null, order, 1, 10).appIds());
+    }
+
+    private static App app(Long id, String appName, String initPrompt, int createdDay) {
+        return App.builder()
+                .id(id)
+                .appName(appName)
+                .initPrompt(initPrompt)
+                .userId(1L)
+                .priority(0)
+                .codeGenType("html")
+                .createTime(LocalDateTime.of(2025, 1, createdDay, 0, 0))
+                .build();
+    }
+}
@@ -0,0 +1,110 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 生成分片合并测试，时间由虚拟时钟推进
+ */
+class ChunkCoalescerTest {
+
+    private static final Duration WINDOW = Duration.ofMillis(100);
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+    private final Sinks.Many<GenerationChunk> source = Sinks.many().unicast().onBackpressureBuffer();
+
+    private final List<GenerationChunk> received = new CopyOnWriteArrayList<>();
+
+    private Disposable subscription;
+
+    private long seq;
+
+    @BeforeEach
+    void setUp() {
+        subscription = ChunkCoalescer.coalesce(source.asFlux(), WINDOW, 10, scheduler).subscribe(received::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        subscription.dispose();
+        scheduler.dispose();
+    }
+
+    @Test
+    void firstChunkAfterAPauseIsSentAtOnce() {
+        emit("a");
+        assertEquals(List.of("a"), data());
+
+        scheduler.advanceTimeBy(Duration.ofMillis(500));
+        emit("b");
+        assertEquals(List.of("a", "b"), data());
+    }
+
+    @Test
+    void chunksWithinTheWindowAreSentWhenItEnds() {
+        emit("a");
+        emit("b");
+        emit("c");
+        scheduler.advanceTimeBy(Duration.ofMillis(99));
+        assertEquals(List.of("a"), data());
+
+        scheduler.advanceTimeBy(Duration.ofMillis(1));
+        assertEquals(List.of("a", "bc"), data());
+    }
+
+    @Test
+    void fullBatchIsSentWithoutWaiting() {
+        emit("a");
+        emit("12345");
+        emit("67890");
+        assertEquals(List.of("a", "1234567890"), data());
+
+        // The flushed batch's timer was cancelled
+        scheduler.advanceTimeBy(WINDOW);
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    void markersAreSentAsTheirOwnEvents() {
+        emit("a");
+        emit("b");
+        emit("\n[FILE_WRITE_SUCCESS:App.vue]");
+        emit("c");
+        assertEquals(List.of("a", "b", "\n[FILE_WRITE_SUCCESS:App.vue]"), data());
+
+        scheduler.advanceTimeBy(WINDOW);
+        assertEquals(List.of("a", "b", "\n[FILE_WRITE_SUCCESS:App.vue]", "c"), data());
+    }
+
+    @Test
+    void mergedChunkKeepsTheLastSeq() {
+        emit("a");
+        emit("b");
+        emit("c");
+        emit("d");
+        source.tryEmitComplete();
+
+        assertEquals(List.of("a", "bcd"), data());
+        assertEquals(List.of(1L, 4L), received.stream().map(GenerationChunk::seq).toList());
+        assertEquals("s1:4", received.getLast().eventId());
+    }
+
+    private void emit(String data) {
+        source.tryEmitNext(new GenerationChunk("s1", ++seq, data));
+    }
+
+    private List<String> data() {
+        return received.stream().map(GenerationChunk::data).toList();
+    }
+}
@@ -0,0 +1,132 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.exception.ErrorCode;
+import com.morfism.aiappgenerator.model.entity.User;
+import com.morfism.aiappgenerator.model.enums.UserRoleEnum;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 生成准入控制测试
+ */
+class GenerationAdmissionTest {
+
+    private final GenerationAdmission admission = new GenerationAdmission();
+
+    private final List<String> started = new CopyOnWriteArrayList<>();
+
+    private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Sinks.Many<String>> generations = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(admission, "maxConcurrent", 1);
+        ReflectionTestUtils.setField(admission, "maxPerUser", 2);
+        ReflectionTestUtils.setField(admission, "maxQueued", 10);
+        ReflectionTestUtils.setField(admission, "maxQueuedPerUser", 3);
+        ReflectionTestUtils.setField(admission, "maxWaitSeconds", 60L);
+        ReflectionTestUtils.setField(admission, "dailyTokenQuota", 0L);
+        ReflectionTestUtils.setField(admission, "adminExempt", true);
+        ReflectionTestUtils.setField(admission, "adminWeight", 4.0);
+    }
+
+    @Test
+    void queuesUsersFairlyAgainstEachOther() {
+        User alice = user(1L, UserRoleEnum.USER);
+        User bob = user(2L, UserRoleEnum.USER);
+        admit(alice, "a1");
+        admit(alice, "a2");
+        admit(alice, "a3");
+        admit(bob, "b1");
+
+        for (String name : List.of("a1", "b1", "a2")) {
+            finish(name);
+        }
+        assertEquals(List.of("a1", "b1", "a2", "a3"), started);
+        assertEquals(0, admission.getQueued());
+    }
+
+    @Test
+    void capsGenerationsPerUser() {
+        ReflectionTestUtils.setField(admission, "maxConcurrent", 10);
+        ReflectionTestUtils.setField(admission, "maxPerUser", 1);
+        User alice = user(1L, UserRoleEnum.USER);
+        admit(alice, "a1");
+        admit(alice, "a2");
+        admit(user(2L, UserRoleEnum.USER), "b1");
+
+        assertEquals(List.of("a1", "b1"), started);
+        finish("a1");
+        assertEquals(List.of("a1", "b1", "a2"), started);
+        assertEquals(2, admission.getRunning());
+    }
+
+    @Test
+    void letsAdminsSkipThePerUserCap() {
+        ReflectionTestUtils.setField(admission, "maxConcurrent", 10);
+        ReflectionTestUtils.setField(admission, "maxPerUser", 1);
+        User admin = user(1L, UserRoleEnum.ADMIN);
+        admit(admin, "x1");
+        admit(admin, "x2");
+
+        assertEquals(List.of("x1", "x2"), started);
+    }
+
+    @Test
+    void rejectsUsersWithTooManyWaiting() {
+        User alice = user(1L, UserRoleEnum.USER);
+        for (int i = 1; i <= 5; i++) {
+            admit(alice, "a" + i);
+        }
+
+        assertEquals(List.of("a1"), started);
+        assertEquals(3, admission.getQueued());
+        assertEquals(1, errors.size());
+        BusinessException rejected = assertInstanceOf(BusinessException.class, errors.getFirst());
+        assertEquals(ErrorCode.TOO_MANY_REQUEST_ERROR.getCode(), rejected.getCode());
+    }
+
+    @Test
+    void freesTheSlotWhenTheWaiterGoesAway() {
+        User alice = user(1L, UserRoleEnum.USER);
+        admit(alice, "a1");
+        admission.admit(user(2L, UserRoleEnum.USER), 2L, "b1", () -> Flux.never()).subscribe().dispose();
+        admit(user(3L, UserRoleEnum.USER), "c1");
+
+        finish("a1");
+        assertEquals(List.of("a1", "c1"), started);
+    }
+
+    private void admit(User user, String name) {
+        Sinks.Many<String> generation = Sinks.many().unicast().onBackpressureBuffer();
+        generations.put(name, generation);
+        admission.admit(user, (long) name.hashCode(), name, () -> {
+            started.add(name);
+            return generation.asFlux();
+        }).subscribe(chunk -> {
+        }, errors::add);
+    }
+
+    private void finish(String name) {
+        generations.get(name).tryEmitComplete();
+    }
+
+    private static User user(long id, UserRoleEnum role) {
+        User user = new User();
+        user.setId(id);
+        user.setUserRole(role.getValue());
+        return user;
+    }
+}
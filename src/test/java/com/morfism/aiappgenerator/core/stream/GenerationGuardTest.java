@@ -0,0 +1,170 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import com.morfism.aiappgenerator.exception.BusinessException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 单应用生成并发守卫测试，Redis 以内存 Map 模拟
+ */
+class GenerationGuardTest {
+
+    private static final Long APP_ID = 1L;
+
+    private final GenerationGuard guard = new GenerationGuard();
+
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+
+    private final Map<String, String> redisStore = new ConcurrentHashMap<>();
+
+    private final Sinks.Many<String> running = Sinks.many().unicast().onBackpressureBuffer();
+
+    private final AtomicInteger secondStarts = new AtomicInteger();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        GenerationStreamRegistry registry = new GenerationStreamRegistry();
+        ReflectionTestUtils.setField(registry, "replayCapacity", 64);
+        ReflectionTestUtils.setField(guard, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(guard, "generationStreamRegistry", registry);
+        ReflectionTestUtils.setField(guard, "policy", GenerationGuard.ConflictPolicy.ATTACH);
+        ReflectionTestUtils.setField(guard, "attachMismatchPolicy", GenerationGuard.ConflictPolicy.QUEUE);
+        ReflectionTestUtils.setField(guard, "lockTtlSeconds", 60L);
+        ReflectionTestUtils.setField(guard, "queueTimeoutSeconds", 5L);
+        ReflectionTestUtils.setField(guard, "queuePollMs", 20L);
+
+        when(redis.opsForValue()).thenReturn(values);
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+                .thenAnswer(call -> redisStore.putIfAbsent(call.getArgument(0), call.getArgument(1)) == null);
+        when(redis.execute(any(RedisScript.class), anyList(), any()))
+                .thenAnswer(call -> {
+                    List<String> keys = call.getArgument(1);
+                    String value = call.getArgument(2);
+                    return redisStore.remove(keys.get(0), value) ? 1L : 0L;
+                });
+    }
+
+    @Test
+    void rejectsWhileTheAppIsGenerating() {
+        ReflectionTestUtils.setField(guard, "policy", GenerationGuard.ConflictPolicy.REJECT);
+        guard.run(APP_ID, "make a todo app", running::asFlux);
+
+        assertThrows(BusinessException.class, () -> guard.run(APP_ID, "make a todo app", this::second));
+        assertEquals(0, secondStarts.get());
+
+        running.tryEmitComplete();
+        assertEquals(List.of("second"), collect(guard.run(APP_ID, "make a todo app", this::second)));
+    }
+
+    @Test
+    void queuesUntilTheRunningGenerationEnds() throws Exception {
+        ReflectionTestUtils.setField(guard, "policy", GenerationGuard.ConflictPolicy.QUEUE);
+        guard.run(APP_ID, "first", running::asFlux);
+
+        CompletableFuture<List<String>> queued = collectAsync(guard.run(APP_ID, "second", this::second));
+        Thread.sleep(100);
+        assertEquals(0, secondStarts.get());
+
+        running.tryEmitComplete();
+        assertEquals(List.of("second"), queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void attachesARequestWithTheSameMessage() throws Exception {
+        guard.run(APP_ID, "make a todo app", running::asFlux);
+        running.tryEmitNext("a");
+
+        CompletableFuture<List<String>> attached = collectAsync(guard.run(APP_ID, " make a todo app\n", this::second));
+        running.tryEmitNext("b");
+        running.tryEmitComplete();
+
+        assertEquals(List.of("a", "b"), attached.get(5, TimeUnit.SECONDS));
+        assertEquals(0, secondStarts.get());
+    }
+
+    @Test
+    void doesNotAttachARequestWithADifferentMessage() throws Exception {
+        guard.run(APP_ID, "make a todo app", running::asFlux);
+        running.tryEmitNext("a");
+
+        CompletableFuture<List<String>> queued = collectAsync(guard.run(APP_ID, "now make it blue", this::second));
+        running.tryEmitComplete();
+        assertEquals(List.of("second"), queued.get(5, TimeUnit.SECONDS));
+        assertEquals(1, secondStarts.get());
+
+        ReflectionTestUtils.setField(guard, "attachMismatchPolicy", GenerationGuard.ConflictPolicy.REJECT);
+        Sinks.Many<String> other = Sinks.many().unicast().onBackpressureBuffer();
+        guard.run(2L, "make a todo app", other::asFlux);
+        assertThrows(BusinessException.class, () -> guard.run(2L, "now make it red", this::second));
+        other.tryEmitComplete();
+    }
+
+    @Test
+    void fallsBackToTheLocalLockWhenRedisIsDown() {
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+                .thenThrow(new RedisConnectionFailureException("connection refused"));
+        ReflectionTestUtils.setField(guard, "policy", GenerationGuard.ConflictPolicy.REJECT);
+        guard.run(APP_ID, "first", running::asFlux);
+
+        assertThrows(BusinessException.class, () -> guard.run(APP_ID, "second", this::second));
+
+        running.tryEmitComplete();
+        assertEquals(List.of("second"), collect(guard.run(APP_ID, "second", this::second)));
+        // No Redis lock was taken, so none is released
+        verify(redis, never()).execute(any(RedisScript.class), anyList(), any());
+    }
+
+    @Test
+    void releasesOnlyItsOwnRedisLock() {
+        guard.run(APP_ID, "first", running::asFlux);
+        String key = "generation:lock:" + APP_ID;
+        assertTrue(redisStore.containsKey(key));
+
+        // The lock expired and another instance took it
+        redisStore.put(key, "other-instance:token");
+        running.tryEmitComplete();
+        assertEquals("other-instance:token", redisStore.get(key));
+
+        redisStore.remove(key);
+        assertEquals(List.of("second"), collect(guard.run(APP_ID, "second", this::second)));
+        assertFalse(redisStore.containsKey(key));
+    }
+
+    private Flux<String> second() {
+        secondStarts.incrementAndGet();
+        return Flux.just("second");
+    }
+
+    private static List<String> collect(Flux<GenerationChunk> chunks) {
+        return chunks.map(GenerationChunk::data).collectList().block(Duration.ofSeconds(5));
+    }
+
+    private static CompletableFuture<List<String>> collectAsync(Flux<GenerationChunk> chunks) {
+        return chunks.map(GenerationChunk::data).collectList().toFuture();
+    }
+}
@@ -0,0 +1,41 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import com.morfism.aiappgenerator.exception.BusinessException;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 生成流注册表测试
+ */
+class GenerationStreamRegistryTest {
+
+    private final GenerationStreamRegistry registry = new GenerationStreamRegistry();
+
+    @Test
+    void resumesAKnownStream() {
+        ReflectionTestUtils.setField(registry, "replayCapacity", 16);
+        GenerationStream stream = registry.create(1L);
+        stream.connect(Flux.just("a", "b"));
+
+        List<GenerationChunk> resumed = registry.resume(1L, stream.getId() + ":1").collectList().block();
+        assertEquals(List.of("b"), resumed.stream().map(GenerationChunk::data).toList());
+    }
+
+    @Test
+    void refusesStreamsItCannotResume() {
+        ReflectionTestUtils.setField(registry, "replayCapacity", 16);
+        GenerationStream stream = registry.create(1L);
+
+        // Expired or created on another instance
+        assertThrows(BusinessException.class, () -> registry.resume(1L, "unknown:3"));
+        // Another app's stream
+        assertThrows(BusinessException.class, () -> registry.resume(2L, stream.getId() + ":0"));
+        assertThrows(BusinessException.class, () -> registry.resume(1L, stream.getId() + ":x"));
+        assertThrows(BusinessException.class, () -> registry.resume(1L, "no-separator"));
+    }
+}
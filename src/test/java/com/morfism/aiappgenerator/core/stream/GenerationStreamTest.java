@@ -0,0 +1,61 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import com.morfism.aiappgenerator.exception.BusinessException;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 可续传生成流测试
+ */
+class GenerationStreamTest {
+
+    @Test
+    void resumesAfterTheLastReceivedChunk() {
+        GenerationStream stream = new GenerationStream("s1", 1L, 16);
+        stream.connect(Flux.just("a", "b", "c", "d"));
+
+        List<GenerationChunk> resumed = stream.subscribe(2).collectList().block();
+        assertEquals(List.of("c", "d"), resumed.stream().map(GenerationChunk::data).toList());
+        assertEquals("s1:3", resumed.getFirst().eventId());
+    }
+
+    @Test
+    void replaysThenFollowsLiveChunks() {
+        Sinks.Many<String> generation = Sinks.many().unicast().onBackpressureBuffer();
+        GenerationStream stream = new GenerationStream("s2", 1L, 16);
+        stream.connect(generation.asFlux());
+        generation.tryEmitNext("a");
+
+        List<String> received = new CopyOnWriteArrayList<>();
+        stream.subscribe(0).subscribe(chunk -> received.add(chunk.data()));
+        generation.tryEmitNext("b");
+        generation.tryEmitComplete();
+
+        assertEquals(List.of("a", "b"), received);
+        assertNotEquals(0, stream.getCompletedAt());
+    }
+
+    @Test
+    void keepsOnlyTheNewestChunks() {
+        GenerationStream stream = new GenerationStream("s3", 1L, 2);
+        stream.connect(Flux.just("a", "b", "c"));
+
+        List<GenerationChunk> kept = stream.subscribe(1).collectList().block();
+        assertEquals(List.of(2L, 3L), kept.stream().map(GenerationChunk::seq).toList());
+    }
+
+    @Test
+    void refusesAReplayWithAGap() {
+        GenerationStream stream = new GenerationStream("s4", 1L, 2);
+        stream.connect(Flux.just("a", "b", "c"));
+
+        // Chunk 1 was overwritten, a client starting from scratch would silently miss it
+        assertThrows(BusinessException.class, () -> stream.subscribe(0).collectList().block());
+    }
+}
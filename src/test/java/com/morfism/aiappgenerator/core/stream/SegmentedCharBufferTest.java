@@ -0,0 +1,75 @@
+package com.morfism.aiappgenerator.core.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分段响应缓冲区测试
+ */
+class SegmentedCharBufferTest {
+
+    @Test
+    void appendsAcrossBlockBoundaries() {
+        CharBlockPool pool = new CharBlockPool(8, 16);
+        SegmentedCharBuffer buffer = new SegmentedCharBuffer(pool, 1024, released -> {
+        });
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            String part = "chunk-" + i + ";";
+            buffer.append(part);
+            expected.append(part);
+        }
+        buffer.append(new StringBuilder("\n[GENERATION_COMPLETE]"));
+        expected.append("\n[GENERATION_COMPLETE]");
+
+        assertEquals(expected.toString(), buffer.toString());
+        assertEquals(expected.length(), buffer.length());
+        assertEquals((expected.length() + 7) / 8 * 8, buffer.getRetainedChars());
+    }
+
+    @Test
+    void dropsTextBeyondTheLimit() {
+        SegmentedCharBuffer buffer = new SegmentedCharBuffer(new CharBlockPool(4, 4), 10, released -> {
+        });
+        buffer.append("0123456").append("789abc").append("def");
+
+        assertEquals("0123456789", buffer.toString());
+        assertTrue(buffer.isTruncated());
+    }
+
+    @Test
+    void releaseReturnsBlocksToThePoolOnce() {
+        CharBlockPool pool = new CharBlockPool(4, 2);
+        List<SegmentedCharBuffer> released = new ArrayList<>();
+        SegmentedCharBuffer buffer = new SegmentedCharBuffer(pool, 100, released::add);
+        buffer.append("0123456789ab");
+
+        buffer.release();
+        buffer.release();
+
+        // Three blocks were borrowed, only two are kept idle
+        assertEquals(2, pool.getIdleCount());
+        assertEquals(List.of(buffer), released);
+        assertEquals("", buffer.append("ignored").toString());
+    }
+
+    @Test
+    void reusesPooledBlocks() {
+        CharBlockPool pool = new CharBlockPool(4, 4);
+        SegmentedCharBuffer first = new SegmentedCharBuffer(pool, 100, released -> {
+        });
+        first.append("abcdefgh");
+        first.release();
+
+        SegmentedCharBuffer second = new SegmentedCharBuffer(pool, 100, released -> {
+        });
+        second.append("xy");
+
+        assertEquals(1, pool.getIdleCount());
+        assertEquals("xy", second.toString());
+    }
+}
@@ -0,0 +1,117 @@
+package com.morfism.aiappgenerator.core.template;
+
+import com.morfism.aiappgenerator.core.metrics.GenerationMetrics;
+import com.morfism.aiappgenerator.model.enums.CodeGenTypeEnum;
+import com.morfism.aiappgenerator.service.ChatHistoryService;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * 首轮生成模板缓存测试
+ */
+class GenerationTemplateCacheTest {
+
+    private final GenerationTemplateCache templateCache = new GenerationTemplateCache();
+
+    private final InMemoryChatMemoryStore chatMemoryStore = new InMemoryChatMemoryStore();
+
+    private final ChatHistoryService chatHistoryService = mock(ChatHistoryService.class);
+
+    @BeforeEach
+    void setUp() {
+        GenerationMetrics metrics = new GenerationMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+        metrics.init();
+        ReflectionTestUtils.setField(templateCache, "chatMemoryStore", chatMemoryStore);
+        ReflectionTestUtils.setField(templateCache, "generationMetrics", metrics);
+        ReflectionTestUtils.setField(templateCache, "chatHistoryService", chatHistoryService);
+        ReflectionTestUtils.setField(templateCache, "enabled", true);
+        ReflectionTestUtils.setField(templateCache, "maxEntries", 10);
+        ReflectionTestUtils.setField(templateCache, "ttlMinutes", 60L);
+        ReflectionTestUtils.setField(templateCache, "replayChunkChars", 8);
+        ReflectionTestUtils.setField(templateCache, "replayIntervalMs", 0L);
+        templateCache.init();
+        when(chatHistoryService.loadRecentChatMessages(anyLong(), anyInt())).thenReturn(List.of());
+    }
+
+    @Test
+    void onlyFirstTurnsGetAKey() {
+        String key = templateCache.keyFor(CodeGenTypeEnum.HTML, "  Make a TODO app ", 1L);
+        assertNotNull(key);
+        assertEquals(key, templateCache.keyFor(CodeGenTypeEnum.HTML, "make a todo app", 1L));
+        assertNull(templateCache.keyFor(CodeGenTypeEnum.VUE_PROJECT, "make a todo app", 1L));
+
+        chatMemoryStore.updateMessages(1L, List.of(UserMessage.from("make a todo app"), AiMessage.from("<html/>")));
+        assertNull(templateCache.keyFor(CodeGenTypeEnum.HTML, "make it blue", 1L));
+        assertEquals(1, templateCache.getSkipped());
+    }
+
+    @Test
+    void expiredWindowsAreCheckedAgainstChatHistory() {
+        when(chatHistoryService.loadRecentChatMessages(eq(2L), anyInt()))
+                .thenReturn(List.of(UserMessage.from("make a todo app"), AiMessage.from("<html/>")));
+
+        assertNull(templateCache.keyFor(CodeGenTypeEnum.HTML, "make it blue", 2L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void promptVersionIsPartOfTheKey() {
+        String key = templateCache.keyFor(CodeGenTypeEnum.HTML, "make a todo app", 1L);
+        Map<CodeGenTypeEnum, String> promptVersions =
+                (Map<CodeGenTypeEnum, String>) ReflectionTestUtils.getField(templateCache, "promptVersions");
+        promptVersions.put(CodeGenTypeEnum.HTML, "changed");
+
+        assertNotEquals(key, templateCache.keyFor(CodeGenTypeEnum.HTML, "make a todo app", 1L));
+    }
+
+    @Test
+    void replayKeepsSurrogatePairsTogether() {
+        String code = "<p>😀🎉 héllo 世界 😀😀😀😀😀😀 done</p>".repeat(20);
+
+        for (int round = 0; round < 20; round++) {
+            List<String> chunks = templateCache.replay(code).collectList().block(Duration.ofSeconds(5));
+            assertEquals(code, String.join("", chunks));
+            for (String chunk : chunks) {
+                assertFalse(chunk.isEmpty());
+                assertFalse(Character.isHighSurrogate(chunk.charAt(chunk.length() - 1)), "split pair in " + chunk);
+                assertFalse(Character.isLowSurrogate(chunk.charAt(0)), "split pair in " + chunk);
+            }
+        }
+    }
+
+    @Test
+    void pacedReplayReassemblesExactly() {
+        ReflectionTestUtils.setField(templateCache, "replayIntervalMs", 1L);
+        String code = "<div>🎉</div>".repeat(10);
+
+        assertEquals(code, String.join("", templateCache.replay(code).collectList().block(Duration.ofSeconds(5))));
+    }
+
+    @Test
+    void rememberTurnDoesNotDuplicateTheUserMessage() {
+        chatMemoryStore.updateMessages(3L, List.of(UserMessage.from("make a todo app")));
+        templateCache.rememberTurn(3L, "make a todo app", "<html/>");
+        assertEquals(List.<ChatMessage>of(UserMessage.from("make a todo app"), AiMessage.from("<html/>")),
+                chatMemoryStore.getMessages(3L));
+
+        templateCache.rememberTurn(4L, "make a todo app", "<html/>");
+        assertEquals(List.<ChatMessage>of(UserMessage.from("make a todo app"), AiMessage.from("<html/>")),
+                chatMemoryStore.getMessages(4L));
+    }
+}
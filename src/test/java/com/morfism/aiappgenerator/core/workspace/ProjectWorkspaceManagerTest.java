@@ -0,0 +1,39 @@
+package com.morfism.aiappgenerator.core.workspace;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 项目工作区管理器测试
+ */
+class ProjectWorkspaceManagerTest {
+
+    private final ProjectWorkspaceManager manager = new ProjectWorkspaceManager();
+
+    @Test
+    void idleUntrackedWorkspacesAreReleased() {
+        ReflectionTestUtils.setField(manager, "untrackedIdleMs", 60_000L);
+        ProjectWorkspace workspace = manager.get(1L);
+        manager.evictIdle();
+        assertSame(workspace, manager.get(1L));
+
+        ReflectionTestUtils.setField(manager, "untrackedIdleMs", 0L);
+        manager.evictIdle();
+        assertNotSame(workspace, manager.get(1L));
+    }
+
+    @Test
+    void generationWorkspacesAreNotEvicted() {
+        ReflectionTestUtils.setField(manager, "untrackedIdleMs", 0L);
+        manager.get(2L);
+        ProjectWorkspace generating = manager.begin(2L);
+
+        manager.evictIdle();
+        assertSame(generating, manager.get(2L));
+
+        manager.complete(2L);
+        assertNotSame(generating, manager.get(2L));
+    }
+}
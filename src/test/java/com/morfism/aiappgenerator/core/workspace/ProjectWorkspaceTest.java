@@ -0,0 +1,102 @@
+package com.morfism.aiappgenerator.core.workspace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 项目工作区测试
+ */
+class ProjectWorkspaceTest {
+
+    private static final Predicate<String> IGNORED = "node_modules"::equals;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void writesStayInMemoryUntilFlush() throws Exception {
+        ProjectWorkspace workspace = new ProjectWorkspace(root);
+        String path = workspace.normalize("src/App.vue");
+        workspace.write(path, "v1");
+        workspace.write(path, "v2");
+        assertEquals("v2", workspace.read(path));
+        assertFalse(Files.exists(root.resolve("src/App.vue")));
+
+        assertEquals(1, workspace.flush());
+        assertEquals("v2", Files.readString(root.resolve("src/App.vue")));
+        assertEquals(0, workspace.dirtyCount());
+
+        assertTrue(workspace.delete(path));
+        assertNull(workspace.read(path));
+        workspace.flush();
+        assertFalse(Files.exists(root.resolve("src/App.vue")));
+    }
+
+    @Test
+    void writesToADirectoryAreRejected() throws Exception {
+        Files.createDirectories(root.resolve("src/components"));
+        ProjectWorkspace workspace = new ProjectWorkspace(root);
+        workspace.write("pages/Home.vue", "<template/>");
+
+        assertFalse(workspace.write("src/components", "x"));
+        // Only in the overlay so far
+        assertFalse(workspace.write("pages", "x"));
+        assertEquals(1, workspace.dirtyCount());
+
+        // Once its files are deleted the name is free again
+        workspace.delete("pages/Home.vue");
+        assertTrue(workspace.write("pages", "x"));
+    }
+
+    @Test
+    void rejectsPathsOutsideTheProject() {
+        ProjectWorkspace workspace = new ProjectWorkspace(root);
+        assertNull(workspace.normalize("../other/App.vue"));
+        assertEquals("src/main.ts", workspace.normalize("./src/../src/main.ts"));
+        assertEquals("", workspace.normalize(""));
+    }
+
+    @Test
+    void treeIsMaintainedIncrementally() throws Exception {
+        Files.createDirectories(root.resolve("node_modules/vue"));
+        Files.createDirectories(root.resolve("src"));
+        Files.writeString(root.resolve("package.json"), "{}");
+        Files.writeString(root.resolve("src/main.ts"), "");
+        ProjectWorkspace workspace = new ProjectWorkspace(root);
+
+        assertEquals("📁 src/\n  📄 main.ts\n📄 package.json\n", workspace.renderTree("", 3, IGNORED));
+
+        workspace.write(workspace.normalize("src/components/Hello.vue"), "<template/>");
+        workspace.delete(workspace.normalize("package.json"));
+        assertEquals("📁 src/\n  📁 components/\n    📄 Hello.vue\n  📄 main.ts\n",
+                workspace.renderTree("", 3, IGNORED));
+        assertEquals("📁 components/\n  📄 Hello.vue\n📄 main.ts\n", workspace.renderTree("src", 3, IGNORED));
+        assertNull(workspace.renderTree("missing", 3, IGNORED));
+    }
+
+    @Test
+    void lineIndexFollowsTheCurrentContent() throws Exception {
+        ProjectWorkspace workspace = new ProjectWorkspace(root);
+        String path = workspace.normalize("src/main.ts");
+        workspace.write(path, "import { createApp } from 'vue'\nimport App from './App.vue'\ncreateApp(App).mount('#app')");
+
+        TextLines lines = workspace.readLines(path);
+        assertSame(lines, workspace.readLines(path));
+        assertEquals(3, lines.lineCount());
+        assertEquals("import App from './App.vue'\n", lines.slice(2, 2));
+        assertEquals("createApp(App).mount('#app')", lines.line(3));
+
+        workspace.write(path, "one\n");
+        TextLines rewritten = workspace.readLines(path);
+        assertNotSame(lines, rewritten);
+        assertEquals(1, rewritten.lineCount());
+        assertEquals(List.of("src/main.ts"), workspace.listFiles("", IGNORED));
+    }
+}
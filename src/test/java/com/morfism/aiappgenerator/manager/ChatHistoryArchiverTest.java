@@ -0,0 +1,79 @@
+package com.morfism.aiappgenerator.manager;
+
+import com.morfism.aiappgenerator.mapper.ChatHistoryMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 聊天记录归档任务测试
+ */
+class ChatHistoryArchiverTest {
+
+    private final ChatHistoryArchiver archiver = new ChatHistoryArchiver();
+
+    private final ChatHistoryMapper mapper = mock(ChatHistoryMapper.class);
+
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(archiver, "chatHistoryMapper", mapper);
+        ReflectionTestUtils.setField(archiver, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(archiver, "retentionDays", 90);
+        ReflectionTestUtils.setField(archiver, "batchSize", 2);
+        when(transactionTemplate.execute(any())).thenAnswer(call ->
+                call.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(mapper.purgeByIds(anyList())).thenAnswer(call -> call.<List<Long>>getArgument(0).size());
+    }
+
+    @Test
+    void movesEachBatchBeforeDeletingItAndAdvancesTheCursor() {
+        when(mapper.selectArchivableIds(eq(0L), any(), eq(2))).thenReturn(List.of(1L, 2L));
+        when(mapper.selectArchivableIds(eq(2L), any(), eq(2))).thenReturn(List.of(3L, 4L));
+        when(mapper.selectArchivableIds(eq(4L), any(), eq(2))).thenReturn(List.of(5L));
+
+        assertEquals(5, archiver.archive());
+
+        InOrder order = inOrder(mapper);
+        order.verify(mapper).copyToArchive(List.of(1L, 2L));
+        order.verify(mapper).purgeByIds(List.of(1L, 2L));
+        order.verify(mapper).copyToArchive(List.of(3L, 4L));
+        order.verify(mapper).purgeByIds(List.of(3L, 4L));
+        order.verify(mapper).copyToArchive(List.of(5L));
+        order.verify(mapper).purgeByIds(List.of(5L));
+        // A short batch is the last one, no further query
+        verify(mapper, never()).selectArchivableIds(eq(5L), any(), anyInt());
+    }
+
+    @Test
+    void fullLastBatchEndsOnAnEmptyQuery() {
+        when(mapper.selectArchivableIds(eq(0L), any(), eq(2))).thenReturn(List.of(1L, 2L));
+        when(mapper.selectArchivableIds(eq(2L), any(), eq(2))).thenReturn(List.of());
+
+        assertEquals(2, archiver.archive());
+        verify(mapper, times(2)).selectArchivableIds(anyLong(), any(), anyInt());
+        verify(mapper, times(1)).copyToArchive(anyList());
+    }
+
+    @Test
+    void failedBatchStopsThePassAndAllowsTheNextOne() {
+        when(mapper.selectArchivableIds(eq(0L), any(), eq(2))).thenReturn(List.of(1L, 2L));
+        when(mapper.copyToArchive(anyList())).thenThrow(new IllegalStateException("deadlock")).thenReturn(2);
+
+        assertThrows(IllegalStateException.class, archiver::archive);
+        verify(mapper, never()).purgeByIds(anyList());
+
+        // The rows stayed in chat_history, a rerun picks them up again
+        assertEquals(2, archiver.archive());
+    }
+}
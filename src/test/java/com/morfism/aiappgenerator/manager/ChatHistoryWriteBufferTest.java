@@ -0,0 +1,196 @@
+package com.morfism.aiappgenerator.manager;
+
+import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.mapper.ChatHistoryMapper;
+import com.morfism.aiappgenerator.model.entity.ChatHistory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * 聊天记录写缓冲测试
+ */
+class ChatHistoryWriteBufferTest {
+
+    private final ChatHistoryWriteBuffer writeBuffer = new ChatHistoryWriteBuffer();
+
+    private final ChatHistoryMapper mapper = mock(ChatHistoryMapper.class);
+
+    /**
+     * Ids in the order they reached the mapper
+     */
+    private final List<Long> saved = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(writeBuffer, "chatHistoryMapper", mapper);
+        ReflectionTestUtils.setField(writeBuffer, "enabled", true);
+        ReflectionTestUtils.setField(writeBuffer, "batchSize", 100);
+        ReflectionTestUtils.setField(writeBuffer, "flushIntervalMs", 10L);
+        ReflectionTestUtils.setField(writeBuffer, "capacity", 100);
+        ReflectionTestUtils.setField(writeBuffer, "offerTimeoutMs", 100L);
+        ReflectionTestUtils.setField(writeBuffer, "maxRetries", 2);
+        ReflectionTestUtils.setField(writeBuffer, "retryBackoffMs", 1L);
+        ReflectionTestUtils.setField(writeBuffer, "compressionThresholdChars", 4096);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBuffer.stop();
+    }
+
+    @Test
+    void enqueueAndFlushDoNotWaitBehindASlowWrite() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mapper.insertBatch(anyCollection())).thenAnswer(call -> {
+            Collection<ChatHistory> rows = call.getArgument(0);
+            if (rows.stream().anyMatch(row -> row.getId() == 1L)) {
+                writing.countDown();
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            }
+            record(rows);
+            return rows.size();
+        });
+        writeBuffer.start();
+
+        writeBuffer.enqueue(row(1L));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        // The flusher is inside the slow insert, queuing must not wait for it
+        CompletableFuture<Void> enqueued = CompletableFuture.runAsync(() -> writeBuffer.enqueue(row(2L)));
+        enqueued.get(1, TimeUnit.SECONDS);
+
+        // A flush returns only after the batch drained before it is written
+        CompletableFuture<Void> flushed = CompletableFuture.runAsync(writeBuffer::flush);
+        Thread.sleep(50);
+        assertFalse(flushed.isDone());
+        // Nor behind the waiting flush
+        CompletableFuture.runAsync(() -> writeBuffer.enqueue(row(3L))).get(1, TimeUnit.SECONDS);
+        release.countDown();
+        flushed.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(1L, 2L), saved().subList(0, 2));
+
+        writeBuffer.flush();
+        assertEquals(List.of(1L, 2L, 3L), saved());
+    }
+
+    @Test
+    void pendingRowsAreReadableWhileAWriteIsStuck() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mapper.insertBatch(anyCollection())).thenAnswer(call -> {
+            Collection<ChatHistory> rows = call.getArgument(0);
+            writing.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            record(rows);
+            return rows.size();
+        });
+        writeBuffer.start();
+
+        writeBuffer.enqueue(row(1L));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        writeBuffer.enqueue(row(2L));
+        writeBuffer.enqueue(ChatHistory.builder().id(3L).appId(2L).userId(1L).message("m3").messageType("user").build());
+
+        // Row 1 is inside the insert, row 2 still queued, neither read waits for the write
+        List<Long> pending = CompletableFuture.supplyAsync(() -> writeBuffer.pendingRows(1L))
+                .get(1, TimeUnit.SECONDS).stream().map(ChatHistory::getId).toList();
+        assertEquals(List.of(1L, 2L), pending);
+
+        release.countDown();
+        writeBuffer.flush();
+        assertTrue(writeBuffer.pendingRows(1L).isEmpty());
+    }
+
+    @Test
+    void stopDrainsRowsQueuedJustBefore() {
+        when(mapper.insertBatch(anyCollection())).thenAnswer(call -> {
+            Collection<ChatHistory> rows = call.getArgument(0);
+            record(rows);
+            return rows.size();
+        });
+        writeBuffer.start();
+
+        for (long id = 1; id <= 20; id++) {
+            writeBuffer.enqueue(row(id));
+        }
+        writeBuffer.stop();
+
+        assertEquals(20, saved().size());
+    }
+
+    @Test
+    void failedRowsAreRetried() {
+        when(mapper.insertBatch(anyCollection())).thenThrow(new DataIntegrityViolationException("deadlock"));
+        AtomicInteger attempts = new AtomicInteger();
+        when(mapper.insert(any(ChatHistory.class))).thenAnswer(call -> {
+            ChatHistory row = call.getArgument(0);
+            if (row.getId() == 1L && attempts.incrementAndGet() == 1) {
+                throw new DataIntegrityViolationException("lock wait timeout");
+            }
+            record(List.of(row));
+            return 1;
+        });
+
+        writeBuffer.enqueue(row(1L));
+        writeBuffer.enqueue(row(2L));
+
+        assertEquals(List.of(1L, 2L), saved());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void duplicateRowsCountAsSaved() {
+        when(mapper.insertBatch(anyCollection())).thenThrow(new DataIntegrityViolationException("timeout"));
+        when(mapper.insert(any(ChatHistory.class))).thenThrow(new DuplicateKeyException("id 1"));
+
+        assertDoesNotThrow(() -> writeBuffer.enqueue(row(1L)));
+        verify(mapper, times(1)).insert(any(ChatHistory.class));
+    }
+
+    @Test
+    void rowsThatKeepFailingAreSurfaced() throws Exception {
+        when(mapper.insertBatch(anyCollection())).thenThrow(new DataIntegrityViolationException("down"));
+        when(mapper.insert(any(ChatHistory.class))).thenThrow(new DataIntegrityViolationException("down"));
+
+        // Written on the caller thread, the caller sees the failure
+        assertThrows(BusinessException.class, () -> writeBuffer.enqueue(row(1L)));
+        verify(mapper, times(3)).insert(any(ChatHistory.class));
+
+        // Written by the flusher, the failure is counted
+        writeBuffer.start();
+        writeBuffer.enqueue(row(2L));
+        for (int i = 0; i < 100 && writeBuffer.getFailedRows() == 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, writeBuffer.getFailedRows());
+    }
+
+    private synchronized void record(Collection<ChatHistory> rows) {
+        rows.forEach(row -> saved.add(row.getId()));
+    }
+
+    private synchronized List<Long> saved() {
+        return new ArrayList<>(saved);
+    }
+
+    private static ChatHistory row(long id) {
+        return ChatHistory.builder().id(id).appId(1L).userId(1L).message("m" + id).messageType("user").build();
+    }
+}
@@ -0,0 +1,114 @@
+package com.morfism.aiappgenerator.service.impl;
+
+import com.morfism.aiappgenerator.manager.ChatHistoryArchiver;
+import com.morfism.aiappgenerator.manager.ChatHistoryWriteBuffer;
+import com.morfism.aiappgenerator.mapper.ChatHistoryMapper;
+import com.morfism.aiappgenerator.model.entity.App;
+import com.morfism.aiappgenerator.model.entity.ChatHistory;
+import com.morfism.aiappgenerator.model.entity.User;
+import com.morfism.aiappgenerator.service.AppService;
+import com.mybatisflex.core.paginate.Page;
+import com.mybatisflex.core.query.QueryWrapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 对话历史游标分页跨热表和归档表测试
+ */
+class ChatHistoryServiceImplTest {
+
+    private static final LocalDateTime CUTOFF = LocalDateTime.of(2025, 1, 10, 0, 0);
+
+    private final ChatHistoryServiceImpl service = spy(new ChatHistoryServiceImpl());
+
+    private final ChatHistoryMapper mapper = mock(ChatHistoryMapper.class);
+
+    private final ChatHistoryWriteBuffer writeBuffer = mock(ChatHistoryWriteBuffer.class);
+
+    private final User owner = User.builder().id(1L).userRole("user").build();
+
+    @BeforeEach
+    void setUp() {
+        AppService appService = mock(AppService.class);
+        when(appService.getById(7L)).thenReturn(App.builder().id(7L).userId(1L).build());
+        ChatHistoryArchiver archiver = mock(ChatHistoryArchiver.class);
+        when(archiver.getRetentionCutoff()).thenReturn(CUTOFF);
+        ReflectionTestUtils.setField(service, "appService", appService);
+        ReflectionTestUtils.setField(service, "chatHistoryWriteBuffer", writeBuffer);
+        ReflectionTestUtils.setField(service, "chatHistoryArchiver", archiver);
+        ReflectionTestUtils.setField(service, "mapper", mapper);
+    }
+
+    @Test
+    void recentFullPageDoesNotTouchTheArchive() {
+        hotPage(row(1, 20), row(2, 19));
+
+        assertEquals(List.of(1L, 2L), ids(service.listAppChatHistoryByPage(7L, 2, null, owner)));
+        verify(mapper, never()).selectArchivedByAppId(anyLong(), any(), anyInt());
+    }
+
+    @Test
+    void shortHotPageContinuesInTheArchive() {
+        hotPage(row(1, 12));
+        when(mapper.selectArchivedByAppId(7L, null, 3)).thenReturn(List.of(row(2, 8), row(3, 7), row(4, 6)));
+
+        assertEquals(List.of(1L, 2L, 3L), ids(service.listAppChatHistoryByPage(7L, 3, null, owner)));
+    }
+
+    @Test
+    void rowsNotYetArchivedAreMergedByCreateTime() {
+        LocalDateTime cursor = day(9);
+        // Past the cutoff but the archival job has not run yet
+        hotPage(row(1, 8), row(3, 6), row(5, 4));
+        when(mapper.selectArchivedByAppId(7L, cursor, 3)).thenReturn(List.of(row(2, 7), row(4, 5), row(6, 3)));
+
+        assertEquals(List.of(1L, 2L, 3L), ids(service.listAppChatHistoryByPage(7L, 3, cursor, owner)));
+    }
+
+    @Test
+    void emptyArchiveKeepsTheHotPage() {
+        hotPage(row(1, 12));
+
+        assertEquals(List.of(1L), ids(service.listAppChatHistoryByPage(7L, 3, null, owner)));
+    }
+
+    @Test
+    void rowsStillInTheWriteBufferAreMergedWithoutFlushing() {
+        // Row 2 was written between the snapshot and the query and shows up twice
+        when(writeBuffer.pendingRows(7L)).thenReturn(List.of(row(2, 19), row(3, 21)));
+        hotPage(row(2, 19), row(1, 18));
+
+        assertEquals(List.of(3L, 2L), ids(service.listAppChatHistoryByPage(7L, 2, null, owner)));
+        // Pending rows after the cursor belong to earlier pages
+        hotPage(row(2, 19), row(1, 18));
+        assertEquals(List.of(2L, 1L), ids(service.listAppChatHistoryByPage(7L, 2, day(20), owner)));
+        verify(writeBuffer, never()).flush();
+    }
+
+    private void hotPage(ChatHistory... rows) {
+        Page<ChatHistory> page = new Page<>(1, rows.length);
+        page.setRecords(new ArrayList<>(List.of(rows)));
+        doReturn(page).when(service).page(any(Page.class), any(QueryWrapper.class));
+    }
+
+    private static List<Long> ids(Page<ChatHistory> page) {
+        return page.getRecords().stream().map(ChatHistory::getId).toList();
+    }
+
+    private static ChatHistory row(long id, int day) {
+        return ChatHistory.builder().id(id).appId(7L).message("m" + id).createTime(day(day)).build();
+    }
+
+    private static LocalDateTime day(int day) {
+        return LocalDateTime.of(2025, 1, day, 0, 0);
+    }
+}
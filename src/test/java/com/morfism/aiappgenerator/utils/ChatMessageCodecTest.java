@@ -0,0 +1,73 @@
+package com.morfism.aiappgenerator.utils;
+
+import com.morfism.aiappgenerator.exception.BusinessException;
+import com.morfism.aiappgenerator.model.entity.ChatHistory;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 聊天消息压缩编解码测试
+ */
+class ChatMessageCodecTest {
+
+    private static final String MESSAGE = "生成一个博客页面 😀\n" + "<div class=\"post\">hello world</div>\n".repeat(500);
+
+    @Test
+    void roundTripsTextOfAnySize() {
+        for (String text : new String[]{"", "a", MESSAGE}) {
+            byte[] blob = ChatMessageCodec.compress(text);
+            assertEquals(text, ChatMessageCodec.decompress(blob, ChatMessageCodec.CODEC_DEFLATE));
+        }
+        assertTrue(ChatMessageCodec.compress(MESSAGE).length < MESSAGE.length() / 4);
+    }
+
+    @Test
+    void compressesOnlyAboveTheThreshold() {
+        assertFalse(ChatMessageCodec.shouldCompress("x".repeat(100), 100));
+        assertTrue(ChatMessageCodec.shouldCompress("x".repeat(101), 100));
+        assertFalse(ChatMessageCodec.shouldCompress(MESSAGE, 0));
+        assertFalse(ChatMessageCodec.shouldCompress(null, 100));
+    }
+
+    @Test
+    void truncatedBlobIsRejected() {
+        byte[] blob = ChatMessageCodec.compress(MESSAGE);
+        byte[] truncated = Arrays.copyOf(blob, blob.length / 2);
+
+        assertThrows(BusinessException.class, () -> ChatMessageCodec.decompress(truncated, ChatMessageCodec.CODEC_DEFLATE));
+    }
+
+    @Test
+    void corruptBlobIsRejected() {
+        byte[] garbage = "definitely not deflate".getBytes();
+
+        assertThrows(BusinessException.class, () -> ChatMessageCodec.decompress(garbage, ChatMessageCodec.CODEC_DEFLATE));
+        assertThrows(BusinessException.class, () -> ChatMessageCodec.decompress(garbage, "gzip"));
+    }
+
+    @Test
+    void chatHistoryDecodesItsBlobOnAccess() {
+        ChatHistory row = ChatHistory.builder()
+                .message("")
+                .messageBlob(ChatMessageCodec.compress(MESSAGE))
+                .messageCodec(ChatMessageCodec.CODEC_DEFLATE)
+                .build();
+
+        assertEquals(MESSAGE, row.getMessage());
+        assertEquals(MESSAGE, ChatHistory.builder().message(MESSAGE).build().getMessage());
+    }
+
+    @Test
+    void chatHistoryToStringLeavesOutTheBlob() {
+        ChatHistory row = ChatHistory.builder()
+                .message("")
+                .messageBlob(ChatMessageCodec.compress(MESSAGE))
+                .messageCodec(ChatMessageCodec.CODEC_DEFLATE)
+                .build();
+
+        assertFalse(row.toString().contains("messageBlob"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.morfism.aiappgenerator.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式 JSON 顶层字段提取测试
+ */
+class JsonFieldExtractorTest {
+
+    private static final String[] PATH_FIELDS = {"relativeFilePath", "relativeDirPath"};
+
+    @Test
+    void extractsFirstMatchingTopLevelField() {
+        String json = "{\"relativeFilePath\": \"src/App.vue\", \"content\": \"<template/>\"}";
+        assertEquals("src/App.vue", JsonFieldExtractor.extractTopLevelString(json, PATH_FIELDS));
+    }
+
+    @Test
+    void skipsContentWithEscapedQuotesBeforeThePath() {
+        String json = "{\"content\":\"say \\\"relativeFilePath\\\": \\\"fake\\\" \\\\\",\"relativeFilePath\":\"src/main.ts\"}";
+        assertEquals("src/main.ts", JsonFieldExtractor.extractTopLevelString(json, PATH_FIELDS));
+    }
+
+    @Test
+    void ignoresNestedFieldsWithTheSameName() {
+        String json = "{\"meta\":{\"relativeFilePath\":\"nested\"},\"list\":[{\"a\":1},\"]\"],\"relativeDirPath\":\"src\"}";
+        assertEquals("src", JsonFieldExtractor.extractTopLevelString(json, PATH_FIELDS));
+    }
+
+    @Test
+    void decodesEscapesInTheValue() {
+        String json = "{\"relativeFilePath\":\"src\\/a \\u0062.vue\\n\"}";
+        assertEquals("src/a b.vue\n", JsonFieldExtractor.extractTopLevelString(json, PATH_FIELDS));
+    }
+
+    @Test
+    void returnsEmptyValueAndNullForMissingOrMalformed() {
+        assertEquals("", JsonFieldExtractor.extractTopLevelString("{\"relativeDirPath\":\"\"}", PATH_FIELDS));
+        assertNull(JsonFieldExtractor.extractTopLevelString("{\"content\":\"x\",\"n\":12,\"b\":true}", PATH_FIELDS));
+        assertNull(JsonFieldExtractor.extractTopLevelString("{\"relativeFilePath\":\"unterminated", PATH_FIELDS));
+        assertNull(JsonFieldExtractor.extractTopLevelString("not json", PATH_FIELDS));
+        assertNull(JsonFieldExtractor.extractTopLevelString(null, PATH_FIELDS));
+    }
+
+    @Test
+    void stopsBeforeLargeTrailingContent() {
+        String json = "{\"relativeFilePath\":\"index.html\",\"content\":\"" + "x".repeat(500_000) + "\"}";
+        assertEquals("index.html", JsonFieldExtractor.extractTopLevelString(json, PATH_FIELDS));
+    }
+}
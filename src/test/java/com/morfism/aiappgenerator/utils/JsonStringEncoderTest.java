@@ -0,0 +1,36 @@
+package com.morfism.aiappgenerator.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 轻量 JSON 字符串编码测试
+ */
+class JsonStringEncoderTest {
+
+    @Test
+    void plainTextIsQuotedAsIs() {
+        assertEquals("{\"q\":\"hello 世界\"}", JsonStringEncoder.singleField("q", "hello 世界"));
+    }
+
+    @Test
+    void escapesQuotesBackslashesAndControlCharacters() {
+        String encoded = JsonStringEncoder.singleField("q", "a\"b\\c\nd\re\tf\bg\fh\u0001i\u2028j");
+        assertEquals("{\"q\":\"a\\\"b\\\\c\\nd\\re\\tf\\bg\\fh\\u0001i\\u2028j\"}", encoded);
+    }
+
+    @Test
+    void roundTripsThroughAJsonParser() {
+        String text = "\n[FILE_WRITE_SUCCESS:src/App.vue]\n<template>\n  <div class=\"x\">{{ a \\ b }}</div>\n</template>\n";
+        JSONObject parsed = JSONUtil.parseObj(JsonStringEncoder.singleField("q", text));
+        assertEquals(text, parsed.getStr("q"));
+    }
+
+    @Test
+    void nullBecomesEmptyString() {
+        assertEquals("{\"q\":\"\"}", JsonStringEncoder.singleField("q", null));
+    }
+}
@@ -0,0 +1,105 @@
+package com.morfism.aiappgenerator.utils;
+
+import com.morfism.aiappgenerator.utils.TextPatchApplier.PatchResult;
+import com.morfism.aiappgenerator.utils.TextPatchApplier.TextEdit;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 文本补丁应用测试
+ */
+class TextPatchApplierTest {
+
+    private static final String ORIGINAL = """
+            <template>
+              <h1>{{ title }}</h1>
+              <p>{{ text }}</p>
+            </template>
+            <script setup>
+            const title = 'Hello'
+            const text = 'World'
+            </script>
+            """;
+
+    @Test
+    void appliesSeveralEditsAgainstTheOriginal() {
+        PatchResult result = TextPatchApplier.applyEdits(ORIGINAL, List.of(
+                new TextEdit("const text = 'World'", "const text = 'Vue'"),
+                new TextEdit("<h1>{{ title }}</h1>", "<h2>{{ title }}</h2>")));
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.applied());
+        assertTrue(result.content().contains("<h2>{{ title }}</h2>"));
+        assertTrue(result.content().contains("const text = 'Vue'"));
+    }
+
+    @Test
+    void reportsEveryConflictAndAppliesNothing() {
+        PatchResult result = TextPatchApplier.applyEdits(ORIGINAL, List.of(
+                new TextEdit("const title = 'Hello'", "const title = 'Hi'"),
+                new TextEdit("missing", "x"),
+                new TextEdit("const ", "let "),
+                new TextEdit("title = 'Hello'\nconst text", "y")));
+        assertFalse(result.isSuccess());
+        assertNull(result.content());
+        assertEquals(List.of(
+                "Hunk 2: old text not found",
+                "Hunk 3: old text matches 2 places, include more surrounding lines",
+                "Hunk 4 overlaps hunk 1"), result.conflicts());
+    }
+
+    @Test
+    void appliesUnifiedDiffWithShiftedLineNumbers() {
+        String diff = """
+                --- a/src/App.vue
+                +++ b/src/App.vue
+                @@ -1,3 +1,3 @@
+                 <template>
+                -  <h1>{{ title }}</h1>
+                +  <h1 class="title">{{ title }}</h1>
+                   <p>{{ text }}</p>
+                @@ -3,2 +3,3 @@
+                 const title = 'Hello'
+                 const text = 'World'
+                +const year = 2025
+                """;
+        PatchResult result = TextPatchApplier.applyUnifiedDiff(ORIGINAL, diff);
+        assertTrue(result.isSuccess(), () -> String.join(", ", result.conflicts()));
+        assertEquals(ORIGINAL
+                .replace("<h1>", "<h1 class=\"title\">")
+                .replace("const text = 'World'\n", "const text = 'World'\nconst year = 2025\n"), result.content());
+    }
+
+    @Test
+    void appendsAfterAnUnterminatedLastLine() {
+        PatchResult result = TextPatchApplier.applyUnifiedDiff("a\nb", "@@ -2,0 +3,1 @@\n+c\n");
+        assertTrue(result.isSuccess());
+        assertEquals("a\nb\nc", result.content());
+    }
+
+    @Test
+    void hunkBodyFollowsTheHeaderCounts() {
+        // Removing "-- x" and adding "++ y" reads like a "--- "/"+++ " file header pair
+        String original = "SELECT 1;\n-- x\nSELECT 2;\n";
+        PatchResult result = TextPatchApplier.applyUnifiedDiff(original,
+                "@@ -1,3 +1,3 @@\n SELECT 1;\n--- x\n+++ y\n SELECT 2;\n");
+        assertTrue(result.isSuccess(), () -> String.join(", ", result.conflicts()));
+        assertEquals("SELECT 1;\n++ y\nSELECT 2;\n", result.content());
+    }
+
+    @Test
+    void reportsBodiesShorterThanTheHeader() {
+        PatchResult result = TextPatchApplier.applyUnifiedDiff(ORIGINAL,
+                "@@ -1,3 +1,3 @@\n <template>\n-  <h1>{{ title }}</h1>\n+  <h2>{{ title }}</h2>\n@@ -6,1 +6,1 @@\n-const title = 'Hello'\n+const title = 'Hi'\n");
+        assertEquals(List.of("Hunk 1 (@@ -1,3 +1,3): body does not match the line counts in the header"),
+                result.conflicts());
+    }
+
+    @Test
+    void reportsMissingContext() {
+        PatchResult result = TextPatchApplier.applyUnifiedDiff(ORIGINAL, "@@ -1,1 +1,1 @@\n-<div>\n+<section>\n");
+        assertEquals(List.of("Hunk 1 (@@ -1,1): context lines not found"), result.conflicts());
+    }
+}